@@ -1,310 +1,821 @@
-package Controller;
-
-import java.time.LocalDate;
-import java.util.ArrayList;
-import Model.Biblioteca;
-import Model.Libro;
-import Model.Usuario;
-import Model.Prestamo;
-
-/**
- * Clase controladora que actúa como intermediario entre la vista y el modelo.
- * Gestiona todas las operaciones del sistema de biblioteca.
- */
-public class Control {
-    private Biblioteca biblioteca;
-
-    /**
-     * Constructor que inicializa el controlador con una instancia de Biblioteca.
-     * @param biblioteca Instancia de Biblioteca a gestionar
-     */
-    public Control(Biblioteca biblioteca) {
-        this.biblioteca = biblioteca;
-    }
-
-    // Métodos para usuarios
-
-    /**
-     * Registra un nuevo usuario en el sistema.
-     * @param nombre Nombre del usuario
-     * @param identificacion Identificación única del usuario
-     * @param tipoUsuario Tipo de usuario (estudiante, profesor, ciudadano, administrador)
-     * @return true si el registro fue exitoso, false en caso contrario
-     */
-    public boolean registrarUsuario(String nombre, String identificacion, String tipoUsuario) {
-        if (nombre == null || nombre.isEmpty() || identificacion == null || identificacion.isEmpty()) {
-            return false;
-        }
-        
-        Usuario usuario = new Usuario(nombre, identificacion, tipoUsuario);
-        return biblioteca.registrarUsuario(usuario);
-    }
-
-    /**
-     * Elimina un usuario por su identificación.
-     * @param identificacion Identificación del usuario a eliminar
-     * @return true si la eliminación fue exitosa, false en caso contrario
-     */
-    public boolean eliminarUsuarioPorId(String identificacion) {
-        return biblioteca.eliminarUsuarioPorId(identificacion);
-    }
-
-    /**
-     * Actualiza el tipo de un usuario existente.
-     * @param identificacion Identificación del usuario a actualizar
-     * @param nuevoTipo Nuevo tipo de usuario
-     * @return true si la actualización fue exitosa, false en caso contrario
-     */
-    public boolean actualizarTipoDeUsuario(String identificacion, String nuevoTipo) {
-        return biblioteca.actualizarTipoDeUsuario(identificacion, nuevoTipo);
-    }
-
-    /**
-     * Busca un usuario por su identificación.
-     * @param identificacion Identificación del usuario a buscar
-     * @return Usuario encontrado o null si no existe
-     */
-    public Usuario buscarUsuarioPorId(String identificacion) {
-        return biblioteca.buscarUsuarioPorId(identificacion);
-    }
-
-    // Métodos para libros
-
-    /**
-     * Agrega un nuevo libro al sistema.
-     * @param titulo Título del libro
-     * @param autor Autor del libro
-     * @param añoPublicacion Año de publicación del libro
-     * @param isbn ISBN único del libro
-     * @param ejemplaresDisponibles Cantidad de ejemplares disponibles
-     * @return true si el libro fue agregado exitosamente, false en caso contrario
-     */
-    public boolean agregarLibro(String titulo, String autor, int añoPublicacion, String isbn, int ejemplaresDisponibles) {
-        if (titulo == null || titulo.isEmpty() || isbn == null || isbn.isEmpty() || ejemplaresDisponibles < 0) {
-            return false;
-        }
-        Libro libro = new Libro(titulo, autor, añoPublicacion, isbn, ejemplaresDisponibles);
-        return biblioteca.agregarLibro(libro);
-    }
-
-    /**
-     * Elimina un libro por su ISBN.
-     * @param isbn ISBN del libro a eliminar
-     * @return true si la eliminación fue exitosa, false en caso contrario
-     */
-    public boolean eliminarLibroPorIsbn(String isbn) {
-        return biblioteca.eliminarLibroPorIsbn(isbn);
-    }
-
-    /**
-     * Actualiza la información de un libro existente.
-     * @param isbn ISBN del libro a actualizar
-     * @param nuevoTitulo Nuevo título (cadena vacía para no modificar)
-     * @param nuevoAutor Nuevo autor (cadena vacía para no modificar)
-     * @param nuevoAñoPublicacion Nuevo año de publicación (0 o negativo para no modificar)
-     * @param nuevosEjemplares Nueva cantidad de ejemplares (negativo para no modificar)
-     * @return true si la actualización fue exitosa, false en caso contrario
-     */
-    public boolean actualizarLibro(String isbn, String nuevoTitulo, String nuevoAutor, 
-                                 int nuevoAñoPublicacion, int nuevosEjemplares) {
-        return biblioteca.actualizarLibro(isbn, 
-            nuevoTitulo.isEmpty() ? null : nuevoTitulo,
-            nuevoAutor.isEmpty() ? null : nuevoAutor,
-            nuevoAñoPublicacion <= 0 ? -1 : nuevoAñoPublicacion,
-            nuevosEjemplares < 0 ? -1 : nuevosEjemplares);
-    }
-
-    /**
-     * Obtiene una representación formateada de todos los libros.
-     * @return Cadena con la información de todos los libros
-     */
-    public String mostrarLibros() {
-        return biblioteca.mostrarLibros();
-    }
-
-    /**
-     * Busca un libro por su ISBN.
-     * @param isbn ISBN del libro a buscar
-     * @return Libro encontrado o null si no existe
-     */
-    public Libro buscarLibroPorIsbn(String isbn) {
-        return biblioteca.buscarLibroPorIsbn(isbn);
-    }
-
-    /**
-     * Busca libros por título (coincidencia exacta).
-     * @param titulo Título a buscar
-     * @return Cadena formateada con los libros encontrados
-     */
-    public String buscarLibrosPorTitulo(String titulo) {
-        ArrayList<Libro> libros = biblioteca.buscarLibrosPorTitulo(titulo);
-        return formatearListaLibros(libros);
-    }
-
-    /**
-     * Busca libros por autor (coincidencia parcial).
-     * @param autor Autor a buscar
-     * @return Cadena formateada con los libros encontrados
-     */
-    public String buscarLibrosPorAutor(String autor) {
-        ArrayList<Libro> libros = biblioteca.buscarLibrosPorAutor(autor);
-        return formatearListaLibros(libros);
-    }
-
-    /**
-     * Verifica la disponibilidad de un libro.
-     * @param isbn ISBN del libro a verificar
-     * @return Mensaje indicando la disponibilidad del libro
-     */
-    public String verificarDisponibilidad(String isbn) {
-        Libro libro = biblioteca.buscarLibroPorIsbn(isbn);
-        if (libro == null) {
-            return "Libro no encontrado.";
-        }
-        return libro.getEjemplaresDisponibles() > 0 ? 
-            "Disponible (" + libro.getEjemplaresDisponibles() + " ejemplares)" :
-            "No disponible en este momento";
-    }
-
-    // Métodos para préstamos
-
-    /**
-     * Realiza el préstamo de un libro a un usuario.
-     * @param isbn ISBN del libro a prestar
-     * @param identificacion Identificación del usuario
-     * @return true si el préstamo fue exitoso, false en caso contrario
-     */
-    public boolean prestarLibro(String isbn, String identificacion) {
-        LocalDate fechaPrestamo = LocalDate.now();
-        LocalDate fechaDevolucion = fechaPrestamo.plusDays(30); // Préstamo por 30 días
-        return biblioteca.prestarLibro(isbn, identificacion, fechaPrestamo, fechaDevolucion);
-    }
-
-    /**
-     * Registra la devolución de un libro prestado.
-     * @param isbn ISBN del libro a devolver
-     * @param identificacion Identificación del usuario
-     * @return true si la devolución fue exitosa, false en caso contrario
-     */
-    public boolean devolverLibro(String isbn, String identificacion) {
-        LocalDate fechaDevolucion = LocalDate.now();
-        return biblioteca.devolverLibro(isbn, identificacion, fechaDevolucion);
-    }
-
-    /**
-     * Calcula la multa por retraso en la devolución de un libro.
-     * @param isbn ISBN del libro
-     * @param identificacion Identificación del usuario
-     * @return Monto de la multa calculada
-     */
-    public double calcularMulta(String isbn, String identificacion) {
-        LocalDate fechaDevolucion = LocalDate.now();
-        return biblioteca.calcularMulta(isbn, identificacion, fechaDevolucion);
-    }
-
-    /**
-     * Obtiene una lista formateada de todos los préstamos activos.
-     * @return Cadena con la información de los préstamos activos
-     */
-    public String mostrarPrestamosActivos() {
-        ArrayList<Prestamo> prestamos = biblioteca.getPrestamos();
-        if (prestamos.isEmpty()) {
-            return "No hay préstamos activos.";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("\nPréstamos activos:\n");
-        for (Prestamo prestamo : prestamos) {
-            sb.append("----------------------------------------\n");
-            sb.append("Usuario: ").append(prestamo.getUsuario().getNombre()).append("\n");
-            sb.append("Libro: ").append(prestamo.getLibro().getTitulo()).append("\n");
-            sb.append("ISBN: ").append(prestamo.getLibro().getIsbn()).append("\n");
-            sb.append("Fecha préstamo: ").append(prestamo.getFechaPrestamo()).append("\n");
-            sb.append("Fecha devolución: ").append(prestamo.getFechaDevolucion()).append("\n");
-        }
-        return sb.toString();
-    }
-
-    /**
-     * Obtiene los préstamos activos de un usuario.
-     * @param identificacion Identificación del usuario
-     * @return Cadena formateada con los préstamos del usuario
-     */
-    public String obtenerPrestamosUsuario(String identificacion) {
-        ArrayList<Libro> libros = biblioteca.obtenerLibrosPrestadosPorUsuario(identificacion);
-        if (libros.isEmpty()) {
-            return "No tiene préstamos activos.";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("\nPréstamos activos:\n");
-        for (Libro libro : libros) {
-            sb.append("----------------------------------------\n");
-            sb.append("Título: ").append(libro.getTitulo()).append("\n");
-            sb.append("ISBN: ").append(libro.getIsbn()).append("\n");
-            sb.append("Autor: ").append(libro.getAutor()).append("\n");
-        }
-        return sb.toString();
-    }
-
-    /**
-     * Consulta la multa acumulada de un usuario.
-     * @param identificacion Identificación del usuario
-     * @return Monto de la multa acumulada
-     */
-    public double consultarMultaUsuario(String identificacion) {
-        Usuario usuario = buscarUsuarioPorId(identificacion);
-        return usuario != null ? usuario.getMultaAcumulada() : 0.0;
-    }
-
-    /**
-     * Registra el pago de una multa por parte de un usuario.
-     * @param identificacion Identificación del usuario
-     * @param monto Monto a pagar
-     * @return true si el pago fue registrado, false en caso contrario
-     */
-    public boolean pagarMulta(String identificacion, double monto) {
-        Usuario usuario = buscarUsuarioPorId(identificacion);
-        if (usuario != null && monto > 0) {
-            usuario.pagarMulta(monto);
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Verifica si un usuario tiene permisos de administrador.
-     * @param idUsuario Identificación del usuario a verificar
-     * @return true si el usuario es administrador, false en caso contrario
-     */
-    public boolean verificarPermisosAdmin(String idUsuario) {
-        Usuario usuario = biblioteca.buscarUsuarioPorId(idUsuario);
-        return usuario != null && usuario.esAdmin();
-    }
-
-    // Métodos auxiliares
-
-    /**
-     * Formatea una lista de libros para su visualización.
-     * @param libros Lista de libros a formatear
-     * @return Cadena formateada con la información de los libros
-     */
-    private String formatearListaLibros(ArrayList<Libro> libros) {
-        if (libros == null || libros.isEmpty()) {
-            return "No se encontraron libros.";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("\nLibros encontrados (").append(libros.size()).append("):\n");
-        for (Libro libro : libros) {
-            sb.append("----------------------------------------\n");
-            sb.append("Título: ").append(libro.getTitulo()).append("\n");
-            sb.append("Autor: ").append(libro.getAutor()).append("\n");
-            sb.append("Año: ").append(libro.getAñoPublicacion()).append("\n");
-            sb.append("ISBN: ").append(libro.getIsbn()).append("\n");
-            sb.append("Disponibles: ").append(libro.getEjemplaresDisponibles()).append("\n");
-        }
-        sb.append("----------------------------------------\n");
-        return sb.toString();
-    }
+package Controller;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import Model.Biblioteca;
+import Model.ImportadorCatalogo;
+import Model.InformeImportacion;
+import Model.Libro;
+import Model.Pagina;
+import Model.PrestamoArchivado;
+import Model.Usuario;
+import Model.Prestamo;
+import Model.Reserva;
+
+/**
+ * Clase controladora que actúa como intermediario entre la vista y el modelo.
+ * Gestiona todas las operaciones del sistema de biblioteca.
+ */
+public class Control {
+    private static final int RESULTADOS_SIMILARES = 10;
+    private static final int TAMAÑO_BUFFER_LISTADOS = 64 << 10; // Búfer de los listados que se escriben por partes
+    private static final int TAMAÑO_PAGINA_LISTADOS = 500; // Préstamos que se leen por vez al escribir un listado
+
+    private Biblioteca biblioteca;
+
+    /**
+     * Constructor que inicializa el controlador con una instancia de Biblioteca.
+     * @param biblioteca Instancia de Biblioteca a gestionar
+     */
+    public Control(Biblioteca biblioteca) {
+        this.biblioteca = biblioteca;
+    }
+
+    // Métodos para usuarios
+
+    /**
+     * Registra un nuevo usuario en el sistema.
+     * @param nombre Nombre del usuario
+     * @param identificacion Identificación única del usuario
+     * @param tipoUsuario Tipo de usuario (estudiante, profesor, ciudadano, administrador)
+     * @return true si el registro fue exitoso, false en caso contrario
+     */
+    public boolean registrarUsuario(String nombre, String identificacion, String tipoUsuario) {
+        if (nombre == null || nombre.isEmpty() || identificacion == null || identificacion.isEmpty()) {
+            return false;
+        }
+        
+        Usuario usuario = new Usuario(nombre, identificacion, tipoUsuario);
+        return biblioteca.registrarUsuario(usuario);
+    }
+
+    /**
+     * Elimina un usuario por su identificación.
+     * @param identificacion Identificación del usuario a eliminar
+     * @return true si la eliminación fue exitosa, false en caso contrario
+     */
+    public boolean eliminarUsuarioPorId(String identificacion) {
+        return biblioteca.eliminarUsuarioPorId(identificacion);
+    }
+
+    /**
+     * Actualiza el tipo de un usuario existente.
+     * @param identificacion Identificación del usuario a actualizar
+     * @param nuevoTipo Nuevo tipo de usuario
+     * @return true si la actualización fue exitosa, false en caso contrario
+     */
+    public boolean actualizarTipoDeUsuario(String identificacion, String nuevoTipo) {
+        return biblioteca.actualizarTipoDeUsuario(identificacion, nuevoTipo);
+    }
+
+    /**
+     * Busca un usuario por su identificación.
+     * @param identificacion Identificación del usuario a buscar
+     * @return Usuario encontrado o null si no existe
+     */
+    public Usuario buscarUsuarioPorId(String identificacion) {
+        return biblioteca.buscarUsuarioPorId(identificacion);
+    }
+
+    // Métodos para libros
+
+    /**
+     * Agrega un nuevo libro al sistema.
+     * @param titulo Título del libro
+     * @param autor Autor del libro
+     * @param añoPublicacion Año de publicación del libro
+     * @param isbn ISBN único del libro
+     * @param ejemplaresDisponibles Cantidad de ejemplares disponibles
+     * @return true si el libro fue agregado exitosamente, false en caso contrario
+     */
+    public boolean agregarLibro(String titulo, String autor, int añoPublicacion, String isbn, int ejemplaresDisponibles) {
+        if (titulo == null || titulo.isEmpty() || isbn == null || isbn.isEmpty() || ejemplaresDisponibles < 0) {
+            return false;
+        }
+        Libro libro = new Libro(titulo, autor, añoPublicacion, isbn, ejemplaresDisponibles);
+        return biblioteca.agregarLibro(libro);
+    }
+
+    /**
+     * Importa libros en masa desde un archivo CSV o TSV con las columnas título, autor,
+     * año, ISBN y ejemplares.
+     * @param ruta Ruta del archivo
+     * @return Informe con los libros importados y las filas rechazadas, o null si no se pudo leer el archivo
+     */
+    public InformeImportacion importarLibros(String ruta) {
+        if (ruta == null || ruta.isEmpty()) {
+            return null;
+        }
+        try {
+            return new ImportadorCatalogo(biblioteca).importar(Paths.get(ruta));
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Elimina un libro por su ISBN.
+     * @param isbn ISBN del libro a eliminar
+     * @return true si la eliminación fue exitosa, false en caso contrario
+     */
+    public boolean eliminarLibroPorIsbn(String isbn) {
+        return biblioteca.eliminarLibroPorIsbn(isbn);
+    }
+
+    /**
+     * Actualiza la información de un libro existente.
+     * @param isbn ISBN del libro a actualizar
+     * @param nuevoTitulo Nuevo título (cadena vacía para no modificar)
+     * @param nuevoAutor Nuevo autor (cadena vacía para no modificar)
+     * @param nuevoAñoPublicacion Nuevo año de publicación (0 o negativo para no modificar)
+     * @param nuevosEjemplares Nueva cantidad de ejemplares (negativo para no modificar)
+     * @return true si la actualización fue exitosa, false en caso contrario
+     */
+    public boolean actualizarLibro(String isbn, String nuevoTitulo, String nuevoAutor, 
+                                 int nuevoAñoPublicacion, int nuevosEjemplares) {
+        return biblioteca.actualizarLibro(isbn, 
+            nuevoTitulo.isEmpty() ? null : nuevoTitulo,
+            nuevoAutor.isEmpty() ? null : nuevoAutor,
+            nuevoAñoPublicacion <= 0 ? -1 : nuevoAñoPublicacion,
+            nuevosEjemplares < 0 ? -1 : nuevosEjemplares);
+    }
+
+    /**
+     * Obtiene una representación formateada de todos los libros.
+     * @return Cadena con la información de todos los libros
+     */
+    public String mostrarLibros() {
+        return biblioteca.mostrarLibros();
+    }
+
+    /**
+     * Escribe la información de todos los libros a medida que se recorren,
+     * sin armar el listado completo en memoria. La salida no se cierra.
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void mostrarLibros(Writer salida) throws IOException {
+        biblioteca.mostrarLibros(salida);
+    }
+
+    /**
+     * Obtiene una página del listado de libros.
+     * @param cursor Cursor devuelto por la página anterior, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Página de libros, o null si el cursor o el tamaño no son válidos
+     */
+    public Pagina<Libro> mostrarLibros(String cursor, int tamañoPagina) {
+        return biblioteca.paginaLibros(cursor, tamañoPagina);
+    }
+
+    /**
+     * Escribe el listado de todos los libros en un canal, codificado en UTF-8.
+     * El canal no se cierra.
+     * @param canal Canal de destino (por ejemplo, un archivo o un socket)
+     * @throws IOException Si falla la escritura
+     */
+    public void exportarLibros(WritableByteChannel canal) throws IOException {
+        Writer salida = Channels.newWriter(canal, StandardCharsets.UTF_8);
+        biblioteca.mostrarLibros(salida);
+        salida.flush();
+    }
+
+    /**
+     * Exporta el listado de todos los libros a un archivo en UTF-8, reemplazándolo si existe.
+     * @param ruta Ruta del archivo
+     * @return true si se exportó, false si no se pudo escribir el archivo
+     */
+    public boolean exportarLibros(String ruta) {
+        if (ruta == null || ruta.isEmpty()) {
+            return false;
+        }
+        try (FileChannel canal = FileChannel.open(Paths.get(ruta), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            exportarLibros(canal);
+            return true;
+        } catch (IOException | InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Busca un libro por su ISBN.
+     * @param isbn ISBN del libro a buscar
+     * @return Libro encontrado o null si no existe
+     */
+    public Libro buscarLibroPorIsbn(String isbn) {
+        return biblioteca.buscarLibroPorIsbn(isbn);
+    }
+
+    /**
+     * Busca libros por título (coincidencia exacta).
+     * @param titulo Título a buscar
+     * @return Cadena formateada con los libros encontrados
+     */
+    public String buscarLibrosPorTitulo(String titulo) {
+        ArrayList<Libro> libros = biblioteca.buscarLibrosPorTitulo(titulo);
+        return formatearListaLibros(libros);
+    }
+
+    /**
+     * Busca una página de libros cuyo título empieza por el texto dado.
+     * Los títulos idénticos al texto aparecen primero, seguidos del resto en orden alfabético.
+     * @param inicio Texto con el que empieza el título
+     * @param cursor Cursor devuelto por la página anterior de la misma búsqueda, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Página de libros, o null si el cursor o el tamaño no son válidos
+     */
+    public Pagina<Libro> buscarLibrosPorInicioDeTitulo(String inicio, String cursor, int tamañoPagina) {
+        return biblioteca.paginaLibrosPorInicioDeTitulo(inicio, cursor, tamañoPagina);
+    }
+
+    /**
+     * Busca una página de libros por título (coincidencia exacta).
+     * @param titulo Título a buscar
+     * @param cursor Cursor devuelto por la página anterior de la misma búsqueda, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Página de libros, o null si el cursor o el tamaño no son válidos
+     */
+    public Pagina<Libro> buscarLibrosPorTitulo(String titulo, String cursor, int tamañoPagina) {
+        return biblioteca.paginaLibrosPorTitulo(titulo, cursor, tamañoPagina);
+    }
+
+    /**
+     * Busca libros por autor (coincidencia parcial).
+     * @param autor Autor a buscar
+     * @return Cadena formateada con los libros encontrados
+     */
+    public String buscarLibrosPorAutor(String autor) {
+        ArrayList<Libro> libros = biblioteca.buscarLibrosPorAutor(autor);
+        return formatearListaLibros(libros);
+    }
+
+    /**
+     * Busca una página de libros por autor (coincidencia parcial).
+     * @param autor Autor a buscar
+     * @param cursor Cursor devuelto por la página anterior de la misma búsqueda, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Página de libros, o null si el cursor o el tamaño no son válidos
+     */
+    public Pagina<Libro> buscarLibrosPorAutor(String autor, String cursor, int tamañoPagina) {
+        return biblioteca.paginaLibrosPorAutor(autor, cursor, tamañoPagina);
+    }
+
+    /**
+     * Busca los libros cuyo título o autor se parecen al texto, tolerando errores de escritura.
+     * @param texto Texto a buscar (por ejemplo, "Garcia Marques")
+     * @return Cadena formateada con los libros más parecidos, del más al menos parecido
+     */
+    public String buscarLibrosSimilares(String texto) {
+        ArrayList<Libro> libros = biblioteca.buscarLibrosSimilares(texto, RESULTADOS_SIMILARES);
+        return formatearListaLibros(libros);
+    }
+
+    /**
+     * Obtiene una página de la búsqueda aproximada por título o autor.
+     * @param texto Texto a buscar
+     * @param cursor Cursor devuelto por la página anterior, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Página de libros, del más al menos parecido, o null si el cursor o el tamaño no son válidos
+     */
+    public Pagina<Libro> buscarLibrosSimilares(String texto, String cursor, int tamañoPagina) {
+        return biblioteca.paginaLibrosSimilares(texto, cursor, tamañoPagina);
+    }
+
+    /**
+     * Verifica la disponibilidad de un libro.
+     * @param isbn ISBN del libro a verificar
+     * @return Mensaje indicando la disponibilidad del libro
+     */
+    public String verificarDisponibilidad(String isbn) {
+        Libro libro = biblioteca.buscarLibroPorIsbn(isbn);
+        if (libro == null) {
+            return "Libro no encontrado.";
+        }
+        return libro.getEjemplaresDisponibles() > 0 ? 
+            "Disponible (" + libro.getEjemplaresDisponibles() + " ejemplares)" :
+            "No disponible en este momento";
+    }
+
+    // Métodos para préstamos
+
+    /**
+     * Realiza el préstamo de un libro a un usuario.
+     * @param isbn ISBN del libro a prestar
+     * @param identificacion Identificación del usuario
+     * @return true si el préstamo fue exitoso, false en caso contrario
+     */
+    public boolean prestarLibro(String isbn, String identificacion) {
+        LocalDate fechaPrestamo = LocalDate.now();
+        LocalDate fechaDevolucion = fechaPrestamo.plusDays(30); // Préstamo por 30 días
+        return biblioteca.prestarLibro(isbn, identificacion, fechaPrestamo, fechaDevolucion);
+    }
+
+    /**
+     * Comprueba si un libro podría prestarse ahora a un usuario, con las reglas de prestarLibro.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return true si el libro está disponible y el usuario puede pedirlo
+     */
+    public boolean puedePrestar(String isbn, String identificacion) {
+        return biblioteca.puedePrestarLibro(isbn, identificacion);
+    }
+
+    /**
+     * Registra la devolución de un libro prestado.
+     * @param isbn ISBN del libro a devolver
+     * @param identificacion Identificación del usuario
+     * @return true si la devolución fue exitosa, false en caso contrario
+     */
+    public boolean devolverLibro(String isbn, String identificacion) {
+        LocalDate fechaDevolucion = LocalDate.now();
+        return biblioteca.devolverLibro(isbn, identificacion, fechaDevolucion);
+    }
+
+    /**
+     * Presta varios libros a un usuario de una sola vez, por 30 días.
+     * @param isbns ISBN de los libros a prestar
+     * @param identificacion Identificación del usuario
+     * @param todosONinguno true para prestar todos los libros o ninguno
+     * @return Por cada ISBN, true si se prestó y false si se rechazó
+     */
+    public boolean[] prestarLibros(List<String> isbns, String identificacion, boolean todosONinguno) {
+        LocalDate fechaPrestamo = LocalDate.now();
+        LocalDate fechaDevolucion = fechaPrestamo.plusDays(30); // Préstamo por 30 días
+        return biblioteca.prestarLibros(identificacion, isbns, fechaPrestamo, fechaDevolucion, todosONinguno);
+    }
+
+    /**
+     * Registra la devolución de varios libros de un usuario de una sola vez.
+     * @param isbns ISBN de los libros a devolver
+     * @param identificacion Identificación del usuario
+     * @return Por cada ISBN, true si se registró la devolución y false en caso contrario
+     */
+    public boolean[] devolverLibros(List<String> isbns, String identificacion) {
+        return biblioteca.devolverLibros(identificacion, isbns, LocalDate.now());
+    }
+
+    /**
+     * Registra un lote de devoluciones de usuarios distintos, como las del buzón.
+     * @param isbns ISBN de los libros a devolver
+     * @param identificaciones Identificación del usuario de cada libro, en el mismo orden
+     * @return Por cada libro, true si se registró la devolución y false en caso contrario
+     */
+    public boolean[] devolverLibros(List<String> isbns, List<String> identificaciones) {
+        if (isbns.size() != identificaciones.size()) {
+            return null;
+        }
+        return biblioteca.devolverLibros(isbns, identificaciones, LocalDate.now());
+    }
+
+    /**
+     * Calcula la multa por retraso en la devolución de un libro.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return Monto de la multa calculada
+     */
+    public double calcularMulta(String isbn, String identificacion) {
+        LocalDate fechaDevolucion = LocalDate.now();
+        return biblioteca.calcularMulta(isbn, identificacion, fechaDevolucion);
+    }
+
+    /**
+     * Obtiene una lista formateada de todos los préstamos activos.
+     * @return Cadena con la información de los préstamos activos
+     */
+    public String mostrarPrestamosActivos() {
+        StringWriter salida = new StringWriter();
+        try {
+            mostrarPrestamosActivos(salida);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no falla
+        }
+        return salida.toString();
+    }
+
+    /**
+     * Escribe los préstamos activos página por página, sin armar el listado completo
+     * en memoria. La salida no se cierra.
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void mostrarPrestamosActivos(Writer salida) throws IOException {
+        Pagina<Prestamo> pagina = biblioteca.paginaPrestamos(null, TAMAÑO_PAGINA_LISTADOS);
+        if (pagina.getElementos().isEmpty()) {
+            salida.write("No hay préstamos activos.");
+            salida.flush();
+            return;
+        }
+        
+        Writer sb = conBuffer(salida);
+        sb.append("\nPréstamos activos:\n");
+        sb.flush();
+        while (true) {
+            escribirPrestamos(pagina.getElementos(), sb);
+            if (!pagina.hayMas()) {
+                break;
+            }
+            pagina = biblioteca.paginaPrestamos(pagina.getCursorSiguiente(), TAMAÑO_PAGINA_LISTADOS);
+        }
+        sb.flush();
+    }
+
+    /**
+     * Obtiene una lista formateada de los préstamos vencidos a hoy, con sus días de retraso.
+     * @return Cadena con la información de los préstamos vencidos
+     */
+    public String mostrarPrestamosVencidos() {
+        StringWriter salida = new StringWriter();
+        try {
+            mostrarPrestamosVencidos(salida);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no falla
+        }
+        return salida.toString();
+    }
+
+    /**
+     * Escribe los préstamos vencidos a hoy página por página, sin armar el listado
+     * completo en memoria. La salida no se cierra.
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void mostrarPrestamosVencidos(Writer salida) throws IOException {
+        LocalDate hoy = LocalDate.now();
+        Pagina<Prestamo> pagina = biblioteca.paginaPrestamosVencidos(hoy, null, TAMAÑO_PAGINA_LISTADOS);
+        if (pagina.getElementos().isEmpty()) {
+            salida.write("No hay préstamos vencidos.");
+            salida.flush();
+            return;
+        }
+        
+        Writer sb = conBuffer(salida);
+        sb.append("\nPréstamos vencidos:\n");
+        while (true) {
+            escribirVencidos(pagina.getElementos(), hoy, sb);
+            if (!pagina.hayMas()) {
+                break;
+            }
+            pagina = biblioteca.paginaPrestamosVencidos(hoy, pagina.getCursorSiguiente(), TAMAÑO_PAGINA_LISTADOS);
+        }
+        sb.flush();
+    }
+
+    /**
+     * Obtiene una página de los préstamos vencidos a hoy, en orden de fecha límite.
+     * @param cursor Cursor devuelto por la página anterior, o null para la primera
+     * @param tamañoPagina Cantidad de préstamos por página
+     * @return Página de préstamos, o null si el cursor o el tamaño no son válidos (un
+     *         cursor de otro día ya no es válido)
+     */
+    public Pagina<Prestamo> mostrarPrestamosVencidos(String cursor, int tamañoPagina) {
+        return biblioteca.paginaPrestamosVencidos(LocalDate.now(), cursor, tamañoPagina);
+    }
+
+    /**
+     * Obtiene una página de los préstamos activos.
+     * @param cursor Cursor devuelto por la página anterior, o null para la primera
+     * @param tamañoPagina Cantidad de préstamos por página
+     * @return Página de préstamos, o null si el cursor o el tamaño no son válidos
+     */
+    public Pagina<Prestamo> mostrarPrestamosActivos(String cursor, int tamañoPagina) {
+        return biblioteca.paginaPrestamos(cursor, tamañoPagina);
+    }
+
+    /**
+     * Escribe los préstamos activos en un canal, codificados en UTF-8.
+     * El canal no se cierra.
+     * @param canal Canal de destino
+     * @throws IOException Si falla la escritura
+     */
+    public void exportarPrestamosActivos(WritableByteChannel canal) throws IOException {
+        Writer salida = Channels.newWriter(canal, StandardCharsets.UTF_8);
+        mostrarPrestamosActivos(salida);
+        salida.flush();
+    }
+
+    /**
+     * Obtiene los préstamos activos de un usuario.
+     * @param identificacion Identificación del usuario
+     * @return Cadena formateada con los préstamos del usuario
+     */
+    public String obtenerPrestamosUsuario(String identificacion) {
+        ArrayList<Libro> libros = biblioteca.obtenerLibrosPrestadosPorUsuario(identificacion);
+        if (libros.isEmpty()) {
+            return "No tiene préstamos activos.";
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nPréstamos activos:\n");
+        for (Libro libro : libros) {
+            sb.append("----------------------------------------\n");
+            sb.append("Título: ").append(libro.getTitulo()).append("\n");
+            sb.append("ISBN: ").append(libro.getIsbn()).append("\n");
+            sb.append("Autor: ").append(libro.getAutor()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Obtiene una página de los préstamos activos de un usuario.
+     * @param identificacion Identificación del usuario
+     * @param cursor Cursor devuelto por la página anterior del mismo usuario, o null para la primera
+     * @param tamañoPagina Cantidad de préstamos por página
+     * @return Página de préstamos, o null si el usuario no existe o el cursor o el tamaño no son válidos
+     */
+    public Pagina<Prestamo> obtenerPrestamosUsuario(String identificacion, String cursor, int tamañoPagina) {
+        return biblioteca.paginaPrestamosDeUsuario(identificacion, cursor, tamañoPagina);
+    }
+
+    /**
+     * Obtiene el historial de préstamos devueltos de un libro.
+     * @param isbn ISBN del libro
+     * @param meses Cantidad de meses hacia atrás a consultar (0 o menos para todo el historial)
+     * @return Cadena formateada con los préstamos devueltos
+     */
+    public String historialDeLibro(String isbn, int meses) {
+        return formatearHistorial(biblioteca.historialDeLibro(isbn, inicioHistorial(meses), null));
+    }
+
+    /**
+     * Obtiene el historial de préstamos devueltos de un usuario.
+     * @param identificacion Identificación del usuario
+     * @param meses Cantidad de meses hacia atrás a consultar (0 o menos para todo el historial)
+     * @return Cadena formateada con los préstamos devueltos
+     */
+    public String historialDeUsuario(String identificacion, int meses) {
+        return formatearHistorial(biblioteca.historialDeUsuario(identificacion, inicioHistorial(meses), null));
+    }
+
+    /**
+     * Calcula la primera fecha de una consulta del historial.
+     * @param meses Cantidad de meses hacia atrás (0 o menos para no acotar)
+     * @return Fecha de inicio, o null para todo el historial
+     */
+    private static LocalDate inicioHistorial(int meses) {
+        return meses > 0 ? LocalDate.now().minusMonths(meses) : null;
+    }
+
+    // Métodos para reservas
+
+    /**
+     * Reserva un libro sin ejemplares disponibles. Cuando se devuelva un ejemplar,
+     * se prestará al usuario por orden de llegada.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return true si se registró la reserva, false en caso contrario
+     */
+    public boolean reservarLibro(String isbn, String identificacion) {
+        return biblioteca.reservarLibro(isbn, identificacion, LocalDate.now());
+    }
+
+    /**
+     * Cancela la reserva de un libro.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return true si se canceló, false si no existía
+     */
+    public boolean cancelarReserva(String isbn, String identificacion) {
+        return biblioteca.cancelarReserva(isbn, identificacion);
+    }
+
+    /**
+     * Obtiene las reservas pendientes de un usuario.
+     * @param identificacion Identificación del usuario
+     * @return Lista de reservas
+     */
+    public List<Reserva> obtenerReservasUsuario(String identificacion) {
+        return biblioteca.reservasDeUsuario(identificacion);
+    }
+
+    /**
+     * Obtiene la posición de una reserva en la cola de su libro.
+     * @param reserva Reserva del usuario
+     * @return Posición desde 1, o -1 si ya no está pendiente
+     */
+    public int posicionReserva(Reserva reserva) {
+        return biblioteca.posicionReserva(reserva);
+    }
+
+    /**
+     * Muestra las reservas pendientes de un usuario con su lugar en la cola.
+     * @param identificacion Identificación del usuario
+     * @return Cadena formateada con las reservas del usuario
+     */
+    public String mostrarReservasUsuario(String identificacion) {
+        List<Reserva> reservas = biblioteca.reservasDeUsuario(identificacion);
+        if (reservas.isEmpty()) {
+            return "No tiene reservas pendientes.";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nReservas pendientes:\n");
+        for (Reserva reserva : reservas) {
+            sb.append("----------------------------------------\n");
+            sb.append("Título: ").append(reserva.getLibro().getTitulo()).append("\n");
+            sb.append("ISBN: ").append(reserva.getLibro().getIsbn()).append("\n");
+            sb.append("Reservado el: ").append(reserva.getFecha()).append("\n");
+            sb.append("Lugar en la cola: ").append(biblioteca.posicionReserva(reserva)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Consulta la multa acumulada de un usuario.
+     * @param identificacion Identificación del usuario
+     * @return Monto de la multa acumulada
+     */
+    public double consultarMultaUsuario(String identificacion) {
+        Usuario usuario = buscarUsuarioPorId(identificacion);
+        return usuario != null ? usuario.getMultaAcumulada() : 0.0;
+    }
+
+    /**
+     * Registra el pago de una multa por parte de un usuario.
+     * @param identificacion Identificación del usuario
+     * @param monto Monto a pagar
+     * @return true si el pago fue registrado, false en caso contrario
+     */
+    public boolean pagarMulta(String identificacion, double monto) {
+        return biblioteca.pagarMulta(identificacion, monto);
+    }
+
+    /**
+     * Verifica si un usuario tiene permisos de administrador.
+     * @param idUsuario Identificación del usuario a verificar
+     * @return true si el usuario es administrador, false en caso contrario
+     */
+    public boolean verificarPermisosAdmin(String idUsuario) {
+        Usuario usuario = biblioteca.buscarUsuarioPorId(idUsuario);
+        return usuario != null && usuario.esAdmin();
+    }
+
+    // Métodos auxiliares
+
+    /**
+     * Formatea una lista de libros para su visualización.
+     * @param libros Lista de libros a formatear
+     * @return Cadena formateada con la información de los libros
+     */
+    private String formatearListaLibros(ArrayList<Libro> libros) {
+        StringWriter salida = new StringWriter();
+        try {
+            formatearListaLibros(libros, salida);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no falla
+        }
+        return salida.toString();
+    }
+
+    /**
+     * Escribe una lista de libros con el formato de formatearListaLibros(ArrayList),
+     * libro por libro. La salida no se cierra.
+     * @param libros Lista de libros a formatear
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void formatearListaLibros(List<Libro> libros, Writer salida) throws IOException {
+        if (libros == null || libros.isEmpty()) {
+            salida.write("No se encontraron libros.");
+            salida.flush();
+            return;
+        }
+        
+        Writer sb = conBuffer(salida);
+        sb.append("\nLibros encontrados (").append(String.valueOf(libros.size())).append("):\n");
+        sb.flush();
+        for (Libro libro : libros) {
+            sb.append("----------------------------------------\n");
+            sb.append("Título: ").append(libro.getTitulo()).append("\n");
+            sb.append("Autor: ").append(libro.getAutor()).append("\n");
+            sb.append("Año: ").append(String.valueOf(libro.getAñoPublicacion())).append("\n");
+            sb.append("ISBN: ").append(libro.getIsbn()).append("\n");
+            sb.append("Disponibles: ").append(String.valueOf(libro.getEjemplaresDisponibles())).append("\n");
+        }
+        sb.append("----------------------------------------\n");
+        sb.flush();
+    }
+
+    /**
+     * Formatea préstamos del historial para su visualización.
+     * @param archivados Préstamos devueltos
+     * @return Cadena formateada con la información de los préstamos
+     */
+    private String formatearHistorial(ArrayList<PrestamoArchivado> archivados) {
+        if (archivados.isEmpty()) {
+            return "No hay préstamos en el historial.";
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nHistorial de préstamos (").append(archivados.size()).append("):\n");
+        for (PrestamoArchivado archivado : archivados) {
+            sb.append("----------------------------------------\n");
+            sb.append("ISBN: ").append(archivado.getIsbn()).append("\n");
+            sb.append("Usuario: ").append(archivado.getIdentificacionUsuario()).append("\n");
+            sb.append("Fecha préstamo: ").append(archivado.getFechaPrestamo()).append("\n");
+            sb.append("Fecha devolución: ").append(archivado.getFechaEntrega()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escribe una lista de préstamos con el formato de mostrarPrestamosActivos,
+     * préstamo por préstamo. La salida no se cierra.
+     * @param prestamos Lista de préstamos a formatear
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void formatearListaPrestamos(List<Prestamo> prestamos, Writer salida) throws IOException {
+        if (prestamos == null || prestamos.isEmpty()) {
+            salida.write("No hay préstamos activos.");
+            salida.flush();
+            return;
+        }
+        
+        Writer sb = conBuffer(salida);
+        sb.append("\nPréstamos activos:\n");
+        sb.flush();
+        escribirPrestamos(prestamos, sb);
+        sb.flush();
+    }
+
+    /**
+     * Escribe los datos de cada préstamo activo.
+     * @param prestamos Préstamos activos
+     * @param sb Salida con búfer
+     * @throws IOException Si falla la escritura
+     */
+    private static void escribirPrestamos(List<Prestamo> prestamos, Writer sb) throws IOException {
+        for (Prestamo prestamo : prestamos) {
+            sb.append("----------------------------------------\n");
+            sb.append("Usuario: ").append(prestamo.getUsuario().getNombre()).append("\n");
+            sb.append("Libro: ").append(prestamo.getLibro().getTitulo()).append("\n");
+            sb.append("ISBN: ").append(prestamo.getLibro().getIsbn()).append("\n");
+            sb.append("Fecha préstamo: ").append(String.valueOf(prestamo.getFechaPrestamo())).append("\n");
+            sb.append("Fecha devolución: ").append(String.valueOf(prestamo.getFechaDevolucion())).append("\n");
+        }
+    }
+
+    /**
+     * Escribe una página de préstamos vencidos a hoy con el formato de
+     * mostrarPrestamosVencidos. La salida no se cierra.
+     * @param vencidos Préstamos vencidos de la página
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void formatearListaVencidos(List<Prestamo> vencidos, Writer salida) throws IOException {
+        if (vencidos == null || vencidos.isEmpty()) {
+            salida.write("No hay préstamos vencidos.");
+            salida.flush();
+            return;
+        }
+        
+        Writer sb = conBuffer(salida);
+        sb.append("\nPréstamos vencidos:\n");
+        escribirVencidos(vencidos, LocalDate.now(), sb);
+        sb.flush();
+    }
+
+    /**
+     * Escribe los datos y los días de retraso de cada préstamo vencido.
+     * @param vencidos Préstamos vencidos
+     * @param hoy Fecha con la que se cuentan los días de retraso
+     * @param sb Salida con búfer
+     * @throws IOException Si falla la escritura
+     */
+    private static void escribirVencidos(List<Prestamo> vencidos, LocalDate hoy, Writer sb) throws IOException {
+        for (Prestamo prestamo : vencidos) {
+            sb.append("----------------------------------------\n");
+            sb.append("Usuario: ").append(prestamo.getUsuario().getNombre()).append("\n");
+            sb.append("Libro: ").append(prestamo.getLibro().getTitulo()).append("\n");
+            sb.append("ISBN: ").append(prestamo.getLibro().getIsbn()).append("\n");
+            sb.append("Fecha devolución: ").append(String.valueOf(prestamo.getFechaDevolucion())).append("\n");
+            sb.append("Días de retraso: ")
+                    .append(String.valueOf(ChronoUnit.DAYS.between(prestamo.getFechaDevolucion(), hoy))).append("\n");
+        }
+    }
+
+    /**
+     * Pone un búfer de tamaño fijo delante de una salida, salvo que escriba en memoria.
+     * @param salida Salida del listado
+     * @return Salida con búfer
+     */
+    private static Writer conBuffer(Writer salida) {
+        return salida instanceof StringWriter || salida instanceof BufferedWriter
+                ? salida : new BufferedWriter(salida, TAMAÑO_BUFFER_LISTADOS);
+    }
 }
\ No newline at end of file
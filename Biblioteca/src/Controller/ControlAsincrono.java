@@ -0,0 +1,267 @@
+package Controller;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import Model.Libro;
+import Model.Pagina;
+import Model.Prestamo;
+import Model.Usuario;
+
+/**
+ * Fachada asíncrona del controlador: cada operación se ejecuta en un ejecutor y
+ * devuelve un CompletableFuture, así quien la usa puede lanzar varias consultas a la
+ * vez y combinar sus resultados sin esperar cada una.
+ * <p>
+ * Las lecturas de la biblioteca comparten el cerrojo de lectura, de modo que las
+ * consultas independientes corren en paralelo. Las comprobaciones que dependen de varios
+ * datos (como puedePrestar) se delegan en la biblioteca, que los lee juntos con sus
+ * cerrojos. Si una operación lanza una excepción, el futuro termina con ella.
+ * </p>
+ */
+public class ControlAsincrono {
+    private final Control control;
+    private final Executor ejecutor;
+    private final ExecutorService propio; // Ejecutor creado por la fachada, que ella misma cierra
+
+    /**
+     * Constructor que usa un hilo virtual por operación si la JVM los tiene, o un grupo
+     * fijo de hilos si no.
+     * @param control Controlador cuyas operaciones se ejecutan
+     */
+    public ControlAsincrono(Control control) {
+        this.control = control;
+        this.propio = crearHilos("control-asincrono");
+        this.ejecutor = propio;
+    }
+
+    /**
+     * Constructor que ejecuta las operaciones en un ejecutor dado.
+     * El ejecutor no se cierra con la fachada.
+     * @param control Controlador cuyas operaciones se ejecutan
+     * @param ejecutor Ejecutor de las operaciones
+     */
+    public ControlAsincrono(Control control, Executor ejecutor) {
+        this.control = control;
+        this.ejecutor = ejecutor;
+        this.propio = null;
+    }
+
+    /**
+     * Crea un ejecutor con un hilo virtual por tarea si la JVM los tiene (Java 21 o
+     * posterior), o un grupo fijo de hilos de plataforma que no impiden terminar la JVM.
+     * @param nombre Nombre de los hilos de plataforma
+     * @return Ejecutor de tareas
+     */
+    public static ExecutorService crearHilos(String nombre) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Las operaciones con diario esperan la escritura en disco: sobran hilos para agruparlas
+            int cantidad = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+            return Executors.newFixedThreadPool(cantidad, tarea -> {
+                Thread hilo = new Thread(tarea, nombre);
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    /**
+     * Ejecuta cualquier operación del controlador en el ejecutor de la fachada.
+     * @param <T> Tipo del resultado
+     * @param operacion Operación que usa el controlador
+     * @return Futuro con el resultado de la operación
+     */
+    public <T> CompletableFuture<T> ejecutar(Supplier<T> operacion) {
+        return CompletableFuture.supplyAsync(operacion, ejecutor);
+    }
+
+    /**
+     * Obtiene el controlador que usa la fachada, para las operaciones síncronas.
+     * @return Controlador
+     */
+    public Control getControl() {
+        return control;
+    }
+
+    // Consultas
+
+    /**
+     * Busca un libro por su ISBN.
+     * @param isbn ISBN del libro
+     * @return Futuro con el libro, o con null si no existe
+     */
+    public CompletableFuture<Libro> buscarLibroPorIsbn(String isbn) {
+        return ejecutar(() -> control.buscarLibroPorIsbn(isbn));
+    }
+
+    /**
+     * Busca un usuario por su identificación.
+     * @param identificacion Identificación del usuario
+     * @return Futuro con el usuario, o con null si no existe
+     */
+    public CompletableFuture<Usuario> buscarUsuarioPorId(String identificacion) {
+        return ejecutar(() -> control.buscarUsuarioPorId(identificacion));
+    }
+
+    /**
+     * Verifica la disponibilidad de un libro.
+     * @param isbn ISBN del libro
+     * @return Futuro con el mensaje de disponibilidad
+     */
+    public CompletableFuture<String> verificarDisponibilidad(String isbn) {
+        return ejecutar(() -> control.verificarDisponibilidad(isbn));
+    }
+
+    /**
+     * Consulta la multa acumulada de un usuario.
+     * @param identificacion Identificación del usuario
+     * @return Futuro con la multa
+     */
+    public CompletableFuture<Double> consultarMultaUsuario(String identificacion) {
+        return ejecutar(() -> control.consultarMultaUsuario(identificacion));
+    }
+
+    /**
+     * Calcula la multa por retraso en la devolución de un libro.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return Futuro con la multa
+     */
+    public CompletableFuture<Double> calcularMulta(String isbn, String identificacion) {
+        return ejecutar(() -> control.calcularMulta(isbn, identificacion));
+    }
+
+    /**
+     * Obtiene una página de libros cuyo título coincide con la búsqueda.
+     * @param titulo Título a buscar (coincidencia exacta, insensible a mayúsculas y acentos)
+     * @param cursor Cursor de la página, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Futuro con la página, o con null si el cursor no es válido
+     */
+    public CompletableFuture<Pagina<Libro>> buscarLibrosPorTitulo(String titulo, String cursor, int tamañoPagina) {
+        return ejecutar(() -> control.buscarLibrosPorTitulo(titulo, cursor, tamañoPagina));
+    }
+
+    /**
+     * Obtiene una página de libros de un autor.
+     * @param autor Autor o parte del nombre a buscar
+     * @param cursor Cursor de la página, o null para la primera
+     * @param tamañoPagina Cantidad de libros por página
+     * @return Futuro con la página, o con null si el cursor no es válido
+     */
+    public CompletableFuture<Pagina<Libro>> buscarLibrosPorAutor(String autor, String cursor, int tamañoPagina) {
+        return ejecutar(() -> control.buscarLibrosPorAutor(autor, cursor, tamañoPagina));
+    }
+
+    /**
+     * Obtiene una página de los préstamos activos de un usuario.
+     * @param identificacion Identificación del usuario
+     * @param cursor Cursor de la página, o null para la primera
+     * @param tamañoPagina Cantidad de préstamos por página
+     * @return Futuro con la página, o con null si el cursor o el usuario no son válidos
+     */
+    public CompletableFuture<Pagina<Prestamo>> obtenerPrestamosUsuario(String identificacion, String cursor, int tamañoPagina) {
+        return ejecutar(() -> control.obtenerPrestamosUsuario(identificacion, cursor, tamañoPagina));
+    }
+
+    /**
+     * Obtiene el historial de préstamos de un libro.
+     * @param isbn ISBN del libro
+     * @param meses Cantidad de meses hacia atrás
+     * @return Futuro con el historial formateado
+     */
+    public CompletableFuture<String> historialDeLibro(String isbn, int meses) {
+        return ejecutar(() -> control.historialDeLibro(isbn, meses));
+    }
+
+    /**
+     * Obtiene el historial de préstamos de un usuario.
+     * @param identificacion Identificación del usuario
+     * @param meses Cantidad de meses hacia atrás
+     * @return Futuro con el historial formateado
+     */
+    public CompletableFuture<String> historialDeUsuario(String identificacion, int meses) {
+        return ejecutar(() -> control.historialDeUsuario(identificacion, meses));
+    }
+
+    /**
+     * Comprueba si un libro podría prestarse a un usuario, con la misma comprobación que
+     * hace la biblioteca al prestar: disponibilidad, reservas de otros, multa y límite de
+     * préstamos, leídos con la franja del usuario. Es una consulta: el préstamo puede
+     * rechazarse igual si otro lo toma antes.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return Futuro con true si el libro está disponible y el usuario puede pedirlo
+     */
+    public CompletableFuture<Boolean> puedePrestar(String isbn, String identificacion) {
+        return ejecutar(() -> control.puedePrestar(isbn, identificacion));
+    }
+
+    // Operaciones
+
+    /**
+     * Realiza el préstamo de un libro a un usuario.
+     * @param isbn ISBN del libro a prestar
+     * @param identificacion Identificación del usuario
+     * @return Futuro con true si el préstamo fue exitoso
+     */
+    public CompletableFuture<Boolean> prestarLibro(String isbn, String identificacion) {
+        return ejecutar(() -> control.prestarLibro(isbn, identificacion));
+    }
+
+    /**
+     * Registra la devolución de un libro prestado.
+     * @param isbn ISBN del libro a devolver
+     * @param identificacion Identificación del usuario
+     * @return Futuro con true si la devolución fue exitosa
+     */
+    public CompletableFuture<Boolean> devolverLibro(String isbn, String identificacion) {
+        return ejecutar(() -> control.devolverLibro(isbn, identificacion));
+    }
+
+    /**
+     * Presta varios libros a un usuario de una sola vez.
+     * @param isbns ISBN de los libros a prestar
+     * @param identificacion Identificación del usuario
+     * @param todosONinguno true para prestar todos los libros o ninguno
+     * @return Futuro con el resultado de cada ISBN
+     */
+    public CompletableFuture<boolean[]> prestarLibros(List<String> isbns, String identificacion, boolean todosONinguno) {
+        return ejecutar(() -> control.prestarLibros(isbns, identificacion, todosONinguno));
+    }
+
+    /**
+     * Registra la devolución de varios libros de un usuario de una sola vez.
+     * @param isbns ISBN de los libros a devolver
+     * @param identificacion Identificación del usuario
+     * @return Futuro con el resultado de cada ISBN
+     */
+    public CompletableFuture<boolean[]> devolverLibros(List<String> isbns, String identificacion) {
+        return ejecutar(() -> control.devolverLibros(isbns, identificacion));
+    }
+
+    /**
+     * Registra el pago de una multa.
+     * @param identificacion Identificación del usuario
+     * @param monto Monto pagado
+     * @return Futuro con true si el pago se registró
+     */
+    public CompletableFuture<Boolean> pagarMulta(String identificacion, double monto) {
+        return ejecutar(() -> control.pagarMulta(identificacion, monto));
+    }
+
+    /**
+     * Cierra el ejecutor creado por la fachada, después de terminar las operaciones ya
+     * enviadas. Un ejecutor recibido en el constructor queda abierto.
+     */
+    public void cerrar() {
+        if (propio != null) {
+            propio.shutdown();
+        }
+    }
+}
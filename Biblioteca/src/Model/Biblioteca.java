@@ -1,476 +1,3041 @@
-package Model;
-
-import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-
-/**
- * Clase que representa el sistema de gestión de una biblioteca.
- * Permite administrar libros, usuarios y préstamos.
- */
-public class Biblioteca {
-    private ArrayList<Libro> libros;
-    private ArrayList<Usuario> usuarios;
-    private ArrayList<Prestamo> prestamos;
-
-    /**
-     * Constructor que inicializa las listas de libros, usuarios y préstamos,
-     * y carga datos iniciales en el sistema.
-     */
-    public Biblioteca() {
-        this.libros = new ArrayList<Libro>();
-        this.usuarios = new ArrayList<Usuario>();
-        this.prestamos = new ArrayList<Prestamo>();
-        inicializarDatos();
-    }
-
-    /**
-     * Método privado para inicializar datos de prueba en el sistema.
-     * Agrega libros y un usuario administrador por defecto.
-     */
-    private void inicializarDatos() {
-        agregarLibro(new Libro("El Aleph", "Jorge Luis Borges", 1949, "978-950-04-0406-9", 3));
-        agregarLibro(new Libro("Cien Años de Soledad", "Gabriel García Márquez", 1967, "978-84-376-0494-7", 5));
-        agregarLibro(new Libro("1984", "George Orwell", 1949, "978-0451524935", 3));
-        agregarLibro(new Libro("El Principito", "Antoine de Saint-Exupéry", 1943, "978-0156012195", 4));
-        agregarLibro(new Libro("Don Quijote de la Mancha", "Miguel de Cervantes", 1605, "978-8491050767", 2));
-        agregarLibro(new Libro("Crimen y Castigo", "Fiódor Dostoyevski", 1866, "978-0140449136", 3));
-        
-        registrarUsuario(new Usuario("Admin", "123", "Administrador"));
-    }
-
-    // Getters y setters con validación
-    
-    /**
-     * Obtiene una copia de la lista de libros.
-     * @return ArrayList con todos los libros del sistema
-     */
-    public ArrayList<Libro> getLibros() {
-        return new ArrayList<Libro>(libros); // Devuelve copia para evitar modificaciones externas
-    }
-
-    /**
-     * Establece la lista de libros.
-     * @param libros Lista de libros a establecer (no nula)
-     */
-    public void setLibros(ArrayList<Libro> libros) {
-        if (libros != null) {
-            this.libros = new ArrayList<Libro>(libros);
-        }
-    }
-
-    /**
-     * Obtiene una copia de la lista de usuarios.
-     * @return ArrayList con todos los usuarios del sistema
-     */
-    public ArrayList<Usuario> getUsuarios() {
-        return new ArrayList<Usuario>(usuarios);
-    }
-
-    /**
-     * Establece la lista de usuarios.
-     * @param usuarios Lista de usuarios a establecer (no nula)
-     */
-    public void setUsuarios(ArrayList<Usuario> usuarios) {
-        if (usuarios != null) {
-            this.usuarios = new ArrayList<Usuario>(usuarios);
-        }
-    }
-
-    /**
-     * Obtiene una copia de la lista de préstamos.
-     * @return ArrayList con todos los préstamos activos
-     */
-    public ArrayList<Prestamo> getPrestamos() {
-        return new ArrayList<Prestamo>(prestamos);
-    }
-
-    /**
-     * Establece la lista de préstamos.
-     * @param prestamos Lista de préstamos a establecer (no nula)
-     */
-    public void setPrestamos(ArrayList<Prestamo> prestamos) {
-        if (prestamos != null) {
-            this.prestamos = new ArrayList<Prestamo>(prestamos);
-        }
-    }
-
-    // Métodos para usuarios
-    
-    /**
-     * Registra un nuevo usuario en el sistema.
-     * @param usuario Usuario a registrar
-     * @return true si se registró correctamente, false si el usuario es nulo, ya existe o tiene tipo inválido
-     */
-    public boolean registrarUsuario(Usuario usuario) {
-        if (usuario == null || existeUsuario(usuario.getIdentificacion())) {
-            return false;
-        }
-        if(usuario.getTipoUsuario() == null || usuario.getTipoUsuario().isEmpty()) {
-            return false; 
-        }
-        if (!usuario.getTipoUsuario().equalsIgnoreCase("estudiante") &&
-        !usuario.getTipoUsuario().equalsIgnoreCase("profesor") &&
-        !usuario.getTipoUsuario().equalsIgnoreCase("ciudadano") &&
-        !usuario.getTipoUsuario().equalsIgnoreCase("administrador")) {
-        return false;
-        }
-        usuarios.add(usuario);
-        return true;
-    }
-
-    /**
-     * Elimina un usuario por su identificación.
-     * @param identificacion Identificación del usuario a eliminar
-     * @return true si se eliminó correctamente, false si no se encontró el usuario
-     */
-    public boolean eliminarUsuarioPorId(String identificacion) {
-        Usuario usuario = buscarUsuarioPorId(identificacion);
-        if (usuario != null) {
-            return usuarios.remove(usuario);
-        }
-        return false;
-    }
-
-    /**
-     * Actualiza el tipo de un usuario existente.
-     * @param identificacion Identificación del usuario a actualizar
-     * @param nuevoTipo Nuevo tipo de usuario
-     * @return true si se actualizó correctamente, false si no se encontró el usuario
-     */
-    public boolean actualizarTipoDeUsuario(String identificacion, String nuevoTipo) {
-        Usuario usuario = buscarUsuarioPorId(identificacion);
-        if (usuario != null) {
-            usuario.setTipoUsuario(nuevoTipo);
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Busca un usuario por su identificación.
-     * @param identificacion Identificación del usuario a buscar
-     * @return Usuario encontrado o null si no existe
-     */
-    public Usuario buscarUsuarioPorId(String identificacion) {
-        for (Usuario usuario : usuarios) {
-            if (usuario.getIdentificacion().equals(identificacion)) {
-                return usuario;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Verifica si un usuario ya está registrado.
-     * @param identificacion Identificación del usuario a verificar
-     * @return true si el usuario existe, false en caso contrario
-     */
-    private boolean existeUsuario(String identificacion) {
-        return usuarios.stream()
-            .anyMatch(u -> u.getIdentificacion().equals(identificacion));
-    }
-
-    // Métodos para libros
-    
-    /**
-     * Agrega un nuevo libro al sistema.
-     * @param libro Libro a agregar
-     * @return true si se agregó correctamente, false si el libro es nulo, ya existe o tiene año inválido
-     */
-    public boolean agregarLibro(Libro libro) {
-        if (libro == null || existeLibro(libro.getIsbn())) {
-            return false;
-        }
-        
-        // Validar que el año no sea futuro
-        if (libro.getAñoPublicacion() > LocalDate.now().getYear()) {
-            return false;
-        }
-        
-        libros.add(libro);
-        return true;
-    }
-
-    /**
-     * Elimina un libro por su ISBN.
-     * @param isbn ISBN del libro a eliminar
-     * @return true si se eliminó correctamente, false si no se encontró el libro
-     */
-    public boolean eliminarLibroPorIsbn(String isbn) {
-        Libro libro = buscarLibroPorIsbn(isbn);
-        if (libro != null) {
-            return libros.remove(libro);
-        }
-        return false;
-    }
-
-    /**
-     * Actualiza la información de un libro existente.
-     * @param isbn ISBN del libro a actualizar
-     * @param nuevoTitulo Nuevo título (opcional, puede ser null)
-     * @param nuevoAutor Nuevo autor (opcional, puede ser null)
-     * @param nuevoAñoPublicacion Nuevo año de publicación (opcional, debe ser > 0)
-     * @param nuevosEjemplares Nuevo número de ejemplares (debe ser >= 0)
-     * @return true si se actualizó correctamente, false si no se encontró el libro
-     */
-    public boolean actualizarLibro(String isbn, String nuevoTitulo, String nuevoAutor, int nuevoAñoPublicacion, int nuevosEjemplares) {
-        Libro libro = buscarLibroPorIsbn(isbn);
-        if (libro != null) {
-            if (nuevoTitulo != null && !nuevoTitulo.isEmpty()) {
-                libro.setTitulo(nuevoTitulo);
-            }
-            if (nuevoAutor != null && !nuevoAutor.isEmpty()) {
-                libro.setAutor(nuevoAutor);
-            }
-            if (nuevoAñoPublicacion > 0) {
-                libro.setAñoPublicacion(nuevoAñoPublicacion);
-            }
-            if (nuevosEjemplares >= 0) {
-                libro.setEjemplaresDisponibles(nuevosEjemplares);
-            }
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Genera una representación en cadena de todos los libros del sistema.
-     * @return Cadena formateada con la información de todos los libros
-     */
-    public String mostrarLibros() {
-        if (libros.isEmpty()) {
-            return "No hay libros registrados en el sistema.";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n LISTA COMPLETA DE LIBROS (").append(libros.size()).append("):\n");
-        for (Libro libro : libros) {
-            sb.append("----------------------------------------\n");
-            sb.append("Título: ").append(libro.getTitulo()).append("\n");
-            sb.append("Autor: ").append(libro.getAutor()).append("\n");
-            sb.append("Año: ").append(libro.getAñoPublicacion()).append("\n");
-            sb.append("ISBN: ").append(libro.getIsbn()).append("\n");
-            sb.append("Disponibles: ").append(libro.getEjemplaresDisponibles()).append("\n");
-        }
-        sb.append("----------------------------------------\n");
-        return sb.toString();
-    }
-
-    /**
-     * Busca un libro por su ISBN.
-     * @param isbn ISBN del libro a buscar
-     * @return Libro encontrado o null si no existe
-     */
-    public Libro buscarLibroPorIsbn(String isbn) {
-        for (Libro libro : libros) {
-            if (libro.getIsbn().equals(isbn)) {
-                return libro;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Busca libros por título (coincidencia exacta, insensible a mayúsculas).
-     * @param titulo Título a buscar
-     * @return Lista de libros que coinciden con el título
-     */
-    public ArrayList<Libro> buscarLibrosPorTitulo(String titulo) {
-        ArrayList<Libro> resultados = new ArrayList<>();
-        for (Libro libro : libros) {
-            if (libro.getTitulo().equalsIgnoreCase(titulo)) {
-                resultados.add(libro);
-            }
-        }
-        return resultados;
-    }
-
-    /**
-     * Busca libros por autor (coincidencia parcial, insensible a mayúsculas y acentos).
-     * @param autor Autor a buscar
-     * @return Lista de libros cuyo autor coincide con el parámetro
-     */
-    public ArrayList<Libro> buscarLibrosPorAutor(String autor) {
-        ArrayList<Libro> resultados = new ArrayList<>();
-        String autorBusqueda = normalizarTexto(autor); // Normaliza el texto de búsqueda
-        
-        for (Libro libro : libros) {
-            String autorLibro = normalizarTexto(libro.getAutor());
-            if (autorLibro.contains(autorBusqueda)) {
-                resultados.add(libro);
-            }
-        }
-        return resultados;
-    }
-    
-    /**
-     * Normaliza texto para búsquedas (quita acentos y convierte a minúsculas).
-     * @param texto Texto a normalizar
-     * @return Texto normalizado
-     */
-    private String normalizarTexto(String texto) {
-        return texto.toLowerCase()
-                   .replace("á", "a")
-                   .replace("é", "e")
-                   .replace("í", "i")
-                   .replace("ó", "o")
-                   .replace("ú", "u");
-    }
-
-    /**
-     * Verifica si un libro ya está registrado.
-     * @param isbn ISBN del libro a verificar
-     * @return true si el libro existe, false en caso contrario
-     */
-    private boolean existeLibro(String isbn) {
-        return buscarLibroPorIsbn(isbn) != null;
-    } 
-
-    /**
-     * Verifica si un usuario puede pedir más libros prestados (límite de 3).
-     * @param identificacion Identificación del usuario
-     * @return true si puede pedir más libros, false si ya alcanzó el límite
-     */
-    public boolean puedePrestarMasLibros(String identificacion) {
-        int contador = 0;
-        for (Prestamo prestamo : prestamos) {
-            if (prestamo.getUsuario().getIdentificacion().equals(identificacion)) {
-                contador++;
-                if (contador >= 3) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-    // Métodos para préstamos
-    
-    /**
-     * Realiza el préstamo de un libro a un usuario.
-     * @param isbn ISBN del libro a prestar
-     * @param identificacion Identificación del usuario
-     * @param fechaPrestamo Fecha en que se realiza el préstamo
-     * @param fechaDevolucion Fecha límite para devolución
-     * @return true si el préstamo se realizó correctamente, false en caso contrario
-     */
-    public boolean prestarLibro(String isbn, String identificacion, 
-            LocalDate fechaPrestamo, LocalDate fechaDevolucion) {
-        Libro libro = buscarLibroPorIsbn(isbn);
-        Usuario usuario = buscarUsuarioPorId(identificacion);
-
-        if (libro == null || usuario == null) {
-            return false;
-        }
-
-        if (!puedePrestarMasLibros(identificacion)) {
-            return false;
-        }
-
-        if (usuario.getMultaAcumulada() > 0) {
-            return false;
-        }
-
-        if (libro.getEjemplaresDisponibles() > 0) {
-            Prestamo prestamo = new Prestamo(usuario, libro, fechaPrestamo, fechaDevolucion);
-            prestamos.add(prestamo);
-            libro.prestar();
-            return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * Registra la devolución de un libro prestado.
-     * @param isbn ISBN del libro a devolver
-     * @param identificacion Identificación del usuario
-     * @param fechaDevolucion Fecha real de devolución
-     * @return true si la devolución se registró correctamente, false en caso contrario
-     */
-    public boolean devolverLibro(String isbn, String identificacion, LocalDate fechaDevolucion) {
-        Prestamo prestamo = buscarPrestamoActivo(isbn, identificacion);
-        if (prestamo != null) {
-            prestamos.remove(prestamo);
-            prestamo.getLibro().devolver();
-            
-            if (fechaDevolucion.isAfter(prestamo.getFechaDevolucion())) {
-                long diasRetraso = ChronoUnit.DAYS.between(
-                    prestamo.getFechaDevolucion(), 
-                    fechaDevolucion
-                );
-                double multa = diasRetraso * 1000;
-                prestamo.getUsuario().agregarMulta(multa);
-            }
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Busca un préstamo activo por ISBN e identificación de usuario.
-     * @param isbn ISBN del libro prestado
-     * @param identificacion Identificación del usuario
-     * @return Préstamo activo o null si no se encuentra
-     */
-    public Prestamo buscarPrestamoActivo(String isbn, String identificacion) {
-        for (Prestamo prestamo : prestamos) {
-            if (prestamo.getLibro().getIsbn().equals(isbn) && 
-                prestamo.getUsuario().getIdentificacion().equals(identificacion)) {
-                return prestamo;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Obtiene la lista de libros prestados a un usuario.
-     * @param identificacion Identificación del usuario
-     * @return Lista de libros prestados al usuario
-     */
-    public ArrayList<Libro> obtenerLibrosPrestadosPorUsuario(String identificacion) {
-        ArrayList<Libro> librosPrestados = new ArrayList<>();
-        for (Prestamo prestamo : prestamos) {
-            if (prestamo.getUsuario().getIdentificacion().equals(identificacion)) {
-                librosPrestados.add(prestamo.getLibro());
-            }
-        }
-        return librosPrestados;
-    }
-
-    /**
-     * Calcula la multa por retraso en la devolución de un libro.
-     * @param isbn ISBN del libro
-     * @param identificacion Identificación del usuario
-     * @param fechaDevolucionReal Fecha real de devolución
-     * @return Monto de la multa (0 si no hay retraso)
-     */
-    public double calcularMulta(String isbn, String identificacion, LocalDate fechaDevolucionReal) {
-        Prestamo prestamo = buscarPrestamoActivo(isbn, identificacion);
-        if (prestamo == null) {
-            return 0.0;
-        }
-        
-        if (fechaDevolucionReal.isAfter(prestamo.getFechaDevolucion())) {
-            long diasRetraso = ChronoUnit.DAYS.between(prestamo.getFechaDevolucion(), fechaDevolucionReal);
-            return diasRetraso * 1000; // $1000 por día de retraso
-        }
-        return 0.0;
-    }
-
-    /**
-     * Registra una multa a un usuario.
-     * @param identificacion Identificación del usuario
-     * @param monto Monto de la multa
-     * @return true si se registró correctamente, false si no se encontró el usuario
-     */
-    public boolean registrarMulta(String identificacion, double monto) {
-        Usuario usuario = buscarUsuarioPorId(identificacion);
-        if (usuario != null) {
-            usuario.agregarMulta(monto);
-            return true;
-        }
-        return false;
-    }
+package Model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Clase que representa el sistema de gestión de una biblioteca.
+ * Permite administrar libros, usuarios y préstamos.
+ * <p>
+ * Es segura para usarse desde varios hilos. Las consultas, préstamos y devoluciones
+ * comparten el cerrojo de estructura en modo lectura; los cambios en el catálogo o en
+ * los usuarios lo toman en modo escritura. Dentro del modo lectura, préstamos y
+ * devoluciones solo bloquean la franja del usuario afectado y reservan o liberan el
+ * ejemplar con compare-and-set sobre el libro, así que ni los préstamos simultáneos de
+ * un mismo libro muy solicitado se esperan entre sí.
+ * </p>
+ * <p>
+ * Si se crea con un archivo de diario, cada modificación se agrega al diario mientras
+ * se tienen los cerrojos que la ordenan, y se espera su confirmación después de
+ * soltarlos; así varias operaciones simultáneas se confirman con una sola escritura.
+ * Al abrir la biblioteca se reproduce el diario para recuperar el estado anterior.
+ * </p>
+ * <p>
+ * Junto al diario se guardan volcados binarios del catálogo. Al abrir, se mapea el más
+ * reciente y solo se reproduce la parte del diario posterior a él; los textos de los
+ * libros se leen del volcado cuando se piden, y los índices de búsqueda por texto se
+ * construyen en la primera búsqueda.
+ * </p>
+ * <p>
+ * Los datos se guardan en repositorios de libros, usuarios y préstamos. Por defecto
+ * viven en memoria; también pueden guardarse en una base de datos (RepositorioJdbc),
+ * o los libros fuera del heap (LibrosEnColumnas), en cuyo caso no se usan diario ni volcados.
+ * Con una base de datos, cada operación es una transacción que se abre antes de tomar
+ * el cerrojo de estructura y se confirma o se deshace después de soltarlo.
+ * </p>
+ * <p>
+ * Los préstamos devueltos pasan a un historial particionado por mes (HistorialPrestamos)
+ * que se consulta por usuario, por ISBN o por rango de fechas. Con diario, el historial
+ * se guarda en archivos junto a él; si no, vive en memoria.
+ * </p>
+ * <p>
+ * Las multas por retraso se suman una vez por día (acumularMultas) a los préstamos
+ * vencidos, que el repositorio de préstamos indexa por fecha límite. La devolución
+ * solo suma los días que aún no se habían acumulado, y prestarLibro sigue comprobando
+ * únicamente la multa acumulada del usuario.
+ * </p>
+ * <p>
+ * Un libro sin ejemplares disponibles puede reservarse: los usuarios esperan en una
+ * cola por libro (ColaReservas) y cada ejemplar devuelto se presta directamente al
+ * primero de la cola que pueda recibirlo, avisando con setAvisoReservas. Las reservas
+ * se guardan en el diario y en los volcados; con repositorios externos viven en memoria.
+ * </p>
+ * <p>
+ * Cada modificación se publica también en un flujo de cambios (FlujoCambios), en el
+ * mismo punto y con los mismos cerrojos que su registro en el diario. Los suscriptos
+ * (suscribirCambios) lo leen por lotes en sus propios hilos; sin suscriptos publicar
+ * no cuesta nada.
+ * </p>
+ */
+public class Biblioteca {
+    /** Cantidad máxima de libros que un usuario puede tener prestados a la vez. */
+    public static final int LIMITE_PRESTAMOS = 3;
+
+    /** Días que dura el préstamo de un libro asignado por reserva. */
+    public static final int DIAS_PRESTAMO_RESERVA = 30;
+
+    private static final double SIMILITUD_MINIMA = 0.3; // Para buscarLibrosSimilares
+    private static final int MAXIMO_SIMILARES = 1000; // Resultados que recorre paginaLibrosSimilares
+    private static final double MULTA_POR_DIA = 1000; // Multa por cada día de retraso
+    private static final int TAMAÑO_BUFFER_LISTADOS = 64 << 10; // Búfer de los listados que se escriben por partes
+    private static final int CAPACIDAD_CAMBIOS = 1 << 13; // Casillas del anillo del flujo de cambios
+
+    // Tipos de registro del diario
+    private static final byte DIARIO_USUARIO_REGISTRADO = 1;
+    private static final byte DIARIO_USUARIO_ELIMINADO = 2;
+    private static final byte DIARIO_USUARIO_ACTUALIZADO = 3;
+    private static final byte DIARIO_IDENTIFICACION_CAMBIADA = 4;
+    private static final byte DIARIO_LIBRO_AGREGADO = 5;
+    private static final byte DIARIO_LIBRO_ELIMINADO = 6;
+    private static final byte DIARIO_LIBRO_ACTUALIZADO = 7;
+    private static final byte DIARIO_ISBN_CAMBIADO = 8;
+    private static final byte DIARIO_PRESTAMO = 9;
+    private static final byte DIARIO_DEVOLUCION = 10;
+    private static final byte DIARIO_MULTA = 11;
+    private static final byte DIARIO_LIBROS_REEMPLAZADOS = 12;
+    private static final byte DIARIO_USUARIOS_REEMPLAZADOS = 13;
+    private static final byte DIARIO_PRESTAMOS_REEMPLAZADOS = 14;
+    private static final byte DIARIO_LIBROS_AGREGADOS = 15;
+    private static final byte DIARIO_MULTAS_ACUMULADAS = 16;
+    private static final byte DIARIO_PRESTAMOS_LOTE = 17;
+    private static final byte DIARIO_DEVOLUCIONES_LOTE = 18;
+    private static final byte DIARIO_RESERVA = 19;
+    private static final byte DIARIO_RESERVA_CANCELADA = 20;
+    private static final byte DIARIO_RESERVA_ASIGNADA = 21;
+
+    private static final ThreadLocal<Diario.Codificador> CODIFICADORES =
+            ThreadLocal.withInitial(Diario.Codificador::new);
+
+    private final RepositorioLibros libros;
+    private final RepositorioUsuarios usuarios;
+    private final RepositorioPrestamos prestamos;
+    private final HistorialPrestamos historial; // Préstamos devueltos
+    private LocalDate fechaMultas; // Última acumulación de multas (null si nunca); cambia con el cerrojo de escritura
+    private final ConcurrentHashMap<Integer, Vencidos> vencidos = new ConcurrentHashMap<>(); // Número de usuario -> vencidos antes de fechaMultas
+    private final ColaReservas reservas = new ColaReservas();
+    private volatile Consumer<Prestamo> avisoReservas; // Recibe los préstamos asignados por reserva
+    private volatile Consumer<Reserva> avisoCancelaciones; // Recibe las reservas canceladas por no poder recibir el libro
+    private final FlujoCambios cambios = new FlujoCambios(CAPACIDAD_CAMBIOS);
+
+    private final ReentrantReadWriteLock cerrojoEstructura = new ReentrantReadWriteLock();
+    private final CerrojoOperacion lectura = new CerrojoOperacion(cerrojoEstructura.readLock());
+    private final CerrojoOperacion escritura = new CerrojoOperacion(cerrojoEstructura.writeLock());
+    private Transacciones transacciones; // null si los repositorios no usan transacciones; se asigna al vincularlos
+    private final CerrojosRayados franjas = new CerrojosRayados(Runtime.getRuntime().availableProcessors() * 8);
+
+    private final Diario diario; // null si la biblioteca solo vive en memoria
+    private final Path archivoDiario; // null si la biblioteca solo vive en memoria
+    private final Object cerrojoVolcados = new Object(); // Ordena las escrituras de volcados y las tareas programadas
+    private long generacionVolcado; // Generación del último volcado escrito, o la más alta en disco al abrir
+    private ScheduledExecutorService volcadosProgramados;
+    private ScheduledExecutorService multasProgramadas;
+    private final ThreadLocal<long[]> secuenciaPendiente = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Cerrojo de estructura (de lectura o de escritura) que, si los repositorios usan
+     * transacciones, abre la de la operación antes de tomarlo y la termina después de
+     * soltarlo. Así la conexión a la base siempre se toma antes que los cerrojos de la
+     * biblioteca, y una operación se confirma o se deshace entera.
+     */
+    private final class CerrojoOperacion {
+        private final Lock cerrojo;
+
+        /**
+         * Constructor del cerrojo.
+         * @param cerrojo Modo del cerrojo de estructura que envuelve
+         */
+        CerrojoOperacion(Lock cerrojo) {
+            this.cerrojo = cerrojo;
+        }
+
+        /**
+         * Abre la transacción, si la hay, y toma el cerrojo.
+         */
+        void lock() {
+            Transacciones activas = transacciones;
+            if (activas != null) {
+                activas.iniciar();
+            }
+            cerrojo.lock();
+        }
+
+        /**
+         * Suelta el cerrojo y termina la transacción, si la hay.
+         */
+        void unlock() {
+            cerrojo.unlock();
+            Transacciones activas = transacciones;
+            if (activas != null) {
+                activas.terminar();
+            }
+        }
+    }
+
+    /**
+     * Constructor que inicializa las listas de libros, usuarios y préstamos,
+     * y carga datos iniciales en el sistema. Los datos solo viven en memoria.
+     */
+    public Biblioteca() {
+        this(new LibrosEnMemoria(), new UsuariosEnMemoria(), new PrestamosEnMemoria());
+    }
+
+    /**
+     * Constructor que guarda los libros en el repositorio dado, por ejemplo fuera del
+     * heap (ver LibrosEnColumnas), y los usuarios y préstamos en memoria. No usa diario.
+     * Si no hay libros, carga los datos iniciales.
+     * @param libros Repositorio de libros
+     */
+    public Biblioteca(RepositorioLibros libros) {
+        this(libros, new UsuariosEnMemoria(), new PrestamosEnMemoria());
+    }
+
+    /**
+     * Constructor que guarda libros, usuarios y préstamos en los repositorios dados,
+     * por ejemplo en una base de datos (ver RepositorioJdbc). No usa diario: cada
+     * repositorio se encarga de que sus datos persistan. El historial de préstamos
+     * devueltos solo vive en memoria; para conservarlo, usar el constructor que recibe
+     * su carpeta. Si no hay libros ni usuarios, carga los datos iniciales.
+     * @param libros Repositorio de libros
+     * @param usuarios Repositorio de usuarios
+     * @param prestamos Repositorio de préstamos activos
+     */
+    public Biblioteca(RepositorioLibros libros, RepositorioUsuarios usuarios, RepositorioPrestamos prestamos) {
+        this(libros, usuarios, prestamos, new HistorialPrestamos());
+    }
+
+    /**
+     * Constructor que guarda libros, usuarios y préstamos en los repositorios dados,
+     * por ejemplo en una base de datos (ver RepositorioJdbc), y el historial de
+     * préstamos devueltos en una carpeta, donde cada devolución se escribe al
+     * registrarla. No usa diario. Si no hay libros ni usuarios, carga los datos iniciales.
+     * @param libros Repositorio de libros
+     * @param usuarios Repositorio de usuarios
+     * @param prestamos Repositorio de préstamos activos
+     * @param carpetaHistorial Carpeta del historial (se crea si no existe)
+     * @throws IOException Si no se puede abrir el historial
+     */
+    public Biblioteca(RepositorioLibros libros, RepositorioUsuarios usuarios, RepositorioPrestamos prestamos,
+            Path carpetaHistorial) throws IOException {
+        this(libros, usuarios, prestamos, HistorialPrestamos.abrir(carpetaHistorial));
+    }
+
+    /**
+     * Constructor común de las bibliotecas sin diario.
+     * @param libros Repositorio de libros
+     * @param usuarios Repositorio de usuarios
+     * @param prestamos Repositorio de préstamos activos
+     * @param historial Historial de préstamos devueltos
+     */
+    private Biblioteca(RepositorioLibros libros, RepositorioUsuarios usuarios, RepositorioPrestamos prestamos,
+            HistorialPrestamos historial) {
+        this.libros = libros;
+        this.usuarios = usuarios;
+        this.prestamos = prestamos;
+        libros.vincular(this);
+        usuarios.vincular(this);
+        this.historial = historial;
+        this.diario = null;
+        this.archivoDiario = null;
+        this.fechaMultas = prestamos.getFechaMultas();
+        contarVencidos();
+        if (libros.cantidad() == 0 && usuarios.cantidad() == 0) {
+            inicializarDatos();
+        }
+    }
+
+    /**
+     * Constructor que guarda cada modificación en un diario en disco.
+     * Si hay un volcado del catálogo, lo carga y reproduce solo los registros posteriores;
+     * si no, reproduce el diario completo. Si no hay volcado y el diario está vacío
+     * (o no existe), carga los datos iniciales y los registra.
+     * @param archivoDiario Archivo del diario
+     * @param durabilidad Cuánto espera cada operación a que su registro esté a salvo
+     * @param latenciaMaximaMicros Tiempo máximo, en microsegundos, que se esperan otras
+     *        operaciones para confirmarlas juntas
+     * @throws IOException Si no se puede abrir o leer el diario
+     */
+    public Biblioteca(Path archivoDiario, Durabilidad durabilidad, long latenciaMaximaMicros) throws IOException {
+        this.libros = new LibrosEnMemoria();
+        this.usuarios = new UsuariosEnMemoria();
+        this.prestamos = new PrestamosEnMemoria();
+        libros.vincular(this);
+        usuarios.vincular(this);
+        this.archivoDiario = archivoDiario;
+        Diario abierto = new Diario(archivoDiario, durabilidad, latenciaMaximaMicros);
+        VolcadoCatalogo volcado;
+        HistorialPrestamos historialAbierto = null;
+        boolean vacio;
+        try {
+            volcado = VolcadoCatalogo.abrirMasReciente(archivoDiario, abierto.getIdentidad());
+            if (volcado != null && !HistorialPrestamos.tieneMarca(archivoDiario, volcado.getGeneracion())) {
+                volcado = null; // Sin la marca el historial no vale: se reconstruye reproduciendo todo el diario
+            }
+            generacionVolcado = VolcadoCatalogo.ultimaGeneracion(archivoDiario);
+            vacio = volcado == null && abierto.estaVacio();
+            historialAbierto = HistorialPrestamos.abrir(archivoDiario, volcado != null ? volcado.getGeneracion() : 0);
+            this.historial = historialAbierto;
+            long desde = 0;
+            if (volcado != null) {
+                cargarVolcado(volcado);
+                desde = volcado.getPosicionDiario();
+            }
+            abierto.reproducir(this::aplicarRegistro, desde);
+        } catch (IOException | RuntimeException e) {
+            abierto.close();
+            if (historialAbierto != null) {
+                historialAbierto.close();
+            }
+            throw e;
+        }
+        abierto.iniciar();
+        this.diario = abierto;
+        if (vacio) {
+            inicializarDatos();
+        }
+        if (volcado != null && abierto.posicionAgregada() < volcado.getPosicionDiario()) {
+            guardarVolcado(); // El diario es más corto que el volcado: se alinean de nuevo
+        }
+    }
+
+    /**
+     * Hace que cada operación abra una transacción en los repositorios. Lo invoca un
+     * repositorio con base de datos al vincularse, antes de la primera operación.
+     * @param transacciones Transacciones de los repositorios
+     */
+    void usarTransacciones(Transacciones transacciones) {
+        this.transacciones = transacciones;
+    }
+
+    /**
+     * Carga el contenido de un volcado en las estructuras vacías. Los libros quedan con
+     * sus textos sin leer, y los índices de texto se construyen en la primera búsqueda.
+     * @param volcado Volcado del catálogo
+     */
+    private void cargarVolcado(VolcadoCatalogo volcado) {
+        int cantidad = volcado.getCantidadLibros();
+        ArrayList<Libro> cargados = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            cargados.add(volcado.libro(i));
+        }
+        ((LibrosEnMemoria) libros).cargar(cargados.subList(0, volcado.getLibrosRegistrados()),
+                volcado.getUltimoNumeroLibro());
+        ArrayList<Usuario> usuariosCargados = volcado.usuarios();
+        ((UsuariosEnMemoria) usuarios).cargar(usuariosCargados.subList(0, volcado.getUsuariosRegistrados()),
+                volcado.getUltimoNumeroUsuario());
+        for (int i = 0; i < volcado.getCantidadPrestamos(); i++) {
+            prestamos.agregar(volcado.prestamo(i, cargados, usuariosCargados));
+        }
+        for (int i = 0; i < volcado.getCantidadReservas(); i++) {
+            reservas.agregar(volcado.reserva(i, cargados, usuariosCargados));
+        }
+        this.fechaMultas = volcado.getFechaMultas();
+        if (fechaMultas != null) {
+            prestamos.setFechaMultas(fechaMultas);
+        }
+        contarVencidos();
+    }
+
+    /**
+     * Método privado para inicializar datos de prueba en el sistema.
+     * Agrega libros y un usuario administrador por defecto.
+     */
+    private void inicializarDatos() {
+        agregarLibro(new Libro("El Aleph", "Jorge Luis Borges", 1949, "978-950-04-0406-8", 3));
+        agregarLibro(new Libro("Cien Años de Soledad", "Gabriel García Márquez", 1967, "978-84-376-0494-7", 5));
+        agregarLibro(new Libro("1984", "George Orwell", 1949, "978-0451524935", 3));
+        agregarLibro(new Libro("El Principito", "Antoine de Saint-Exupéry", 1943, "978-0156012195", 4));
+        agregarLibro(new Libro("Don Quijote de la Mancha", "Miguel de Cervantes", 1605, "978-8491050766", 2));
+        agregarLibro(new Libro("Crimen y Castigo", "Fiódor Dostoyevski", 1866, "978-0140449136", 3));
+        
+        registrarUsuario(new Usuario("Admin", "123", "Administrador"));
+    }
+
+    // Getters y setters con validación
+    
+    /**
+     * Obtiene una copia de la lista de libros.
+     * Para solo recorrerla es preferible vistaLibros(), que no copia nada.
+     * @return ArrayList con todos los libros del sistema
+     * @throws UnsupportedOperationException Si los libros están en una base de datos; entonces se usa paginaLibros
+     */
+    public ArrayList<Libro> getLibros() {
+        return new ArrayList<Libro>(vistaLibros()); // Devuelve copia para evitar modificaciones externas
+    }
+
+    /**
+     * Obtiene una vista inmutable de los libros en este momento, sin copiarlos.
+     * Puede recorrerse mientras la biblioteca sigue cambiando.
+     * @return Instantánea de los libros del sistema
+     * @throws UnsupportedOperationException Si los libros están en una base de datos; entonces se usa paginaLibros
+     */
+    public Instantanea<Libro> vistaLibros() {
+        lectura.lock();
+        try {
+            return libros.instantanea();
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Establece la lista de libros y reconstruye el índice por ISBN.
+     * Los libros con ISBN inválido o repetido se descartan.
+     * @param libros Lista de libros a establecer (no nula)
+     */
+    public void setLibros(ArrayList<Libro> libros) {
+        escritura.lock();
+        try {
+            if (libros != null) {
+                ArrayList<Libro> validos = new ArrayList<>(libros.size());
+                for (Libro libro : libros) {
+                    if (libro != null && libro.claveIsbn != IndiceIsbn.CLAVE_INVALIDA) {
+                        validos.add(libro);
+                    }
+                }
+                this.libros.reemplazarTodos(validos);
+                reservas.vaciar();
+                Diario.Codificador registro = registro(DIARIO_LIBROS_REEMPLAZADOS);
+                if (registro != null) {
+                    Instantanea<Libro> registrados = this.libros.instantanea();
+                    registro.entero(registrados.size());
+                    for (Libro libro : registrados) {
+                        codificarLibro(registro, libro);
+                    }
+                    agregarAlDiario(registro);
+                }
+                if (cambios.tieneSuscripciones()) {
+                    cambios.publicar(TipoCambio.LIBROS_REEMPLAZADOS, null, null, null, null, null, 0, this.libros.cantidad());
+                }
+            }
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Obtiene una copia de la lista de usuarios.
+     * @return ArrayList con todos los usuarios del sistema
+     * @throws UnsupportedOperationException Si los usuarios están en una base de datos
+     */
+    public ArrayList<Usuario> getUsuarios() {
+        return new ArrayList<Usuario>(vistaUsuarios());
+    }
+
+    /**
+     * Obtiene una vista inmutable de los usuarios en este momento, sin copiarlos.
+     * Puede recorrerse mientras la biblioteca sigue cambiando.
+     * @return Instantánea de los usuarios del sistema
+     * @throws UnsupportedOperationException Si los usuarios están en una base de datos
+     */
+    public Instantanea<Usuario> vistaUsuarios() {
+        lectura.lock();
+        try {
+            return usuarios.instantanea();
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Establece la lista de usuarios y reconstruye el directorio por identificación.
+     * Los usuarios sin identificación o con identificación repetida se descartan.
+     * @param usuarios Lista de usuarios a establecer (no nula)
+     */
+    public void setUsuarios(ArrayList<Usuario> usuarios) {
+        escritura.lock();
+        try {
+            if (usuarios != null) {
+                ArrayList<Usuario> validos = new ArrayList<>(usuarios.size());
+                for (Usuario usuario : usuarios) {
+                    if (usuario != null && usuario.getIdentificacion() != null) {
+                        validos.add(usuario);
+                    }
+                }
+                this.usuarios.reemplazarTodos(validos);
+                reservas.vaciar();
+                Diario.Codificador registro = registro(DIARIO_USUARIOS_REEMPLAZADOS);
+                if (registro != null) {
+                    Instantanea<Usuario> registrados = this.usuarios.instantanea();
+                    registro.entero(registrados.size());
+                    for (Usuario usuario : registrados) {
+                        codificarUsuario(registro, usuario);
+                    }
+                    agregarAlDiario(registro);
+                }
+                if (cambios.tieneSuscripciones()) {
+                    cambios.publicar(TipoCambio.USUARIOS_REEMPLAZADOS, null, null, null, null, null, 0, this.usuarios.cantidad());
+                }
+            }
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Obtiene una copia de la lista de préstamos.
+     * Para solo recorrerla es preferible vistaPrestamos(), que no copia nada.
+     * @return ArrayList con todos los préstamos activos
+     * @throws UnsupportedOperationException Si los préstamos están en una base de datos; entonces se usa paginaPrestamos
+     */
+    public ArrayList<Prestamo> getPrestamos() {
+        return new ArrayList<Prestamo>(vistaPrestamos());
+    }
+
+    /**
+     * Obtiene una vista inmutable de los préstamos activos en este momento, sin copiarlos.
+     * Puede recorrerse mientras se siguen registrando préstamos y devoluciones.
+     * @return Instantánea de los préstamos activos
+     * @throws UnsupportedOperationException Si los préstamos están en una base de datos; entonces se usa paginaPrestamos
+     */
+    public Instantanea<Prestamo> vistaPrestamos() {
+        lectura.lock();
+        try {
+            return prestamos.instantanea();
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Establece la lista de préstamos y reconstruye los préstamos activos de cada usuario.
+     * @param prestamos Lista de préstamos a establecer (no nula)
+     */
+    public void setPrestamos(ArrayList<Prestamo> prestamos) {
+        escritura.lock();
+        try {
+            if (prestamos != null) {
+                this.prestamos.reemplazarTodos(prestamos);
+                contarVencidos();
+                Diario.Codificador registro = registro(DIARIO_PRESTAMOS_REEMPLAZADOS);
+                if (registro != null) {
+                    Instantanea<Prestamo> activos = this.prestamos.instantanea();
+                    registro.entero(activos.size());
+                    for (Prestamo prestamo : activos) {
+                        codificarPrestamo(registro, prestamo);
+                    }
+                    agregarAlDiario(registro);
+                }
+                if (cambios.tieneSuscripciones()) {
+                    cambios.publicar(TipoCambio.PRESTAMOS_REEMPLAZADOS, null, null, null, null, null, 0, this.prestamos.cantidad());
+                }
+            }
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    // Métodos para usuarios
+    
+    /**
+     * Registra un nuevo usuario en el sistema.
+     * @param usuario Usuario a registrar
+     * @return true si se registró correctamente, false si el usuario es nulo, ya existe o tiene tipo inválido
+     */
+    public boolean registrarUsuario(Usuario usuario) {
+        escritura.lock();
+        try {
+            if (usuario == null || usuario.getIdentificacion() == null || usuario.biblioteca != null) {
+                return false;
+            }
+            if(usuario.getTipoUsuario() == null || usuario.getTipoUsuario().isEmpty()) {
+                return false; 
+            }
+            if (!usuario.getTipoUsuario().equalsIgnoreCase("estudiante") &&
+            !usuario.getTipoUsuario().equalsIgnoreCase("profesor") &&
+            !usuario.getTipoUsuario().equalsIgnoreCase("ciudadano") &&
+            !usuario.getTipoUsuario().equalsIgnoreCase("administrador")) {
+            return false;
+            }
+            if (!usuarios.agregar(usuario)) {
+                return false;
+            }
+            Diario.Codificador registro = registro(DIARIO_USUARIO_REGISTRADO);
+            if (registro != null) {
+                agregarAlDiario(codificarUsuario(registro, usuario));
+            }
+            if (cambios.tieneSuscripciones()) {
+                cambios.publicar(TipoCambio.USUARIO_REGISTRADO, null, usuario.getIdentificacion(), null, null, null, 0, 0);
+            }
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Elimina un usuario por su identificación.
+     * El último usuario de la lista ocupa el lugar del eliminado, así la eliminación no desplaza la lista.
+     * Sus reservas se cancelan.
+     * @param identificacion Identificación del usuario a eliminar
+     * @return true si se eliminó correctamente, false si no se encontró el usuario
+     */
+    public boolean eliminarUsuarioPorId(String identificacion) {
+        escritura.lock();
+        try {
+            Usuario eliminado = usuarios.eliminar(identificacion);
+            if (eliminado == null) {
+                return false;
+            }
+            reservas.quitarDeUsuario(eliminado);
+            Diario.Codificador registro = registro(DIARIO_USUARIO_ELIMINADO);
+            if (registro != null) {
+                agregarAlDiario(registro.texto(identificacion));
+            }
+            if (cambios.tieneSuscripciones()) {
+                cambios.publicar(TipoCambio.USUARIO_ELIMINADO, null, eliminado.getIdentificacion(), null, null, null, 0, 0);
+            }
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia la identificación de un usuario registrado y actualiza el directorio.
+     * Lo invoca Usuario.setIdentificacion: el campo se asigna aquí, con el cerrojo de
+     * escritura tomado, para que ninguna operación registre en el diario la identificación
+     * anterior después de que el cambio quedó registrado.
+     * @param usuario Usuario registrado en esta biblioteca
+     * @param nuevaIdentificacion Identificación que se quiere asignar
+     * @return true si el cambio es válido y quedó aplicado, false si la identificación es
+     *         nula o ya pertenece a otro usuario
+     */
+    boolean reindexarUsuario(Usuario usuario, String nuevaIdentificacion) {
+        escritura.lock();
+        try {
+            if (nuevaIdentificacion == null) {
+                return false;
+            }
+            String anterior = usuario.getIdentificacion();
+            if (usuario.biblioteca != this) {
+                usuario.asignarIdentificacion(nuevaIdentificacion); // Se eliminó mientras tanto
+                return true;
+            }
+            if (nuevaIdentificacion.equals(anterior)) {
+                return true;
+            }
+            if (!usuarios.cambiarIdentificacion(usuario, nuevaIdentificacion)) {
+                return false;
+            }
+            usuario.asignarIdentificacion(nuevaIdentificacion);
+            historial.renombrarUsuario(usuario.numero, nuevaIdentificacion);
+            Diario.Codificador registro = registro(DIARIO_IDENTIFICACION_CAMBIADA);
+            if (registro != null) {
+                agregarAlDiario(registro.texto(anterior).texto(nuevaIdentificacion));
+            }
+            if (cambios.tieneSuscripciones()) {
+                cambios.publicar(TipoCambio.IDENTIFICACION_CAMBIADA, null, anterior, nuevaIdentificacion,
+                        null, null, 0, 0);
+            }
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Actualiza el tipo de un usuario existente.
+     * @param identificacion Identificación del usuario a actualizar
+     * @param nuevoTipo Nuevo tipo de usuario
+     * @return true si se actualizó correctamente, false si no se encontró el usuario
+     */
+    public boolean actualizarTipoDeUsuario(String identificacion, String nuevoTipo) {
+        escritura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            if (usuario != null) {
+                usuario.setTipoUsuario(nuevoTipo);
+                return true;
+            }
+            return false;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia el nombre de un usuario registrado, lo guarda en el repositorio y lo registra
+     * en el diario. Lo invoca Usuario.setNombre: el campo se asigna aquí, con el cerrojo
+     * de escritura tomado, para que el diario registre los cambios en el mismo orden en
+     * que quedaron en el usuario.
+     * @param usuario Usuario registrado en esta biblioteca
+     * @param nombre Nombre nuevo
+     */
+    void cambiarNombre(Usuario usuario, String nombre) {
+        escritura.lock();
+        try {
+            usuario.asignarNombre(nombre);
+            registrarUsuarioActualizado(usuario);
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia el tipo de un usuario registrado, lo guarda en el repositorio y lo registra
+     * en el diario. Lo invoca Usuario.setTipoUsuario, igual que cambiarNombre.
+     * @param usuario Usuario registrado en esta biblioteca
+     * @param tipoUsuario Tipo nuevo
+     */
+    void cambiarTipoUsuario(Usuario usuario, String tipoUsuario) {
+        escritura.lock();
+        try {
+            usuario.asignarTipoUsuario(tipoUsuario);
+            registrarUsuarioActualizado(usuario);
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Guarda en el repositorio el nombre y el tipo de un usuario, los agrega al diario y
+     * publica el cambio. Se llama con el cerrojo de escritura tomado.
+     * @param usuario Usuario al que ya se le aplicó el cambio
+     */
+    private void registrarUsuarioActualizado(Usuario usuario) {
+        if (usuario.biblioteca != this) {
+            return; // Se eliminó mientras tanto
+        }
+        usuarios.actualizar(usuario);
+        Diario.Codificador registro = registro(DIARIO_USUARIO_ACTUALIZADO);
+        if (registro != null) {
+            agregarAlDiario(registro.texto(usuario.getIdentificacion())
+                    .texto(usuario.getNombre())
+                    .texto(usuario.getTipoUsuario()));
+        }
+        if (cambios.tieneSuscripciones()) {
+            cambios.publicar(TipoCambio.USUARIO_ACTUALIZADO, null, usuario.getIdentificacion(), null, null, null, 0, 0);
+        }
+    }
+
+    /**
+     * Busca un usuario por su identificación.
+     * @param identificacion Identificación del usuario a buscar
+     * @return Usuario encontrado o null si no existe
+     */
+    public Usuario buscarUsuarioPorId(String identificacion) {
+        lectura.lock();
+        try {
+            return usuarioPorId(identificacion);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Busca un usuario por su identificación sin tomar cerrojos (el llamador debe tener el de estructura).
+     * @param identificacion Identificación del usuario a buscar
+     * @return Usuario encontrado o null si no existe
+     */
+    private Usuario usuarioPorId(String identificacion) {
+        return usuarios.buscar(identificacion);
+    }
+
+    // Métodos para libros
+    
+    /**
+     * Agrega un nuevo libro al sistema.
+     * @param libro Libro a agregar
+     * @return true si se agregó correctamente, false si el libro es nulo, su ISBN no es válido,
+     *         ya existe, tiene año inválido o ya pertenece a otra biblioteca
+     */
+    public boolean agregarLibro(Libro libro) {
+        escritura.lock();
+        try {
+            if (!puedeAgregarse(libro, LocalDate.now().getYear()) || !libros.agregar(libro)) {
+                return false;
+            }
+            Diario.Codificador registro = registro(DIARIO_LIBRO_AGREGADO);
+            if (registro != null) {
+                agregarAlDiario(codificarLibro(registro, libro));
+            }
+            publicarLibro(TipoCambio.LIBRO_AGREGADO, libro);
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Agrega varios libros con un solo cerrojo y un solo registro en el diario.
+     * Cada libro se valida como en agregarLibro, incluido el ISBN repetido dentro del lote.
+     * En lotes grandes, los índices de texto se reconstruyen una vez, en la próxima
+     * búsqueda por texto, en lugar de actualizarse libro por libro.
+     * @param libros Libros a agregar
+     * @return Por cada libro, true si se agregó y false si se rechazó
+     */
+    public boolean[] agregarLibros(List<Libro> libros) {
+        boolean[] agregados = new boolean[libros.size()];
+        escritura.lock();
+        try {
+            int añoActual = LocalDate.now().getYear();
+            ArrayList<Libro> candidatos = new ArrayList<>(libros.size());
+            int[] posiciones = new int[libros.size()]; // Posición en libros de cada candidato
+            for (int i = 0; i < agregados.length; i++) {
+                Libro libro = libros.get(i);
+                if (puedeAgregarse(libro, añoActual)) {
+                    posiciones[candidatos.size()] = i;
+                    candidatos.add(libro);
+                }
+            }
+            boolean[] aceptados = this.libros.agregarTodos(candidatos);
+            int cantidad = 0;
+            for (int i = 0; i < aceptados.length; i++) {
+                if (aceptados[i]) {
+                    agregados[posiciones[i]] = true;
+                    cantidad++;
+                }
+            }
+            Diario.Codificador registro = cantidad > 0 ? registro(DIARIO_LIBROS_AGREGADOS) : null;
+            if (registro != null) {
+                registro.entero(cantidad);
+                for (int i = 0; i < agregados.length; i++) {
+                    if (agregados[i]) {
+                        codificarLibro(registro, libros.get(i));
+                    }
+                }
+                agregarAlDiario(registro);
+            }
+            if (cantidad > 0 && cambios.tieneSuscripciones()) {
+                for (int i = 0; i < agregados.length; i++) {
+                    if (agregados[i]) {
+                        publicarLibro(TipoCambio.LIBRO_AGREGADO, libros.get(i));
+                    }
+                }
+            }
+            return agregados;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Verifica que un libro pueda agregarse: no nulo, con ISBN válido, sin año futuro
+     * y sin pertenecer a otra biblioteca. Que el ISBN no esté registrado lo comprueba
+     * el repositorio al agregarlo.
+     * @param libro Libro a verificar
+     * @param añoActual Año en curso
+     * @return true si puede agregarse
+     */
+    private boolean puedeAgregarse(Libro libro, int añoActual) {
+        if (libro == null || libro.claveIsbn == IndiceIsbn.CLAVE_INVALIDA || libro.biblioteca != null) {
+            return false;
+        }
+        // Validar que el año no sea futuro
+        return libro.getAñoPublicacion() <= añoActual;
+    }
+
+    /**
+     * Elimina un libro por su ISBN.
+     * El último libro de la lista ocupa el lugar del eliminado, así la eliminación no desplaza la lista.
+     * Sus reservas se cancelan.
+     * @param isbn ISBN del libro a eliminar
+     * @return true si se eliminó correctamente, false si no se encontró el libro
+     */
+    public boolean eliminarLibroPorIsbn(String isbn) {
+        escritura.lock();
+        try {
+            Libro libro = libros.eliminar(IndiceIsbn.calcularClave(isbn));
+            if (libro == null) {
+                return false;
+            }
+            reservas.quitarDeLibro(libro);
+            Diario.Codificador registro = registro(DIARIO_LIBRO_ELIMINADO);
+            if (registro != null) {
+                agregarAlDiario(registro.texto(libro.getIsbn()));
+            }
+            if (cambios.tieneSuscripciones()) {
+                cambios.publicar(TipoCambio.LIBRO_ELIMINADO, libro.getIsbn(), null, null, null, null, 0, 0);
+            }
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Prepara las búsquedas por texto si el repositorio las dejó pendientes (al cargar
+     * un volcado o agregar un lote grande). Lo invocan las búsquedas por texto antes de
+     * tomar el cerrojo de lectura, y la importación masiva al terminar.
+     */
+    void asegurarIndicesTexto() {
+        if (!libros.busquedasPendientes()) {
+            return;
+        }
+        escritura.lock();
+        try {
+            libros.prepararBusquedas();
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    /**
+     * Cambia el título de un libro registrado y actualiza el repositorio.
+     * Lo invoca Libro.setTitulo: el campo se asigna aquí, con el cerrojo de escritura
+     * tomado, para que los índices y el diario vean el mismo título.
+     * @param libro Libro registrado en esta biblioteca
+     * @param titulo Título nuevo
+     */
+    void reindexarTitulo(Libro libro, String titulo) {
+        escritura.lock();
+        try {
+            String anteriorPlegado = libro.tituloPlegado();
+            libro.asignarTitulo(titulo);
+            if (libro.biblioteca != this) {
+                return; // Se eliminó mientras tanto
+            }
+            libros.tituloCambiado(libro, anteriorPlegado);
+            registrarLibroActualizado(libro);
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia el autor de un libro registrado y actualiza el repositorio.
+     * Lo invoca Libro.setAutor: el campo se asigna aquí, con el cerrojo de escritura
+     * tomado, para que los índices y el diario vean el mismo autor.
+     * @param libro Libro registrado en esta biblioteca
+     * @param autor Autor nuevo
+     */
+    void reindexarAutor(Libro libro, String autor) {
+        escritura.lock();
+        try {
+            String anteriorPlegado = libro.autorPlegado();
+            libro.asignarAutor(autor);
+            if (libro.biblioteca != this) {
+                return; // Se eliminó mientras tanto
+            }
+            libros.autorCambiado(libro, anteriorPlegado);
+            registrarLibroActualizado(libro);
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia el ISBN de un libro registrado y actualiza el índice.
+     * Lo invoca Libro.setIsbn: el campo se asigna aquí, con el cerrojo de escritura
+     * tomado, para que ningún préstamo registre en el diario el ISBN anterior después de
+     * que el cambio quedó registrado. Un ISBN con la misma clave pero escrito de otra
+     * forma también se guarda y se registra.
+     * @param libro Libro registrado en esta biblioteca
+     * @param nuevoIsbn ISBN que se quiere asignar
+     * @return true si el cambio es válido y quedó aplicado, false si el ISBN no es válido
+     *         o ya pertenece a otro libro
+     */
+    boolean reindexarIsbn(Libro libro, String nuevoIsbn) {
+        escritura.lock();
+        try {
+            long nuevaClave = IndiceIsbn.calcularClave(nuevoIsbn);
+            if (nuevaClave == IndiceIsbn.CLAVE_INVALIDA) {
+                return false;
+            }
+            if (libro.biblioteca != this) {
+                libro.asignarIsbn(nuevoIsbn); // Se eliminó mientras tanto
+                return true;
+            }
+            String anterior = libro.getIsbn();
+            if (nuevoIsbn.equals(anterior)) {
+                return true;
+            }
+            if (!libros.cambiarIsbn(libro, nuevaClave, nuevoIsbn)) {
+                return false;
+            }
+            libro.asignarIsbn(nuevoIsbn);
+            historial.renombrarLibro(libro.numero, nuevoIsbn);
+            Diario.Codificador registro = registro(DIARIO_ISBN_CAMBIADO);
+            if (registro != null) {
+                agregarAlDiario(registro.texto(anterior).texto(nuevoIsbn));
+            }
+            if (cambios.tieneSuscripciones()) {
+                cambios.publicar(TipoCambio.ISBN_CAMBIADO, anterior, null, nuevoIsbn, null, null, 0, 0);
+            }
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia el año de publicación de un libro registrado, lo guarda en el repositorio y
+     * lo registra en el diario. Lo invoca Libro.setAñoPublicacion: el campo se asigna
+     * aquí, con el cerrojo de escritura tomado, para que el diario no registre un año que
+     * otro cambio ya sobrescribió.
+     * @param libro Libro registrado en esta biblioteca
+     * @param añoPublicacion Año nuevo
+     */
+    void cambiarAñoPublicacion(Libro libro, int añoPublicacion) {
+        escritura.lock();
+        try {
+            libro.asignarAñoPublicacion(añoPublicacion);
+            if (libro.biblioteca != this) {
+                return; // Se eliminó mientras tanto
+            }
+            libros.actualizar(libro);
+            registrarLibroActualizado(libro);
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Cambia los ejemplares disponibles de un libro registrado, lo guarda en el
+     * repositorio, lo registra en el diario y presta los ejemplares disponibles a los
+     * primeros de su cola de reservas. Lo invoca Libro.setEjemplaresDisponibles.
+     * @param libro Libro registrado en esta biblioteca
+     * @param ejemplaresDisponibles Cantidad nueva de ejemplares disponibles (>= 0)
+     */
+    void cambiarEjemplaresDisponibles(Libro libro, int ejemplaresDisponibles) {
+        Avisos avisos = null;
+        escritura.lock();
+        try {
+            avisos = aplicarEjemplares(libro, ejemplaresDisponibles);
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+            avisar(avisos);
+        }
+    }
+
+    /**
+     * Asigna los ejemplares disponibles de un libro, lo guarda en el repositorio, lo
+     * registra en el diario y atiende su cola de reservas. Se llama con el cerrojo de
+     * escritura tomado: no hay préstamos ni devoluciones en curso, así que el total
+     * registrado es el que queda en el libro.
+     * @param libro Libro registrado en esta biblioteca
+     * @param ejemplaresDisponibles Cantidad nueva de ejemplares disponibles (>= 0)
+     * @return Avisos de los préstamos asignados por reserva y de las reservas canceladas, o null
+     */
+    private Avisos aplicarEjemplares(Libro libro, int ejemplaresDisponibles) {
+        libro.asignarEjemplaresDisponibles(ejemplaresDisponibles);
+        if (libro.biblioteca != this) {
+            return null; // Se eliminó mientras tanto
+        }
+        libros.actualizar(libro);
+        registrarLibroActualizado(libro);
+        return asignarReservas(libro, LocalDate.now(), null);
+    }
+
+    /**
+     * Agrega al diario el estado editable de un libro (título, autor, año y total de ejemplares)
+     * y publica el cambio.
+     * @param libro Libro registrado
+     */
+    private void registrarLibroActualizado(Libro libro) {
+        Diario.Codificador registro = registro(DIARIO_LIBRO_ACTUALIZADO);
+        if (registro != null) {
+            agregarAlDiario(registro.texto(libro.getIsbn())
+                    .texto(libro.getTitulo())
+                    .texto(libro.getAutor())
+                    .entero(libro.getAñoPublicacion())
+                    .entero(libro.getEjemplaresTotales()));
+        }
+        publicarLibro(TipoCambio.LIBRO_ACTUALIZADO, libro);
+    }
+
+    /**
+     * Actualiza la información de un libro existente.
+     * @param isbn ISBN del libro a actualizar
+     * @param nuevoTitulo Nuevo título (opcional, puede ser null)
+     * @param nuevoAutor Nuevo autor (opcional, puede ser null)
+     * @param nuevoAñoPublicacion Nuevo año de publicación (opcional, debe ser > 0)
+     * @param nuevosEjemplares Nuevo número de ejemplares (debe ser >= 0); los ejemplares
+     *        disponibles se prestan a los primeros de la cola de reservas
+     * @return true si se actualizó correctamente, false si no se encontró el libro
+     */
+    public boolean actualizarLibro(String isbn, String nuevoTitulo, String nuevoAutor, int nuevoAñoPublicacion, int nuevosEjemplares) {
+        Avisos avisos = null;
+        escritura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            if (libro != null) {
+                if (nuevoTitulo != null && !nuevoTitulo.isEmpty()) {
+                    libro.setTitulo(nuevoTitulo);
+                }
+                if (nuevoAutor != null && !nuevoAutor.isEmpty()) {
+                    libro.setAutor(nuevoAutor);
+                }
+                if (nuevoAñoPublicacion > 0) {
+                    libro.setAñoPublicacion(nuevoAñoPublicacion);
+                }
+                if (nuevosEjemplares >= 0) {
+                    avisos = aplicarEjemplares(libro, nuevosEjemplares);
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+            avisar(avisos);
+        }
+    }
+
+    /**
+     * Genera una representación en cadena de todos los libros del sistema.
+     * @return Cadena formateada con la información de todos los libros
+     */
+    public String mostrarLibros() {
+        StringWriter salida = new StringWriter();
+        try {
+            mostrarLibros(salida);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no falla
+        }
+        return salida.toString();
+    }
+
+    /**
+     * Escribe el listado de todos los libros del sistema a medida que lo recorre, sin
+     * armarlo completo en memoria. El encabezado se vacía de inmediato; el resto pasa
+     * por un búfer de tamaño fijo. La salida no se cierra.
+     * @param salida Destino del listado
+     * @throws IOException Si falla la escritura
+     */
+    public void mostrarLibros(Writer salida) throws IOException {
+        Iterable<Libro> libros; // Se recorre sin bloquear la biblioteca
+        int cantidad;
+        lectura.lock();
+        try {
+            cantidad = this.libros.cantidad();
+            libros = this.libros.recorrer();
+        } finally {
+            lectura.unlock();
+        }
+        if (cantidad == 0) {
+            salida.write("No hay libros registrados en el sistema.");
+            salida.flush();
+            return;
+        }
+
+        Writer sb = salida instanceof StringWriter || salida instanceof BufferedWriter
+                ? salida : new BufferedWriter(salida, TAMAÑO_BUFFER_LISTADOS);
+        sb.append("\n LISTA COMPLETA DE LIBROS (").append(String.valueOf(cantidad)).append("):\n");
+        sb.flush();
+        for (Libro libro : libros) {
+            sb.append("----------------------------------------\n");
+            sb.append("Título: ").append(libro.getTitulo()).append("\n");
+            sb.append("Autor: ").append(libro.getAutor()).append("\n");
+            sb.append("Año: ").append(String.valueOf(libro.getAñoPublicacion())).append("\n");
+            sb.append("ISBN: ").append(libro.getIsbn()).append("\n");
+            sb.append("Disponibles: ").append(String.valueOf(libro.getEjemplaresDisponibles())).append("\n");
+        }
+        sb.append("----------------------------------------\n");
+        sb.flush();
+    }
+
+    /**
+     * Busca un libro por su ISBN.
+     * El ISBN puede escribirse con o sin guiones, en formato ISBN-10 o ISBN-13.
+     * @param isbn ISBN del libro a buscar
+     * @return Libro encontrado o null si no existe
+     */
+    public Libro buscarLibroPorIsbn(String isbn) {
+        lectura.lock();
+        try {
+            return libroPorIsbn(isbn);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Busca un libro por su ISBN sin tomar cerrojos (el llamador debe tener el de estructura).
+     * @param isbn ISBN del libro a buscar
+     * @return Libro encontrado o null si no existe
+     */
+    private Libro libroPorIsbn(String isbn) {
+        long clave = IndiceIsbn.calcularClave(isbn);
+        return clave != IndiceIsbn.CLAVE_INVALIDA ? libros.buscar(clave) : null;
+    }
+
+    /**
+     * Busca libros por título (coincidencia exacta, insensible a mayúsculas y acentos).
+     * @param titulo Título a buscar
+     * @return Lista de libros que coinciden con el título
+     */
+    public ArrayList<Libro> buscarLibrosPorTitulo(String titulo) {
+        asegurarIndicesTexto();
+        lectura.lock();
+        try {
+            return libros.buscarPorTitulo(NormalizadorTexto.plegar(titulo));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página de los libros cuyo título empieza por un texto (insensible a
+     * mayúsculas y acentos). Los resultados se ordenan alfabéticamente por título; los
+     * títulos idénticos al texto van primero. El cursor guarda el título y el número del
+     * último libro, así cada página se busca en el índice en O(log n + k) sin importar
+     * cuántas páginas la preceden.
+     * @param inicio Texto con el que debe empezar el título
+     * @param cursor Cursor de la página anterior de la misma búsqueda, o null para la primera
+     * @param cantidad Cantidad máxima de libros por página (mayor que 0)
+     * @return Página de libros, o null si el cursor no es de esta búsqueda o la cantidad no es válida
+     */
+    public Pagina<Libro> paginaLibrosPorInicioDeTitulo(String inicio, String cursor, int cantidad) {
+        String prefijo = NormalizadorTexto.plegar(inicio);
+        String despuesDeTitulo = prefijo;
+        int despuesDeNumero = -1;
+        if (cursor != null) {
+            despuesDeTitulo = Pagina.clave(cursor, Pagina.LIBROS_POR_INICIO_DE_TITULO, prefijo);
+            long posicion = Pagina.posicion(cursor, Pagina.LIBROS_POR_INICIO_DE_TITULO, prefijo);
+            if (despuesDeTitulo == null || posicion < 0 || posicion > Integer.MAX_VALUE) {
+                return null;
+            }
+            despuesDeNumero = (int) posicion;
+        }
+        if (cantidad <= 0) {
+            return null;
+        }
+        asegurarIndicesTexto();
+        ArrayList<Libro> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            String siguiente = null;
+            if (libros.paginaPorInicioDeTitulo(prefijo, despuesDeTitulo, despuesDeNumero, cantidad, elementos)) {
+                Libro ultimo = elementos.get(elementos.size() - 1);
+                siguiente = Pagina.cursor(Pagina.LIBROS_POR_INICIO_DE_TITULO, prefijo, ultimo.tituloPlegado(), ultimo.numero);
+            }
+            return new Pagina<>(elementos, siguiente);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Busca los libros cuyo título o autor se parecen más al texto dado, tolerando
+     * errores de escritura (por ejemplo, "Dostoievski" encuentra a "Fiódor Dostoyevski").
+     * @param texto Texto a buscar
+     * @param cantidad Cantidad máxima de libros a devolver
+     * @return Lista de libros, del más parecido al menos parecido
+     */
+    public ArrayList<Libro> buscarLibrosSimilares(String texto, int cantidad) {
+        asegurarIndicesTexto();
+        lectura.lock();
+        try {
+            if (cantidad <= 0) {
+                return new ArrayList<>();
+            }
+            return libros.buscarSimilares(NormalizadorTexto.plegar(texto), cantidad, SIMILITUD_MINIMA);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página de la búsqueda aproximada, con las mismas reglas que
+     * buscarLibrosSimilares. Como el orden depende del parecido, cada página vuelve a
+     * calcular los más parecidos hasta su último resultado y se queda con los suyos; por
+     * eso la búsqueda llega como mucho a los primeros MAXIMO_SIMILARES libros.
+     * @param texto Texto a buscar
+     * @param cursor Cursor de la página anterior de la misma búsqueda, o null para la primera
+     * @param cantidad Cantidad máxima de libros por página (mayor que 0)
+     * @return Página de libros, o null si el cursor no es de esta búsqueda o la cantidad no es válida
+     */
+    public Pagina<Libro> paginaLibrosSimilares(String texto, String cursor, int cantidad) {
+        String plegado = NormalizadorTexto.plegar(texto);
+        long desde = Pagina.posicion(cursor, Pagina.LIBROS_SIMILARES, plegado);
+        if (desde < 0 || cantidad <= 0) {
+            return null;
+        }
+        if (desde >= MAXIMO_SIMILARES) {
+            return new Pagina<>(new ArrayList<>(), null);
+        }
+        int hasta = (int) Math.min(MAXIMO_SIMILARES, desde + cantidad);
+        asegurarIndicesTexto();
+        ArrayList<Libro> similares;
+        lectura.lock();
+        try {
+            similares = libros.buscarSimilares(plegado, Math.min(MAXIMO_SIMILARES, hasta + 1), SIMILITUD_MINIMA);
+        } finally {
+            lectura.unlock();
+        }
+        ArrayList<Libro> elementos = new ArrayList<>();
+        for (int i = (int) desde; i < Math.min(hasta, similares.size()); i++) {
+            elementos.add(similares.get(i));
+        }
+        long siguiente = similares.size() > hasta ? hasta : -1;
+        return new Pagina<>(elementos, Pagina.cursor(Pagina.LIBROS_SIMILARES, plegado, siguiente));
+    }
+
+    /**
+     * Busca libros por autor (coincidencia parcial, insensible a mayúsculas y acentos).
+     * Cada palabra de la búsqueda debe coincidir con el inicio de una palabra del autor,
+     * y el texto buscado debe aparecer tal cual en el autor (por ejemplo, "garcia marq").
+     * @param autor Autor a buscar
+     * @return Lista de libros cuyo autor coincide con el parámetro
+     */
+    public ArrayList<Libro> buscarLibrosPorAutor(String autor) {
+        asegurarIndicesTexto();
+        lectura.lock();
+        try {
+            return libros.buscarPorAutor(NormalizadorTexto.plegar(autor));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página del listado de libros, en un orden estable: los libros que se
+     * agregan o eliminan entre una página y otra no hacen repetir ni saltar resultados.
+     * @param cursor Cursor de la página anterior, o null para la primera
+     * @param cantidad Cantidad máxima de libros por página (mayor que 0)
+     * @return Página de libros, o null si el cursor no es de este listado o la cantidad no es válida
+     */
+    public Pagina<Libro> paginaLibros(String cursor, int cantidad) {
+        long desde = Pagina.posicion(cursor, Pagina.LIBROS, null);
+        if (desde < 0 || cantidad <= 0) {
+            return null;
+        }
+        ArrayList<Libro> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            long siguiente = libros.pagina(desde, cantidad, elementos);
+            return new Pagina<>(elementos, Pagina.cursor(Pagina.LIBROS, null, siguiente));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página de la búsqueda por título (coincidencia exacta, insensible a
+     * mayúsculas y acentos).
+     * @param titulo Título a buscar
+     * @param cursor Cursor de la página anterior de la misma búsqueda, o null para la primera
+     * @param cantidad Cantidad máxima de libros por página (mayor que 0)
+     * @return Página de libros, o null si el cursor no es de esta búsqueda o la cantidad no es válida
+     */
+    public Pagina<Libro> paginaLibrosPorTitulo(String titulo, String cursor, int cantidad) {
+        String plegado = NormalizadorTexto.plegar(titulo);
+        long desde = Pagina.posicion(cursor, Pagina.LIBROS_POR_TITULO, plegado);
+        if (desde < 0 || cantidad <= 0) {
+            return null;
+        }
+        asegurarIndicesTexto();
+        ArrayList<Libro> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            long siguiente = libros.paginaPorTitulo(plegado, desde, cantidad, elementos);
+            return new Pagina<>(elementos, Pagina.cursor(Pagina.LIBROS_POR_TITULO, plegado, siguiente));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página de la búsqueda por autor, con las mismas reglas que buscarLibrosPorAutor.
+     * @param autor Autor a buscar
+     * @param cursor Cursor de la página anterior de la misma búsqueda, o null para la primera
+     * @param cantidad Cantidad máxima de libros por página (mayor que 0)
+     * @return Página de libros, o null si el cursor no es de esta búsqueda o la cantidad no es válida
+     */
+    public Pagina<Libro> paginaLibrosPorAutor(String autor, String cursor, int cantidad) {
+        String plegado = NormalizadorTexto.plegar(autor);
+        long desde = Pagina.posicion(cursor, Pagina.LIBROS_POR_AUTOR, plegado);
+        if (desde < 0 || cantidad <= 0) {
+            return null;
+        }
+        asegurarIndicesTexto();
+        ArrayList<Libro> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            long siguiente = libros.paginaPorAutor(plegado, desde, cantidad, elementos);
+            return new Pagina<>(elementos, Pagina.cursor(Pagina.LIBROS_POR_AUTOR, plegado, siguiente));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Verifica si un usuario puede pedir más libros prestados (límite de 3).
+     * @param identificacion Identificación del usuario
+     * @return true si puede pedir más libros, false si ya alcanzó el límite
+     */
+    public boolean puedePrestarMasLibros(String identificacion) {
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            return usuario == null || prestamos.delUsuario(usuario).size() < LIMITE_PRESTAMOS;
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Regla con la que la biblioteca decide si un usuario puede recibir otro préstamo:
+     * sin multa pendiente y por debajo del límite de préstamos.
+     * @param usuario Usuario que pide el libro
+     * @param prestamosActivos Cantidad de préstamos activos del usuario
+     * @return true si puede recibir otro préstamo
+     */
+    static boolean puedeRecibirPrestamo(Usuario usuario, int prestamosActivos) {
+        return usuario.getMultaAcumulada() <= 0 && prestamosActivos < LIMITE_PRESTAMOS;
+    }
+
+    /**
+     * Comprueba las condiciones de prestarLibro que no dependen de los ejemplares: el
+     * usuario no tiene multa ni llegó al límite, y nadie tiene reservado el libro.
+     * El llamador debe tener bloqueada la franja del usuario.
+     * @param libro Libro registrado
+     * @param usuario Usuario registrado
+     * @return true si el préstamo se admite cuando hay un ejemplar disponible
+     */
+    private boolean admitePrestamo(Libro libro, Usuario usuario) {
+        return puedeRecibirPrestamo(usuario, prestamos.delUsuario(usuario).size()) && !tieneReservas(libro);
+    }
+
+    /**
+     * Comprueba si prestarLibro aceptaría ahora prestar un libro a un usuario, con las
+     * mismas reglas y la misma franja del usuario, sin prestarlo. Es una consulta: el
+     * préstamo puede rechazarse igual si otro toma el último ejemplar antes.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return true si ambos existen, hay un ejemplar disponible y el usuario puede pedirlo
+     */
+    public boolean puedePrestarLibro(String isbn, String identificacion) {
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            Usuario usuario = usuarioPorId(identificacion);
+            if (libro == null || usuario == null) {
+                return false;
+            }
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                return admitePrestamo(libro, usuario) && libro.getEjemplaresDisponibles() > 0;
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    // Métodos para préstamos
+    
+    /**
+     * Realiza el préstamo de un libro a un usuario.
+     * El límite de préstamos y la ausencia de multas se comprueban con la franja del
+     * usuario bloqueada; el ejemplar se reserva con una operación atómica del libro, así
+     * que se respetan aunque haya préstamos simultáneos del mismo libro o usuario.
+     * Un libro con reservas pendientes no se presta: sus ejemplares son de la cola.
+     * @param isbn ISBN del libro a prestar
+     * @param identificacion Identificación del usuario
+     * @param fechaPrestamo Fecha en que se realiza el préstamo
+     * @param fechaDevolucion Fecha límite para devolución
+     * @return true si el préstamo se realizó correctamente, false en caso contrario
+     */
+    public boolean prestarLibro(String isbn, String identificacion, 
+            LocalDate fechaPrestamo, LocalDate fechaDevolucion) {
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            Usuario usuario = usuarioPorId(identificacion);
+
+            if (libro == null || usuario == null) {
+                return false;
+            }
+
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                if (admitePrestamo(libro, usuario) && libros.reservar(libro, 1)) {
+                    Prestamo prestamo = new Prestamo(usuario, libro, fechaPrestamo, fechaDevolucion);
+                    prestamos.agregar(prestamo);
+                    agregarVencido(prestamo);
+                    Diario.Codificador registro = registro(DIARIO_PRESTAMO);
+                    if (registro != null) {
+                        agregarAlDiario(codificarPrestamo(registro, prestamo));
+                    }
+                    publicarPrestamo(TipoCambio.PRESTAMO, prestamo, fechaPrestamo);
+                    return true;
+                }
+
+                return false;
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Registra la devolución de un libro prestado. Si el libro tiene reservas, el
+     * ejemplar devuelto se presta al primero de la cola que pueda recibirlo.
+     * @param isbn ISBN del libro a devolver
+     * @param identificacion Identificación del usuario
+     * @param fechaDevolucion Fecha real de devolución
+     * @return true si la devolución se registró correctamente, false en caso contrario
+     */
+    public boolean devolverLibro(String isbn, String identificacion, LocalDate fechaDevolucion) {
+        Avisos avisos = null;
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            Usuario usuario = usuarioPorId(identificacion);
+            if (libro == null || usuario == null) {
+                return false;
+            }
+
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                Prestamo prestamo = prestamos.buscarActivo(libro, usuario);
+                if (prestamo == null) {
+                    return false;
+                }
+                libros.liberar(prestamo.getLibro(), 1);
+                cerrarPrestamo(prestamo, fechaDevolucion);
+                Diario.Codificador registro = registro(DIARIO_DEVOLUCION);
+                if (registro != null) {
+                    agregarAlDiario(registro.texto(libro.getIsbn())
+                            .texto(usuario.getIdentificacion())
+                            .fecha(fechaDevolucion));
+                }
+                publicarPrestamo(TipoCambio.DEVOLUCION, prestamo, fechaDevolucion);
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+            avisos = asignarReservas(libro, fechaDevolucion, null);
+            return true;
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+            avisar(avisos);
+        }
+    }
+
+    /**
+     * Presta varios libros a un mismo usuario con un solo cerrojo y un solo registro en el diario.
+     * El usuario se busca una vez y su franja se bloquea una vez para todo el lote. Con
+     * multas pendientes se rechaza el lote entero. Si todosONinguno es true, el lote se
+     * rechaza completo cuando excede el límite de préstamos o algún libro no puede
+     * prestarse, y los ejemplares ya reservados se liberan; si es false, se prestan en
+     * orden los libros disponibles hasta alcanzar el límite. Como en prestarLibro, los
+     * libros con reservas pendientes no se prestan.
+     * @param identificacion Identificación del usuario
+     * @param isbns ISBN de los libros a prestar (puede repetirse para varios ejemplares)
+     * @param fechaPrestamo Fecha en que se realiza el préstamo
+     * @param fechaDevolucion Fecha límite para devolución
+     * @param todosONinguno true para prestar todo el lote o nada
+     * @return Por cada ISBN, true si se prestó y false si se rechazó
+     */
+    public boolean[] prestarLibros(String identificacion, List<String> isbns,
+            LocalDate fechaPrestamo, LocalDate fechaDevolucion, boolean todosONinguno) {
+        boolean[] prestados = new boolean[isbns.size()];
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            if (usuario == null) {
+                return prestados;
+            }
+
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                if (usuario.getMultaAcumulada() > 0) {
+                    return prestados;
+                }
+                int libres = LIMITE_PRESTAMOS - prestamos.delUsuario(usuario).size();
+                if (todosONinguno && isbns.size() > libres) {
+                    return prestados;
+                }
+
+                Libro[] reservados = new Libro[prestados.length];
+                int cantidad = 0;
+                for (int i = 0; i < reservados.length && cantidad < libres; i++) {
+                    Libro libro = libroPorIsbn(isbns.get(i));
+                    if (libro != null && !tieneReservas(libro) && libros.reservar(libro, 1)) {
+                        reservados[i] = libro;
+                        cantidad++;
+                    } else if (todosONinguno) {
+                        for (int j = 0; j < i; j++) {
+                            libros.liberar(reservados[j], 1);
+                        }
+                        return prestados;
+                    }
+                }
+
+                Diario.Codificador registro = cantidad > 0 ? registro(DIARIO_PRESTAMOS_LOTE) : null;
+                if (registro != null) {
+                    registro.entero(cantidad);
+                }
+                for (int i = 0; i < reservados.length; i++) {
+                    if (reservados[i] != null) {
+                        Prestamo prestamo = new Prestamo(usuario, reservados[i], fechaPrestamo, fechaDevolucion);
+                        prestamos.agregar(prestamo);
+                        agregarVencido(prestamo);
+                        prestados[i] = true;
+                        if (registro != null) {
+                            codificarPrestamo(registro, prestamo);
+                        }
+                        publicarPrestamo(TipoCambio.PRESTAMO, prestamo, fechaPrestamo);
+                    }
+                }
+                if (registro != null) {
+                    agregarAlDiario(registro);
+                }
+                return prestados;
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Registra la devolución de varios libros de un mismo usuario con un solo cerrojo
+     * y un solo registro en el diario. El usuario se busca una vez y su franja se
+     * bloquea una vez para todo el lote. Después se asignan los ejemplares devueltos
+     * a las reservas, como en devolverLibro.
+     * @param identificacion Identificación del usuario
+     * @param isbns ISBN de los libros a devolver
+     * @param fechaDevolucion Fecha real de devolución
+     * @return Por cada ISBN, true si se registró la devolución y false si no estaba prestado
+     */
+    public boolean[] devolverLibros(String identificacion, List<String> isbns, LocalDate fechaDevolucion) {
+        boolean[] devueltos = new boolean[isbns.size()];
+        Avisos avisos = null;
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            if (usuario == null) {
+                return devueltos;
+            }
+
+            Prestamo[] cerrados = new Prestamo[devueltos.length];
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                int cantidad = 0;
+                for (int i = 0; i < devueltos.length; i++) {
+                    Libro libro = libroPorIsbn(isbns.get(i));
+                    Prestamo prestamo = libro != null ? prestamos.buscarActivo(libro, usuario) : null;
+                    if (prestamo != null) {
+                        libros.liberar(prestamo.getLibro(), 1);
+                        cerrarPrestamo(prestamo, fechaDevolucion);
+                        cerrados[cantidad++] = prestamo;
+                        devueltos[i] = true;
+                    }
+                }
+                Diario.Codificador registro = cantidad > 0 ? registro(DIARIO_DEVOLUCIONES_LOTE) : null;
+                if (registro != null) {
+                    agregarAlDiario(codificarDevoluciones(registro, cerrados, cantidad, fechaDevolucion));
+                }
+                for (int i = 0; i < cantidad; i++) {
+                    publicarPrestamo(TipoCambio.DEVOLUCION, cerrados[i], fechaDevolucion);
+                }
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+            for (Prestamo cerrado : cerrados) {
+                if (cerrado != null) {
+                    avisos = asignarReservas(cerrado.getLibro(), fechaDevolucion, avisos);
+                }
+            }
+            return devueltos;
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+            avisar(avisos);
+        }
+    }
+
+    /**
+     * Registra la devolución de un lote de libros de usuarios distintos, como los del
+     * buzón de devoluciones, con un solo cerrojo y un solo registro en el diario. Toma
+     * el cerrojo de escritura en lugar de bloquear la franja de cada usuario, y busca
+     * cada usuario una sola vez aunque devuelva varios libros del lote. Al final del lote
+     * se asignan los ejemplares devueltos a las reservas, como en devolverLibro.
+     * @param isbns ISBN de los libros a devolver
+     * @param identificaciones Identificación del usuario de cada libro, en el mismo orden
+     * @param fechaDevolucion Fecha real de devolución
+     * @return Por cada libro, true si se registró la devolución y false si no estaba prestado
+     */
+    public boolean[] devolverLibros(List<String> isbns, List<String> identificaciones, LocalDate fechaDevolucion) {
+        boolean[] devueltos = new boolean[isbns.size()];
+        Avisos avisos = null;
+        escritura.lock();
+        try {
+            HashMap<String, Usuario> usuariosDelLote = new HashMap<>();
+            int cantidad = 0;
+            Prestamo[] cerrados = new Prestamo[devueltos.length];
+            for (int i = 0; i < devueltos.length; i++) {
+                Usuario usuario = usuariosDelLote.computeIfAbsent(identificaciones.get(i), this::usuarioPorId);
+                Libro libro = usuario != null ? libroPorIsbn(isbns.get(i)) : null;
+                Prestamo prestamo = libro != null ? prestamos.buscarActivo(libro, usuario) : null;
+                if (prestamo != null) {
+                    libros.liberar(prestamo.getLibro(), 1);
+                    cerrarPrestamo(prestamo, fechaDevolucion);
+                    cerrados[cantidad++] = prestamo;
+                    devueltos[i] = true;
+                }
+            }
+            Diario.Codificador registro = cantidad > 0 ? registro(DIARIO_DEVOLUCIONES_LOTE) : null;
+            if (registro != null) {
+                agregarAlDiario(codificarDevoluciones(registro, cerrados, cantidad, fechaDevolucion));
+            }
+            for (int i = 0; i < cantidad; i++) {
+                publicarPrestamo(TipoCambio.DEVOLUCION, cerrados[i], fechaDevolucion);
+            }
+            for (int i = 0; i < cantidad; i++) {
+                avisos = asignarReservas(cerrados[i].getLibro(), fechaDevolucion, avisos);
+            }
+            return devueltos;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+            avisar(avisos);
+        }
+    }
+
+    /**
+     * Codifica en un registro del diario un lote de devoluciones con la misma fecha.
+     * @param registro Registro a completar
+     * @param cerrados Préstamos devueltos
+     * @param cantidad Cantidad de préstamos usados de cerrados
+     * @param fechaDevolucion Fecha real de devolución
+     * @return El mismo registro
+     */
+    private static Diario.Codificador codificarDevoluciones(Diario.Codificador registro, Prestamo[] cerrados,
+            int cantidad, LocalDate fechaDevolucion) {
+        registro.fecha(fechaDevolucion).entero(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            registro.texto(cerrados[i].getLibro().getIsbn())
+                    .texto(cerrados[i].getUsuario().getIdentificacion());
+        }
+        return registro;
+    }
+
+    // Métodos para reservas
+
+    /**
+     * Reserva un libro sin ejemplares disponibles: el usuario queda al final de la cola
+     * del libro. Se rechaza si el libro tiene ejemplares (debe prestarse), si el usuario
+     * tiene multas pendientes, ya lo tiene prestado o ya lo reservó.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @param fecha Fecha de la reserva
+     * @return true si se registró la reserva
+     */
+    public boolean reservarLibro(String isbn, String identificacion, LocalDate fecha) {
+        Avisos avisos = null;
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            Usuario usuario = usuarioPorId(identificacion);
+            if (libro == null || usuario == null) {
+                return false;
+            }
+
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                if (libro.getEjemplaresDisponibles() > 0 || usuario.getMultaAcumulada() > 0
+                        || prestamos.buscarActivo(libro, usuario) != null
+                        || reservas.buscar(libro, usuario) != null) {
+                    return false;
+                }
+                reservas.agregar(new Reserva(libro, usuario, fecha));
+                Diario.Codificador registro = registro(DIARIO_RESERVA);
+                if (registro != null) {
+                    agregarAlDiario(registro.texto(libro.getIsbn())
+                            .texto(usuario.getIdentificacion())
+                            .fecha(fecha));
+                }
+                publicarReserva(TipoCambio.RESERVA, libro, usuario, fecha);
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+            // Una devolución simultánea pudo liberar un ejemplar antes de que la reserva entrara en la cola
+            if (libro.getEjemplaresDisponibles() > 0) {
+                avisos = asignarReservas(libro, fecha, null);
+            }
+            return true;
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+            avisar(avisos);
+        }
+    }
+
+    /**
+     * Cancela la reserva de un usuario para un libro.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @return true si se canceló, false si no existía
+     */
+    public boolean cancelarReserva(String isbn, String identificacion) {
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            Usuario usuario = usuarioPorId(identificacion);
+            if (libro == null || usuario == null) {
+                return false;
+            }
+
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                Reserva reserva = reservas.buscar(libro, usuario);
+                if (reserva == null || !reservas.quitar(reserva)) {
+                    return false;
+                }
+                Diario.Codificador registro = registro(DIARIO_RESERVA_CANCELADA);
+                if (registro != null) {
+                    agregarAlDiario(registro.texto(libro.getIsbn()).texto(usuario.getIdentificacion()));
+                }
+                publicarReserva(TipoCambio.RESERVA_CANCELADA, libro, usuario, null);
+                return true;
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Obtiene las reservas pendientes de un usuario, en el orden en que las hizo.
+     * @param identificacion Identificación del usuario
+     * @return Reservas del usuario (vacía si no existe)
+     */
+    public ArrayList<Reserva> reservasDeUsuario(String identificacion) {
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            return usuario != null ? reservas.delUsuario(usuario) : new ArrayList<>(0);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene la posición de una reserva en la cola de su libro.
+     * @param reserva Reserva obtenida con reservasDeUsuario
+     * @return Posición desde 1, o -1 si ya no está pendiente
+     */
+    public int posicionReserva(Reserva reserva) {
+        return reservas.posicion(reserva);
+    }
+
+    /**
+     * Obtiene la cantidad de reservas pendientes de un libro.
+     * @param isbn ISBN del libro
+     * @return Cantidad de usuarios en la cola (0 si el libro no existe)
+     */
+    public int cantidadReservas(String isbn) {
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            return libro != null ? reservas.cantidad(libro) : 0;
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Establece a quién se avisa cada vez que un ejemplar se presta por reserva. El aviso
+     * se hace en el hilo de la operación que liberó el ejemplar (una devolución, por
+     * ejemplo), después de soltar los cerrojos y de confirmar el préstamo en el diario.
+     * @param aviso Receptor de los préstamos asignados, o null para no avisar
+     */
+    public void setAvisoReservas(Consumer<Prestamo> aviso) {
+        this.avisoReservas = aviso;
+    }
+
+    /**
+     * Establece a quién se avisa cada vez que una reserva se cancela al llegarle su turno
+     * porque el usuario ya no puede recibir el libro (por multas o por el límite de
+     * préstamos). Se avisa igual que los préstamos asignados, después de soltar los
+     * cerrojos. Las cancelaciones pedidas por el propio usuario no se avisan.
+     * @param aviso Receptor de las reservas canceladas, o null para no avisar
+     */
+    public void setAvisoCancelaciones(Consumer<Reserva> aviso) {
+        this.avisoCancelaciones = aviso;
+    }
+
+    /**
+     * Indica si un libro tiene reservas pendientes, sin tomar el monitor de la cola.
+     * @param libro Libro registrado
+     * @return true si alguien espera el libro
+     */
+    private boolean tieneReservas(Libro libro) {
+        return reservas.tieneReservas(libro);
+    }
+
+    /**
+     * Presta los ejemplares disponibles de un libro a los primeros de su cola de reservas.
+     * Las reservas de usuarios que ya no pueden recibir el libro (por multas o por el
+     * límite de préstamos) se cancelan y se pasa al siguiente. Como prestarLibro no toma
+     * ejemplares de libros con reservas, el ejemplar liberado espera aquí al primero de
+     * la cola. El llamador debe tener el cerrojo de estructura y ninguna franja.
+     * @param libro Libro registrado
+     * @param fecha Fecha de los préstamos
+     * @param avisos Avisos a los que agregar, o null
+     * @return Avisos con los préstamos asignados y las reservas canceladas (null si no
+     *         hubo ninguno y avisos era null)
+     */
+    private Avisos asignarReservas(Libro libro, LocalDate fecha, Avisos avisos) {
+        while (reservas.tieneReservas(libro)) {
+            Reserva reserva = reservas.primera(libro);
+            if (reserva == null) {
+                break;
+            }
+            int franjaUsuario = franjas.franja(reserva.getUsuario().numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                Usuario usuario = usuarioPorId(reserva.getUsuario().getIdentificacion()); // Con repositorios externos, la versión vigente
+                if (usuario == null || usuario.numero != reserva.getUsuario().numero
+                        || !puedeRecibirPrestamo(usuario, prestamos.delUsuario(usuario).size())) {
+                    if (reservas.quitar(reserva)) {
+                        Diario.Codificador registro = registro(DIARIO_RESERVA_CANCELADA);
+                        if (registro != null) {
+                            agregarAlDiario(registro.texto(libro.getIsbn()).texto(reserva.getUsuario().getIdentificacion()));
+                        }
+                        publicarReserva(TipoCambio.RESERVA_CANCELADA, libro, reserva.getUsuario(), null);
+                        if (avisos == null) {
+                            avisos = new Avisos();
+                        }
+                        avisos.canceladas.add(reserva);
+                    }
+                    continue;
+                }
+                if (!libros.reservar(libro, 1)) {
+                    break;
+                }
+                if (!reservas.quitar(reserva)) {
+                    libros.liberar(libro, 1); // Otra operación ya atendió esta reserva
+                    continue;
+                }
+                Prestamo prestamo = new Prestamo(usuario, libro, fecha, fecha.plusDays(DIAS_PRESTAMO_RESERVA));
+                prestamos.agregar(prestamo);
+                agregarVencido(prestamo);
+                Diario.Codificador registro = registro(DIARIO_RESERVA_ASIGNADA);
+                if (registro != null) {
+                    agregarAlDiario(codificarPrestamo(registro, prestamo));
+                }
+                publicarPrestamo(TipoCambio.RESERVA_ASIGNADA, prestamo, fecha);
+                if (avisos == null) {
+                    avisos = new Avisos();
+                }
+                avisos.asignados.add(prestamo);
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        }
+        return avisos;
+    }
+
+    /**
+     * Avisa de los préstamos asignados por reserva y de las reservas canceladas. Un aviso
+     * que falla no deshace el préstamo ni la cancelación, ni impide avisar los demás.
+     * @param avisos Avisos de la operación, o null si no hubo ninguno
+     */
+    private void avisar(Avisos avisos) {
+        if (avisos == null) {
+            return;
+        }
+        Consumer<Reserva> avisoCancelacion = avisoCancelaciones;
+        if (avisoCancelacion != null) {
+            for (Reserva reserva : avisos.canceladas) {
+                try {
+                    avisoCancelacion.accept(reserva);
+                } catch (RuntimeException e) {
+                    // La reserva ya está cancelada: el usuario ya no la verá en sus reservas
+                }
+            }
+        }
+        Consumer<Prestamo> aviso = avisoReservas;
+        if (aviso != null) {
+            for (Prestamo prestamo : avisos.asignados) {
+                try {
+                    aviso.accept(prestamo);
+                } catch (RuntimeException e) {
+                    // El préstamo ya está registrado: el usuario lo verá en sus préstamos
+                }
+            }
+        }
+    }
+
+    /**
+     * Quita un préstamo de los activos y aplica la multa por retraso, si corresponde.
+     * Solo suma los días de retraso que no se sumaron ya en las acumulaciones de multas
+     * (y descuenta los acumulados de más, si la devolución tiene una fecha anterior).
+     * No cambia la disponibilidad del libro. El llamador debe tener bloqueada la franja del usuario.
+     * @param prestamo Préstamo activo
+     * @param fechaDevolucion Fecha real de devolución
+     */
+    private void cerrarPrestamo(Prestamo prestamo, LocalDate fechaDevolucion) {
+        prestamos.eliminar(prestamo);
+        historial.archivar(prestamo, fechaDevolucion);
+        long multados = diasMultados(prestamo);
+        if (multados > 0) {
+            int numero = prestamo.getUsuario().numero;
+            Vencidos delUsuario = vencidos.get(numero);
+            if (delUsuario != null && --delUsuario.cantidad == 0) {
+                vencidos.remove(numero);
+            }
+        }
+        long dias = diasRetraso(prestamo, fechaDevolucion) - multados;
+        if (dias != 0) {
+            sumarMulta(prestamo.getUsuario(), dias * MULTA_POR_DIA);
+        }
+    }
+
+    /**
+     * Calcula los días de retraso de un préstamo a una fecha.
+     * @param prestamo Préstamo
+     * @param fecha Fecha de devolución
+     * @return Días entre la fecha límite y la fecha dada (0 si no hay retraso o no tiene fecha límite)
+     */
+    private static long diasRetraso(Prestamo prestamo, LocalDate fecha) {
+        LocalDate limite = prestamo.getFechaDevolucion();
+        return limite != null ? Math.max(0, ChronoUnit.DAYS.between(limite, fecha)) : 0;
+    }
+
+    /**
+     * Calcula los días de retraso de un préstamo que ya se sumaron a la multa del usuario,
+     * es decir, su retraso a la fecha de la última acumulación de multas.
+     * @param prestamo Préstamo activo
+     * @return Días ya multados
+     */
+    private long diasMultados(Prestamo prestamo) {
+        return fechaMultas != null ? diasRetraso(prestamo, fechaMultas) : 0;
+    }
+
+    /**
+     * Cuenta un préstamo recién registrado que ya vencía antes de la última acumulación
+     * de multas, y suma la multa de esos días como si hubiera estado en las acumulaciones;
+     * así la devolución lo trata igual que a los demás. El llamador debe tener bloqueada
+     * la franja del usuario.
+     * @param prestamo Préstamo recién agregado a los activos
+     */
+    private void agregarVencido(Prestamo prestamo) {
+        long multados = diasMultados(prestamo);
+        if (multados > 0) {
+            Usuario usuario = prestamo.getUsuario();
+            vencidos.computeIfAbsent(usuario.numero, numero -> new Vencidos(usuario)).cantidad++;
+            sumarMulta(usuario, multados * MULTA_POR_DIA);
+        }
+    }
+
+    /**
+     * Vuelve a contar, por usuario, los préstamos activos vencidos antes de la última
+     * acumulación de multas. Recorre solo los vencidos, con el índice por fecha límite.
+     * El llamador debe tener el cerrojo de escritura (o estar en el constructor).
+     */
+    private void contarVencidos() {
+        vencidos.clear();
+        if (fechaMultas == null) {
+            return;
+        }
+        ArrayList<Prestamo> vencidosAntes = new ArrayList<>();
+        prestamos.vencimientos(null, fechaMultas, vencidosAntes);
+        for (Prestamo prestamo : vencidosAntes) {
+            Usuario usuario = prestamo.getUsuario();
+            vencidos.computeIfAbsent(usuario.numero, numero -> new Vencidos(usuario)).cantidad++;
+        }
+    }
+
+    /**
+     * Suma las multas de los préstamos vencidos hasta una fecha, pensado para ejecutarse
+     * una vez por día (ver programarMultas). Cada préstamo vencido suma un día de multa
+     * por cada día transcurrido desde la acumulación anterior. Solo se recorren los
+     * préstamos que vencieron desde entonces; los que ya estaban vencidos se cuentan por
+     * usuario, y cada usuario recibe una sola suma con el total.
+     * @param fecha Fecha hasta la que se acumulan las multas
+     * @return true si se acumularon, false si la fecha no es posterior a la última acumulación
+     */
+    public boolean acumularMultas(LocalDate fecha) {
+        escritura.lock();
+        try {
+            if (fecha == null || fechaMultas != null && !fecha.isAfter(fechaMultas)) {
+                return false;
+            }
+            long dia = fecha.toEpochDay();
+            if (fechaMultas != null) {
+                long transcurridos = dia - fechaMultas.toEpochDay();
+                for (Vencidos delUsuario : vencidos.values()) {
+                    delUsuario.diasPendientes = delUsuario.cantidad * transcurridos;
+                }
+            }
+            ArrayList<Prestamo> nuevos = new ArrayList<>();
+            prestamos.vencimientos(fechaMultas, fecha, nuevos);
+            for (Prestamo prestamo : nuevos) {
+                Usuario usuario = prestamo.getUsuario();
+                Vencidos delUsuario = vencidos.computeIfAbsent(usuario.numero, numero -> new Vencidos(usuario));
+                delUsuario.cantidad++;
+                delUsuario.diasPendientes += dia - prestamo.getFechaDevolucion().toEpochDay();
+            }
+            int multados = 0;
+            for (Vencidos delUsuario : vencidos.values()) {
+                if (delUsuario.diasPendientes > 0) {
+                    sumarMulta(delUsuario.usuario, delUsuario.diasPendientes * MULTA_POR_DIA);
+                    delUsuario.diasPendientes = 0;
+                    multados++;
+                }
+            }
+            fechaMultas = fecha;
+            prestamos.setFechaMultas(fecha);
+            Diario.Codificador registro = registro(DIARIO_MULTAS_ACUMULADAS);
+            if (registro != null) {
+                agregarAlDiario(registro.fecha(fecha));
+            }
+            if (cambios.tieneSuscripciones()) {
+                cambios.publicar(TipoCambio.MULTAS_ACUMULADAS, null, null, null, fecha, null, 0, multados);
+            }
+            return true;
+        } finally {
+            escritura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    /**
+     * Obtiene la fecha de la última acumulación de multas.
+     * @return Fecha, o null si nunca se acumularon
+     */
+    public LocalDate getFechaMultas() {
+        lectura.lock();
+        try {
+            return fechaMultas;
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene los préstamos activos vencidos a una fecha, en orden de fecha límite.
+     * Usa el índice por fecha límite, sin recorrer los préstamos que no vencieron.
+     * @param fecha Fecha de referencia: se incluyen los préstamos cuya fecha límite es anterior
+     * @return Lista de préstamos vencidos
+     */
+    public ArrayList<Prestamo> prestamosVencidos(LocalDate fecha) {
+        ArrayList<Prestamo> vencidosAFecha = new ArrayList<>();
+        lectura.lock();
+        try {
+            prestamos.vencimientos(null, fecha, vencidosAFecha);
+        } finally {
+            lectura.unlock();
+        }
+        return vencidosAFecha;
+    }
+
+    /**
+     * Obtiene una página de los préstamos activos vencidos a una fecha, en orden de fecha
+     * límite y, a igual fecha, de registro. El cursor guarda la fecha límite y el
+     * identificador del último préstamo, así cada página se busca en el índice por fecha
+     * límite sin importar cuántas páginas la preceden.
+     * @param fecha Fecha de referencia: se incluyen los préstamos cuya fecha límite es anterior
+     * @param cursor Cursor de la página anterior con la misma fecha, o null para la primera
+     * @param cantidad Cantidad máxima de préstamos por página (mayor que 0)
+     * @return Página de préstamos, o null si el cursor no es de este listado o la cantidad no es válida
+     */
+    public Pagina<Prestamo> paginaPrestamosVencidos(LocalDate fecha, String cursor, int cantidad) {
+        String consulta = fecha.toString();
+        LocalDate despuesDeFecha = null;
+        long despuesDeId = 0;
+        if (cursor != null) {
+            String clave = Pagina.clave(cursor, Pagina.PRESTAMOS_VENCIDOS, consulta);
+            despuesDeId = Pagina.posicion(cursor, Pagina.PRESTAMOS_VENCIDOS, consulta);
+            if (clave == null || despuesDeId < 0) {
+                return null;
+            }
+            try {
+                despuesDeFecha = LocalDate.parse(clave);
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+        if (cantidad <= 0) {
+            return null;
+        }
+        ArrayList<Prestamo> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            String siguiente = null;
+            if (prestamos.paginaVencimientos(fecha, despuesDeFecha, despuesDeId, cantidad, elementos)) {
+                Prestamo ultimo = elementos.get(elementos.size() - 1);
+                siguiente = Pagina.cursor(Pagina.PRESTAMOS_VENCIDOS, consulta,
+                        ultimo.getFechaDevolucion().toString(), ultimo.id);
+            }
+            return new Pagina<>(elementos, siguiente);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Préstamos asignados y reservas canceladas por una operación, que se avisan
+     * después de soltar los cerrojos.
+     */
+    private static final class Avisos {
+        final ArrayList<Prestamo> asignados = new ArrayList<>(1);
+        final ArrayList<Reserva> canceladas = new ArrayList<>(0);
+    }
+
+    /**
+     * Préstamos activos de un usuario que ya estaban vencidos en la última acumulación
+     * de multas. Se modifica con la franja del usuario bloqueada o con el cerrojo de escritura.
+     */
+    private static final class Vencidos {
+        final Usuario usuario;
+        int cantidad;
+        long diasPendientes; // Días de multa de la acumulación en curso
+
+        /**
+         * Constructor para los vencidos de un usuario.
+         * @param usuario Usuario de los préstamos
+         */
+        Vencidos(Usuario usuario) {
+            this.usuario = usuario;
+        }
+    }
+
+    /**
+     * Busca un préstamo activo por ISBN e identificación de usuario.
+     * @param isbn ISBN del libro prestado
+     * @param identificacion Identificación del usuario
+     * @return Préstamo activo o null si no se encuentra
+     */
+    public Prestamo buscarPrestamoActivo(String isbn, String identificacion) {
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            Usuario usuario = usuarioPorId(identificacion);
+            if (libro == null || usuario == null) {
+                return null;
+            }
+            return prestamos.buscarActivo(libro, usuario);
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página de los préstamos activos, en orden de registro.
+     * @param cursor Cursor de la página anterior, o null para la primera
+     * @param cantidad Cantidad máxima de préstamos por página (mayor que 0)
+     * @return Página de préstamos, o null si el cursor no es de este listado o la cantidad no es válida
+     */
+    public Pagina<Prestamo> paginaPrestamos(String cursor, int cantidad) {
+        long desde = Pagina.posicion(cursor, Pagina.PRESTAMOS, null);
+        if (desde < 0 || cantidad <= 0) {
+            return null;
+        }
+        ArrayList<Prestamo> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            long siguiente = prestamos.pagina(desde, cantidad, elementos);
+            return new Pagina<>(elementos, Pagina.cursor(Pagina.PRESTAMOS, null, siguiente));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Obtiene una página de los préstamos activos de un usuario, en orden de registro.
+     * @param identificacion Identificación del usuario
+     * @param cursor Cursor de la página anterior del mismo usuario, o null para la primera
+     * @param cantidad Cantidad máxima de préstamos por página (mayor que 0)
+     * @return Página de préstamos, o null si el usuario no existe, el cursor no es de
+     *         este listado o la cantidad no es válida
+     */
+    public Pagina<Prestamo> paginaPrestamosDeUsuario(String identificacion, String cursor, int cantidad) {
+        long desde = Pagina.posicion(cursor, Pagina.PRESTAMOS_DE_USUARIO, identificacion);
+        if (desde < 0 || cantidad <= 0) {
+            return null;
+        }
+        ArrayList<Prestamo> elementos = new ArrayList<>(cantidad);
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            if (usuario == null) {
+                return null;
+            }
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                long siguiente = prestamos.paginaDelUsuario(usuario, desde, cantidad, elementos);
+                return new Pagina<>(elementos, Pagina.cursor(Pagina.PRESTAMOS_DE_USUARIO, identificacion, siguiente));
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Busca en el historial los préstamos ya devueltos por un usuario, aunque haya
+     * cambiado de identificación desde entonces.
+     * @param identificacion Identificación actual del usuario, o la última que tuvo si se eliminó
+     * @param desde Primera fecha de devolución a incluir, o null para no acotar
+     * @param hasta Última fecha de devolución a incluir, o null para no acotar
+     * @return Préstamos archivados, de los meses más antiguos a los más recientes
+     */
+    public ArrayList<PrestamoArchivado> historialDeUsuario(String identificacion, LocalDate desde, LocalDate hasta) {
+        if (identificacion == null) {
+            return new ArrayList<>();
+        }
+        int numero;
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            numero = usuario != null ? usuario.numero : historial.numeroDeUsuario(identificacion);
+        } finally {
+            lectura.unlock();
+        }
+        return numero > 0 ? historial.buscar(-1, numero, desde, hasta) : new ArrayList<>();
+    }
+
+    /**
+     * Busca en el historial los préstamos ya devueltos de un libro, aunque haya cambiado
+     * de ISBN desde entonces. El ISBN puede escribirse con o sin guiones, en formato
+     * ISBN-10 o ISBN-13.
+     * @param isbn ISBN actual del libro, o el último que tuvo si se eliminó
+     * @param desde Primera fecha de devolución a incluir, o null para no acotar
+     * @param hasta Última fecha de devolución a incluir, o null para no acotar
+     * @return Préstamos archivados, de los meses más antiguos a los más recientes
+     */
+    public ArrayList<PrestamoArchivado> historialDeLibro(String isbn, LocalDate desde, LocalDate hasta) {
+        if (isbn == null) {
+            return new ArrayList<>();
+        }
+        int numero;
+        lectura.lock();
+        try {
+            Libro libro = libroPorIsbn(isbn);
+            numero = libro != null ? libro.numero : historial.numeroDeLibro(isbn);
+        } finally {
+            lectura.unlock();
+        }
+        return numero > 0 ? historial.buscar(numero, -1, desde, hasta) : new ArrayList<>();
+    }
+
+    /**
+     * Busca en el historial los préstamos devueltos en un rango de fechas, por
+     * ejemplo para estadísticas de circulación.
+     * @param desde Primera fecha de devolución a incluir, o null para no acotar
+     * @param hasta Última fecha de devolución a incluir, o null para no acotar
+     * @return Préstamos archivados, de los meses más antiguos a los más recientes
+     */
+    public ArrayList<PrestamoArchivado> historialEntre(LocalDate desde, LocalDate hasta) {
+        return historial.buscar(-1, -1, desde, hasta);
+    }
+
+    /**
+     * Obtiene la lista de libros prestados a un usuario.
+     * @param identificacion Identificación del usuario
+     * @return Lista de libros prestados al usuario
+     */
+    public ArrayList<Libro> obtenerLibrosPrestadosPorUsuario(String identificacion) {
+        ArrayList<Libro> librosPrestados = new ArrayList<>();
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            if (usuario != null) {
+                int franjaUsuario = franjas.franja(usuario.numero, true);
+                franjas.bloquear(franjaUsuario);
+                try {
+                    for (Prestamo prestamo : prestamos.delUsuario(usuario)) {
+                        librosPrestados.add(prestamo.getLibro());
+                    }
+                } finally {
+                    franjas.desbloquear(franjaUsuario);
+                }
+            }
+        } finally {
+            lectura.unlock();
+        }
+        return librosPrestados;
+    }
+
+    /**
+     * Calcula la multa por retraso en la devolución de un libro, sin contar los días
+     * que ya se sumaron a la multa del usuario en las acumulaciones de multas.
+     * @param isbn ISBN del libro
+     * @param identificacion Identificación del usuario
+     * @param fechaDevolucionReal Fecha real de devolución
+     * @return Monto de la multa (0 si no hay retraso)
+     */
+    public double calcularMulta(String isbn, String identificacion, LocalDate fechaDevolucionReal) {
+        lectura.lock();
+        try {
+            Prestamo prestamo = buscarPrestamoActivo(isbn, identificacion);
+            if (prestamo == null) {
+                return 0.0;
+            }
+            long dias = diasRetraso(prestamo, fechaDevolucionReal) - diasMultados(prestamo);
+            return Math.max(0, dias) * MULTA_POR_DIA; // $1000 por día de retraso
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    /**
+     * Registra una multa a un usuario.
+     * @param identificacion Identificación del usuario
+     * @param monto Monto de la multa (debe ser positivo y finito)
+     * @return true si se registró correctamente, false si no se encontró el usuario o el monto no es válido
+     */
+    public boolean registrarMulta(String identificacion, double monto) {
+        if (!montoValido(monto)) {
+            return false;
+        }
+        return modificarMulta(identificacion, monto);
+    }
+
+    /**
+     * Registra el pago de una multa por parte de un usuario.
+     * @param identificacion Identificación del usuario
+     * @param monto Monto a pagar (debe ser positivo y finito)
+     * @return true si se registró el pago, false si no se encontró el usuario o el monto no es válido
+     */
+    public boolean pagarMulta(String identificacion, double monto) {
+        if (!montoValido(monto)) {
+            return false;
+        }
+        return modificarMulta(identificacion, -monto);
+    }
+
+    /**
+     * Indica si un monto de multa o de pago es válido: NaN o infinito quedarían
+     * guardados en la multa y en el diario, y anularían la comprobación de prestarLibro.
+     * @param monto Monto a comprobar
+     * @return true si es finito y positivo
+     */
+    static boolean montoValido(double monto) {
+        return Double.isFinite(monto) && monto > 0;
+    }
+
+    /**
+     * Suma o descuenta un monto de la multa de un usuario con su franja bloqueada,
+     * para que no se cruce con la comprobación de multas de prestarLibro.
+     * @param identificacion Identificación del usuario
+     * @param monto Monto a sumar (negativo para registrar un pago)
+     * @return true si se encontró el usuario y el monto es finito
+     */
+    private boolean modificarMulta(String identificacion, double monto) {
+        if (!Double.isFinite(monto)) {
+            return false; // Un registro del diario escrito antes de validar el monto
+        }
+        lectura.lock();
+        try {
+            Usuario usuario = usuarioPorId(identificacion);
+            if (usuario == null) {
+                return false;
+            }
+            int franjaUsuario = franjas.franja(usuario.numero, true);
+            franjas.bloquear(franjaUsuario);
+            try {
+                sumarMulta(usuario, monto);
+                Diario.Codificador registro = registro(DIARIO_MULTA);
+                if (registro != null) {
+                    agregarAlDiario(registro.texto(identificacion).real(monto));
+                }
+                return true;
+            } finally {
+                franjas.desbloquear(franjaUsuario);
+            }
+        } finally {
+            lectura.unlock();
+            confirmarDiario();
+        }
+    }
+
+    // Flujo de cambios
+
+    /**
+     * Suscribe un consumidor a los cambios de la biblioteca publicados desde ahora.
+     * <p>
+     * Los cambios llegan en el orden en que se aplicaron, en un hilo propio de la
+     * suscripción y por lotes. Si el consumidor se atrasa una vuelta entera del anillo,
+     * las operaciones de la biblioteca esperan a que avance, con sus cerrojos tomados,
+     * así que no debe llamar a la biblioteca desde alCambiar. La espera dura como mucho
+     * dos segundos: después la suscripción se descarta y deja de recibir cambios.
+     * </p>
+     * @param consumidor Consumidor de los cambios
+     * @return Suscripción, para cancelarla
+     */
+    public FlujoCambios.Suscripcion suscribirCambios(FlujoCambios.Consumidor consumidor) {
+        return cambios.suscribir(consumidor);
+    }
+
+    /**
+     * Suma un monto a la multa de un usuario y publica lo que cambió realmente: un pago
+     * mayor que la deuda se publica por el monto de la deuda.
+     * El llamador debe tener bloqueada la franja del usuario o el cerrojo de escritura.
+     * @param usuario Usuario registrado
+     * @param monto Monto a sumar (negativo para descontar)
+     */
+    private void sumarMulta(Usuario usuario, double monto) {
+        double aplicado = usuarios.sumarMulta(usuario, monto);
+        if (cambios.tieneSuscripciones()) {
+            cambios.publicar(TipoCambio.MULTA, null, usuario.getIdentificacion(), null, null, null, aplicado, 0);
+        }
+    }
+
+    /**
+     * Publica un cambio de un libro con su ISBN y sus ejemplares disponibles.
+     * Sin suscripciones no lee el libro.
+     * @param tipo Tipo del cambio
+     * @param libro Libro afectado
+     */
+    private void publicarLibro(TipoCambio tipo, Libro libro) {
+        if (cambios.tieneSuscripciones()) {
+            cambios.publicar(tipo, libro.getIsbn(), null, null, null, null, 0, libro.getEjemplaresDisponibles());
+        }
+    }
+
+    /**
+     * Publica un préstamo, una devolución o una reserva asignada.
+     * Sin suscripciones no lee el préstamo.
+     * @param tipo Tipo del cambio
+     * @param prestamo Préstamo afectado
+     * @param fecha Fecha del préstamo o de la devolución
+     */
+    private void publicarPrestamo(TipoCambio tipo, Prestamo prestamo, LocalDate fecha) {
+        if (cambios.tieneSuscripciones()) {
+            cambios.publicar(tipo, prestamo.getLibro().getIsbn(), prestamo.getUsuario().getIdentificacion(), null,
+                    fecha, prestamo.getFechaDevolucion(), 0, 0);
+        }
+    }
+
+    /**
+     * Publica una reserva nueva o cancelada.
+     * Sin suscripciones no lee el libro ni el usuario.
+     * @param tipo Tipo del cambio
+     * @param libro Libro reservado
+     * @param usuario Usuario de la reserva
+     * @param fecha Fecha de la reserva, o null
+     */
+    private void publicarReserva(TipoCambio tipo, Libro libro, Usuario usuario, LocalDate fecha) {
+        if (cambios.tieneSuscripciones()) {
+            cambios.publicar(tipo, libro.getIsbn(), usuario.getIdentificacion(), null, fecha, null, 0, 0);
+        }
+    }
+
+    // Diario
+
+    /**
+     * Detiene la acumulación programada de multas, guarda un volcado del catálogo y
+     * cierra el diario después de volcar y sincronizar lo pendiente. Sin diario, detiene
+     * las tareas programadas y cierra el historial de préstamos devueltos. Las suscripciones
+     * al flujo de cambios terminan después de procesar lo ya publicado.
+     * @throws IOException Si falla el volcado o el cierre del diario
+     */
+    public void cerrar() throws IOException {
+        synchronized (cerrojoVolcados) {
+            if (multasProgramadas != null) {
+                multasProgramadas.shutdown();
+                multasProgramadas = null;
+            }
+        }
+        cambios.cerrar();
+        if (diario != null) {
+            synchronized (cerrojoVolcados) {
+                if (volcadosProgramados != null) {
+                    volcadosProgramados.shutdown(); // Un volcado en curso termina antes que el de cierre
+                    volcadosProgramados = null;
+                }
+            }
+            try {
+                guardarVolcado();
+            } finally {
+                try {
+                    diario.close();
+                } finally {
+                    historial.close();
+                }
+            }
+        } else {
+            historial.close();
+        }
+    }
+
+    /**
+     * Guarda un volcado del catálogo, para que el próximo arranque solo reproduzca
+     * el diario posterior a él. Las demás operaciones esperan mientras se escribe.
+     * @return true si se guardó, false si la biblioteca solo vive en memoria
+     * @throws IOException Si falla la escritura (el diario sigue siendo válido)
+     */
+    public boolean guardarVolcado() throws IOException {
+        if (diario == null) {
+            return false;
+        }
+        synchronized (cerrojoVolcados) {
+            long generacion;
+            escritura.lock();
+            try {
+                diario.sincronizar();
+                historial.sincronizar(generacionVolcado + 1);
+                LibrosEnMemoria librosEnMemoria = (LibrosEnMemoria) libros; // Con diario, los repositorios son en memoria
+                UsuariosEnMemoria usuariosEnMemoria = (UsuariosEnMemoria) usuarios;
+                Instantanea<Libro> registrados = libros.instantanea();
+                Instantanea<Usuario> usuariosRegistrados = usuarios.instantanea();
+                Instantanea<Prestamo> activos = prestamos.instantanea();
+                // Libros y usuarios eliminados que siguen en préstamos activos van al final
+                IdentityHashMap<Libro, Integer> librosSueltos = new IdentityHashMap<>();
+                IdentityHashMap<Usuario, Integer> usuariosSueltos = new IdentityHashMap<>();
+                List<Libro> volcadoLibros = registrados;
+                List<Usuario> volcadoUsuarios = usuariosRegistrados;
+                for (Prestamo prestamo : activos) {
+                    Libro libro = prestamo.getLibro();
+                    if (libro.biblioteca != this && !librosSueltos.containsKey(libro)) {
+                        if (volcadoLibros == registrados) {
+                            volcadoLibros = new ArrayList<>(registrados);
+                        }
+                        librosSueltos.put(libro, volcadoLibros.size());
+                        volcadoLibros.add(libro);
+                    }
+                    Usuario usuario = prestamo.getUsuario();
+                    if (usuario.biblioteca != this && !usuariosSueltos.containsKey(usuario)) {
+                        if (volcadoUsuarios == usuariosRegistrados) {
+                            volcadoUsuarios = new ArrayList<>(usuariosRegistrados);
+                        }
+                        usuariosSueltos.put(usuario, volcadoUsuarios.size());
+                        volcadoUsuarios.add(usuario);
+                    }
+                }
+                ArrayList<Reserva> enCola = new ArrayList<>(reservas.cantidad());
+                reservas.todas(enCola); // Solo hay reservas de libros y usuarios registrados
+                VolcadoCatalogo volcado = VolcadoCatalogo.escribir(archivoDiario, generacionVolcado + 1,
+                        diario.posicionAgregada(), diario.getIdentidad(), volcadoLibros, registrados.size(),
+                        volcadoUsuarios, usuariosRegistrados.size(), activos, fechaMultas, enCola,
+                        libro -> libro.biblioteca == this ? librosEnMemoria.posicion(libro) : librosSueltos.get(libro),
+                        usuario -> usuario.biblioteca == this
+                                ? usuariosEnMemoria.posicion(usuario) : usuariosSueltos.get(usuario),
+                        librosEnMemoria.ultimoNumero(), usuariosEnMemoria.ultimoNumero());
+                generacion = volcado.getGeneracion();
+                generacionVolcado = generacion;
+                for (int i = 0; i < volcadoLibros.size(); i++) {
+                    volcadoLibros.get(i).cambiarOrigen(volcado, i); // Libera el volcado anterior
+                }
+            } finally {
+                escritura.unlock();
+            }
+            VolcadoCatalogo.eliminarAnteriores(archivoDiario, generacion);
+            historial.eliminarMarcasAnteriores(generacion);
+            return true;
+        }
+    }
+
+    /**
+     * Guarda volcados del catálogo periódicamente en un hilo de fondo, hasta cerrar()
+     * la biblioteca. No hace nada si la biblioteca solo vive en memoria.
+     * @param intervalo Tiempo entre volcados (mayor que 0)
+     * @param unidad Unidad del intervalo
+     */
+    public void programarVolcados(long intervalo, TimeUnit unidad) {
+        if (diario == null || intervalo <= 0) {
+            return;
+        }
+        synchronized (cerrojoVolcados) {
+            if (volcadosProgramados == null) {
+                volcadosProgramados = Executors.newSingleThreadScheduledExecutor(tarea -> {
+                    Thread hilo = new Thread(tarea, "volcado-biblioteca");
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+                volcadosProgramados.scheduleWithFixedDelay(() -> {
+                    try {
+                        guardarVolcado();
+                    } catch (IOException | RuntimeException e) {
+                        System.out.println("No se pudo guardar el volcado del catálogo: " + e.getMessage());
+                    }
+                }, intervalo, intervalo, unidad);
+            }
+        }
+    }
+
+    /**
+     * Acumula las multas en un hilo de fondo: en seguida, por los días pendientes hasta
+     * hoy, y después cada medianoche, hasta cerrar() la biblioteca.
+     */
+    public void programarMultas() {
+        synchronized (cerrojoVolcados) {
+            if (multasProgramadas == null) {
+                multasProgramadas = Executors.newSingleThreadScheduledExecutor(tarea -> {
+                    Thread hilo = new Thread(tarea, "multas-biblioteca");
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+                Runnable acumular = () -> {
+                    try {
+                        acumularMultas(LocalDate.now());
+                    } catch (RuntimeException e) {
+                        System.out.println("No se pudieron acumular las multas: " + e.getMessage());
+                    }
+                };
+                long hastaMedianoche = Duration.between(LocalDateTime.now(),
+                        LocalDate.now().plusDays(1).atStartOfDay()).toMillis();
+                multasProgramadas.execute(acumular);
+                multasProgramadas.scheduleAtFixedRate(acumular, hastaMedianoche,
+                        TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Empieza un registro del diario con el codificador del hilo actual.
+     * @param tipo Tipo del registro
+     * @return Codificador listo para agregar los datos, o null si no hay diario
+     *         (o se está reproduciendo)
+     */
+    private Diario.Codificador registro(byte tipo) {
+        return diario == null ? null : CODIFICADORES.get().iniciar(tipo);
+    }
+
+    /**
+     * Agrega un registro al diario y deja su secuencia pendiente de confirmar.
+     * Se llama con los cerrojos de la operación tomados, para que el orden del diario
+     * sea el mismo en que se aplicaron los cambios.
+     * @param registro Registro codificado
+     */
+    private void agregarAlDiario(Diario.Codificador registro) {
+        secuenciaPendiente.get()[0] = diario.agregar(registro);
+    }
+
+    /**
+     * Espera la confirmación del último registro agregado por este hilo.
+     * Si el hilo aún tiene tomado el cerrojo de estructura (una operación anidada),
+     * la espera queda para cuando lo suelte la operación exterior.
+     */
+    private void confirmarDiario() {
+        if (diario == null || cerrojoEstructura.getReadHoldCount() > 0
+                || cerrojoEstructura.isWriteLockedByCurrentThread()) {
+            return;
+        }
+        long[] pendiente = secuenciaPendiente.get();
+        if (pendiente[0] != 0) {
+            long secuencia = pendiente[0];
+            pendiente[0] = 0;
+            diario.esperar(secuencia);
+        }
+    }
+
+    /**
+     * Codifica los datos de un libro, incluidos el total y los disponibles.
+     * @param registro Codificador del registro
+     * @param libro Libro a codificar
+     * @return El mismo codificador
+     */
+    private static Diario.Codificador codificarLibro(Diario.Codificador registro, Libro libro) {
+        return registro.texto(libro.getTitulo())
+                .texto(libro.getAutor())
+                .entero(libro.getAñoPublicacion())
+                .texto(libro.getIsbn())
+                .entero(libro.getEjemplaresTotales())
+                .entero(libro.getEjemplaresDisponibles());
+    }
+
+    /**
+     * Lee un libro codificado con codificarLibro.
+     * @param registro Lector del registro
+     * @return Libro nuevo, aún sin registrar
+     */
+    private static Libro leerLibro(Diario.Lector registro) {
+        String titulo = registro.texto();
+        String autor = registro.texto();
+        int año = registro.entero();
+        String isbn = registro.texto();
+        int total = registro.entero();
+        int disponibles = registro.entero();
+        Libro libro = new Libro(titulo, autor, año, isbn, total);
+        libro.ajustarExistencias(0, disponibles - total);
+        return libro;
+    }
+
+    /**
+     * Codifica los datos de un usuario, incluida su multa acumulada.
+     * @param registro Codificador del registro
+     * @param usuario Usuario a codificar
+     * @return El mismo codificador
+     */
+    private static Diario.Codificador codificarUsuario(Diario.Codificador registro, Usuario usuario) {
+        return registro.texto(usuario.getNombre())
+                .texto(usuario.getIdentificacion())
+                .texto(usuario.getTipoUsuario())
+                .real(usuario.getMultaAcumulada());
+    }
+
+    /**
+     * Lee un usuario codificado con codificarUsuario.
+     * @param registro Lector del registro
+     * @return Usuario nuevo, aún sin registrar
+     */
+    private static Usuario leerUsuario(Diario.Lector registro) {
+        String nombre = registro.texto();
+        String identificacion = registro.texto();
+        String tipo = registro.texto();
+        double multa = registro.real();
+        Usuario usuario = new Usuario(nombre, identificacion, tipo);
+        if (montoValido(multa)) {
+            usuario.agregarMulta(multa);
+        }
+        return usuario;
+    }
+
+    /**
+     * Codifica un préstamo por ISBN, identificación y fechas.
+     * @param registro Codificador del registro
+     * @param prestamo Préstamo a codificar
+     * @return El mismo codificador
+     */
+    private static Diario.Codificador codificarPrestamo(Diario.Codificador registro, Prestamo prestamo) {
+        return registro.texto(prestamo.getLibro().getIsbn())
+                .texto(prestamo.getUsuario().getIdentificacion())
+                .fecha(prestamo.getFechaPrestamo())
+                .fecha(prestamo.getFechaDevolucion());
+    }
+
+    /**
+     * Lee un préstamo del diario y lo enlaza con el libro y el usuario registrados.
+     * @param registro Lector del registro
+     * @return Préstamo, o null si el libro o el usuario ya no están registrados
+     */
+    private Prestamo leerPrestamo(Diario.Lector registro) {
+        Libro libro = libroPorIsbn(registro.texto());
+        Usuario usuario = usuarioPorId(registro.texto());
+        LocalDate fechaPrestamo = registro.fecha();
+        LocalDate fechaDevolucion = registro.fecha();
+        if (libro == null || usuario == null) {
+            return null;
+        }
+        return new Prestamo(usuario, libro, fechaPrestamo, fechaDevolucion);
+    }
+
+    /**
+     * Aplica un registro del diario durante la reproducción.
+     * Los registros describen cambios que ya se aceptaron, así que préstamos y
+     * devoluciones no vuelven a validarse: se aplican ajustando la disponibilidad del
+     * libro con sumas, que dan el mismo resultado aunque operaciones simultáneas sobre
+     * un mismo libro hayan quedado en otro orden en el diario.
+     * @param registro Lector del registro
+     */
+    private void aplicarRegistro(Diario.Lector registro) {
+        byte tipo = registro.tipo();
+        switch (tipo) {
+            case DIARIO_USUARIO_REGISTRADO:
+                registrarUsuario(leerUsuario(registro));
+                break;
+            case DIARIO_USUARIO_ELIMINADO:
+                eliminarUsuarioPorId(registro.texto());
+                break;
+            case DIARIO_USUARIO_ACTUALIZADO: {
+                Usuario usuario = usuarioPorId(registro.texto());
+                String nombre = registro.texto();
+                String tipoUsuario = registro.texto();
+                if (usuario != null) {
+                    usuario.setNombre(nombre);
+                    usuario.setTipoUsuario(tipoUsuario);
+                }
+                break;
+            }
+            case DIARIO_IDENTIFICACION_CAMBIADA: {
+                Usuario usuario = usuarioPorId(registro.texto());
+                String nuevaIdentificacion = registro.texto();
+                if (usuario != null) {
+                    usuario.setIdentificacion(nuevaIdentificacion);
+                }
+                break;
+            }
+            case DIARIO_LIBRO_AGREGADO:
+                agregarLibro(leerLibro(registro));
+                break;
+            case DIARIO_LIBRO_ELIMINADO:
+                eliminarLibroPorIsbn(registro.texto());
+                break;
+            case DIARIO_LIBRO_ACTUALIZADO: {
+                Libro libro = libroPorIsbn(registro.texto());
+                String titulo = registro.texto();
+                String autor = registro.texto();
+                int año = registro.entero();
+                int total = registro.entero();
+                if (libro != null) {
+                    if (!titulo.equals(libro.getTitulo())) {
+                        libro.setTitulo(titulo);
+                    }
+                    if (!autor.equals(libro.getAutor())) {
+                        libro.setAutor(autor);
+                    }
+                    libro.setAñoPublicacion(año);
+                    int diferencia = total - libro.getEjemplaresTotales();
+                    libro.ajustarExistencias(diferencia, diferencia);
+                }
+                break;
+            }
+            case DIARIO_ISBN_CAMBIADO: {
+                Libro libro = libroPorIsbn(registro.texto());
+                String nuevoIsbn = registro.texto();
+                if (libro != null) {
+                    libro.setIsbn(nuevoIsbn);
+                }
+                break;
+            }
+            case DIARIO_PRESTAMO: {
+                Prestamo prestamo = leerPrestamo(registro);
+                if (prestamo != null) {
+                    prestamo.getLibro().ajustarExistencias(0, -1);
+                    prestamos.agregar(prestamo);
+                    agregarVencido(prestamo);
+                }
+                break;
+            }
+            case DIARIO_DEVOLUCION: {
+                Libro libro = libroPorIsbn(registro.texto());
+                Usuario usuario = usuarioPorId(registro.texto());
+                LocalDate fechaDevolucion = registro.fecha();
+                Prestamo prestamo = libro != null && usuario != null ? prestamos.buscarActivo(libro, usuario) : null;
+                if (prestamo != null) {
+                    libro.ajustarExistencias(0, 1);
+                    cerrarPrestamo(prestamo, fechaDevolucion);
+                }
+                break;
+            }
+            case DIARIO_PRESTAMOS_LOTE: {
+                int cantidad = registro.entero();
+                for (int i = 0; i < cantidad; i++) {
+                    Prestamo prestamo = leerPrestamo(registro);
+                    if (prestamo != null) {
+                        prestamo.getLibro().ajustarExistencias(0, -1);
+                        prestamos.agregar(prestamo);
+                        agregarVencido(prestamo);
+                    }
+                }
+                break;
+            }
+            case DIARIO_DEVOLUCIONES_LOTE: {
+                LocalDate fechaDevolucion = registro.fecha();
+                int cantidad = registro.entero();
+                for (int i = 0; i < cantidad; i++) {
+                    Libro libro = libroPorIsbn(registro.texto());
+                    Usuario usuario = usuarioPorId(registro.texto());
+                    Prestamo prestamo = libro != null && usuario != null ? prestamos.buscarActivo(libro, usuario) : null;
+                    if (prestamo != null) {
+                        libro.ajustarExistencias(0, 1);
+                        cerrarPrestamo(prestamo, fechaDevolucion);
+                    }
+                }
+                break;
+            }
+            case DIARIO_RESERVA: {
+                Libro libro = libroPorIsbn(registro.texto());
+                Usuario usuario = usuarioPorId(registro.texto());
+                LocalDate fecha = registro.fecha();
+                if (libro != null && usuario != null) {
+                    reservas.agregar(new Reserva(libro, usuario, fecha));
+                }
+                break;
+            }
+            case DIARIO_RESERVA_CANCELADA: {
+                Libro libro = libroPorIsbn(registro.texto());
+                Usuario usuario = usuarioPorId(registro.texto());
+                Reserva reserva = libro != null && usuario != null ? reservas.buscar(libro, usuario) : null;
+                if (reserva != null) {
+                    reservas.quitar(reserva);
+                }
+                break;
+            }
+            case DIARIO_RESERVA_ASIGNADA: {
+                Prestamo prestamo = leerPrestamo(registro);
+                if (prestamo != null) {
+                    Reserva reserva = reservas.buscar(prestamo.getLibro(), prestamo.getUsuario());
+                    if (reserva != null) {
+                        reservas.quitar(reserva);
+                    }
+                    prestamo.getLibro().ajustarExistencias(0, -1);
+                    prestamos.agregar(prestamo);
+                    agregarVencido(prestamo);
+                }
+                break;
+            }
+            case DIARIO_MULTA:
+                modificarMulta(registro.texto(), registro.real());
+                break;
+            case DIARIO_MULTAS_ACUMULADAS:
+                acumularMultas(registro.fecha());
+                break;
+            case DIARIO_LIBROS_REEMPLAZADOS: {
+                int cantidad = registro.entero();
+                ArrayList<Libro> nuevos = new ArrayList<>(cantidad);
+                for (int i = 0; i < cantidad; i++) {
+                    nuevos.add(leerLibro(registro));
+                }
+                setLibros(nuevos);
+                break;
+            }
+            case DIARIO_USUARIOS_REEMPLAZADOS: {
+                int cantidad = registro.entero();
+                ArrayList<Usuario> nuevos = new ArrayList<>(cantidad);
+                for (int i = 0; i < cantidad; i++) {
+                    nuevos.add(leerUsuario(registro));
+                }
+                setUsuarios(nuevos);
+                break;
+            }
+            case DIARIO_LIBROS_AGREGADOS: {
+                int cantidad = registro.entero();
+                ArrayList<Libro> nuevos = new ArrayList<>(cantidad);
+                for (int i = 0; i < cantidad; i++) {
+                    nuevos.add(leerLibro(registro));
+                }
+                agregarLibros(nuevos);
+                break;
+            }
+            case DIARIO_PRESTAMOS_REEMPLAZADOS: {
+                int cantidad = registro.entero();
+                ArrayList<Prestamo> nuevos = new ArrayList<>(cantidad);
+                for (int i = 0; i < cantidad; i++) {
+                    Prestamo prestamo = leerPrestamo(registro);
+                    if (prestamo != null) {
+                        nuevos.add(prestamo);
+                    }
+                }
+                setPrestamos(nuevos);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Tipo de registro desconocido en el diario: " + tipo);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package Model;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto fijo de cerrojos repartidos por número de libro o de usuario.
+ * <p>
+ * Cada libro y cada usuario cae en una franja según su número interno, de modo que
+ * las operaciones sobre libros y usuarios distintos casi nunca compiten por el mismo
+ * cerrojo. Cada operación toma una sola franja a la vez, así que no hay orden que
+ * respetar entre franjas.
+ * </p>
+ */
+class CerrojosRayados {
+    private final ReentrantLock[] cerrojos;
+
+    /**
+     * Constructor que crea las franjas.
+     * @param cantidad Cantidad mínima de franjas (se redondea a una potencia de 2)
+     */
+    CerrojosRayados(int cantidad) {
+        int franjas = Integer.highestOneBit(Math.max(2, cantidad - 1)) << 1;
+        cerrojos = new ReentrantLock[franjas];
+        for (int i = 0; i < franjas; i++) {
+            cerrojos[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Calcula la franja que corresponde a un número interno.
+     * Los libros y los usuarios usan desplazamientos distintos para no coincidir por número.
+     * @param numero Número interno del libro o del usuario
+     * @param esUsuario true si el número es de un usuario
+     * @return Índice de la franja
+     */
+    int franja(int numero, boolean esUsuario) {
+        int h = (numero * 2 + (esUsuario ? 1 : 0)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (cerrojos.length - 1);
+    }
+
+    /**
+     * Bloquea una franja.
+     * @param franja Índice de la franja
+     */
+    void bloquear(int franja) {
+        cerrojos[franja].lock();
+    }
+
+    /**
+     * Desbloquea una franja.
+     * @param franja Índice de la franja
+     */
+    void desbloquear(int franja) {
+        cerrojos[franja].unlock();
+    }
+}
@@ -0,0 +1,283 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Colas de reservas de los libros, en orden de llegada.
+ * <p>
+ * Cada libro tiene una lista doblemente enlazada de reservas, así agregar al final,
+ * quitar la primera o cancelar una cualquiera cuestan O(1). Las colas se indexan por
+ * el número interno del libro y las reservas de cada usuario por el número interno del
+ * usuario; ninguno cambia aunque cambie el ISBN o la identificación. Todo se protege con
+ * el monitor de la cola, salvo tieneReservas: las colas vacías se quitan del mapa por
+ * libro, así que préstamos y devoluciones de libros sin reservas lo consultan sin el monitor.
+ * </p>
+ * <p>
+ * Cada reserva recibe un turno creciente dentro de su cola, y cada cola cuenta en un
+ * árbol de Fenwick las reservas vivas por turno: la posición de una reserva es la
+ * cantidad de turnos vivos hasta el suyo, en O(log n) aunque se cancelen reservas del
+ * medio. Cuando se acaban los turnos, la cola se renumera en O(n); como queda espacio
+ * para otras tantas reservas, el costo se reparte entre las que se agregan después.
+ * </p>
+ */
+class ColaReservas {
+    private final ConcurrentHashMap<Integer, Cola> porLibro = new ConcurrentHashMap<>();
+    private final HashMap<Integer, ArrayList<Reserva>> porUsuario = new HashMap<>();
+    private volatile int cantidad; // Se lee sin el monitor para saltar el mapa cuando no hay reservas
+
+    /**
+     * Extremos de la cola de un libro.
+     */
+    private static final class Cola {
+        Reserva primera;
+        Reserva ultima;
+        int cantidad;
+        int[] arbol; // Árbol de Fenwick de reservas vivas por turno, desde el índice 1
+        int turnos; // Último turno asignado
+
+        /**
+         * Da a una reserva el turno siguiente, antes de enlazarla al final de la cola.
+         * @param reserva Reserva que se va a agregar
+         */
+        void asignarTurno(Reserva reserva) {
+            if (arbol == null || turnos == arbol.length - 1) {
+                renumerar();
+            }
+            reserva.turno = ++turnos;
+            sumar(reserva.turno, 1);
+        }
+
+        /**
+         * Vuelve a numerar las reservas de la cola desde 1, en orden, y reconstruye el
+         * árbol con espacio para otras tantas.
+         */
+        void renumerar() {
+            int capacidad = Math.max(16, cantidad * 2);
+            arbol = new int[capacidad + 1];
+            turnos = 0;
+            for (Reserva reserva = primera; reserva != null; reserva = reserva.siguiente) {
+                reserva.turno = ++turnos;
+                arbol[turnos] = 1;
+            }
+            for (int i = 1; i <= capacidad; i++) {
+                int padre = i + (i & -i);
+                if (padre <= capacidad) {
+                    arbol[padre] += arbol[i];
+                }
+            }
+        }
+
+        /**
+         * Suma una cantidad a las reservas vivas de un turno.
+         * @param turno Turno desde 1
+         * @param cantidad 1 al agregar, -1 al quitar
+         */
+        void sumar(int turno, int cantidad) {
+            for (int i = turno; i < arbol.length; i += i & -i) {
+                arbol[i] += cantidad;
+            }
+        }
+
+        /**
+         * Cuenta las reservas vivas con turno menor o igual al dado.
+         * @param turno Turno desde 1
+         * @return Cantidad de reservas
+         */
+        int contarHasta(int turno) {
+            int total = 0;
+            for (int i = turno; i > 0; i -= i & -i) {
+                total += arbol[i];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Indica si un libro tiene reservas, sin tomar el monitor.
+     * @param libro Libro registrado
+     * @return true si alguien espera el libro
+     */
+    boolean tieneReservas(Libro libro) {
+        return cantidad != 0 && porLibro.containsKey(libro.numero);
+    }
+
+    /**
+     * Obtiene la cantidad total de reservas.
+     * @return Cantidad de reservas
+     */
+    int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Agrega una reserva al final de la cola de su libro.
+     * @param reserva Reserva que no está en ninguna cola
+     */
+    synchronized void agregar(Reserva reserva) {
+        Cola cola = porLibro.computeIfAbsent(reserva.getLibro().numero, numero -> new Cola());
+        cola.asignarTurno(reserva);
+        reserva.anterior = cola.ultima;
+        reserva.siguiente = null;
+        if (cola.ultima != null) {
+            cola.ultima.siguiente = reserva;
+        } else {
+            cola.primera = reserva;
+        }
+        cola.ultima = reserva;
+        cola.cantidad++;
+        reserva.enCola = true;
+        porUsuario.computeIfAbsent(reserva.getUsuario().numero, numero -> new ArrayList<>(2)).add(reserva);
+        cantidad++;
+    }
+
+    /**
+     * Quita una reserva de la cola de su libro y de las reservas de su usuario.
+     * @param reserva Reserva a quitar
+     * @return true si se quitó, false si ya no estaba en la cola
+     */
+    synchronized boolean quitar(Reserva reserva) {
+        if (!reserva.enCola) {
+            return false;
+        }
+        int numeroLibro = reserva.getLibro().numero;
+        Cola cola = porLibro.get(numeroLibro);
+        cola.sumar(reserva.turno, -1);
+        if (reserva.anterior != null) {
+            reserva.anterior.siguiente = reserva.siguiente;
+        } else {
+            cola.primera = reserva.siguiente;
+        }
+        if (reserva.siguiente != null) {
+            reserva.siguiente.anterior = reserva.anterior;
+        } else {
+            cola.ultima = reserva.anterior;
+        }
+        reserva.anterior = null;
+        reserva.siguiente = null;
+        reserva.enCola = false;
+        if (--cola.cantidad == 0) {
+            porLibro.remove(numeroLibro);
+        }
+        int numeroUsuario = reserva.getUsuario().numero;
+        ArrayList<Reserva> delUsuario = porUsuario.get(numeroUsuario);
+        delUsuario.remove(reserva);
+        if (delUsuario.isEmpty()) {
+            porUsuario.remove(numeroUsuario);
+        }
+        cantidad--;
+        return true;
+    }
+
+    /**
+     * Obtiene la primera reserva de un libro, sin quitarla.
+     * @param libro Libro registrado
+     * @return Primera reserva, o null si no tiene
+     */
+    synchronized Reserva primera(Libro libro) {
+        Cola cola = porLibro.get(libro.numero);
+        return cola != null ? cola.primera : null;
+    }
+
+    /**
+     * Busca la reserva de un usuario para un libro.
+     * @param libro Libro registrado
+     * @param usuario Usuario registrado
+     * @return Reserva, o null si el usuario no reservó el libro
+     */
+    synchronized Reserva buscar(Libro libro, Usuario usuario) {
+        ArrayList<Reserva> delUsuario = porUsuario.get(usuario.numero);
+        if (delUsuario != null) {
+            for (Reserva reserva : delUsuario) {
+                if (reserva.getLibro().numero == libro.numero) {
+                    return reserva;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene las reservas de un usuario, en el orden en que las hizo.
+     * @param usuario Usuario registrado
+     * @return Copia de las reservas del usuario
+     */
+    synchronized ArrayList<Reserva> delUsuario(Usuario usuario) {
+        ArrayList<Reserva> delUsuario = porUsuario.get(usuario.numero);
+        return delUsuario != null ? new ArrayList<>(delUsuario) : new ArrayList<>(0);
+    }
+
+    /**
+     * Obtiene la cantidad de reservas de un libro.
+     * @param libro Libro registrado
+     * @return Cantidad de reservas en su cola
+     */
+    synchronized int cantidad(Libro libro) {
+        Cola cola = porLibro.get(libro.numero);
+        return cola != null ? cola.cantidad : 0;
+    }
+
+    /**
+     * Calcula la posición de una reserva en la cola de su libro, contando los turnos vivos hasta el suyo.
+     * @param reserva Reserva
+     * @return Posición desde 1, o -1 si ya no está en la cola
+     */
+    synchronized int posicion(Reserva reserva) {
+        if (!reserva.enCola) {
+            return -1;
+        }
+        return porLibro.get(reserva.getLibro().numero).contarHasta(reserva.turno);
+    }
+
+    /**
+     * Quita todas las reservas de un libro.
+     * @param libro Libro eliminado
+     */
+    synchronized void quitarDeLibro(Libro libro) {
+        Cola cola = porLibro.get(libro.numero);
+        while (cola != null && cola.primera != null) {
+            quitar(cola.primera);
+        }
+    }
+
+    /**
+     * Quita todas las reservas de un usuario.
+     * @param usuario Usuario eliminado
+     */
+    synchronized void quitarDeUsuario(Usuario usuario) {
+        ArrayList<Reserva> delUsuario = porUsuario.get(usuario.numero);
+        if (delUsuario != null) {
+            for (Reserva reserva : new ArrayList<>(delUsuario)) {
+                quitar(reserva);
+            }
+        }
+    }
+
+    /**
+     * Quita todas las reservas.
+     */
+    synchronized void vaciar() {
+        for (Cola cola : porLibro.values()) {
+            for (Reserva reserva = cola.primera; reserva != null; reserva = reserva.siguiente) {
+                reserva.enCola = false;
+            }
+        }
+        porLibro.clear();
+        porUsuario.clear();
+        cantidad = 0;
+    }
+
+    /**
+     * Agrega a destino todas las reservas, cada cola en su orden.
+     * @param destino Lista a la que se agregan las reservas
+     */
+    synchronized void todas(List<Reserva> destino) {
+        for (Cola cola : porLibro.values()) {
+            for (Reserva reserva = cola.primera; reserva != null; reserva = reserva.siguiente) {
+                destino.add(reserva);
+            }
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package Model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Datos de los libros guardados fuera del heap, en columnas.
+ * <p>
+ * Cada campo de los libros es una columna de búferes directos divididos en bloques de
+ * filas: clave del ISBN, existencias (total y disponibles en un solo long, para
+ * cambiarlos con compare-and-set como en Libro), número, año y código del autor (ver
+ * Diccionario) como int, y para cada texto (título, título plegado e ISBN) una
+ * referencia a un montón de textos.
+ * El montón guarda cada texto en UTF-8 precedido de su largo, en bloques directos; un
+ * texto reemplazado deja sus bytes sin usar hasta la próxima compactación.
+ * </p>
+ * <p>
+ * Cada libro tiene una fila lógica que no cambia ni se reutiliza, así que una vista de
+ * libro (un Libro con columnas y fila) sigue siendo válida mientras exista. La fila
+ * lógica apunta a una fila física del almacenamiento. Compactar copia a un
+ * almacenamiento nuevo solo las filas de libros registrados y sus textos vigentes: de
+ * un libro eliminado queda solo su entrada en la tabla de ubicaciones.
+ * </p>
+ * <p>
+ * Agregar, eliminar, cambiar textos, ISBN o autor y compactar debe serializarse
+ * (LibrosEnColumnas lo hace con el cerrojo de escritura de la biblioteca). Las
+ * existencias y el año pueden cambiarse desde cualquier hilo, también durante una
+ * compactación: al copiarlos, compactar deja una marca en la fila vieja y quien la
+ * encuentra sigue al almacenamiento nuevo.
+ * </p>
+ */
+class ColumnasLibros {
+    // Columnas
+    static final int CLAVE = 0;
+    static final int EXISTENCIAS = 1;
+    static final int NUMERO = 2;
+    static final int AÑO = 3;
+    static final int AUTOR = 4;
+    static final int TITULO = 5;
+    static final int TITULO_PLEGADO = 6;
+    static final int ISBN = 7;
+    private static final int[] ANCHOS = {8, 8, 4, 4, 4, 8, 8, 8}; // Bytes por fila de cada columna
+    private static final int[] TEXTOS = {TITULO, TITULO_PLEGADO, ISBN};
+    private static final int BYTES_POR_FILA = 52;
+
+    private static final int BITS_BLOQUE = 16;
+    private static final int FILAS_POR_BLOQUE = 1 << BITS_BLOQUE;
+    private static final int MASCARA_BLOQUE = FILAS_POR_BLOQUE - 1;
+    private static final int TAMAÑO_BLOQUE_TEXTO = 16 << 20;
+    private static final long SIN_TEXTO = -1L; // Referencia de un texto nulo
+    private static final int ELIMINADA = -1; // Ubicación de un libro eliminado que ya no ocupa fila física
+    private static final long EXISTENCIAS_MOVIDAS = Long.MIN_VALUE; // Marca de una fila ya copiada al compactar
+    private static final int AÑO_MOVIDO = Integer.MIN_VALUE; // Marca de una fila ya copiada al compactar
+    private static final int FILAS_MINIMAS_COMPACTAR = 64;
+    private static final long TEXTO_MINIMO_COMPACTAR = 1 << 20;
+
+    private static final VarHandle LARGOS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle ENTEROS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Almacenamiento físico de las columnas y del montón de textos. Compactar crea uno
+     * nuevo y deja en el viejo una referencia a él.
+     */
+    private static final class Almacen {
+        private volatile ByteBuffer[][] bloques = new ByteBuffer[0][]; // Bloque de filas -> columna -> búfer
+        private volatile ByteBuffer[] bloquesTexto = new ByteBuffer[0]; // Montón de textos
+        private volatile int[] ubicaciones; // Fila lógica -> fila física, o ELIMINADA
+        private volatile Almacen siguiente; // Almacenamiento al que compactar copió las filas
+        private int filas; // Filas físicas ocupadas
+        private int usadoTexto; // Bytes ocupados en el último bloque de texto
+        private long bytesTexto; // Bytes ocupados en el montón, vigentes o no
+
+        /**
+         * Constructor de un almacenamiento vacío.
+         * @param filasLogicas Capacidad inicial de la tabla de ubicaciones
+         */
+        private Almacen(int filasLogicas) {
+            ubicaciones = new int[Math.max(16, filasLogicas)];
+        }
+
+        /**
+         * Obtiene el búfer de una columna que contiene una fila física.
+         * @param fisica Fila física
+         * @param columna Columna
+         * @return Búfer del bloque de la fila
+         */
+        private ByteBuffer columna(int fisica, int columna) {
+            return bloques[fisica >>> BITS_BLOQUE][columna];
+        }
+
+        /**
+         * Ocupa la siguiente fila física, reservando un bloque nuevo si hace falta.
+         * @return Fila física ocupada
+         */
+        private int ocuparFila() {
+            int fisica = filas;
+            if ((fisica & MASCARA_BLOQUE) == 0) {
+                ByteBuffer[][] nuevos = Arrays.copyOf(bloques, bloques.length + 1);
+                nuevos[bloques.length] = new ByteBuffer[ANCHOS.length];
+                for (int columna = 0; columna < ANCHOS.length; columna++) {
+                    nuevos[bloques.length][columna] = ByteBuffer.allocateDirect(FILAS_POR_BLOQUE * ANCHOS[columna] + 7)
+                            .alignedSlice(8).order(ByteOrder.nativeOrder());
+                }
+                bloques = nuevos;
+            }
+            filas = fisica + 1;
+            return fisica;
+        }
+
+        /**
+         * Hace que una fila lógica apunte a una fila física, agrandando la tabla si hace falta.
+         * @param fila Fila lógica
+         * @param fisica Fila física, o ELIMINADA
+         */
+        private void ubicar(int fila, int fisica) {
+            int[] actuales = ubicaciones;
+            if (fila == actuales.length) {
+                actuales = Arrays.copyOf(actuales, actuales.length * 2);
+                actuales[fila] = fisica;
+                ubicaciones = actuales;
+            } else {
+                actuales[fila] = fisica;
+            }
+        }
+
+        /**
+         * Agrega un texto al montón.
+         * @param bytes Texto en UTF-8 (puede ser nulo)
+         * @return Referencia al texto: bloque en los 32 bits altos, posición en los bajos
+         */
+        private long guardarTexto(byte[] bytes) {
+            if (bytes == null) {
+                return SIN_TEXTO;
+            }
+            int necesario = 4 + bytes.length;
+            ByteBuffer[] actuales = bloquesTexto;
+            if (actuales.length == 0 || usadoTexto + necesario > actuales[actuales.length - 1].capacity()) {
+                actuales = Arrays.copyOf(actuales, actuales.length + 1);
+                actuales[actuales.length - 1] = ByteBuffer.allocateDirect(Math.max(TAMAÑO_BLOQUE_TEXTO, necesario));
+                usadoTexto = 0;
+                bloquesTexto = actuales;
+            }
+            ByteBuffer bloque = actuales[actuales.length - 1];
+            int posicion = usadoTexto;
+            bloque.putInt(posicion, bytes.length);
+            bloque.put(posicion + 4, bytes);
+            usadoTexto += necesario;
+            bytesTexto += necesario;
+            return ((long) (actuales.length - 1) << 32) | posicion;
+        }
+
+        /**
+         * Lee un texto del montón sin decodificarlo.
+         * @param referencia Referencia devuelta por guardarTexto
+         * @return Texto en UTF-8, o null si la referencia es de un texto nulo
+         */
+        private byte[] bytesTexto(long referencia) {
+            if (referencia == SIN_TEXTO) {
+                return null;
+            }
+            ByteBuffer bloque = bloquesTexto[(int) (referencia >>> 32)];
+            int posicion = (int) referencia;
+            byte[] bytes = new byte[bloque.getInt(posicion)];
+            bloque.get(posicion + 4, bytes);
+            return bytes;
+        }
+
+        /**
+         * Obtiene los bytes que ocupa un texto en el montón.
+         * @param referencia Referencia devuelta por guardarTexto
+         * @return Bytes ocupados, largo incluido, o 0 si es un texto nulo
+         */
+        private int largoTexto(long referencia) {
+            if (referencia == SIN_TEXTO) {
+                return 0;
+            }
+            return 4 + bloquesTexto[(int) (referencia >>> 32)].getInt((int) referencia);
+        }
+    }
+
+    private volatile Almacen almacen = new Almacen(16);
+    private int filas; // Filas lógicas
+    private int eliminadas; // Filas físicas de libros eliminados, hasta la próxima compactación
+    private long textoDescartado; // Bytes del montón de textos reemplazados o de libros eliminados
+
+    /**
+     * Obtiene la cantidad de filas lógicas, incluidas las de libros eliminados.
+     * @return Cantidad de filas
+     */
+    int filas() {
+        return filas;
+    }
+
+    /**
+     * Agrega una fila con los datos de un libro.
+     * @param libro Libro del que se copian los datos
+     * @param numero Número interno del libro
+     * @return Fila lógica agregada
+     */
+    int agregar(Libro libro, int numero) {
+        Almacen actual = almacen;
+        int fisica = actual.ocuparFila();
+        int posicion8 = posicion(fisica, 8);
+        int posicion4 = posicion(fisica, 4);
+        actual.columna(fisica, CLAVE).putLong(posicion8, libro.claveIsbn);
+        LARGOS.setVolatile(actual.columna(fisica, EXISTENCIAS), posicion8,
+                ((long) libro.getEjemplaresTotales() << 32) | (libro.getEjemplaresDisponibles() & 0xFFFFFFFFL));
+        actual.columna(fisica, NUMERO).putInt(posicion4, numero);
+        ENTEROS.setVolatile(actual.columna(fisica, AÑO), posicion4, libro.getAñoPublicacion());
+        actual.columna(fisica, AUTOR).putInt(posicion4, libro.codigoAutor());
+        LARGOS.setVolatile(actual.columna(fisica, TITULO), posicion8, actual.guardarTexto(utf8(libro.getTitulo())));
+        LARGOS.setVolatile(actual.columna(fisica, TITULO_PLEGADO), posicion8,
+                actual.guardarTexto(utf8(libro.tituloPlegado())));
+        LARGOS.setVolatile(actual.columna(fisica, ISBN), posicion8, actual.guardarTexto(utf8(libro.getIsbn())));
+        int fila = filas;
+        actual.ubicar(fila, fisica);
+        filas = fila + 1;
+        return fila;
+    }
+
+    /**
+     * Codifica un texto en UTF-8.
+     * @param texto Texto (puede ser nulo)
+     * @return Bytes, o null si el texto es nulo
+     */
+    private static byte[] utf8(String texto) {
+        return texto != null ? texto.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Calcula la posición de una fila física dentro del búfer de su bloque.
+     * @param fisica Fila física
+     * @param ancho Bytes por fila de la columna
+     * @return Posición en bytes
+     */
+    private static int posicion(int fisica, int ancho) {
+        return (fisica & MASCARA_BLOQUE) * ancho;
+    }
+
+    /**
+     * Obtiene la clave del ISBN de una fila.
+     * @param fila Fila lógica
+     * @return Clave canónica del ISBN, o 0 si el libro se eliminó y se compactó
+     */
+    long clave(int fila) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        return fisica != ELIMINADA ? actual.columna(fisica, CLAVE).getLong(posicion(fisica, 8)) : 0;
+    }
+
+    /**
+     * Obtiene el número interno de una fila.
+     * @param fila Fila lógica
+     * @return Número del libro, o 0 si la fila es de un libro eliminado
+     */
+    int numero(int fila) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        return fisica != ELIMINADA ? actual.columna(fisica, NUMERO).getInt(posicion(fisica, 4)) : 0;
+    }
+
+    /**
+     * Marca la fila de un libro eliminado, que deja de recorrerse y se descarta en la
+     * próxima compactación.
+     * @param fila Fila lógica
+     */
+    void eliminar(int fila) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        if (fisica == ELIMINADA || actual.columna(fisica, NUMERO).getInt(posicion(fisica, 4)) == 0) {
+            return;
+        }
+        actual.columna(fisica, NUMERO).putInt(posicion(fisica, 4), 0);
+        for (int columna : TEXTOS) {
+            textoDescartado += actual.largoTexto((long) LARGOS.getVolatile(actual.columna(fisica, columna), posicion(fisica, 8)));
+        }
+        eliminadas++;
+    }
+
+    /**
+     * Obtiene el año de publicación de una fila.
+     * @param fila Fila lógica
+     * @return Año de publicación, o 0 si el libro se eliminó y se compactó
+     */
+    int año(int fila) {
+        Almacen actual = almacen;
+        while (true) {
+            int fisica = actual.ubicaciones[fila];
+            if (fisica == ELIMINADA) {
+                return 0;
+            }
+            int año = (int) ENTEROS.getVolatile(actual.columna(fisica, AÑO), posicion(fisica, 4));
+            if (año != AÑO_MOVIDO) {
+                return año;
+            }
+            actual = actual.siguiente;
+        }
+    }
+
+    /**
+     * Cambia el año de publicación de una fila.
+     * @param fila Fila lógica
+     * @param año Año de publicación
+     */
+    void año(int fila, int año) {
+        Almacen actual = almacen;
+        while (true) {
+            int fisica = actual.ubicaciones[fila];
+            if (fisica == ELIMINADA) {
+                return;
+            }
+            ByteBuffer columna = actual.columna(fisica, AÑO);
+            int posicion = posicion(fisica, 4);
+            int leido = (int) ENTEROS.getVolatile(columna, posicion);
+            if (leido == AÑO_MOVIDO) {
+                actual = actual.siguiente;
+            } else if (ENTEROS.compareAndSet(columna, posicion, leido, año)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Obtiene las existencias empaquetadas de una fila.
+     * @param fila Fila lógica
+     * @return Total en los 32 bits altos, disponibles en los bajos (0 si el libro se eliminó y se compactó)
+     */
+    long existencias(int fila) {
+        Almacen actual = almacen;
+        while (true) {
+            int fisica = actual.ubicaciones[fila];
+            if (fisica == ELIMINADA) {
+                return 0;
+            }
+            long existencias = (long) LARGOS.getVolatile(actual.columna(fisica, EXISTENCIAS), posicion(fisica, 8));
+            if (existencias != EXISTENCIAS_MOVIDAS) {
+                return existencias;
+            }
+            actual = actual.siguiente;
+        }
+    }
+
+    /**
+     * Cambia las existencias de una fila si siguen valiendo lo esperado.
+     * @param fila Fila lógica
+     * @param esperadas Existencias leídas con existencias()
+     * @param nuevas Existencias nuevas
+     * @return true si se cambiaron
+     */
+    boolean cambiarExistencias(int fila, long esperadas, long nuevas) {
+        Almacen actual = almacen;
+        while (true) {
+            int fisica = actual.ubicaciones[fila];
+            if (fisica == ELIMINADA) {
+                return false;
+            }
+            ByteBuffer columna = actual.columna(fisica, EXISTENCIAS);
+            int posicion = posicion(fisica, 8);
+            if (LARGOS.compareAndSet(columna, posicion, esperadas, nuevas)) {
+                return true;
+            }
+            if ((long) LARGOS.getVolatile(columna, posicion) != EXISTENCIAS_MOVIDAS) {
+                return false;
+            }
+            actual = actual.siguiente;
+        }
+    }
+
+    /**
+     * Cambia la clave del ISBN y el ISBN de una fila.
+     * @param fila Fila lógica
+     * @param clave Clave canónica del ISBN
+     * @param isbn ISBN tal como se escribió
+     */
+    void isbn(int fila, long clave, String isbn) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        if (fisica != ELIMINADA) {
+            actual.columna(fisica, CLAVE).putLong(posicion(fisica, 8), clave);
+            reemplazarTexto(actual, fisica, ISBN, isbn);
+        }
+    }
+
+    /**
+     * Cambia el título de una fila, con su versión plegada.
+     * @param fila Fila lógica
+     * @param titulo Título nuevo
+     */
+    void titulo(int fila, String titulo) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        if (fisica != ELIMINADA) {
+            reemplazarTexto(actual, fisica, TITULO, titulo);
+            reemplazarTexto(actual, fisica, TITULO_PLEGADO, NormalizadorTexto.plegar(titulo));
+        }
+    }
+
+    /**
+     * Obtiene el código del autor de una fila.
+     * @param fila Fila lógica
+     * @return Código en Diccionario.AUTORES
+     */
+    int codigoAutor(int fila) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        return fisica != ELIMINADA ? actual.columna(fisica, AUTOR).getInt(posicion(fisica, 4)) : Diccionario.NINGUNO;
+    }
+
+    /**
+     * Cambia el código del autor de una fila.
+     * @param fila Fila lógica
+     * @param codigo Código en Diccionario.AUTORES
+     */
+    void codigoAutor(int fila, int codigo) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        if (fisica != ELIMINADA) {
+            actual.columna(fisica, AUTOR).putInt(posicion(fisica, 4), codigo);
+        }
+    }
+
+    /**
+     * Guarda un texto nuevo y hace que la columna de la fila lo referencie. Los bytes del
+     * texto anterior se cuentan como descartados.
+     * @param actual Almacenamiento vigente
+     * @param fisica Fila física
+     * @param columna Columna de texto
+     * @param texto Texto nuevo
+     */
+    private void reemplazarTexto(Almacen actual, int fisica, int columna, String texto) {
+        ByteBuffer referencias = actual.columna(fisica, columna);
+        int posicion = posicion(fisica, 8);
+        textoDescartado += actual.largoTexto((long) LARGOS.getVolatile(referencias, posicion));
+        LARGOS.setVolatile(referencias, posicion, actual.guardarTexto(utf8(texto)));
+    }
+
+    /**
+     * Obtiene un texto de una fila.
+     * @param fila Fila lógica
+     * @param columna Columna de texto
+     * @return Texto decodificado (nulo si lo es o si el libro se eliminó y se compactó)
+     */
+    String texto(int fila, int columna) {
+        Almacen actual = almacen;
+        int fisica = actual.ubicaciones[fila];
+        if (fisica == ELIMINADA) {
+            return null;
+        }
+        byte[] bytes = actual.bytesTexto((long) LARGOS.getVolatile(actual.columna(fisica, columna), posicion(fisica, 8)));
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Indica si las filas de libros eliminados o los textos descartados ya ocupan más
+     * que los datos vigentes.
+     * @return true si conviene compactar
+     */
+    boolean necesitaCompactar() {
+        Almacen actual = almacen;
+        return eliminadas > FILAS_MINIMAS_COMPACTAR && eliminadas * 2 > actual.filas
+                || textoDescartado > TEXTO_MINIMO_COMPACTAR && textoDescartado * 2 > actual.bytesTexto;
+    }
+
+    /**
+     * Copia las filas de los libros registrados y sus textos vigentes a un almacenamiento
+     * nuevo. Las filas lógicas no cambian; las de libros eliminados dejan de ocupar fila
+     * física. Las existencias y el año se copian con compare-and-set, dejando una marca
+     * en la fila vieja, para no perder los cambios que lleguen mientras tanto.
+     */
+    void compactar() {
+        Almacen viejo = almacen;
+        int[] anteriores = viejo.ubicaciones;
+        Almacen nuevo = new Almacen(anteriores.length);
+        for (int fila = 0; fila < filas; fila++) {
+            int fisica = anteriores[fila];
+            if (fisica == ELIMINADA || viejo.columna(fisica, NUMERO).getInt(posicion(fisica, 4)) == 0) {
+                nuevo.ubicar(fila, ELIMINADA);
+                continue;
+            }
+            int copia = nuevo.ocuparFila();
+            nuevo.ubicar(fila, copia);
+            nuevo.columna(copia, CLAVE).putLong(posicion(copia, 8), viejo.columna(fisica, CLAVE).getLong(posicion(fisica, 8)));
+            nuevo.columna(copia, NUMERO).putInt(posicion(copia, 4), viejo.columna(fisica, NUMERO).getInt(posicion(fisica, 4)));
+            nuevo.columna(copia, AUTOR).putInt(posicion(copia, 4), viejo.columna(fisica, AUTOR).getInt(posicion(fisica, 4)));
+            for (int columna : TEXTOS) {
+                long referencia = (long) LARGOS.getVolatile(viejo.columna(fisica, columna), posicion(fisica, 8));
+                LARGOS.setVolatile(nuevo.columna(copia, columna), posicion(copia, 8),
+                        nuevo.guardarTexto(viejo.bytesTexto(referencia)));
+            }
+        }
+        viejo.siguiente = nuevo; // Antes de la primera marca: quien la vea ya encuentra las ubicaciones
+        int[] ubicaciones = nuevo.ubicaciones;
+        for (int fila = 0; fila < filas; fila++) {
+            int copia = ubicaciones[fila];
+            if (copia != ELIMINADA) {
+                moverExistencias(viejo, anteriores[fila], nuevo, copia);
+                moverAño(viejo, anteriores[fila], nuevo, copia);
+            }
+        }
+        eliminadas = 0;
+        textoDescartado = 0;
+        almacen = nuevo;
+    }
+
+    /**
+     * Copia las existencias de una fila y marca la vieja como movida, reintentando si
+     * cambiaron entre la lectura y la marca.
+     * @param viejo Almacenamiento que se compacta
+     * @param fisica Fila física en el viejo
+     * @param nuevo Almacenamiento compactado
+     * @param copia Fila física en el nuevo
+     */
+    private static void moverExistencias(Almacen viejo, int fisica, Almacen nuevo, int copia) {
+        ByteBuffer origen = viejo.columna(fisica, EXISTENCIAS);
+        ByteBuffer destino = nuevo.columna(copia, EXISTENCIAS);
+        long existencias;
+        do {
+            existencias = (long) LARGOS.getVolatile(origen, posicion(fisica, 8));
+            LARGOS.setVolatile(destino, posicion(copia, 8), existencias);
+        } while (!LARGOS.compareAndSet(origen, posicion(fisica, 8), existencias, EXISTENCIAS_MOVIDAS));
+    }
+
+    /**
+     * Copia el año de una fila y marca la vieja como movida, reintentando si cambió
+     * entre la lectura y la marca.
+     * @param viejo Almacenamiento que se compacta
+     * @param fisica Fila física en el viejo
+     * @param nuevo Almacenamiento compactado
+     * @param copia Fila física en el nuevo
+     */
+    private static void moverAño(Almacen viejo, int fisica, Almacen nuevo, int copia) {
+        ByteBuffer origen = viejo.columna(fisica, AÑO);
+        ByteBuffer destino = nuevo.columna(copia, AÑO);
+        int año;
+        do {
+            año = (int) ENTEROS.getVolatile(origen, posicion(fisica, 4));
+            ENTEROS.setVolatile(destino, posicion(copia, 4), año);
+        } while (!ENTEROS.compareAndSet(origen, posicion(fisica, 4), año, AÑO_MOVIDO));
+    }
+
+    /**
+     * Obtiene los bytes fuera del heap que ocupan las columnas y el montón de textos.
+     * @return Bytes reservados
+     */
+    long bytesReservados() {
+        Almacen actual = almacen;
+        long total = (long) actual.bloques.length * FILAS_POR_BLOQUE * BYTES_POR_FILA;
+        for (ByteBuffer bloque : actual.bloquesTexto) {
+            total += bloque.capacity();
+        }
+        return total;
+    }
+}
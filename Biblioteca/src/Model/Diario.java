@@ -0,0 +1,617 @@
+package Model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Diario binario de solo agregado con confirmación en grupo.
+ * <p>
+ * Cada operación que modifica la biblioteca se agrega como un registro
+ * [longitud][CRC32C][tipo y datos]. Los hilos solo copian su registro a un búfer
+ * compartido; un hilo escritor vuelca el búfer completo de una vez (y lo sincroniza con
+ * el disco si la durabilidad lo pide), de modo que muchas operaciones simultáneas pagan
+ * una sola escritura. La latencia máxima indica cuánto espera el escritor a que se junten
+ * más registros antes de volcar.
+ * </p>
+ * <p>
+ * Al abrirlo se validan los registros existentes: un registro incompleto o con CRC
+ * incorrecto al final (por una caída a mitad de escritura) se descarta junto con todo lo
+ * que le sigue.
+ * </p>
+ * <p>
+ * Si el escritor falla (un error de escritura o una interrupción de su hilo), el error
+ * queda guardado: los que esperan confirmación reciben una excepción y el diario ya no
+ * acepta registros nuevos.
+ * </p>
+ */
+class Diario implements Closeable {
+    private static final int MAGICO = 0x42494244; // "BIBD"
+    private static final int VERSION = 1;
+    private static final int CABECERA_ARCHIVO = 16; // Mágico, versión e identidad
+    private static final int CABECERA_REGISTRO = 8;
+    private static final int MAXIMO_REGISTRO = 64 << 20;
+    private static final int GRUPO_GRANDE = 256 << 10; // Se vuelca sin esperar la latencia
+    private static final int MAXIMO_PENDIENTE = 16 << 20; // Más allá, los que agregan esperan
+
+    private final FileChannel canal;
+    private final Durabilidad durabilidad;
+    private final long latenciaNanos;
+    private final Thread escritor;
+    private long identidad;
+    private final Object monitor = new Object();
+
+    private byte[] grupo = new byte[64 << 10]; // Registros agregados y aún no volcados
+    private int usados;
+    private long ultimaSecuencia; // Secuencia del último registro agregado
+    private long secuenciaConfirmada; // Secuencia del último registro confirmado según la durabilidad
+    private long secuenciaEscrita; // Secuencia del último registro escrito en el archivo
+    private long posicionAgregada; // Posición del archivo donde terminará el último registro agregado
+    private IOException error;
+    private boolean cerrando;
+
+    /**
+     * Abre (o crea) un diario. Los registros válidos se quedan para reproducirlos con
+     * reproducir() antes de agregar nuevos.
+     * @param ruta Archivo del diario
+     * @param durabilidad Nivel de durabilidad de las confirmaciones
+     * @param latenciaMaximaMicros Tiempo máximo, en microsegundos, que se esperan más
+     *        registros para formar un grupo (0 para volcar en cuanto haya alguno)
+     * @throws IOException Si no se puede abrir el archivo o no es un diario
+     */
+    Diario(Path ruta, Durabilidad durabilidad, long latenciaMaximaMicros) throws IOException {
+        this.canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.durabilidad = durabilidad;
+        this.latenciaNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, latenciaMaximaMicros));
+        try {
+            validarCabecera();
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+        this.escritor = new Thread(this::volcarGrupos, "diario-biblioteca");
+        this.escritor.setDaemon(true);
+    }
+
+    /**
+     * Escribe la cabecera con una identidad nueva si el archivo está vacío, o comprueba
+     * que sea un diario y lee su identidad.
+     * @throws IOException Si el archivo no es un diario de esta versión
+     */
+    private void validarCabecera() throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA_ARCHIVO);
+        if (canal.size() < CABECERA_ARCHIVO) {
+            identidad = new SecureRandom().nextLong();
+            cabecera.putInt(MAGICO).putInt(VERSION).putLong(identidad).flip();
+            canal.truncate(0);
+            canal.write(cabecera, 0);
+            canal.force(true);
+            return;
+        }
+        leerCompleto(cabecera, 0);
+        cabecera.flip();
+        if (cabecera.getInt() != MAGICO || cabecera.getInt() != VERSION) {
+            throw new IOException("El archivo no es un diario de la biblioteca.");
+        }
+        identidad = cabecera.getLong();
+    }
+
+    /**
+     * Obtiene la identidad del diario: un número al azar que se elige al crear el archivo.
+     * Los volcados la guardan para no reproducir desde su posición otro diario que haya
+     * reemplazado a este.
+     * @return Identidad del diario
+     */
+    long getIdentidad() {
+        return identidad;
+    }
+
+    /**
+     * Procesa un registro leído del diario.
+     */
+    interface Visitante {
+        /**
+         * Aplica un registro.
+         * @param registro Lector posicionado al inicio de los datos del registro
+         */
+        void visitar(Lector registro);
+    }
+
+    /**
+     * Recorre los registros válidos en orden y después deja el diario listo para agregar.
+     * Si encuentra un registro dañado, trunca el archivo en ese punto.
+     * @param visitante Quien aplica cada registro
+     * @return Cantidad de registros reproducidos
+     * @throws IOException Si falla la lectura
+     */
+    long reproducir(Visitante visitante) throws IOException {
+        return reproducir(visitante, CABECERA_ARCHIVO);
+    }
+
+    /**
+     * Recorre los registros válidos a partir de una posición, por ejemplo la que refleja
+     * un volcado del catálogo, y después deja el diario listo para agregar.
+     * Si encuentra un registro dañado, trunca el archivo en ese punto.
+     * @param visitante Quien aplica cada registro
+     * @param desde Posición del primer registro a reproducir (la de posicionAgregada()
+     *        en un momento anterior)
+     * @return Cantidad de registros reproducidos
+     * @throws IOException Si falla la lectura
+     */
+    long reproducir(Visitante visitante, long desde) throws IOException {
+        long tamañoArchivo = canal.size();
+        long posicion = Math.max(CABECERA_ARCHIVO, Math.min(desde, tamañoArchivo));
+        long cantidad = 0;
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA_REGISTRO);
+        byte[] datos = new byte[256];
+        CRC32C crc = new CRC32C();
+        while (posicion + CABECERA_REGISTRO <= tamañoArchivo) {
+            cabecera.clear();
+            leerCompleto(cabecera, posicion);
+            int longitud = cabecera.getInt(0);
+            int suma = cabecera.getInt(4);
+            if (longitud <= 0 || longitud > MAXIMO_REGISTRO
+                    || posicion + CABECERA_REGISTRO + longitud > tamañoArchivo) {
+                break;
+            }
+            if (datos.length < longitud) {
+                datos = new byte[Math.max(longitud, datos.length * 2)];
+            }
+            leerCompleto(ByteBuffer.wrap(datos, 0, longitud), posicion + CABECERA_REGISTRO);
+            crc.reset();
+            crc.update(datos, 0, longitud);
+            if ((int) crc.getValue() != suma) {
+                break;
+            }
+            visitante.visitar(new Lector(datos, longitud));
+            posicion += CABECERA_REGISTRO + longitud;
+            cantidad++;
+        }
+        if (posicion < tamañoArchivo) {
+            canal.truncate(posicion); // Cola dañada por una escritura interrumpida
+            canal.force(true);
+        }
+        canal.position(posicion);
+        posicionAgregada = posicion;
+        return cantidad;
+    }
+
+    /**
+     * Indica si el diario no tiene registros.
+     * @return true si solo contiene la cabecera
+     * @throws IOException Si no se puede consultar el tamaño
+     */
+    boolean estaVacio() throws IOException {
+        return canal.size() <= CABECERA_ARCHIVO;
+    }
+
+    /**
+     * Arranca el hilo que vuelca los grupos. Se llama una vez, tras reproducir().
+     */
+    void iniciar() {
+        escritor.start();
+    }
+
+    /**
+     * Agrega un registro al grupo en curso. No espera a que se escriba.
+     * @param registro Registro codificado
+     * @return Secuencia del registro, para pasarla a esperar()
+     * @throws UncheckedIOException Si el escritor ya falló: el registro no se escribiría
+     */
+    long agregar(Codificador registro) {
+        int longitud = registro.longitud;
+        synchronized (monitor) {
+            while (usados > MAXIMO_PENDIENTE && error == null && !cerrando) {
+                esperarMonitor(); // El escritor no da abasto: se frena a quien agrega
+            }
+            if (error != null) {
+                throw new UncheckedIOException("No se pudo escribir el diario.", error);
+            }
+            if (cerrando) {
+                throw new IllegalStateException("El diario está cerrado.");
+            }
+            if (usados + CABECERA_REGISTRO + longitud > grupo.length) {
+                grupo = Arrays.copyOf(grupo, Math.max(grupo.length * 2, usados + CABECERA_REGISTRO + longitud));
+            }
+            ponerEntero(grupo, usados, longitud);
+            ponerEntero(grupo, usados + 4, registro.suma());
+            System.arraycopy(registro.datos, 0, grupo, usados + CABECERA_REGISTRO, longitud);
+            boolean estabaVacio = usados == 0;
+            usados += CABECERA_REGISTRO + longitud;
+            posicionAgregada += CABECERA_REGISTRO + longitud;
+            if (estabaVacio || usados >= GRUPO_GRANDE) {
+                monitor.notifyAll();
+            }
+            return ++ultimaSecuencia;
+        }
+    }
+
+    /**
+     * Espera a que un registro quede confirmado según la durabilidad del diario.
+     * Con durabilidad ASINCRONA vuelve de inmediato.
+     * @param secuencia Secuencia devuelta por agregar()
+     * @throws UncheckedIOException Si el diario no pudo escribirse
+     */
+    void esperar(long secuencia) {
+        if (durabilidad == Durabilidad.ASINCRONA) {
+            return;
+        }
+        synchronized (monitor) {
+            while (secuenciaConfirmada < secuencia && error == null) {
+                esperarMonitor();
+            }
+            if (secuenciaConfirmada < secuencia) {
+                throw new UncheckedIOException("No se pudo escribir el diario.", error);
+            }
+        }
+    }
+
+    /**
+     * Obtiene la posición del archivo donde termina el último registro agregado.
+     * Tras sincronizar(), todo lo anterior a esa posición está en disco.
+     * @return Posición en bytes
+     */
+    long posicionAgregada() {
+        synchronized (monitor) {
+            return posicionAgregada;
+        }
+    }
+
+    /**
+     * Espera a que todos los registros agregados hasta ahora estén escritos y los
+     * sincroniza con el disco, sea cual sea la durabilidad del diario.
+     * @throws IOException Si el diario no pudo escribirse o sincronizarse
+     */
+    void sincronizar() throws IOException {
+        synchronized (monitor) {
+            long secuencia = ultimaSecuencia;
+            while (secuenciaEscrita < secuencia && error == null) {
+                esperarMonitor();
+            }
+            if (secuenciaEscrita < secuencia) {
+                throw error;
+            }
+        }
+        canal.force(false);
+    }
+
+    /**
+     * Hilo escritor: vuelca grupos hasta que se cierra el diario. Si falla o lo
+     * interrumpen, guarda el error y despierta a todos los que esperan.
+     */
+    private void volcarGrupos() {
+        try {
+            volcarHastaCerrar();
+        } catch (InterruptedException e) {
+            fallar(new InterruptedIOException("Se interrumpió el escritor del diario."));
+        } catch (IOException e) {
+            fallar(e);
+        } catch (RuntimeException e) {
+            fallar(new IOException("Falló el escritor del diario.", e));
+            throw e;
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: espera registros, deja pasar la latencia para juntar más
+     * y vuelca el grupo completo con una sola escritura.
+     * @throws InterruptedException Si se interrumpe el hilo escritor
+     * @throws IOException Si falla la escritura o la sincronización
+     */
+    private void volcarHastaCerrar() throws InterruptedException, IOException {
+        byte[] enVuelo = new byte[grupo.length];
+        while (true) {
+            int cantidad;
+            long secuencia;
+            synchronized (monitor) {
+                while (usados == 0 && !cerrando) {
+                    monitor.wait();
+                }
+                if (usados == 0) {
+                    return;
+                }
+                long limite = System.nanoTime() + latenciaNanos;
+                long restante;
+                while (!cerrando && usados < GRUPO_GRANDE && (restante = limite - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(monitor, restante);
+                }
+                // Se intercambian los búferes: los demás siguen agregando mientras se escribe
+                byte[] lleno = grupo;
+                grupo = enVuelo.length >= lleno.length ? enVuelo : new byte[lleno.length];
+                enVuelo = lleno;
+                cantidad = usados;
+                secuencia = ultimaSecuencia;
+                usados = 0;
+                monitor.notifyAll();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(enVuelo, 0, cantidad);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            synchronized (monitor) {
+                secuenciaEscrita = secuencia;
+            }
+            if (durabilidad == Durabilidad.SINCRONIZADA) {
+                canal.force(false);
+            }
+            synchronized (monitor) {
+                secuenciaConfirmada = secuencia;
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Guarda el error del escritor y despierta a los que esperan confirmación o lugar.
+     * @param causa Error que detuvo al escritor
+     */
+    private void fallar(IOException causa) {
+        synchronized (monitor) {
+            if (error == null) {
+                error = causa;
+            }
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Vuelca lo pendiente, lo sincroniza con el disco y cierra el archivo.
+     * @throws IOException Si falla el último volcado o el cierre
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (monitor) {
+            if (cerrando) {
+                return;
+            }
+            cerrando = true;
+            monitor.notifyAll();
+        }
+        try {
+            if (escritor.isAlive()) {
+                escritor.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (error != null) {
+                throw error;
+            }
+            canal.force(true);
+        } finally {
+            canal.close();
+        }
+    }
+
+    /**
+     * Espera una notificación del monitor (el llamador debe tenerlo tomado). Solo la
+     * usan los hilos que agregan o confirman; el escritor maneja su propia interrupción.
+     * @throws UncheckedIOException Si se interrumpe el hilo que espera
+     */
+    private void esperarMonitor() {
+        try {
+            monitor.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Espera del diario interrumpida."));
+        }
+    }
+
+    /**
+     * Lee hasta llenar un búfer desde una posición del archivo.
+     * @param buffer Búfer a llenar
+     * @param posicion Posición en el archivo
+     * @throws IOException Si falla la lectura o el archivo se acaba antes
+     */
+    private void leerCompleto(ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            int leidos = canal.read(buffer, posicion);
+            if (leidos < 0) {
+                throw new IOException("Fin inesperado del diario.");
+            }
+            posicion += leidos;
+        }
+    }
+
+    /**
+     * Escribe un int en orden big-endian.
+     * @param destino Arreglo destino
+     * @param posicion Posición inicial
+     * @param valor Valor a escribir
+     */
+    private static void ponerEntero(byte[] destino, int posicion, int valor) {
+        destino[posicion] = (byte) (valor >>> 24);
+        destino[posicion + 1] = (byte) (valor >>> 16);
+        destino[posicion + 2] = (byte) (valor >>> 8);
+        destino[posicion + 3] = (byte) valor;
+    }
+
+    /**
+     * Codifica los datos de un registro. Se reutiliza entre registros para no reservar
+     * memoria en cada operación.
+     */
+    static final class Codificador {
+        private byte[] datos = new byte[128];
+        private int longitud;
+
+        /**
+         * Empieza un registro nuevo.
+         * @param tipo Tipo del registro
+         * @return Este codificador
+         */
+        Codificador iniciar(byte tipo) {
+            longitud = 0;
+            asegurar(1);
+            datos[longitud++] = tipo;
+            return this;
+        }
+
+        /**
+         * Agrega un int.
+         * @param valor Valor
+         * @return Este codificador
+         */
+        Codificador entero(int valor) {
+            asegurar(4);
+            ponerEntero(datos, longitud, valor);
+            longitud += 4;
+            return this;
+        }
+
+        /**
+         * Agrega un long.
+         * @param valor Valor
+         * @return Este codificador
+         */
+        Codificador largo(long valor) {
+            entero((int) (valor >>> 32));
+            return entero((int) valor);
+        }
+
+        /**
+         * Agrega un double.
+         * @param valor Valor
+         * @return Este codificador
+         */
+        Codificador real(double valor) {
+            return largo(Double.doubleToLongBits(valor));
+        }
+
+        /**
+         * Agrega una fecha como día desde la época (Long.MIN_VALUE si es null).
+         * @param fecha Fecha (puede ser null)
+         * @return Este codificador
+         */
+        Codificador fecha(LocalDate fecha) {
+            return largo(fecha == null ? Long.MIN_VALUE : fecha.toEpochDay());
+        }
+
+        /**
+         * Agrega un texto en UTF-8 precedido de su longitud (-1 si es null).
+         * @param texto Texto (puede ser null)
+         * @return Este codificador
+         */
+        Codificador texto(String texto) {
+            if (texto == null) {
+                return entero(-1);
+            }
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            entero(bytes.length);
+            asegurar(bytes.length);
+            System.arraycopy(bytes, 0, datos, longitud, bytes.length);
+            longitud += bytes.length;
+            return this;
+        }
+
+        /**
+         * Calcula el CRC32C de los datos codificados.
+         * @return Suma de verificación
+         */
+        int suma() {
+            CRC32C crc = new CRC32C();
+            crc.update(datos, 0, longitud);
+            return (int) crc.getValue();
+        }
+
+        private void asegurar(int adicional) {
+            if (longitud + adicional > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, longitud + adicional));
+            }
+        }
+    }
+
+    /**
+     * Lee los datos de un registro en el mismo orden en que se codificaron.
+     */
+    static final class Lector {
+        private final byte[] datos;
+        private final int longitud;
+        private int posicion;
+
+        private Lector(byte[] datos, int longitud) {
+            this.datos = datos;
+            this.longitud = longitud;
+        }
+
+        /**
+         * Lee el tipo del registro (lo primero que contiene).
+         * @return Tipo del registro
+         */
+        byte tipo() {
+            comprobar(1);
+            return datos[posicion++];
+        }
+
+        /**
+         * Lee un int.
+         * @return Valor leído
+         */
+        int entero() {
+            comprobar(4);
+            int valor = ((datos[posicion] & 0xFF) << 24) | ((datos[posicion + 1] & 0xFF) << 16)
+                    | ((datos[posicion + 2] & 0xFF) << 8) | (datos[posicion + 3] & 0xFF);
+            posicion += 4;
+            return valor;
+        }
+
+        /**
+         * Lee un long.
+         * @return Valor leído
+         */
+        long largo() {
+            long alto = entero();
+            return (alto << 32) | (entero() & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Lee un double.
+         * @return Valor leído
+         */
+        double real() {
+            return Double.longBitsToDouble(largo());
+        }
+
+        /**
+         * Lee una fecha.
+         * @return Fecha leída (puede ser null)
+         */
+        LocalDate fecha() {
+            long dia = largo();
+            return dia == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(dia);
+        }
+
+        /**
+         * Lee un texto.
+         * @return Texto leído (puede ser null)
+         */
+        String texto() {
+            int bytes = entero();
+            if (bytes < 0) {
+                return null;
+            }
+            comprobar(bytes);
+            String texto = new String(datos, posicion, bytes, StandardCharsets.UTF_8);
+            posicion += bytes;
+            return texto;
+        }
+
+        private void comprobar(int bytes) {
+            if (posicion + bytes > longitud) {
+                throw new IllegalStateException("Registro del diario más corto de lo esperado.");
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Diccionario de textos repetidos: guarda cada valor distinto una sola vez, junto con
+ * su versión plegada, y le asigna un código int.
+ * <p>
+ * Los libros guardan el código de su autor en lugar del texto, así que los autores
+ * repetidos en muchas ediciones ocupan memoria una sola vez y se comparan como
+ * enteros. Los códigos no se liberan: un valor que ningún libro usa sigue en el
+ * diccionario.
+ * </p>
+ * <p>
+ * Las palabras de cada valor plegado se indexan con un IndiceInvertido de palabras a
+ * códigos, así buscar cuesta según los valores que coinciden y no según el tamaño del
+ * diccionario.
+ * </p>
+ * <p>
+ * Codificar y consultar el índice de palabras se serializan con el monitor del
+ * diccionario; leer un valor no bloquea.
+ * </p>
+ */
+class Diccionario {
+    /** Diccionario de los autores de todos los libros. */
+    static final Diccionario AUTORES = new Diccionario();
+
+    /** Código de un valor nulo. */
+    static final int NINGUNO = -1;
+
+    private final HashMap<String, Integer> codigos = new HashMap<String, Integer>();
+    private String[] valores = new String[16];
+    private String[] plegados = new String[16];
+    private final IndiceInvertido palabras = new IndiceInvertido(); // Palabra plegada -> códigos, bajo el monitor
+    private volatile int tamaño; // Se escribe después de cada valor nuevo: leerlo publica los valores anteriores
+
+    /**
+     * Obtiene el código de un valor, agregándolo si es nuevo.
+     * @param valor Valor (puede ser nulo)
+     * @return Código del valor, o NINGUNO si es nulo
+     */
+    synchronized int codificar(String valor) {
+        if (valor == null) {
+            return NINGUNO;
+        }
+        Integer codigo = codigos.get(valor);
+        if (codigo != null) {
+            return codigo;
+        }
+        int nuevo = tamaño;
+        if (nuevo == valores.length) {
+            valores = Arrays.copyOf(valores, nuevo * 2);
+            plegados = Arrays.copyOf(plegados, nuevo * 2);
+        }
+        valores[nuevo] = valor;
+        plegados[nuevo] = NormalizadorTexto.plegar(valor);
+        codigos.put(valor, nuevo);
+        palabras.agregar(nuevo, plegados[nuevo]);
+        tamaño = nuevo + 1;
+        return nuevo;
+    }
+
+    /**
+     * Obtiene la cantidad de valores distintos.
+     * @return Cantidad de códigos asignados
+     */
+    int tamaño() {
+        return tamaño;
+    }
+
+    /**
+     * Obtiene el valor de un código.
+     * @param codigo Código obtenido con codificar
+     * @return Valor, o null para NINGUNO
+     */
+    String valor(int codigo) {
+        if (codigo == NINGUNO) {
+            return null;
+        }
+        if (codigo < tamaño) {
+            return valores[codigo];
+        }
+        synchronized (this) {
+            return valores[codigo];
+        }
+    }
+
+    /**
+     * Obtiene el valor plegado (sin mayúsculas ni tildes) de un código.
+     * @param codigo Código obtenido con codificar
+     * @return Valor plegado, o null para NINGUNO
+     */
+    String plegado(int codigo) {
+        if (codigo == NINGUNO) {
+            return null;
+        }
+        if (codigo < tamaño) {
+            return plegados[codigo];
+        }
+        synchronized (this) {
+            return plegados[codigo];
+        }
+    }
+
+    /**
+     * Busca los valores cuyo plegado contiene la consulta y en el que cada palabra de
+     * la consulta es el inicio de alguna palabra. Los candidatos salen del índice de
+     * palabras y se verifican; solo una consulta sin palabras recorre todos los valores.
+     * @param consulta Consulta plegada
+     * @return Códigos de los valores que coinciden, en orden creciente
+     */
+    int[] buscar(String consulta) {
+        List<String> palabrasConsulta = NormalizadorTexto.palabras(consulta);
+        int[] candidatos;
+        int total;
+        synchronized (this) {
+            candidatos = palabras.buscar(consulta);
+            total = tamaño;
+        }
+        String[] plegados = this.plegados; // Leído después de tamaño: tiene al menos total valores
+        if (candidatos == null) {
+            candidatos = new int[total];
+            for (int codigo = 0; codigo < total; codigo++) {
+                candidatos[codigo] = codigo;
+            }
+        }
+        int[] encontrados = new int[candidatos.length];
+        int n = 0;
+        for (int codigo : candidatos) {
+            String plegado = plegados[codigo];
+            if (plegado.contains(consulta)
+                    && NormalizadorTexto.empiezanPalabras(palabrasConsulta, NormalizadorTexto.palabras(plegado))) {
+                encontrados[n++] = codigo;
+            }
+        }
+        return Arrays.copyOf(encontrados, n);
+    }
+}
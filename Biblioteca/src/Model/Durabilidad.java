@@ -0,0 +1,17 @@
+package Model;
+
+/**
+ * Nivel de durabilidad con el que el diario confirma las operaciones de la biblioteca.
+ * <p>
+ * En todos los niveles el diario agrupa las escrituras de varios hilos y las vuelca
+ * juntas; el nivel solo decide cuánto espera cada operación antes de volver.
+ * </p>
+ */
+public enum Durabilidad {
+    /** La operación vuelve sin esperar: el grupo se escribe en segundo plano. Puede perderse lo último si el proceso cae. */
+    ASINCRONA,
+    /** La operación espera a que su grupo llegue al sistema operativo. Sobrevive a la caída del proceso, no a la del equipo. */
+    ESCRITA,
+    /** La operación espera a que su grupo se sincronice con el disco. Sobrevive a la caída del equipo. */
+    SINCRONIZADA
+}
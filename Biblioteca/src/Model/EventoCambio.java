@@ -0,0 +1,130 @@
+package Model;
+
+import java.time.LocalDate;
+
+/**
+ * Cambio publicado en el flujo de cambios de la biblioteca.
+ * <p>
+ * Los eventos son las casillas del anillo de FlujoCambios: se crean una sola vez y se
+ * reescriben en cada vuelta. Cada suscripción entrega a su consumidor una copia propia,
+ * que también se reutiliza: solo puede leerse dentro de alCambiar y, para conservarla,
+ * deben copiarse los campos.
+ * </p>
+ */
+public final class EventoCambio {
+    long secuencia;
+    TipoCambio tipo;
+    String isbn;
+    String identificacion;
+    String valorNuevo;
+    LocalDate fecha;
+    LocalDate fechaLimite;
+    double monto;
+    int cantidad;
+
+    /**
+     * Constructor usado por el flujo al crear el anillo y las copias de las suscripciones.
+     */
+    EventoCambio() {
+    }
+
+    /**
+     * Copia los campos de otro evento en este.
+     * @param otro Casilla del anillo
+     */
+    void copiar(EventoCambio otro) {
+        secuencia = otro.secuencia;
+        tipo = otro.tipo;
+        isbn = otro.isbn;
+        identificacion = otro.identificacion;
+        valorNuevo = otro.valorNuevo;
+        fecha = otro.fecha;
+        fechaLimite = otro.fechaLimite;
+        monto = otro.monto;
+        cantidad = otro.cantidad;
+    }
+
+    /**
+     * Obtiene la secuencia del evento: crece de uno en uno en el orden de publicación.
+     * @return Secuencia, desde 0
+     */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    /**
+     * Obtiene el tipo del cambio.
+     * @return Tipo
+     */
+    public TipoCambio getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Obtiene el ISBN del libro afectado (el anterior en ISBN_CAMBIADO).
+     * @return ISBN, o null si el cambio no afecta a un libro
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Obtiene la identificación del usuario afectado (la anterior en IDENTIFICACION_CAMBIADA).
+     * @return Identificación, o null si el cambio no afecta a un usuario
+     */
+    public String getIdentificacion() {
+        return identificacion;
+    }
+
+    /**
+     * Obtiene el ISBN o la identificación nuevos en ISBN_CAMBIADO e IDENTIFICACION_CAMBIADA.
+     * @return Valor nuevo, o null en los demás tipos
+     */
+    public String getValorNuevo() {
+        return valorNuevo;
+    }
+
+    /**
+     * Obtiene la fecha del cambio: de préstamo, de devolución, de reserva o de acumulación.
+     * @return Fecha, o null si el tipo no la tiene
+     */
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    /**
+     * Obtiene la fecha límite de devolución del préstamo afectado.
+     * @return Fecha límite, o null si el tipo no la tiene
+     */
+    public LocalDate getFechaLimite() {
+        return fechaLimite;
+    }
+
+    /**
+     * Obtiene el monto en que cambió la multa (negativo si se pagó; un pago mayor que la
+     * deuda solo cuenta la deuda).
+     * @return Monto, o 0 si el tipo no lo tiene
+     */
+    public double getMonto() {
+        return monto;
+    }
+
+    /**
+     * Obtiene la cantidad del cambio: ejemplares disponibles, usuarios multados o elementos reemplazados.
+     * @return Cantidad, o 0 si el tipo no la tiene
+     */
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Representación en cadena del evento.
+     * @return Cadena con la información del evento
+     */
+    @Override
+    public String toString() {
+        return "Cambio:" + secuencia + " " + tipo + ", isbn:" + isbn + ", usuario:" + identificacion
+                + ", nuevo:" + valorNuevo + ", fecha:" + fecha + ", limite:" + fechaLimite
+                + ", monto:" + monto + ", cantidad:" + cantidad;
+    }
+}
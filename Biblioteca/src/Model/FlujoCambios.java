@@ -0,0 +1,352 @@
+package Model;
+
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flujo de los cambios de la biblioteca, para que otros componentes los sigan sin
+ * consultar los repositorios.
+ * <p>
+ * Los eventos se escriben en un anillo de casillas creadas de antemano: publicar solo
+ * reescribe los campos de la casilla siguiente y avanza el cursor, sin crear objetos.
+ * Cada suscripción tiene su hilo, que lee por lotes todo lo publicado desde su último
+ * lote y después avanza su propia secuencia. Sin nada que leer, el hilo gira un momento
+ * y después se estaciona sin plazo; publicar lo despierta solo si está estacionado.
+ * </p>
+ * <p>
+ * El productor no reescribe una casilla hasta que todas las suscripciones la pasaron. La
+ * biblioteca publica con sus cerrojos tomados, así que si el consumidor más lento se
+ * atrasa una vuelta entera el productor lo espera solo ESPERA_MAXIMA_MICROS: pasado ese
+ * tiempo, las suscripciones que no avanzaron se descartan (su getError lo indica) y el
+ * productor sigue. El consumidor copia cada casilla antes de entregarla y comprueba
+ * después que su suscripción sigue activa, así nunca entrega una casilla que el productor
+ * ya empezó a reescribir tras descartarla.
+ * </p>
+ * <p>
+ * La biblioteca publica desde varios hilos, así que los productores se serializan con el
+ * monitor del flujo. Sin suscripciones publicar vuelve sin tomarlo; aun así, la biblioteca
+ * comprueba tieneSuscripciones antes de cada llamada para no leer ni calcular los datos
+ * del cambio.
+ * </p>
+ */
+public final class FlujoCambios {
+    private static final Suscripcion[] NINGUNA = new Suscripcion[0];
+    private static final long ESPERA_MAXIMA_MICROS = 5000; // Lo que un productor espera a un consumidor atrasado
+    private static final int ESPERAS_ACTIVAS = 200; // Intentos que gira un consumidor sin cambios antes de estacionarse
+
+    /**
+     * Recibe los cambios de una suscripción, en su hilo.
+     */
+    public interface Consumidor {
+        /**
+         * Procesa un cambio. El evento solo es válido durante la llamada.
+         * <p>
+         * No debe llamar a la biblioteca: si el anillo está lleno, el hilo que publica
+         * espera a este consumidor con los cerrojos de la biblioteca tomados, y si no avanza
+         * en ESPERA_MAXIMA_MICROS, la suscripción se descarta. Una excepción termina la
+         * suscripción.
+         * </p>
+         * @param evento Cambio publicado
+         * @param finDeLote true si es el último evento disponible en este lote
+         */
+        void alCambiar(EventoCambio evento, boolean finDeLote);
+    }
+
+    /**
+     * Suscripción de un consumidor al flujo.
+     */
+    public final class Suscripcion implements Runnable {
+        private final Consumidor consumidor;
+        private final AtomicLong secuencia; // Última secuencia procesada: el productor no la pisa
+        private final EventoCambio copia = new EventoCambio(); // Lo que recibe el consumidor
+        private volatile boolean activa = true;
+        private volatile boolean estacionada; // El hilo va a estacionarse o ya lo está: publicar lo despierta
+        private volatile RuntimeException error;
+        private Thread hilo;
+
+        /**
+         * Constructor usado por suscribir.
+         * @param consumidor Consumidor de los cambios
+         * @param desde Secuencia ya publicada desde la que se empieza
+         */
+        private Suscripcion(Consumidor consumidor, long desde) {
+            this.consumidor = consumidor;
+            this.secuencia = new AtomicLong(desde);
+        }
+
+        /**
+         * Lee los lotes publicados hasta que se cancela la suscripción o se cierra el flujo.
+         */
+        @Override
+        public void run() {
+            long procesada = secuencia.get();
+            int intentos = 0;
+            try {
+                while (activa) {
+                    long disponible = cursor.get();
+                    if (disponible <= procesada) {
+                        if (cerrado) {
+                            break; // Todo lo publicado antes de cerrar ya se procesó
+                        }
+                        if (intentos < ESPERAS_ACTIVAS) {
+                            esperar(intentos++);
+                        } else {
+                            estacionarse(procesada);
+                        }
+                        continue;
+                    }
+                    intentos = 0;
+                    for (long siguiente = procesada + 1; siguiente <= disponible; siguiente++) {
+                        copia.copiar(anillo[(int) siguiente & mascara]);
+                        VarHandle.acquireFence(); // Lee activa después de copiar la casilla
+                        if (!activa) {
+                            return; // Descartada: la casilla pudo reescribirse mientras se copiaba
+                        }
+                        consumidor.alCambiar(copia, siguiente == disponible);
+                        secuencia.lazySet(siguiente); // Libera la casilla sin esperar al fin del lote
+                    }
+                    procesada = disponible;
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                activa = false;
+                quitar(this);
+            }
+        }
+
+        /**
+         * Estaciona el hilo hasta que haya algo publicado después de una secuencia, se
+         * cierre el flujo o termine la suscripción. Marca la suscripción antes de volver a
+         * mirar el cursor, así publicar no puede avanzarlo sin ver la marca.
+         * @param procesada Última secuencia procesada
+         */
+        private void estacionarse(long procesada) {
+            estacionada = true;
+            try {
+                if (activa && !cerrado && cursor.get() <= procesada) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                estacionada = false;
+            }
+        }
+
+        /**
+         * Cancela la suscripción. Deja de entregar eventos después del que está procesando.
+         */
+        public void cancelar() {
+            activa = false;
+            LockSupport.unpark(hilo);
+        }
+
+        /**
+         * Descarta la suscripción porque el consumidor no avanzó a tiempo: el productor deja
+         * de esperarla y el hilo termina al volver del evento en curso.
+         */
+        private void descartar() {
+            error = new IllegalStateException("El consumidor no avanzó en " + ESPERA_MAXIMA_MICROS + " µs");
+            activa = false;
+            VarHandle.releaseFence(); // Las casillas se reescriben después de marcarla inactiva
+            quitar(this);
+            LockSupport.unpark(hilo);
+        }
+
+        /**
+         * Indica si la suscripción sigue recibiendo cambios.
+         * @return false si se canceló, se cerró el flujo, el consumidor lanzó una excepción
+         *         o se descartó por atrasado
+         */
+        public boolean estaActiva() {
+            return activa;
+        }
+
+        /**
+         * Obtiene la secuencia del último lote procesado.
+         * @return Secuencia, o la anterior al primer evento si aún no procesó ninguno
+         */
+        public long getSecuencia() {
+            return secuencia.get();
+        }
+
+        /**
+         * Obtiene la excepción que terminó la suscripción.
+         * @return Excepción del consumidor, IllegalStateException si se descartó por
+         *         atrasado, o null si no terminó por un error
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+    }
+
+    private final EventoCambio[] anillo;
+    private final int mascara;
+    private final AtomicLong cursor = new AtomicLong(-1); // Última secuencia publicada
+    private final Object cerrojoSuscripciones = new Object();
+    private volatile Suscripcion[] suscripciones = NINGUNA; // Se copia al cambiar: publicar la lee sin cerrojo
+    private volatile boolean cerrado;
+    private long minimoLeido = -1; // Cota inferior de las secuencias de las suscripciones, bajo el monitor
+
+    /**
+     * Constructor del flujo.
+     * @param capacidad Cantidad mínima de casillas del anillo; se redondea a una potencia de dos
+     */
+    FlujoCambios(int capacidad) {
+        int tamaño = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        anillo = new EventoCambio[tamaño];
+        for (int i = 0; i < tamaño; i++) {
+            anillo[i] = new EventoCambio();
+        }
+        mascara = tamaño - 1;
+    }
+
+    /**
+     * Indica si hay suscripciones, sin tomar el monitor.
+     * @return true si publicar tendría efecto
+     */
+    boolean tieneSuscripciones() {
+        return suscripciones.length != 0;
+    }
+
+    /**
+     * Publica un cambio. Sin suscripciones no hace nada; si el anillo está lleno espera a
+     * que el consumidor más lento libere la casilla, o lo descarta si no avanza a tiempo.
+     * @param tipo Tipo del cambio
+     * @param isbn ISBN del libro, o null
+     * @param identificacion Identificación del usuario, o null
+     * @param valorNuevo ISBN o identificación nuevos, o null
+     * @param fecha Fecha del cambio, o null
+     * @param fechaLimite Fecha límite del préstamo, o null
+     * @param monto Monto de la multa, o 0
+     * @param cantidad Cantidad del cambio, o 0
+     */
+    void publicar(TipoCambio tipo, String isbn, String identificacion, String valorNuevo,
+            LocalDate fecha, LocalDate fechaLimite, double monto, int cantidad) {
+        if (suscripciones.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            long secuencia = cursor.get() + 1;
+            long vuelta = secuencia - anillo.length; // Secuencia que ocupaba la casilla
+            if (vuelta > minimoLeido) {
+                minimoLeido = esperarSuscripciones(vuelta);
+            }
+            EventoCambio evento = anillo[(int) secuencia & mascara];
+            evento.secuencia = secuencia;
+            evento.tipo = tipo;
+            evento.isbn = isbn;
+            evento.identificacion = identificacion;
+            evento.valorNuevo = valorNuevo;
+            evento.fecha = fecha;
+            evento.fechaLimite = fechaLimite;
+            evento.monto = monto;
+            evento.cantidad = cantidad;
+            cursor.set(secuencia); // Publica los campos escritos antes; con barrera completa antes de leer las marcas
+        }
+        for (Suscripcion suscripcion : suscripciones) {
+            if (suscripcion.estacionada) {
+                LockSupport.unpark(suscripcion.hilo);
+            }
+        }
+    }
+
+    /**
+     * Espera a que todas las suscripciones hayan procesado una secuencia. Las que no la
+     * alcanzan en ESPERA_MAXIMA_MICROS se descartan.
+     * @param vuelta Secuencia que deben haber pasado
+     * @return Menor secuencia procesada, al menos vuelta
+     */
+    private long esperarSuscripciones(long vuelta) {
+        int intentos = 0;
+        long limite = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(ESPERA_MAXIMA_MICROS);
+        while (true) {
+            long minimo = cursor.get();
+            for (Suscripcion suscripcion : suscripciones) {
+                minimo = Math.min(minimo, suscripcion.secuencia.get());
+            }
+            if (minimo >= vuelta) {
+                return minimo;
+            }
+            if (intentos >= ESPERAS_ACTIVAS && System.nanoTime() - limite > 0) {
+                for (Suscripcion suscripcion : suscripciones) {
+                    if (suscripcion.secuencia.get() < vuelta) {
+                        suscripcion.descartar();
+                    }
+                }
+                continue; // Sin las descartadas, el mínimo ya alcanza la vuelta
+            }
+            esperar(intentos++);
+        }
+    }
+
+    /**
+     * Suscribe un consumidor a los cambios publicados desde ahora, en un hilo propio.
+     * @param consumidor Consumidor de los cambios
+     * @return Suscripción, para cancelarla
+     */
+    public Suscripcion suscribir(Consumidor consumidor) {
+        Suscripcion suscripcion;
+        synchronized (this) { // Sin publicaciones entre leer el cursor y agregar la suscripción
+            suscripcion = new Suscripcion(consumidor, cursor.get());
+            synchronized (cerrojoSuscripciones) {
+                Suscripcion[] nuevas = Arrays.copyOf(suscripciones, suscripciones.length + 1);
+                nuevas[nuevas.length - 1] = suscripcion;
+                suscripciones = nuevas;
+            }
+        }
+        Thread hilo = new Thread(suscripcion, "cambios-biblioteca");
+        hilo.setDaemon(true);
+        suscripcion.hilo = hilo;
+        hilo.start();
+        return suscripcion;
+    }
+
+    /**
+     * Quita una suscripción terminada. No toma el monitor del flujo, que puede tenerlo un
+     * productor esperando justo a esa suscripción.
+     * @param suscripcion Suscripción terminada
+     */
+    private void quitar(Suscripcion suscripcion) {
+        synchronized (cerrojoSuscripciones) {
+            Suscripcion[] actuales = suscripciones;
+            for (int i = 0; i < actuales.length; i++) {
+                if (actuales[i] == suscripcion) {
+                    Suscripcion[] nuevas = Arrays.copyOf(actuales, actuales.length - 1);
+                    System.arraycopy(actuales, i + 1, nuevas, i, actuales.length - i - 1);
+                    suscripciones = nuevas;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra el flujo: cada suscripción procesa lo ya publicado y termina.
+     */
+    void cerrar() {
+        cerrado = true;
+        for (Suscripcion suscripcion : suscripciones) {
+            LockSupport.unpark(suscripcion.hilo);
+        }
+    }
+
+    /**
+     * Espera activa que cede el procesador cada vez más: primero gira, después cede el
+     * turno y al final duerme de a 100 microsegundos. Un consumidor sin cambios solo la
+     * usa hasta ESPERAS_ACTIVAS intentos; un productor, hasta ESPERA_MAXIMA_MICROS.
+     * @param intentos Intentos fallidos seguidos
+     */
+    private static void esperar(int intentos) {
+        if (intentos < 100) {
+            Thread.onSpinWait();
+        } else if (intentos < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(100_000L);
+        }
+    }
+}
@@ -0,0 +1,805 @@
+package Model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Historial de los préstamos devueltos, particionado por mes de devolución.
+ * <p>
+ * Cada préstamo cerrado se guarda como siete enteros (número interno del libro, número
+ * interno del usuario, fechas de préstamo, límite y de entrega como días desde la
+ * época, y el registro anterior del mismo libro y el del mismo usuario en la partición)
+ * al final de la partición de su mes, en segmentos de tamaño fijo que no se
+ * modifican. El último ISBN y la última identificación de cada número se guardan en
+ * diccionarios, así un cambio de ISBN o de identificación no separa el historial de un
+ * libro o de un usuario, y los eliminados se siguen encontrando por el último que
+ * tuvieron. Cada partición sabe cuál es el último registro de cada libro y de cada
+ * usuario que contiene, así que las búsquedas saltan los meses fuera del rango de
+ * fechas y los que no tienen al libro o al usuario buscado, y dentro de un mes solo
+ * leen sus registros, siguiendo los enlaces hacia atrás.
+ * </p>
+ * <p>
+ * Si acompaña a un diario, cada partición es un archivo de solo agregado en la carpeta
+ * del historial, y los segmentos completos se leen mapeados en lugar de ocupar el heap.
+ * Al guardar un volcado del catálogo se escribe una marca con el largo de cada archivo;
+ * al abrir, los archivos se recortan a la marca del volcado cargado y la reproducción
+ * del diario vuelve a archivar las devoluciones posteriores. Si falta la marca del
+ * volcado, Biblioteca no lo carga: reproduce el diario completo y el historial se
+ * reconstruye desde el principio.
+ * </p>
+ * <p>
+ * Sin diario (con una base de datos), el historial vive en su propia carpeta y no usa
+ * marcas: cada préstamo se escribe y sincroniza al archivarlo, y al abrir se conserva
+ * todo lo escrito, descartando solo un registro final incompleto.
+ * </p>
+ * <p>
+ * Archivar se serializa con el monitor del historial. Las búsquedas solo lo toman para
+ * elegir las particiones y traducir los códigos: recorren los segmentos sin bloquear,
+ * porque los registros ya publicados no cambian.
+ * </p>
+ */
+class HistorialPrestamos implements AutoCloseable {
+    private static final int BYTES_POR_REGISTRO = 28; // Siete enteros
+    private static final int ENLACE_LIBRO = 20; // Posición del registro anterior del mismo libro
+    private static final int ENLACE_USUARIO = 24; // Posición del registro anterior del mismo usuario
+    private static final int BITS_SEGMENTO = 16;
+    private static final int REGISTROS_POR_SEGMENTO = 1 << BITS_SEGMENTO;
+    private static final int CAPACIDAD_INICIAL = 1024; // Registros del primer segmento de una partición
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+    private static final String SUFIJO = ".historial";
+    private static final String EXTENSION_PARTICION = ".prestamos";
+    private static final String EXTENSION_CLAVES = ".claves";
+    private static final String ARCHIVO_NOMBRES = "nombres";
+    private static final String PREFIJO_MARCA = "marca.";
+    private static final byte NOMBRE_LIBRO = 1;
+    private static final byte NOMBRE_USUARIO = 2;
+
+    private final Path carpeta; // null si el historial solo vive en memoria
+    private final boolean sinDiario; // Escribe cada préstamo al archivarlo, sin marcas
+    private final HashMap<Integer, String> isbns = new HashMap<>(); // Número de libro -> último ISBN
+    private final TablaClaves librosPorIsbn = new TablaClaves(16); // Clave canónica del ISBN -> número del último libro que lo tuvo
+    private final HashMap<Integer, String> identificaciones = new HashMap<>(); // Número de usuario -> última identificación
+    private final HashMap<String, Integer> usuariosPorIdentificacion = new HashMap<>(); // Identificación -> número
+    private final TreeMap<Integer, Particion> particiones = new TreeMap<>(); // Mes -> partición
+    private FileChannel nombres; // Diccionarios en disco, o null en memoria
+    private long bytesNombres; // Bytes de nombres ya escritos
+    private final ByteArrayOutputStream nombresPendientes = new ByteArrayOutputStream();
+
+    /**
+     * Constructor que crea un historial que solo vive en memoria.
+     */
+    HistorialPrestamos() {
+        this.carpeta = null;
+        this.sinDiario = false;
+    }
+
+    /**
+     * Constructor que abre el historial guardado en una carpeta. Junto a un diario, lo
+     * recorta a la marca escrita con el volcado de una generación.
+     * @param carpeta Carpeta del historial
+     * @param marca Largo de cada archivo de partición según la marca (vacío si no hay
+     *              marca), o null si el historial no acompaña a un diario
+     * @param largoNombres Largo del archivo de nombres según la marca
+     * @throws IOException Si no se pueden leer los archivos
+     */
+    private HistorialPrestamos(Path carpeta, HashMap<Integer, Long> marca, long largoNombres) throws IOException {
+        this.carpeta = carpeta;
+        this.sinDiario = marca == null;
+        try {
+            nombres = FileChannel.open(carpeta.resolve(ARCHIVO_NOMBRES), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            cargarNombres(largoNombres);
+            try (DirectoryStream<Path> contenido = Files.newDirectoryStream(carpeta, "*" + EXTENSION_PARTICION)) {
+                for (Path archivo : contenido) {
+                    String nombre = archivo.getFileName().toString();
+                    int mes = mes(nombre.substring(0, nombre.length() - EXTENSION_PARTICION.length()));
+                    Long largo = sinDiario ? Long.valueOf(Long.MAX_VALUE) : marca.get(mes);
+                    if (mes < 0 || largo == null || largo == 0) {
+                        Files.deleteIfExists(archivo); // Posterior al volcado: la reproducción del diario lo rehace
+                        Files.deleteIfExists(carpeta.resolve(nombreMes(mes) + EXTENSION_CLAVES));
+                        continue;
+                    }
+                    Particion particion = new Particion(mes);
+                    particion.abrir(archivo, largo);
+                    particiones.put(mes, particion);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            cerrarArchivos();
+            throw e;
+        }
+    }
+
+    /**
+     * Abre el historial que acompaña a un diario.
+     * @param archivoDiario Archivo del diario
+     * @param generacion Generación del volcado cargado, o 0 si se reproduce el diario completo
+     * @return Historial recortado al estado del volcado
+     * @throws IOException Si no se puede crear la carpeta o leer los archivos
+     */
+    static HistorialPrestamos abrir(Path archivoDiario, long generacion) throws IOException {
+        Path carpeta = carpeta(archivoDiario);
+        Files.createDirectories(carpeta);
+        HashMap<Integer, Long> marca = new HashMap<>();
+        long largoNombres = 0;
+        Path archivoMarca = carpeta.resolve(PREFIJO_MARCA + generacion);
+        if (generacion > 0 && Files.exists(archivoMarca)) {
+            try (DataInputStream entrada = new DataInputStream(Files.newInputStream(archivoMarca))) {
+                largoNombres = entrada.readLong();
+                int cantidad = entrada.readInt();
+                for (int i = 0; i < cantidad; i++) {
+                    marca.put(entrada.readInt(), entrada.readLong());
+                }
+            }
+        }
+        return new HistorialPrestamos(carpeta, marca, largoNombres);
+    }
+
+    /**
+     * Abre un historial que no acompaña a un diario, como el de una biblioteca con base
+     * de datos.
+     * @param carpeta Carpeta del historial (se crea si no existe)
+     * @return Historial con todo lo archivado en la carpeta
+     * @throws IOException Si no se puede crear la carpeta o leer los archivos
+     */
+    static HistorialPrestamos abrir(Path carpeta) throws IOException {
+        Files.createDirectories(carpeta);
+        return new HistorialPrestamos(carpeta, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Indica si el historial tiene la marca del volcado de una generación, sin la cual
+     * no puede recortarse al estado de ese volcado.
+     * @param archivoDiario Archivo del diario
+     * @param generacion Generación del volcado
+     * @return true si la marca existe
+     */
+    static boolean tieneMarca(Path archivoDiario, long generacion) {
+        return Files.exists(carpeta(archivoDiario).resolve(PREFIJO_MARCA + generacion));
+    }
+
+    /**
+     * Obtiene la carpeta del historial que acompaña a un diario.
+     * @param archivoDiario Archivo del diario
+     * @return Carpeta del historial
+     */
+    private static Path carpeta(Path archivoDiario) {
+        return archivoDiario.resolveSibling(archivoDiario.getFileName() + SUFIJO);
+    }
+
+    /**
+     * Lee los diccionarios de ISBN e identificaciones, descartando lo posterior a la
+     * marca y un valor final que quedó escrito a medias.
+     * @param largo Bytes válidos del archivo de nombres
+     * @throws IOException Si falla la lectura
+     */
+    private void cargarNombres(long largo) throws IOException {
+        largo = Math.min(largo, nombres.size());
+        ByteBuffer datos = ByteBuffer.allocate((int) largo);
+        while (datos.hasRemaining() && nombres.read(datos, datos.position()) > 0) {
+            // Lee hasta completar
+        }
+        datos.flip();
+        while (datos.remaining() >= 7) {
+            int inicio = datos.position();
+            byte tipo = datos.get();
+            int numero = datos.getInt();
+            byte[] texto = new byte[datos.getShort() & 0xFFFF];
+            if (datos.remaining() < texto.length) {
+                datos.position(inicio); // Escritura interrumpida
+                break;
+            }
+            datos.get(texto);
+            String valor = new String(texto, StandardCharsets.UTF_8);
+            if (tipo == NOMBRE_LIBRO) {
+                nombrarLibro(numero, valor);
+            } else {
+                nombrarUsuario(numero, valor);
+            }
+        }
+        bytesNombres = datos.limit() - datos.remaining();
+        nombres.truncate(bytesNombres);
+    }
+
+    /**
+     * Archiva un préstamo que se acaba de devolver.
+     * @param prestamo Préstamo cerrado
+     * @param fechaEntrega Fecha real de devolución
+     */
+    synchronized void archivar(Prestamo prestamo, LocalDate fechaEntrega) {
+        Libro libro = prestamo.getLibro();
+        if (!libro.getIsbn().equals(isbns.get(libro.numero))) {
+            nombrarLibro(libro.numero, libro.getIsbn());
+            anotarNombre(NOMBRE_LIBRO, libro.numero, libro.getIsbn());
+        }
+        Usuario usuario = prestamo.getUsuario();
+        if (!usuario.getIdentificacion().equals(identificaciones.get(usuario.numero))) {
+            nombrarUsuario(usuario.numero, usuario.getIdentificacion());
+            anotarNombre(NOMBRE_USUARIO, usuario.numero, usuario.getIdentificacion());
+        }
+        int entrega = dia(fechaEntrega);
+        Particion particion = particiones.get(mesDeDia(entrega));
+        if (particion == null) {
+            particion = new Particion(mesDeDia(entrega));
+            particiones.put(particion.mes, particion);
+        }
+        particion.agregar(libro.numero, usuario.numero, dia(prestamo.getFechaPrestamo()),
+                dia(prestamo.getFechaDevolucion()), entrega);
+        if (sinDiario) {
+            try {
+                escribirNombres();
+                nombres.force(false);
+                particion.guardar();
+                particion.canal.force(false);
+            } catch (IOException e) {
+                // Queda en memoria: se reintenta en la próxima devolución o al cerrar
+            }
+        }
+    }
+
+    /**
+     * Registra el ISBN nuevo de un libro que ya tiene préstamos archivados.
+     * @param numero Número interno del libro
+     * @param isbn ISBN nuevo
+     */
+    synchronized void renombrarLibro(int numero, String isbn) {
+        if (isbns.containsKey(numero)) {
+            nombrarLibro(numero, isbn);
+            anotarNombre(NOMBRE_LIBRO, numero, isbn);
+        }
+    }
+
+    /**
+     * Registra la identificación nueva de un usuario que ya tiene préstamos archivados.
+     * @param numero Número interno del usuario
+     * @param identificacion Identificación nueva
+     */
+    synchronized void renombrarUsuario(int numero, String identificacion) {
+        if (identificaciones.containsKey(numero)) {
+            nombrarUsuario(numero, identificacion);
+            anotarNombre(NOMBRE_USUARIO, numero, identificacion);
+        }
+    }
+
+    /**
+     * Busca el número del último libro archivado con un ISBN, para consultar el
+     * historial de un libro que ya no está registrado.
+     * @param isbn ISBN, con o sin guiones
+     * @return Número interno, o -1 si ningún libro archivado tuvo ese ISBN
+     */
+    synchronized int numeroDeLibro(String isbn) {
+        return librosPorIsbn.buscar(IndiceIsbn.calcularClave(isbn));
+    }
+
+    /**
+     * Busca el número del último usuario archivado con una identificación, para
+     * consultar el historial de un usuario que ya no está registrado.
+     * @param identificacion Identificación
+     * @return Número interno, o -1 si ningún usuario archivado tuvo esa identificación
+     */
+    synchronized int numeroDeUsuario(String identificacion) {
+        Integer numero = usuariosPorIdentificacion.get(identificacion);
+        return numero != null ? numero : -1;
+    }
+
+    /**
+     * Asocia un número de libro con su último ISBN en los diccionarios.
+     * @param numero Número interno del libro
+     * @param isbn ISBN
+     */
+    private void nombrarLibro(int numero, String isbn) {
+        String anterior = isbns.put(numero, isbn);
+        if (anterior != null && librosPorIsbn.buscar(IndiceIsbn.calcularClave(anterior)) == numero) {
+            librosPorIsbn.eliminar(IndiceIsbn.calcularClave(anterior));
+        }
+        librosPorIsbn.poner(IndiceIsbn.calcularClave(isbn), numero);
+    }
+
+    /**
+     * Asocia un número de usuario con su última identificación en los diccionarios.
+     * @param numero Número interno del usuario
+     * @param identificacion Identificación
+     */
+    private void nombrarUsuario(int numero, String identificacion) {
+        String anterior = identificaciones.put(numero, identificacion);
+        if (anterior != null) {
+            usuariosPorIdentificacion.remove(anterior, numero);
+        }
+        usuariosPorIdentificacion.put(identificacion, numero);
+    }
+
+    /**
+     * Deja un valor nuevo de los diccionarios pendiente de escribir.
+     * @param tipo NOMBRE_LIBRO o NOMBRE_USUARIO
+     * @param numero Número interno del libro o del usuario
+     * @param valor ISBN o identificación
+     */
+    private void anotarNombre(byte tipo, int numero, String valor) {
+        if (carpeta == null) {
+            return;
+        }
+        byte[] texto = valor.getBytes(StandardCharsets.UTF_8);
+        nombresPendientes.write(tipo);
+        nombresPendientes.write(numero >>> 24);
+        nombresPendientes.write(numero >>> 16);
+        nombresPendientes.write(numero >>> 8);
+        nombresPendientes.write(numero);
+        nombresPendientes.write(texto.length >>> 8);
+        nombresPendientes.write(texto.length);
+        nombresPendientes.write(texto, 0, texto.length);
+    }
+
+    /**
+     * Busca préstamos archivados. Cada criterio -1 o nulo acepta cualquier valor; el
+     * rango de fechas se aplica a la fecha de entrega.
+     * @param libro Número interno del libro, o -1
+     * @param usuario Número interno del usuario, o -1
+     * @param desde Primera fecha de entrega, o null
+     * @param hasta Última fecha de entrega, o null
+     * @return Préstamos archivados, ordenados por mes de entrega y, dentro del mes, por orden de archivo
+     */
+    ArrayList<PrestamoArchivado> buscar(int libro, int usuario, LocalDate desde, LocalDate hasta) {
+        int diaDesde = desde == null ? Integer.MIN_VALUE : dia(desde);
+        int diaHasta = hasta == null ? Integer.MAX_VALUE : dia(hasta);
+        ArrayList<PrestamoArchivado> resultados = new ArrayList<>();
+        if (diaDesde > diaHasta) {
+            return resultados;
+        }
+        int enlace = libro >= 0 ? ENLACE_LIBRO : usuario >= 0 ? ENLACE_USUARIO : -1;
+        ByteBuffer[][] segmentos;
+        int[] ultimos; // Último registro de cada partición que puede cumplir los criterios
+        synchronized (this) {
+            ArrayList<Particion> candidatas = new ArrayList<>(
+                    particiones.subMap(mesDeDia(diaDesde), true, mesDeDia(diaHasta), true).values());
+            segmentos = new ByteBuffer[candidatas.size()][];
+            ultimos = new int[candidatas.size()];
+            for (int i = 0; i < ultimos.length; i++) {
+                Particion particion = candidatas.get(i);
+                segmentos[i] = particion.segmentos;
+                ultimos[i] = libro >= 0 ? particion.ultimoDeLibro.buscar(libro + 1L)
+                        : usuario >= 0 ? particion.ultimoDeUsuario.buscar(usuario + 1L)
+                        : particion.cantidad - 1;
+            }
+        }
+        int[] encontrados = new int[0];
+        int n = 0;
+        int[] elegidos = new int[16];
+        for (int i = 0; i < ultimos.length; i++) {
+            // Se recorre hacia atrás, por los enlaces del libro o del usuario si hay uno
+            int cantidadElegidos = 0;
+            for (int registro = ultimos[i]; registro >= 0; ) {
+                ByteBuffer segmento = segmentos[i][registro >>> BITS_SEGMENTO];
+                int posicion = (registro & (REGISTROS_POR_SEGMENTO - 1)) * BYTES_POR_REGISTRO;
+                int entrega = segmento.getInt(posicion + 16);
+                if ((usuario < 0 || segmento.getInt(posicion + 4) == usuario)
+                        && entrega >= diaDesde && entrega <= diaHasta) {
+                    if (cantidadElegidos == elegidos.length) {
+                        elegidos = Arrays.copyOf(elegidos, cantidadElegidos * 2);
+                    }
+                    elegidos[cantidadElegidos++] = registro;
+                }
+                registro = enlace >= 0 ? segmento.getInt(posicion + enlace) : registro - 1;
+            }
+            if (n + cantidadElegidos * 5 > encontrados.length) {
+                encontrados = Arrays.copyOf(encontrados, Math.max(n + cantidadElegidos * 5, encontrados.length * 2));
+            }
+            for (int j = cantidadElegidos - 1; j >= 0; j--) {
+                ByteBuffer segmento = segmentos[i][elegidos[j] >>> BITS_SEGMENTO];
+                int posicion = (elegidos[j] & (REGISTROS_POR_SEGMENTO - 1)) * BYTES_POR_REGISTRO;
+                for (int k = 0; k < 5; k++) {
+                    encontrados[n++] = segmento.getInt(posicion + k * 4);
+                }
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < n; i += 5) {
+                resultados.add(new PrestamoArchivado(isbns.get(encontrados[i]), identificaciones.get(encontrados[i + 1]),
+                        fecha(encontrados[i + 2]), fecha(encontrados[i + 3]), fecha(encontrados[i + 4])));
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Escribe en disco todo lo archivado y deja una marca con el largo de cada archivo
+     * para el volcado de una generación. Se llama con la biblioteca detenida, justo
+     * antes de escribir el volcado.
+     * @param generacion Generación del volcado que se va a escribir
+     * @throws IOException Si falla la escritura
+     */
+    synchronized void sincronizar(long generacion) throws IOException {
+        if (carpeta == null) {
+            return;
+        }
+        escribirNombres();
+        nombres.force(false);
+        for (Particion particion : particiones.values()) {
+            particion.guardar();
+            particion.canal.force(false);
+            particion.guardarClaves();
+        }
+        Path marca = carpeta.resolve(PREFIJO_MARCA + generacion);
+        Path temporal = carpeta.resolve(marca.getFileName() + ".tmp");
+        try (DataOutputStream salida = new DataOutputStream(Files.newOutputStream(temporal))) {
+            salida.writeLong(bytesNombres);
+            salida.writeInt(particiones.size());
+            for (Particion particion : particiones.values()) {
+                salida.writeInt(particion.mes);
+                salida.writeLong((long) particion.guardados * BYTES_POR_REGISTRO);
+            }
+        }
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.WRITE)) {
+            canal.force(true);
+        }
+        Files.move(temporal, marca, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Escribe en el archivo de nombres los valores nuevos de los diccionarios.
+     * @throws IOException Si falla la escritura
+     */
+    private void escribirNombres() throws IOException {
+        if (nombresPendientes.size() > 0) {
+            ByteBuffer datos = ByteBuffer.wrap(nombresPendientes.toByteArray());
+            while (datos.hasRemaining()) {
+                nombres.write(datos, bytesNombres + datos.position());
+            }
+            bytesNombres += datos.capacity();
+            nombresPendientes.reset();
+        }
+    }
+
+    /**
+     * Borra las marcas de volcados anteriores a una generación.
+     * Las que no se pueden borrar quedan para el siguiente volcado.
+     * @param generacionVigente Generación del volcado que se conserva
+     */
+    void eliminarMarcasAnteriores(long generacionVigente) {
+        if (carpeta == null) {
+            return;
+        }
+        try (DirectoryStream<Path> contenido = Files.newDirectoryStream(carpeta, PREFIJO_MARCA + "*")) {
+            for (Path archivo : contenido) {
+                try {
+                    if (Long.parseLong(archivo.getFileName().toString().substring(PREFIJO_MARCA.length()))
+                            < generacionVigente) {
+                        Files.deleteIfExists(archivo);
+                    }
+                } catch (NumberFormatException | IOException e) {
+                    // Temporal a medias o marca en uso: se reintenta en el siguiente volcado
+                }
+            }
+        } catch (IOException e) {
+            // Se reintenta en el siguiente volcado
+        }
+    }
+
+    /**
+     * Cierra los archivos del historial. Lo archivado después de la última marca se
+     * recupera al reproducir el diario; sin diario, antes de cerrar se escribe lo que
+     * haya quedado pendiente y los últimos registros de cada partición.
+     * @throws IOException Si falla la escritura o el cierre
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (sinDiario) {
+                escribirNombres();
+                nombres.force(false);
+                for (Particion particion : particiones.values()) {
+                    particion.guardar();
+                    particion.canal.force(false);
+                    particion.guardarClaves();
+                }
+            }
+        } finally {
+            cerrarArchivos();
+        }
+    }
+
+    /**
+     * Cierra los archivos abiertos del historial, sin escribir nada.
+     * @throws IOException Si falla el cierre
+     */
+    private void cerrarArchivos() throws IOException {
+        if (nombres != null) {
+            nombres.close();
+        }
+        for (Particion particion : particiones.values()) {
+            if (particion.canal != null) {
+                particion.canal.close();
+            }
+        }
+    }
+
+    /**
+     * Convierte una fecha en día desde la época.
+     * @param fecha Fecha (puede ser null)
+     * @return Día desde la época, o SIN_FECHA si es null
+     */
+    private static int dia(LocalDate fecha) {
+        return fecha == null ? SIN_FECHA : (int) fecha.toEpochDay();
+    }
+
+    /**
+     * Convierte un día desde la época en fecha.
+     * @param dia Día desde la época, o SIN_FECHA
+     * @return Fecha, o null para SIN_FECHA
+     */
+    private static LocalDate fecha(int dia) {
+        return dia == SIN_FECHA ? null : LocalDate.ofEpochDay(dia);
+    }
+
+    /**
+     * Calcula el mes de una fecha, contado como año * 12 + mes - 1.
+     * @param dia Día desde la época (los extremos de int se acotan al rango de LocalDate)
+     * @return Mes de la partición
+     */
+    private static int mesDeDia(int dia) {
+        LocalDate fecha = LocalDate.ofEpochDay(Math.max(-100_000_000, Math.min(100_000_000, dia)));
+        return fecha.getYear() * 12 + fecha.getMonthValue() - 1;
+    }
+
+    /**
+     * Arma el nombre de archivo de un mes, por ejemplo "2024-03".
+     * @param mes Mes de la partición
+     * @return Nombre del mes
+     */
+    private static String nombreMes(int mes) {
+        return String.format("%04d-%02d", Math.floorDiv(mes, 12), Math.floorMod(mes, 12) + 1);
+    }
+
+    /**
+     * Lee el mes de un nombre de archivo.
+     * @param nombre Nombre del mes, como lo arma nombreMes
+     * @return Mes de la partición, o -1 si el nombre no es un mes
+     */
+    private static int mes(String nombre) {
+        try {
+            int guion = nombre.lastIndexOf('-');
+            int mes = Integer.parseInt(nombre.substring(guion + 1));
+            return mes >= 1 && mes <= 12 ? Integer.parseInt(nombre.substring(0, guion)) * 12 + mes - 1 : -1;
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Préstamos archivados de un mes.
+     * <p>
+     * Los registros se agregan al final del último segmento. En disco, los segmentos
+     * completos ya escritos se reemplazan por su mapeo del archivo; el último sigue en
+     * el heap hasta llenarse.
+     * </p>
+     */
+    private final class Particion {
+        final int mes;
+        volatile ByteBuffer[] segmentos = new ByteBuffer[0];
+        volatile int cantidad; // Se escribe después de cada registro: leerla publica los anteriores
+        final TablaClaves ultimoDeLibro = new TablaClaves(16); // Número de libro + 1 -> su último registro
+        final TablaClaves ultimoDeUsuario = new TablaClaves(16); // Número de usuario + 1 -> su último registro
+        FileChannel canal; // null si el historial solo vive en memoria
+        int guardados; // Registros ya escritos en el archivo
+        boolean clavesCambiadas; // Los últimos registros cambiaron desde que se guardaron
+
+        /**
+         * Constructor que crea una partición vacía.
+         * @param mes Mes de la partición
+         */
+        Particion(int mes) {
+            this.mes = mes;
+        }
+
+        /**
+         * Abre el archivo de la partición, recortado a un largo, y carga el último
+         * registro de cada libro y de cada usuario. Si su archivo falta o se escribió con
+         * otra cantidad de registros, se reconstruyen recorriendo los registros.
+         * @param archivo Archivo de la partición
+         * @param largo Bytes válidos según la marca
+         * @throws IOException Si falla la lectura
+         */
+        void abrir(Path archivo, long largo) throws IOException {
+            canal = FileChannel.open(archivo, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            largo = Math.min(largo, canal.size()) / BYTES_POR_REGISTRO * BYTES_POR_REGISTRO;
+            canal.truncate(largo);
+            int total = (int) (largo / BYTES_POR_REGISTRO);
+            int completos = total >>> BITS_SEGMENTO;
+            ByteBuffer[] leidos = new ByteBuffer[completos + 1];
+            long tamañoSegmento = (long) REGISTROS_POR_SEGMENTO * BYTES_POR_REGISTRO;
+            for (int i = 0; i < completos; i++) {
+                leidos[i] = canal.map(FileChannel.MapMode.READ_ONLY, i * tamañoSegmento, tamañoSegmento);
+            }
+            int resto = total - (completos << BITS_SEGMENTO);
+            ByteBuffer ultimo = ByteBuffer.allocate(capacidad(resto) * BYTES_POR_REGISTRO);
+            ultimo.limit(resto * BYTES_POR_REGISTRO);
+            while (ultimo.hasRemaining() && canal.read(ultimo, completos * tamañoSegmento + ultimo.position()) > 0) {
+                // Lee hasta completar
+            }
+            ultimo.clear();
+            leidos[completos] = ultimo;
+            segmentos = leidos;
+            guardados = total;
+            cantidad = total;
+            Path archivoClaves = carpeta.resolve(nombreMes(mes) + EXTENSION_CLAVES);
+            if (!cargarClaves(archivoClaves, total)) {
+                Files.deleteIfExists(archivoClaves);
+                for (int registro = 0; registro < total; registro++) {
+                    ByteBuffer segmento = leidos[registro >>> BITS_SEGMENTO];
+                    int posicion = (registro & (REGISTROS_POR_SEGMENTO - 1)) * BYTES_POR_REGISTRO;
+                    ultimoDeLibro.poner(segmento.getInt(posicion) + 1L, registro);
+                    ultimoDeUsuario.poner(segmento.getInt(posicion + 4) + 1L, registro);
+                }
+                clavesCambiadas = true;
+            }
+        }
+
+        /**
+         * Carga el último registro de cada libro y de cada usuario desde su archivo.
+         * @param archivo Archivo de claves de la partición
+         * @param registros Registros de la partición; el archivo solo vale si se escribió con esa cantidad
+         * @return true si se cargaron; false si el archivo falta o no corresponde
+         * @throws IOException Si falla la lectura
+         */
+        private boolean cargarClaves(Path archivo, int registros) throws IOException {
+            if (!Files.exists(archivo)) {
+                return false;
+            }
+            ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(archivo));
+            if (datos.remaining() < 12 || datos.getInt(0) != registros) {
+                return false;
+            }
+            int libros = datos.getInt(4);
+            int usuarios = datos.getInt(8);
+            if (libros < 0 || usuarios < 0 || datos.remaining() != 12 + 8L * (libros + usuarios)) {
+                return false;
+            }
+            datos.position(12);
+            for (int i = 0; i < libros; i++) {
+                ultimoDeLibro.poner(datos.getInt() + 1L, datos.getInt());
+            }
+            for (int i = 0; i < usuarios; i++) {
+                ultimoDeUsuario.poner(datos.getInt() + 1L, datos.getInt());
+            }
+            return true;
+        }
+
+        /**
+         * Calcula la capacidad de un segmento que debe guardar una cantidad de registros.
+         * @param registros Registros a guardar
+         * @return Capacidad en registros, potencia de 2 entre CAPACIDAD_INICIAL y REGISTROS_POR_SEGMENTO
+         */
+        private int capacidad(int registros) {
+            int capacidad = CAPACIDAD_INICIAL;
+            while (capacidad < registros) {
+                capacidad <<= 1;
+            }
+            return Math.min(capacidad, REGISTROS_POR_SEGMENTO);
+        }
+
+        /**
+         * Agrega un registro al final del último segmento. Si se llena un segmento en
+         * disco, se intenta escribirlo y mapearlo; si falla, queda para sincronizar.
+         * @param libro Número interno del libro
+         * @param usuario Número interno del usuario
+         * @param prestamo Día del préstamo
+         * @param limite Día límite de devolución
+         * @param entrega Día de entrega
+         */
+        void agregar(int libro, int usuario, int prestamo, int limite, int entrega) {
+            int registro = cantidad;
+            int indice = registro >>> BITS_SEGMENTO;
+            int posicion = (registro & (REGISTROS_POR_SEGMENTO - 1)) * BYTES_POR_REGISTRO;
+            ByteBuffer[] actuales = segmentos;
+            if (indice == actuales.length) {
+                actuales = Arrays.copyOf(actuales, indice + 1);
+                actuales[indice] = ByteBuffer.allocate(CAPACIDAD_INICIAL * BYTES_POR_REGISTRO);
+                segmentos = actuales;
+            } else if (posicion == actuales[indice].capacity()) {
+                // El último segmento crece: los lectores siguen con la copia anterior
+                ByteBuffer mayor = ByteBuffer.allocate(posicion * 2);
+                mayor.put(actuales[indice].duplicate().clear());
+                actuales = actuales.clone();
+                actuales[indice] = mayor;
+                segmentos = actuales;
+            }
+            ByteBuffer segmento = actuales[indice];
+            segmento.putInt(posicion, libro);
+            segmento.putInt(posicion + 4, usuario);
+            segmento.putInt(posicion + 8, prestamo);
+            segmento.putInt(posicion + 12, limite);
+            segmento.putInt(posicion + 16, entrega);
+            segmento.putInt(posicion + ENLACE_LIBRO, ultimoDeLibro.buscar(libro + 1L));
+            segmento.putInt(posicion + ENLACE_USUARIO, ultimoDeUsuario.buscar(usuario + 1L));
+            ultimoDeLibro.poner(libro + 1L, registro);
+            ultimoDeUsuario.poner(usuario + 1L, registro);
+            clavesCambiadas = true;
+            cantidad = registro + 1;
+            if (canal == null && carpeta != null) {
+                try {
+                    canal = FileChannel.open(carpeta.resolve(nombreMes(mes) + EXTENSION_PARTICION),
+                            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    // Se reintenta al sincronizar
+                }
+            }
+            if (canal != null && (cantidad & (REGISTROS_POR_SEGMENTO - 1)) == 0) {
+                try {
+                    guardar();
+                } catch (IOException e) {
+                    // El segmento queda en el heap; se reintenta al sincronizar
+                }
+            }
+        }
+
+        /**
+         * Escribe los registros que faltan en el archivo y reemplaza los segmentos
+         * completos ya escritos por su mapeo.
+         * @throws IOException Si falla la escritura
+         */
+        void guardar() throws IOException {
+            if (canal == null) {
+                canal = FileChannel.open(carpeta.resolve(nombreMes(mes) + EXTENSION_PARTICION),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            long tamañoSegmento = (long) REGISTROS_POR_SEGMENTO * BYTES_POR_REGISTRO;
+            ByteBuffer[] actuales = segmentos;
+            boolean mapeados = false;
+            while (guardados < cantidad) {
+                int indice = guardados >>> BITS_SEGMENTO;
+                int desde = (guardados & (REGISTROS_POR_SEGMENTO - 1)) * BYTES_POR_REGISTRO;
+                int hasta = Math.min(cantidad - (indice << BITS_SEGMENTO), REGISTROS_POR_SEGMENTO) * BYTES_POR_REGISTRO;
+                ByteBuffer pendiente = actuales[indice].duplicate().limit(hasta).position(desde);
+                while (pendiente.hasRemaining()) {
+                    canal.write(pendiente, indice * tamañoSegmento + pendiente.position());
+                }
+                guardados += (hasta - desde) / BYTES_POR_REGISTRO;
+                if (hasta == tamañoSegmento) {
+                    if (!mapeados) {
+                        actuales = actuales.clone();
+                        mapeados = true;
+                    }
+                    actuales[indice] = canal.map(FileChannel.MapMode.READ_ONLY, indice * tamañoSegmento, tamañoSegmento);
+                }
+            }
+            if (mapeados) {
+                segmentos = actuales;
+            }
+        }
+
+        /**
+         * Escribe el último registro de cada libro y de cada usuario si cambiaron desde
+         * la última vez, junto con la cantidad de registros a la que corresponden. Se
+         * llama después de guardar los registros.
+         * @throws IOException Si falla la escritura
+         */
+        void guardarClaves() throws IOException {
+            if (!clavesCambiadas) {
+                return;
+            }
+            ByteBuffer datos = ByteBuffer.allocate(12 + 8 * (ultimoDeLibro.tamaño() + ultimoDeUsuario.tamaño()));
+            datos.putInt(cantidad).putInt(ultimoDeLibro.tamaño()).putInt(ultimoDeUsuario.tamaño());
+            ultimoDeLibro.recorrer((clave, registro) -> datos.putInt((int) (clave - 1)).putInt(registro));
+            ultimoDeUsuario.recorrer((clave, registro) -> datos.putInt((int) (clave - 1)).putInt(registro));
+            Path archivo = carpeta.resolve(nombreMes(mes) + EXTENSION_CLAVES);
+            Path temporal = carpeta.resolve(archivo.getFileName() + ".tmp");
+            Files.write(temporal, datos.array());
+            Files.move(temporal, archivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            clavesCambiadas = false;
+        }
+    }
+}
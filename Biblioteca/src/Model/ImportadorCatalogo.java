@@ -0,0 +1,374 @@
+package Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Importa libros en masa desde un archivo CSV o TSV.
+ * <p>
+ * Cada fila tiene cinco columnas en el orden del constructor de Libro: título, autor,
+ * año de publicación, ISBN y ejemplares. El separador (tabulador o coma) se deduce de la
+ * primera línea, que se omite si es una cabecera (su primera columna dice "titulo").
+ * Los campos pueden ir entre comillas dobles, con "" para una comilla, pero no pueden
+ * contener saltos de línea. El archivo debe estar en UTF-8.
+ * </p>
+ * <p>
+ * El archivo se lee por trozos que terminan en un salto de línea. Cada trozo se analiza
+ * en paralelo en el pool común, y los trozos se agregan a la biblioteca en el orden del
+ * archivo, un lote por trozo. Solo se analizan a la vez unos pocos trozos por núcleo, así
+ * la memoria no depende del tamaño del archivo. Los índices de texto se reconstruyen una
+ * sola vez, al final.
+ * </p>
+ */
+public class ImportadorCatalogo {
+    private static final int COLUMNAS = 5;
+    private static final int TAMAÑO_TROZO = 4 << 20;
+    private static final int TROZOS_POR_NUCLEO = 2;
+
+    private final Biblioteca biblioteca;
+    private final ExecutorService ejecutor;
+
+    /**
+     * Constructor que analiza los trozos en el pool común.
+     * @param biblioteca Biblioteca a la que se agregan los libros
+     */
+    public ImportadorCatalogo(Biblioteca biblioteca) {
+        this(biblioteca, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor que analiza los trozos con un ejecutor dado.
+     * @param biblioteca Biblioteca a la que se agregan los libros
+     * @param ejecutor Ejecutor para analizar los trozos en paralelo
+     */
+    public ImportadorCatalogo(Biblioteca biblioteca, ExecutorService ejecutor) {
+        this.biblioteca = biblioteca;
+        this.ejecutor = ejecutor;
+    }
+
+    /**
+     * Resultado de analizar un trozo del archivo.
+     */
+    private static class Trozo {
+        int lineas; // Líneas del trozo, incluidas las vacías
+        long filas; // Filas de datos (sin cabecera ni líneas vacías)
+        final ArrayList<Libro> libros = new ArrayList<>();
+        int[] lineaLibro = new int[64]; // Línea (relativa al trozo) de cada libro
+        final ArrayList<InformeImportacion.Rechazo> rechazos = new ArrayList<>(); // Líneas relativas al trozo
+        String[] textoLibro = new String[64]; // Fila original de cada libro, por si la biblioteca la rechaza
+
+        /**
+         * Guarda un libro válido junto con su línea y su texto.
+         * @param libro Libro a agregar
+         * @param linea Línea relativa al trozo
+         * @param texto Fila original
+         */
+        void agregar(Libro libro, int linea, String texto) {
+            if (libros.size() == lineaLibro.length) {
+                lineaLibro = Arrays.copyOf(lineaLibro, lineaLibro.length * 2);
+                textoLibro = Arrays.copyOf(textoLibro, textoLibro.length * 2);
+            }
+            lineaLibro[libros.size()] = linea;
+            textoLibro[libros.size()] = texto;
+            libros.add(libro);
+        }
+    }
+
+    /**
+     * Importa los libros de un archivo. Las filas inválidas, con ISBN repetido o ya
+     * registrado, o con año futuro, se informan sin detener la importación.
+     * @param archivo Archivo CSV o TSV en UTF-8
+     * @return Informe con los libros importados y las filas rechazadas
+     * @throws IOException Si no se puede leer el archivo
+     */
+    public InformeImportacion importar(Path archivo) throws IOException {
+        InformeImportacion informe = new InformeImportacion();
+        int maximoEnVuelo = Runtime.getRuntime().availableProcessors() * TROZOS_POR_NUCLEO;
+        ArrayDeque<CompletableFuture<Trozo>> enVuelo = new ArrayDeque<>();
+        long[] lineaInicial = {1}; // Línea del archivo en la que empieza el próximo trozo a agregar
+        int añoActual = LocalDate.now().getYear();
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TAMAÑO_TROZO);
+            char separador = 0;
+            boolean primero = true;
+            boolean fin = false;
+            while (!fin) {
+                fin = canal.read(buffer) < 0;
+                if (!fin && buffer.hasRemaining()) {
+                    continue; // Se llena el búfer antes de cortar
+                }
+                byte[] datos = buffer.array();
+                int limite = buffer.position();
+                int corte = fin ? limite : ultimoSalto(datos, limite) + 1;
+                if (corte == 0) {
+                    buffer = ByteBuffer.wrap(Arrays.copyOf(datos, datos.length * 2)).position(limite);
+                    continue; // Línea más larga que el búfer
+                }
+                int inicio = 0;
+                boolean cabecera = false;
+                if (primero) {
+                    inicio = tieneMarcaBom(datos, limite) ? 3 : 0;
+                    String primeraLinea = linea(datos, inicio, corte);
+                    separador = primeraLinea.indexOf('\t') >= 0 ? '\t' : ',';
+                    String[] campos = separar(primeraLinea, separador);
+                    cabecera = campos != null && NormalizadorTexto.plegar(campos[0].trim()).equals("titulo");
+                    primero = false;
+                }
+                byte[] trozo = Arrays.copyOfRange(datos, inicio, corte);
+                char separadorTrozo = separador;
+                boolean omitirCabecera = cabecera;
+                if (enVuelo.size() >= maximoEnVuelo) {
+                    agregarTrozo(esperar(enVuelo.poll()), informe, lineaInicial);
+                }
+                enVuelo.add(CompletableFuture.supplyAsync(
+                        () -> analizar(trozo, separadorTrozo, omitirCabecera, añoActual), ejecutor));
+                byte[] siguiente = datos.length > TAMAÑO_TROZO ? new byte[datos.length] : new byte[TAMAÑO_TROZO];
+                System.arraycopy(datos, corte, siguiente, 0, limite - corte);
+                buffer = ByteBuffer.wrap(siguiente).position(limite - corte);
+            }
+            while (!enVuelo.isEmpty()) {
+                agregarTrozo(esperar(enVuelo.poll()), informe, lineaInicial);
+            }
+        } finally {
+            for (CompletableFuture<Trozo> pendiente : enVuelo) {
+                pendiente.cancel(false);
+            }
+            biblioteca.asegurarIndicesTexto();
+        }
+        return informe;
+    }
+
+    /**
+     * Espera el análisis de un trozo.
+     * @param futuro Análisis en curso
+     * @return Trozo analizado
+     */
+    private static Trozo esperar(CompletableFuture<Trozo> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Agrega a la biblioteca los libros válidos de un trozo y completa el informe.
+     * @param trozo Trozo analizado
+     * @param informe Informe de la importación
+     * @param lineaInicial Arreglo de un elemento con la línea del archivo en la que empieza el trozo
+     */
+    private void agregarTrozo(Trozo trozo, InformeImportacion informe, long[] lineaInicial) {
+        boolean[] agregados = biblioteca.agregarLibros(trozo.libros);
+        // Se intercalan por línea los rechazos del análisis y los de la biblioteca
+        int siguienteRechazo = 0;
+        for (int i = 0; i < agregados.length; i++) {
+            if (!agregados[i]) {
+                while (siguienteRechazo < trozo.rechazos.size()
+                        && trozo.rechazos.get(siguienteRechazo).getLinea() < trozo.lineaLibro[i]) {
+                    agregarRechazo(trozo.rechazos.get(siguienteRechazo++), informe, lineaInicial[0]);
+                }
+                informe.agregarRechazo(new InformeImportacion.Rechazo(lineaInicial[0] + trozo.lineaLibro[i],
+                        "ISBN repetido o ya registrado", trozo.textoLibro[i]));
+            }
+        }
+        while (siguienteRechazo < trozo.rechazos.size()) {
+            agregarRechazo(trozo.rechazos.get(siguienteRechazo++), informe, lineaInicial[0]);
+        }
+        int importados = 0;
+        for (boolean agregado : agregados) {
+            if (agregado) {
+                importados++;
+            }
+        }
+        informe.sumarFilasLeidas(trozo.filas);
+        informe.sumarImportados(importados);
+        lineaInicial[0] += trozo.lineas;
+    }
+
+    /**
+     * Pasa al informe un rechazo del análisis, con la línea relativa al archivo.
+     * @param rechazo Rechazo con línea relativa al trozo
+     * @param informe Informe de la importación
+     * @param lineaInicial Línea del archivo en la que empieza el trozo
+     */
+    private static void agregarRechazo(InformeImportacion.Rechazo rechazo, InformeImportacion informe, long lineaInicial) {
+        informe.agregarRechazo(new InformeImportacion.Rechazo(lineaInicial + rechazo.getLinea(),
+                rechazo.getMotivo(), rechazo.getContenido()));
+    }
+
+    /**
+     * Analiza las filas de un trozo y valida cada una con las mismas reglas que
+     * Biblioteca.agregarLibro, salvo el ISBN repetido, que decide la biblioteca.
+     * @param datos Bytes del trozo, terminado en salto de línea (salvo el último del archivo)
+     * @param separador Separador de columnas
+     * @param omitirCabecera true si la primera línea del trozo es la cabecera
+     * @param añoActual Año máximo de publicación admitido
+     * @return Trozo analizado, con líneas relativas al trozo (la primera es 0)
+     */
+    private static Trozo analizar(byte[] datos, char separador, boolean omitirCabecera, int añoActual) {
+        Trozo trozo = new Trozo();
+        int inicio = 0;
+        while (inicio < datos.length) {
+            int fin = inicio;
+            while (fin < datos.length && datos[fin] != '\n') {
+                fin++;
+            }
+            int linea = trozo.lineas++;
+            String texto = linea(datos, inicio, fin);
+            inicio = fin + 1;
+            if (texto.isBlank() || (linea == 0 && omitirCabecera)) {
+                continue;
+            }
+            trozo.filas++;
+            String[] campos = separar(texto, separador);
+            String motivo = null;
+            Libro libro = null;
+            if (campos == null) {
+                motivo = "Comillas sin cerrar";
+            } else if (campos.length != COLUMNAS) {
+                motivo = "Se esperaban " + COLUMNAS + " columnas y hay " + campos.length;
+            } else {
+                String titulo = campos[0].trim();
+                String autor = campos[1].trim();
+                String isbn = campos[3].trim();
+                int año = entero(campos[2]);
+                int ejemplares = entero(campos[4]);
+                if (titulo.isEmpty()) {
+                    motivo = "Título vacío";
+                } else if (año == Integer.MIN_VALUE) {
+                    motivo = "Año no numérico";
+                } else if (año > añoActual) {
+                    motivo = "Año futuro";
+                } else if (ejemplares == Integer.MIN_VALUE || ejemplares < 0) {
+                    motivo = "Cantidad de ejemplares no válida";
+                } else if (IndiceIsbn.calcularClave(isbn) == IndiceIsbn.CLAVE_INVALIDA) {
+                    motivo = "ISBN no válido";
+                } else {
+                    libro = new Libro(titulo, autor, año, isbn, ejemplares);
+                }
+            }
+            if (libro != null) {
+                trozo.agregar(libro, linea, texto);
+            } else {
+                trozo.rechazos.add(new InformeImportacion.Rechazo(linea, motivo, texto));
+            }
+        }
+        return trozo;
+    }
+
+    /**
+     * Decodifica una línea sin el retorno de carro final.
+     * @param datos Bytes del archivo
+     * @param inicio Primer byte de la línea
+     * @param fin Byte siguiente al último (salto de línea o final de los datos)
+     * @return Texto de la línea
+     */
+    private static String linea(byte[] datos, int inicio, int fin) {
+        int hasta = fin;
+        for (int i = inicio; i < fin; i++) {
+            if (datos[i] == '\n') {
+                hasta = i;
+                break;
+            }
+        }
+        if (hasta > inicio && datos[hasta - 1] == '\r') {
+            hasta--;
+        }
+        return new String(datos, inicio, hasta - inicio, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Separa una fila en campos, respetando las comillas dobles.
+     * @param fila Texto de la fila
+     * @param separador Separador de columnas
+     * @return Campos sin las comillas, o null si hay comillas sin cerrar
+     */
+    private static String[] separar(String fila, char separador) {
+        ArrayList<String> campos = new ArrayList<>(COLUMNAS);
+        StringBuilder campo = new StringBuilder();
+        int i = 0;
+        while (true) {
+            campo.setLength(0);
+            if (i < fila.length() && fila.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= fila.length()) {
+                        return null;
+                    }
+                    char c = fila.charAt(i++);
+                    if (c == '"') {
+                        if (i < fila.length() && fila.charAt(i) == '"') {
+                            campo.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        campo.append(c);
+                    }
+                }
+            }
+            while (i < fila.length() && fila.charAt(i) != separador) {
+                campo.append(fila.charAt(i++));
+            }
+            campos.add(campo.toString());
+            if (i >= fila.length()) {
+                return campos.toArray(new String[0]);
+            }
+            i++; // Separador
+        }
+    }
+
+    /**
+     * Convierte un campo en entero.
+     * @param campo Texto del campo
+     * @return Valor, o Integer.MIN_VALUE si no es un entero
+     */
+    private static int entero(String campo) {
+        try {
+            return Integer.parseInt(campo.trim());
+        } catch (NumberFormatException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Busca el último salto de línea de los datos leídos.
+     * @param datos Bytes leídos
+     * @param limite Cantidad de bytes leídos
+     * @return Posición del último salto de línea, o -1 si no hay ninguno
+     */
+    private static int ultimoSalto(byte[] datos, int limite) {
+        for (int i = limite - 1; i >= 0; i--) {
+            if (datos[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indica si los datos empiezan con la marca de orden de bytes de UTF-8.
+     * @param datos Bytes leídos
+     * @param limite Cantidad de bytes leídos
+     * @return true si empiezan con EF BB BF
+     */
+    private static boolean tieneMarcaBom(byte[] datos, int limite) {
+        return limite >= 3 && datos[0] == (byte) 0xEF && datos[1] == (byte) 0xBB && datos[2] == (byte) 0xBF;
+    }
+}
@@ -0,0 +1,138 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Índice invertido de palabras plegadas a números de libro.
+ * <p>
+ * Cada palabra del texto plegado de un libro apunta a una ListaPostings comprimida.
+ * Las palabras se guardan ordenadas, por lo que una palabra de la consulta encuentra
+ * todas las palabras del índice que empiezan por ella. Las entradas de libros eliminados
+ * o modificados no se borran de inmediato: se cuentan como obsoletas y se descartan al
+ * reconstruir el índice.
+ * </p>
+ */
+class IndiceInvertido {
+    private TreeMap<String, ListaPostings> palabras = new TreeMap<>();
+    private int entradas;
+    private int obsoletas;
+
+    /**
+     * Indexa las palabras de un texto plegado.
+     * @param numero Número interno del libro
+     * @param plegado Texto ya plegado con NormalizadorTexto
+     */
+    void agregar(int numero, String plegado) {
+        for (String palabra : NormalizadorTexto.palabras(plegado)) {
+            ListaPostings lista = palabras.get(palabra);
+            if (lista == null) {
+                lista = new ListaPostings();
+                palabras.put(palabra, lista);
+            }
+            lista.agregar(numero);
+            entradas++;
+        }
+    }
+
+    /**
+     * Marca como obsoletas las entradas de un texto que dejó de pertenecer a un libro.
+     * @param plegado Texto plegado que tenía el libro
+     */
+    void marcarObsoleto(String plegado) {
+        obsoletas += NormalizadorTexto.palabras(plegado).size();
+    }
+
+    /**
+     * Indica si las entradas obsoletas ya superan a las vigentes.
+     * @return true si conviene reconstruir el índice
+     */
+    boolean necesitaReconstruir() {
+        return obsoletas > 64 && obsoletas * 2 > entradas;
+    }
+
+    /**
+     * Vacía el índice.
+     */
+    void limpiar() {
+        palabras = new TreeMap<>();
+        entradas = 0;
+        obsoletas = 0;
+    }
+
+    /**
+     * Busca los libros candidatos para una consulta plegada.
+     * Un libro es candidato si, para cada palabra de la consulta, tiene alguna palabra
+     * que empieza por ella. Puede incluir libros ya eliminados o modificados, por lo
+     * que el resultado debe verificarse.
+     * @param consulta Consulta ya plegada
+     * @return Números de libro en orden creciente, o null si la consulta no tiene palabras
+     */
+    int[] buscar(String consulta) {
+        ArrayList<String> palabrasConsulta = NormalizadorTexto.palabras(consulta);
+        if (palabrasConsulta.isEmpty()) {
+            return null;
+        }
+        int[] resultado = null;
+        for (String palabra : palabrasConsulta) {
+            int[] coincidencias = buscarPrefijo(palabra);
+            resultado = resultado == null ? coincidencias : intersecar(resultado, coincidencias);
+            if (resultado.length == 0) {
+                break;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Reúne los libros de todas las palabras que empiezan por un prefijo.
+     * @param prefijo Prefijo plegado
+     * @return Números de libro en orden creciente y sin repetidos
+     */
+    private int[] buscarPrefijo(String prefijo) {
+        SortedMap<String, ListaPostings> rango = palabras.subMap(prefijo, prefijo + Character.MAX_VALUE);
+        if (rango.size() == 1) {
+            return rango.values().iterator().next().aArreglo();
+        }
+        int total = 0;
+        for (ListaPostings lista : rango.values()) {
+            total += lista.tamaño();
+        }
+        int[] resultado = new int[total];
+        int n = 0;
+        for (ListaPostings lista : rango.values()) {
+            int[] numeros = lista.aArreglo();
+            System.arraycopy(numeros, 0, resultado, n, numeros.length);
+            n += numeros.length;
+        }
+        Arrays.sort(resultado, 0, n);
+        return ListaPostings.sinRepetidos(resultado, n);
+    }
+
+    /**
+     * Calcula la intersección de dos arreglos ordenados.
+     * @param a Primer arreglo ordenado
+     * @param b Segundo arreglo ordenado
+     * @return Números presentes en ambos, en orden creciente
+     */
+    private static int[] intersecar(int[] a, int[] b) {
+        int[] resultado = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                resultado[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(resultado, n);
+    }
+}
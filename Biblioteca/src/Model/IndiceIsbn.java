@@ -0,0 +1,93 @@
+package Model;
+
+/**
+ * Índice de acceso directo a libros por ISBN.
+ * <p>
+ * Cada ISBN se convierte en una clave canónica de 64 bits (sin guiones ni espacios,
+ * y con los ISBN-10 llevados a su equivalente ISBN-13) que se asocia a la posición
+ * del libro en la lista del catálogo. Al guardarse en una TablaClaves, las búsquedas
+ * no crean objetos ni calculan hashes de cadenas.
+ * </p>
+ */
+class IndiceIsbn extends TablaClaves {
+    /** Clave que se obtiene cuando el texto no corresponde a un ISBN válido. */
+    static final long CLAVE_INVALIDA = -1L;
+
+    private static final int BITS_VALOR = 50; // 10^13 < 2^50
+
+    /**
+     * Constructor que crea un índice vacío.
+     * @param capacidadInicial Cantidad de libros que se espera indexar
+     */
+    IndiceIsbn(int capacidadInicial) {
+        super(capacidadInicial);
+    }
+
+    /**
+     * Calcula la clave canónica de un ISBN.
+     * Acepta dígitos separados por guiones o espacios. Solo son válidos un ISBN-13 con su
+     * dígito de control correcto, o un ISBN-10 (con o sin 'X' final) con el suyo; el
+     * ISBN-10 produce la misma clave que su ISBN-13 con prefijo 978.
+     * @param isbn Texto del ISBN
+     * @return Clave canónica, o CLAVE_INVALIDA si el texto no es un ISBN válido
+     */
+    static long calcularClave(String isbn) {
+        if (isbn == null) {
+            return CLAVE_INVALIDA;
+        }
+        long valor = 0;
+        int digitos = 0;
+        int sumaIsbn10 = 0; // Suma de los dígitos por sus pesos 10, 9, ..., 1
+        boolean controlX = false;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (controlX) {
+                return CLAVE_INVALIDA; // La 'X' solo puede ser el último carácter
+            }
+            if (c >= '0' && c <= '9') {
+                if (digitos == 13) {
+                    return CLAVE_INVALIDA;
+                }
+                valor = valor * 10 + (c - '0');
+                sumaIsbn10 += (10 - digitos) * (c - '0');
+                digitos++;
+            } else if ((c == 'X' || c == 'x') && digitos == 9) {
+                sumaIsbn10 += 10;
+                controlX = true;
+                digitos++;
+            } else {
+                return CLAVE_INVALIDA;
+            }
+        }
+        if (digitos == 10) {
+            if (sumaIsbn10 % 11 != 0) {
+                return CLAVE_INVALIDA;
+            }
+            // Se recalcula como ISBN-13 sin el dígito de control del ISBN-10
+            long cuerpo = controlX ? valor : valor / 10;
+            long base = 978_000_000_000L + cuerpo;
+            valor = base * 10 + digitoControlIsbn13(base);
+        } else if (digitos != 13 || valor % 10 != digitoControlIsbn13(valor / 10)) {
+            return CLAVE_INVALIDA;
+        }
+        return (13L << BITS_VALOR) | valor; // La longitud hace que nunca valga 0
+    }
+
+    /**
+     * Calcula el dígito de control de un ISBN-13 a partir de sus primeros 12 dígitos.
+     * @param base Los 12 primeros dígitos como número
+     * @return Dígito de control (0 a 9)
+     */
+    private static int digitoControlIsbn13(long base) {
+        int suma = 0;
+        for (int i = 0; i < 12; i++) {
+            int digito = (int) (base % 10);
+            base /= 10;
+            suma += (i % 2 == 0) ? digito * 3 : digito; // Pesos 1,3,1,3... desde la izquierda
+        }
+        return (10 - suma % 10) % 10;
+    }
+}
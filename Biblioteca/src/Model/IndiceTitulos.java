@@ -0,0 +1,97 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Índice ordenado de títulos plegados.
+ * <p>
+ * Cada título plegado distinto apunta a los números de los libros que lo tienen
+ * (varias ediciones pueden compartir título). Al estar ordenados, tanto el título
+ * exacto como todos los títulos que empiezan por un texto se encuentran en
+ * O(log n + k).
+ * </p>
+ */
+class IndiceTitulos {
+    private final TreeMap<String, ListaPostings> titulos = new TreeMap<>();
+
+    /**
+     * Indexa el título de un libro.
+     * @param numero Número interno del libro
+     * @param plegado Título ya plegado con NormalizadorTexto
+     */
+    void agregar(int numero, String plegado) {
+        ListaPostings lista = titulos.get(plegado);
+        if (lista == null) {
+            lista = new ListaPostings();
+            titulos.put(plegado, lista);
+        }
+        lista.agregar(numero);
+    }
+
+    /**
+     * Quita el título de un libro del índice.
+     * @param numero Número interno del libro
+     * @param plegado Título plegado con el que se indexó
+     */
+    void eliminar(int numero, String plegado) {
+        ListaPostings lista = titulos.get(plegado);
+        if (lista != null && lista.eliminar(numero)) {
+            titulos.remove(plegado);
+        }
+    }
+
+    /**
+     * Vacía el índice.
+     */
+    void limpiar() {
+        titulos.clear();
+    }
+
+    /**
+     * Busca los libros cuyo título plegado es exactamente el dado.
+     * @param plegado Título ya plegado
+     * @return Números de libro en orden creciente
+     */
+    int[] buscarExacto(String plegado) {
+        ListaPostings lista = titulos.get(plegado);
+        return lista != null ? lista.aArreglo() : new int[0];
+    }
+
+    /**
+     * Busca una página de libros cuyo título plegado empieza por un prefijo, continuando
+     * después de un título y un número. Los resultados se ordenan por título y, a igual
+     * título, por número de libro, así que las coincidencias exactas aparecen primero.
+     * La página se encuentra buscando el título en el árbol, sin recorrer las anteriores.
+     * @param prefijo Prefijo ya plegado
+     * @param despuesDeTitulo Título plegado del último resultado anterior (el prefijo para la primera página)
+     * @param despuesDeNumero Número del último resultado anterior (-1 para la primera página)
+     * @param cantidad Cantidad máxima de resultados a devolver
+     * @return Números de libro de la página
+     */
+    int[] buscarPrefijo(String prefijo, String despuesDeTitulo, int despuesDeNumero, int cantidad) {
+        if (!despuesDeTitulo.startsWith(prefijo)) {
+            return new int[0];
+        }
+        int[] resultado = new int[Math.max(0, Math.min(cantidad, 1024))];
+        int n = 0;
+        for (Map.Entry<String, ListaPostings> entrada
+                : titulos.subMap(despuesDeTitulo, true, prefijo + Character.MAX_VALUE, false).entrySet()) {
+            boolean mismoTitulo = entrada.getKey().equals(despuesDeTitulo);
+            for (int numero : entrada.getValue().aArreglo()) {
+                if (mismoTitulo && numero <= despuesDeNumero) {
+                    continue;
+                }
+                if (n == cantidad) {
+                    return resultado;
+                }
+                if (n == resultado.length) {
+                    resultado = Arrays.copyOf(resultado, Math.min(cantidad, resultado.length * 2));
+                }
+                resultado[n++] = numero;
+            }
+        }
+        return Arrays.copyOf(resultado, n);
+    }
+}
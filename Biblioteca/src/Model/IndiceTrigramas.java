@@ -0,0 +1,322 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Índice de trigramas para búsquedas tolerantes a errores de escritura.
+ * <p>
+ * Cada palabra de un texto plegado se descompone en trigramas (con dos espacios
+ * delante y uno detrás, como "  d", " do", "dos"...), y cada trigrama apunta a las
+ * entradas que lo contienen. Una entrada es el título o el autor de un libro,
+ * identificada como numero * 2 + campo.
+ * </p>
+ * <p>
+ * La búsqueda cuenta trigramas compartidos solo con las listas más raras de la consulta
+ * (un texto parecido comparte por fuerza alguno de ellos), se queda con los mejores candidatos y los puntúa con el índice de Jaccard entre
+ * los trigramas de la consulta y los del texto (o del tramo de palabras que mejor
+ * coincide), de modo que no recorre el catálogo.
+ * </p>
+ * <p>
+ * Cuando la consulta solo tiene palabras comunes, esas listas son largas y contarlas
+ * enteras costaría tanto como recorrer el catálogo. Entonces las listas se recorren
+ * juntas por tramos de entradas, contando todos los trigramas compartidos, y el recorrido
+ * se detiene en cuanto reúne suficientes candidatos casi completos (PROPORCION_SUFICIENTE
+ * de los trigramas de la consulta) o agota un presupuesto de lecturas. El resultado es
+ * aproximado: un texto igual de parecido que está más adelante puede quedar fuera,
+ * salvo que comparta las listas raras de la consulta, que siempre se cuentan enteras.
+ * </p>
+ */
+class IndiceTrigramas {
+    /** Campo correspondiente al título de un libro. */
+    static final int CAMPO_TITULO = 0;
+    /** Campo correspondiente al autor de un libro. */
+    static final int CAMPO_AUTOR = 1;
+
+    private static final int CANDIDATOS_POR_RESULTADO = 8;
+    private static final double PROPORCION_LISTAS = 0.7; // Listas más raras que generan candidatos
+    private static final int PRESUPUESTO_RARAS = 1 << 16; // Lecturas para contar las listas raras enteras
+    private static final int PRESUPUESTO_RECORRIDO = 1 << 16; // Lecturas del recorrido por tramos
+    private static final int ENTRADAS_POR_TRAMO = 1 << 13;
+    private static final double PROPORCION_SUFICIENTE = 0.8; // Trigramas compartidos de un candidato casi completo
+
+    private TablaClaves posicionTrigrama = new TablaClaves(1024); // Trigrama -> posición en listas
+    private ArrayList<ListaPostings> listas = new ArrayList<>();
+    private int entradas;
+    private int obsoletas;
+
+    /**
+     * Indexa los trigramas de un texto plegado.
+     * @param numero Número interno del libro
+     * @param campo CAMPO_TITULO o CAMPO_AUTOR
+     * @param plegado Texto ya plegado con NormalizadorTexto
+     */
+    void agregar(int numero, int campo, String plegado) {
+        int entrada = numero * 2 + campo;
+        for (long trigrama : trigramas(plegado)) {
+            int posicion = posicionTrigrama.buscar(trigrama);
+            if (posicion < 0) {
+                posicion = listas.size();
+                listas.add(new ListaPostings());
+                posicionTrigrama.poner(trigrama, posicion);
+            }
+            listas.get(posicion).agregar(entrada);
+        }
+        entradas++;
+    }
+
+    /**
+     * Registra que algunas entradas dejaron de corresponder a un libro (por cambio o eliminación).
+     * @param cantidad Cantidad de entradas obsoletas
+     */
+    void marcarObsoletas(int cantidad) {
+        obsoletas += cantidad;
+    }
+
+    /**
+     * Indica si las entradas obsoletas ya superan a las vigentes.
+     * @return true si conviene reconstruir el índice
+     */
+    boolean necesitaReconstruir() {
+        return obsoletas > 64 && obsoletas * 2 > entradas;
+    }
+
+    /**
+     * Vacía el índice.
+     */
+    void limpiar() {
+        posicionTrigrama = new TablaClaves(1024);
+        listas = new ArrayList<>();
+        entradas = 0;
+        obsoletas = 0;
+    }
+
+    /**
+     * Busca las entradas que comparten más trigramas con la consulta.
+     * El resultado son candidatos: deben puntuarse con similitud() sobre el texto vigente.
+     * @param consulta Consulta ya plegada
+     * @param cantidad Cantidad de resultados que se quieren obtener al final
+     * @param similitudMinima Similitud que deben alcanzar los resultados; descarta los
+     *                        textos que comparten muy pocos trigramas
+     * @return Entradas candidatas (numero * 2 + campo), de más a menos trigramas compartidos
+     */
+    int[] candidatos(String consulta, int cantidad, double similitudMinima) {
+        long[] trigramasConsulta = trigramas(consulta);
+        ListaPostings[] usadas = new ListaPostings[trigramasConsulta.length];
+        int n = 0;
+        for (long trigrama : trigramasConsulta) {
+            int posicion = posicionTrigrama.buscar(trigrama);
+            if (posicion >= 0) {
+                usadas[n++] = listas.get(posicion);
+            }
+        }
+        // Las listas más cortas primero; las más frecuentes apenas distinguen candidatos
+        Arrays.sort(usadas, 0, n, (a, b) -> Integer.compare(a.tamaño(), b.tamaño()));
+        int listasUsadas = Math.min(n, (int) Math.ceil(trigramasConsulta.length * PROPORCION_LISTAS));
+        int raras = 0;
+        int total = 0;
+        while (raras < listasUsadas && total + usadas[raras].tamaño() <= PRESUPUESTO_RARAS) {
+            total += usadas[raras++].tamaño();
+        }
+        int objetivo = cantidad * CANDIDATOS_POR_RESULTADO;
+        TablaClaves conteos = contar(usadas, raras, total);
+        if (raras == listasUsadas) {
+            return mejores(conteos, objetivo);
+        }
+        // Listas comunes: se recorren todas juntas, por tramos
+        int minimo = Math.max(1, (int) Math.ceil(trigramasConsulta.length * similitudMinima));
+        int suficiente = Math.max(minimo, (int) Math.ceil(trigramasConsulta.length * PROPORCION_SUFICIENTE));
+        TablaClaves recorridos = new TablaClaves(objetivo * 4);
+        int hasta = recorrerPorTramos(usadas, n, minimo, suficiente, objetivo, recorridos);
+        // Las entradas de las listas raras que el recorrido no alcanzó también son candidatas
+        TablaClaves restantes = new TablaClaves(16);
+        conteos.recorrer((clave, conteo) -> {
+            if (clave - 1 > hasta) {
+                restantes.poner(clave, conteo);
+            }
+        });
+        int[] comunes = mejores(recorridos, objetivo);
+        int[] rarasRestantes = mejores(restantes, objetivo);
+        int[] resultado = Arrays.copyOf(comunes, comunes.length + rarasRestantes.length);
+        System.arraycopy(rarasRestantes, 0, resultado, comunes.length, rarasRestantes.length);
+        return resultado;
+    }
+
+    /**
+     * Cuenta cuántas de las primeras listas contiene cada entrada.
+     * @param usadas Listas de la consulta, de la más corta a la más larga
+     * @param cantidadListas Cantidad de listas a contar
+     * @param total Suma de los tamaños de esas listas
+     * @return Tabla de entrada + 1 a cantidad de listas que la contienen
+     */
+    private static TablaClaves contar(ListaPostings[] usadas, int cantidadListas, int total) {
+        TablaClaves conteos = new TablaClaves(Math.min(total, 1 << 16)); // Entrada + 1 -> trigramas compartidos
+        int[] decodificadas = new int[cantidadListas > 0 ? usadas[cantidadListas - 1].tamaño() : 0];
+        for (int i = 0; i < cantidadListas; i++) {
+            int cantidadDecodificada = usadas[i].decodificarEn(decodificadas);
+            for (int j = 0; j < cantidadDecodificada; j++) {
+                conteos.sumar(decodificadas[j] + 1L, 1);
+            }
+        }
+        return conteos;
+    }
+
+    /**
+     * Recorre todas las listas juntas en orden de entrada, por tramos de
+     * ENTRADAS_POR_TRAMO, contando los trigramas compartidos de cada entrada.
+     * Se detiene al reunir objetivo entradas con al menos suficiente trigramas, al agotar
+     * PRESUPUESTO_RECORRIDO lecturas o al terminar las listas. Los tramos sin entradas
+     * se saltan.
+     * @param usadas Listas de la consulta
+     * @param cantidadListas Cantidad de listas
+     * @param minimo Trigramas compartidos para guardar una entrada
+     * @param suficiente Trigramas compartidos de un candidato casi completo
+     * @param objetivo Cantidad de candidatos casi completos que detiene el recorrido
+     * @param destino Tabla de entrada + 1 a trigramas compartidos, donde se guardan las entradas
+     * @return Mayor entrada recorrida (Integer.MAX_VALUE si se recorrieron todas las listas)
+     */
+    private static int recorrerPorTramos(ListaPostings[] usadas, int cantidadListas, int minimo,
+            int suficiente, int objetivo, TablaClaves destino) {
+        ListaPostings.Recorrido[] recorridos = new ListaPostings.Recorrido[cantidadListas];
+        for (int i = 0; i < cantidadListas; i++) {
+            recorridos[i] = usadas[i].new Recorrido();
+        }
+        int[] leidas = new int[ENTRADAS_POR_TRAMO];
+        int[] cuentas = new int[ENTRADAS_POR_TRAMO]; // Trigramas compartidos de cada entrada del tramo
+        int completas = 0;
+        int lecturas = 0;
+        int inicio = 0;
+        while (true) {
+            int proximo = Integer.MAX_VALUE;
+            for (ListaPostings.Recorrido recorrido : recorridos) {
+                proximo = Math.min(proximo, recorrido.proximo());
+            }
+            if (proximo == Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE; // Se recorrieron todas las listas
+            }
+            inicio = Math.max(inicio, proximo); // Salta los tramos sin entradas
+            int limite = inicio + ENTRADAS_POR_TRAMO - 1;
+            for (ListaPostings.Recorrido recorrido : recorridos) {
+                int cantidadLeida = recorrido.leerHasta(limite, leidas);
+                for (int j = 0; j < cantidadLeida; j++) {
+                    cuentas[leidas[j] - inicio]++;
+                }
+                lecturas += cantidadLeida;
+            }
+            for (int j = 0; j < ENTRADAS_POR_TRAMO; j++) {
+                int conteo = cuentas[j];
+                if (conteo >= minimo) {
+                    destino.poner(inicio + j + 1L, conteo);
+                    if (conteo >= suficiente) {
+                        completas++;
+                    }
+                }
+            }
+            Arrays.fill(cuentas, 0);
+            if (completas >= objetivo || lecturas >= PRESUPUESTO_RECORRIDO) {
+                return limite;
+            }
+            inicio = limite + 1;
+        }
+    }
+
+    /**
+     * Elige las entradas con más trigramas compartidos.
+     * @param conteos Tabla de entrada + 1 a cantidad de trigramas compartidos
+     * @param maximo Cantidad máxima de entradas a devolver
+     * @return Entradas ordenadas de mayor a menor conteo
+     */
+    private static int[] mejores(TablaClaves conteos, int maximo) {
+        long[] pares = new long[conteos.tamaño()]; // Conteo en los bits altos, entrada en los bajos
+        int[] n = {0};
+        conteos.recorrer((clave, conteo) -> pares[n[0]++] = ((long) conteo << 32) | (clave - 1));
+        Arrays.sort(pares);
+        int cantidad = Math.min(maximo, pares.length);
+        int[] resultado = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            resultado[i] = (int) pares[pares.length - 1 - i];
+        }
+        return resultado;
+    }
+
+    /**
+     * Calcula la similitud entre una consulta y un texto.
+     * Es el mayor índice de Jaccard entre los trigramas de la consulta y los del texto
+     * completo o de cualquier tramo del texto con tantas palabras como la consulta.
+     * @param consulta Consulta ya plegada
+     * @param texto Texto ya plegado
+     * @return Similitud entre 0 y 1
+     */
+    static double similitud(String consulta, String texto) {
+        long[] trigramasConsulta = trigramas(consulta);
+        if (trigramasConsulta.length == 0) {
+            return 0.0;
+        }
+        double mejor = jaccard(trigramasConsulta, trigramas(texto));
+        ArrayList<String> palabrasConsulta = NormalizadorTexto.palabras(consulta);
+        ArrayList<String> palabrasTexto = NormalizadorTexto.palabras(texto);
+        int ventana = palabrasConsulta.size();
+        for (int i = 0; ventana < palabrasTexto.size() && i + ventana <= palabrasTexto.size(); i++) {
+            String tramo = String.join(" ", palabrasTexto.subList(i, i + ventana));
+            mejor = Math.max(mejor, jaccard(trigramasConsulta, trigramas(tramo)));
+        }
+        return mejor;
+    }
+
+    /**
+     * Calcula el índice de Jaccard entre dos conjuntos ordenados de trigramas.
+     * @param a Primer conjunto ordenado
+     * @param b Segundo conjunto ordenado
+     * @return Tamaño de la intersección dividido por el de la unión
+     */
+    private static double jaccard(long[] a, long[] b) {
+        int comunes = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                comunes++;
+                i++;
+                j++;
+            }
+        }
+        int union = a.length + b.length - comunes;
+        return union == 0 ? 0.0 : (double) comunes / union;
+    }
+
+    /**
+     * Obtiene los trigramas distintos de un texto plegado.
+     * Cada trigrama se codifica como tres caracteres de 16 bits en un long.
+     * @param plegado Texto ya plegado
+     * @return Trigramas en orden creciente y sin repetidos
+     */
+    static long[] trigramas(String plegado) {
+        long[] resultado = new long[plegado.length() * 3 + 3];
+        int n = 0;
+        for (String palabra : NormalizadorTexto.palabras(plegado)) {
+            long c1 = ' ';
+            long c2 = ' ';
+            for (int i = 0; i <= palabra.length(); i++) {
+                long c3 = i < palabra.length() ? palabra.charAt(i) : ' ';
+                if (n == resultado.length) {
+                    resultado = Arrays.copyOf(resultado, n * 2);
+                }
+                resultado[n++] = (c1 << 32) | (c2 << 16) | c3;
+                c1 = c2;
+                c2 = c3;
+            }
+        }
+        Arrays.sort(resultado, 0, n);
+        int unicos = 0;
+        for (int i = 0; i < n; i++) {
+            if (unicos == 0 || resultado[i] != resultado[unicos - 1]) {
+                resultado[unicos++] = resultado[i];
+            }
+        }
+        return Arrays.copyOf(resultado, unicos);
+    }
+}
@@ -0,0 +1,146 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de libros: cuántas filas se leyeron, cuántos
+ * libros se agregaron y, por cada fila rechazada, su número de línea y el motivo.
+ */
+public class InformeImportacion {
+
+    /**
+     * Fila del archivo que no se importó.
+     */
+    public static class Rechazo {
+        private final long linea;
+        private final String motivo;
+        private final String contenido;
+
+        /**
+         * Constructor de un rechazo.
+         * @param linea Número de línea en el archivo (la primera es 1)
+         * @param motivo Motivo del rechazo
+         * @param contenido Texto de la fila tal como estaba en el archivo
+         */
+        Rechazo(long linea, String motivo, String contenido) {
+            this.linea = linea;
+            this.motivo = motivo;
+            this.contenido = contenido;
+        }
+
+        /**
+         * Obtiene el número de línea de la fila rechazada.
+         * @return Número de línea (la primera es 1)
+         */
+        public long getLinea() {
+            return linea;
+        }
+
+        /**
+         * Obtiene el motivo del rechazo.
+         * @return Motivo
+         */
+        public String getMotivo() {
+            return motivo;
+        }
+
+        /**
+         * Obtiene el texto de la fila rechazada.
+         * @return Contenido de la fila
+         */
+        public String getContenido() {
+            return contenido;
+        }
+
+        /**
+         * Devuelve una representación en cadena del rechazo.
+         * @return Línea, motivo y contenido
+         */
+        @Override
+        public String toString() {
+            return "Línea " + linea + ": " + motivo + " -> " + contenido;
+        }
+    }
+
+    private long filasLeidas;
+    private long importados;
+    private final ArrayList<Rechazo> rechazos = new ArrayList<>();
+
+    /**
+     * Suma filas de datos leídas (sin contar la cabecera ni las líneas vacías).
+     * @param filas Cantidad de filas
+     */
+    void sumarFilasLeidas(long filas) {
+        filasLeidas += filas;
+    }
+
+    /**
+     * Suma libros agregados a la biblioteca.
+     * @param libros Cantidad de libros
+     */
+    void sumarImportados(long libros) {
+        importados += libros;
+    }
+
+    /**
+     * Registra una fila rechazada.
+     * @param rechazo Fila rechazada
+     */
+    void agregarRechazo(Rechazo rechazo) {
+        rechazos.add(rechazo);
+    }
+
+    /**
+     * Obtiene la cantidad de filas de datos leídas.
+     * @return Filas leídas
+     */
+    public long getFilasLeidas() {
+        return filasLeidas;
+    }
+
+    /**
+     * Obtiene la cantidad de libros agregados a la biblioteca.
+     * @return Libros importados
+     */
+    public long getImportados() {
+        return importados;
+    }
+
+    /**
+     * Obtiene las filas rechazadas, en el orden del archivo.
+     * @return Lista no modificable de rechazos
+     */
+    public List<Rechazo> getRechazos() {
+        return Collections.unmodifiableList(rechazos);
+    }
+
+    /**
+     * Devuelve un resumen con los totales y las primeras filas rechazadas.
+     * @param maximoRechazos Cantidad máxima de rechazos a detallar
+     * @return Resumen de la importación
+     */
+    public String resumen(int maximoRechazos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Filas leídas: ").append(filasLeidas).append("\n");
+        sb.append("Libros importados: ").append(importados).append("\n");
+        sb.append("Filas rechazadas: ").append(rechazos.size()).append("\n");
+        for (int i = 0; i < rechazos.size() && i < maximoRechazos; i++) {
+            sb.append("  ").append(rechazos.get(i)).append("\n");
+        }
+        if (rechazos.size() > maximoRechazos) {
+            sb.append("  ... y ").append(rechazos.size() - maximoRechazos).append(" más\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Devuelve una representación en cadena del informe con todos los rechazos.
+     * @return Informe completo
+     */
+    @Override
+    public String toString() {
+        return resumen(Integer.MAX_VALUE);
+    }
+}
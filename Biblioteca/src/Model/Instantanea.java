@@ -0,0 +1,64 @@
+package Model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Vista inmutable y versionada de una lista de la biblioteca en un momento dado.
+ * <p>
+ * Comparte los datos con la lista original en lugar de copiarlos, por lo que tomarla
+ * es barato aunque la lista tenga millones de elementos. Puede recorrerse desde
+ * cualquier hilo mientras la biblioteca sigue cambiando: los cambios posteriores no se
+ * reflejan en ella. Cualquier intento de modificarla lanza UnsupportedOperationException.
+ * </p>
+ * @param <T> Tipo de los elementos
+ */
+public final class Instantanea<T> extends AbstractList<T> implements RandomAccess {
+    private final Object[][] bloques;
+    private final int tamaño;
+    private final long version;
+
+    /**
+     * Constructor usado por ListaVersionada.
+     * @param bloques Bloques compartidos con la lista (no deben modificarse)
+     * @param tamaño Cantidad de elementos
+     * @param version Versión de la lista al tomar la instantánea
+     */
+    Instantanea(Object[][] bloques, int tamaño, long version) {
+        this.bloques = bloques;
+        this.tamaño = tamaño;
+        this.version = version;
+    }
+
+    /**
+     * Obtiene un elemento.
+     * @param indice Posición del elemento
+     * @return Elemento en esa posición
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int indice) {
+        if (indice < 0 || indice >= tamaño) {
+            throw new IndexOutOfBoundsException("Índice " + indice + ", tamaño " + tamaño);
+        }
+        return (T) bloques[indice >>> ListaVersionada.BITS_BLOQUE][indice & ListaVersionada.MASCARA_BLOQUE];
+    }
+
+    /**
+     * Obtiene la cantidad de elementos.
+     * @return Cantidad de elementos
+     */
+    @Override
+    public int size() {
+        return tamaño;
+    }
+
+    /**
+     * Obtiene la versión de la lista en el momento de la instantánea.
+     * Dos instantáneas de la misma lista con igual versión tienen el mismo contenido.
+     * @return Versión
+     */
+    public long getVersion() {
+        return version;
+    }
+}
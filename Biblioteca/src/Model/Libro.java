@@ -1,146 +1,550 @@
-package Model;
-
-/**
- * Clase que representa un libro en el sistema de biblioteca.
- * Contiene información básica del libro y maneja la disponibilidad de ejemplares.
- */
-public class Libro {
-    
-    private String titulo;
-    private String autor;
-    private int añoPublicacion;
-    private String isbn;
-    private int ejemplaresDisponibles;
-
-    /**
-     * Constructor para crear un nuevo libro.
-     * @param titulo Título del libro (no puede ser nulo o vacío)
-     * @param autor Autor del libro (no puede ser nulo o vacío)
-     * @param añoPublicacion Año de publicación del libro (debe ser un año válido)
-     * @param isbn Número ISBN único del libro (no puede ser nulo o vacío)
-     * @param ejemplaresDisponibles Cantidad de ejemplares disponibles (debe ser >= 0)
-     */
-    public Libro(String titulo, String autor, int añoPublicacion, String isbn, int ejemplaresDisponibles) {
-        this.titulo = titulo;
-        this.autor = autor;
-        this.añoPublicacion = añoPublicacion;
-        this.isbn = isbn;
-        this.ejemplaresDisponibles = ejemplaresDisponibles;
-    }
-    
-    /**
-     * Obtiene el título del libro.
-     * @return Título del libro
-     */
-    public String getTitulo() {
-        return titulo;
-    }
-
-    /**
-     * Establece el título del libro.
-     * @param titulo Nuevo título del libro (no debe ser nulo o vacío)
-     */
-    public void setTitulo(String titulo) {
-        this.titulo = titulo;
-    }
-
-    /**
-     * Obtiene el autor del libro.
-     * @return Autor del libro
-     */
-    public String getAutor() {
-        return autor;
-    }
-
-    /**
-     * Establece el autor del libro.
-     * @param autor Nuevo autor del libro (no debe ser nulo o vacío)
-     */
-    public void setAutor(String autor) {
-        this.autor = autor;
-    }
-
-    /**
-     * Obtiene el año de publicación del libro.
-     * @return Año de publicación
-     */
-    public int getAñoPublicacion() {
-        return añoPublicacion;
-    }
-
-    /**
-     * Establece el año de publicación del libro.
-     * @param añoPublicacion Nuevo año de publicación (debe ser un año válido)
-     */
-    public void setAñoPublicacion(int añoPublicacion) {
-        this.añoPublicacion = añoPublicacion;
-    }
-
-    /**
-     * Obtiene la cantidad de ejemplares disponibles.
-     * @return Número de ejemplares disponibles
-     */
-    public int getEjemplaresDisponibles() {
-        return ejemplaresDisponibles;
-    }
-
-    /**
-     * Establece la cantidad de ejemplares disponibles.
-     * @param ejemplaresDisponibles Nueva cantidad de ejemplares (debe ser >= 0)
-     */
-    public void setEjemplaresDisponibles(int ejemplaresDisponibles) {
-        this.ejemplaresDisponibles = ejemplaresDisponibles;
-    }
-
-    /**
-     * Registra el préstamo de un ejemplar del libro.
-     * Disminuye en 1 la cantidad de ejemplares disponibles si hay existencias.
-     */
-    public void prestar() {
-        if (ejemplaresDisponibles > 0) {
-            ejemplaresDisponibles--;
-        }
-    }
-
-    /**
-     * Registra la devolución de un ejemplar del libro.
-     * Aumenta en 1 la cantidad de ejemplares disponibles.
-     */
-    public void devolver() {
-        ejemplaresDisponibles++;
-    }
-
-    /**
-     * Obtiene el ISBN del libro.
-     * @return ISBN del libro
-     */
-    public String getIsbn() {
-        return isbn;
-    }
-
-    /**
-     * Establece el ISBN del libro.
-     * @param isbn Nuevo ISBN (no puede ser nulo o vacío)
-     */
-    public void setIsbn(String isbn) {
-        if (isbn == null || isbn.trim().isEmpty()) {
-            System.out.println("Intento de asignar un ISBN nulo o vacío.");
-        } else {
-            this.isbn = isbn;
-        }
-    }
-
-    /**
-     * Devuelve una representación en cadena del libro.
-     * @return Cadena con toda la información del libro
-     */
-    @Override
-    public String toString() {
-        return "Libro:" +
-               "titulo:" + titulo +
-               ", autor:" + autor +
-               ", añoPublicacion:" + añoPublicacion +
-               ", isbn:" + isbn +
-               ", ejemplaresDisponibles:" + ejemplaresDisponibles;
-    }
+package Model;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Clase que representa un libro en el sistema de biblioteca.
+ * Contiene información básica del libro y maneja la disponibilidad de ejemplares.
+ * El autor se guarda como un código de Diccionario.AUTORES, compartido por todos los
+ * libros del mismo autor.
+ * <p>
+ * Los ejemplares disponibles y el total de ejemplares se guardan juntos en un solo
+ * long que se actualiza con compare-and-set, de modo que varios hilos pueden prestar
+ * y devolver el mismo libro sin cerrojos y sin que la disponibilidad quede negativa
+ * ni supere el total.
+ * </p>
+ * <p>
+ * Los libros cargados desde un volcado del catálogo no decodifican su título, autor e
+ * ISBN hasta que se piden por primera vez.
+ * </p>
+ * <p>
+ * Un libro también puede ser una vista de una fila de ColumnasLibros: entonces no
+ * guarda datos propios y sus getters y setters leen y escriben las columnas.
+ * </p>
+ */
+public class Libro {
+    private static final VarHandle EXISTENCIAS;
+
+    static {
+        try {
+            EXISTENCIAS = MethodHandles.lookup().findVarHandle(Libro.class, "existencias", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private String titulo;
+    private int codigoAutor; // Código del autor en Diccionario.AUTORES
+    private int añoPublicacion;
+    private String isbn;
+    private volatile long existencias; // Total de ejemplares en los 32 bits altos, disponibles en los bajos
+    long claveIsbn; // Clave canónica del ISBN (ver IndiceIsbn)
+    int numero; // Número interno estable asignado por Biblioteca (0 si aún no tiene)
+    private String tituloPlegado; // Título sin mayúsculas ni tildes, calculado al asignarlo
+    private volatile VolcadoCatalogo origen; // Volcado del que faltan leer los textos (null si ya están)
+    private int indiceOrigen; // Posición del libro en origen
+    volatile ColumnasLibros columnas; // Columnas de las que el libro es una vista (null si guarda sus datos)
+    int fila; // Fila del libro en columnas
+    Biblioteca biblioteca; // Biblioteca en la que está registrado (null si no lo está)
+
+    /**
+     * Constructor para crear un nuevo libro.
+     * @param titulo Título del libro (no puede ser nulo o vacío)
+     * @param autor Autor del libro (no puede ser nulo o vacío)
+     * @param añoPublicacion Año de publicación del libro (debe ser un año válido)
+     * @param isbn Número ISBN único del libro (no puede ser nulo o vacío)
+     * @param ejemplaresDisponibles Cantidad de ejemplares disponibles (debe ser >= 0)
+     */
+    public Libro(String titulo, String autor, int añoPublicacion, String isbn, int ejemplaresDisponibles) {
+        this.titulo = titulo;
+        this.tituloPlegado = NormalizadorTexto.plegar(titulo);
+        this.codigoAutor = Diccionario.AUTORES.codificar(autor);
+        this.añoPublicacion = añoPublicacion;
+        this.isbn = isbn;
+        this.claveIsbn = IndiceIsbn.calcularClave(isbn);
+        this.existencias = empaquetar(ejemplaresDisponibles, ejemplaresDisponibles);
+    }
+
+    /**
+     * Constructor para un libro de un volcado del catálogo, cuyos textos se leen al primer acceso.
+     * @param origen Volcado que contiene los textos
+     * @param indiceOrigen Posición del libro en el volcado
+     * @param claveIsbn Clave canónica del ISBN
+     * @param añoPublicacion Año de publicación
+     * @param existencias Total y disponibles empaquetados
+     */
+    Libro(VolcadoCatalogo origen, int indiceOrigen, long claveIsbn, int añoPublicacion, long existencias) {
+        this.origen = origen;
+        this.indiceOrigen = indiceOrigen;
+        this.claveIsbn = claveIsbn;
+        this.añoPublicacion = añoPublicacion;
+        this.existencias = existencias;
+    }
+
+    /**
+     * Constructor para una vista de una fila de columnas.
+     * @param columnas Columnas con los datos del libro
+     * @param fila Fila del libro
+     */
+    Libro(ColumnasLibros columnas, int fila) {
+        this.fila = fila;
+        this.columnas = columnas;
+        this.claveIsbn = columnas.clave(fila);
+        this.numero = columnas.numero(fila);
+    }
+
+    /**
+     * Convierte el libro en una vista de una fila de columnas, soltando sus datos propios.
+     * @param columnas Columnas a las que ya se copiaron los datos del libro
+     * @param fila Fila del libro
+     */
+    synchronized void convertirEnVista(ColumnasLibros columnas, int fila) {
+        this.fila = fila;
+        this.columnas = columnas;
+        origen = null;
+        titulo = null;
+        tituloPlegado = null;
+        isbn = null;
+    }
+
+    /**
+     * Copia los datos de la fila de la que el libro es vista, para que deje de depender de las columnas.
+     */
+    synchronized void desprenderDeColumnas() {
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            titulo = columnas.texto(fila, ColumnasLibros.TITULO);
+            tituloPlegado = columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO);
+            codigoAutor = columnas.codigoAutor(fila);
+            isbn = columnas.texto(fila, ColumnasLibros.ISBN);
+            añoPublicacion = columnas.año(fila);
+            existencias = columnas.existencias(fila);
+            this.columnas = null;
+        }
+    }
+
+    /**
+     * Lee los textos del volcado de origen, si aún no se leyeron.
+     */
+    private void cargar() {
+        if (origen != null) {
+            synchronized (this) {
+                VolcadoCatalogo volcado = origen;
+                if (volcado != null) {
+                    String[] textos = volcado.textosLibro(indiceOrigen);
+                    titulo = textos[0];
+                    tituloPlegado = NormalizadorTexto.plegar(titulo);
+                    codigoAutor = Diccionario.AUTORES.codificar(textos[1]);
+                    isbn = textos[2];
+                    origen = null; // Escritura volátil: publica los textos a los demás hilos
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene el título plegado (sin mayúsculas ni tildes).
+     * @return Título plegado
+     */
+    String tituloPlegado() {
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            return columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO);
+        }
+        cargar();
+        return tituloPlegado;
+    }
+
+    /**
+     * Obtiene el autor plegado (sin mayúsculas ni tildes).
+     * @return Autor plegado
+     */
+    String autorPlegado() {
+        return Diccionario.AUTORES.plegado(codigoAutor());
+    }
+
+    /**
+     * Obtiene el código del autor, con el que los autores se comparan y agrupan como enteros.
+     * @return Código del autor en Diccionario.AUTORES
+     */
+    int codigoAutor() {
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            return columnas.codigoAutor(fila);
+        }
+        cargar();
+        return codigoAutor;
+    }
+
+    /**
+     * Escribe título, autor e ISBN en un volcado nuevo. Si aún no se leyeron del
+     * volcado de origen, se copian sus bytes sin decodificarlos.
+     * @param escritor Escritor del volcado nuevo
+     * @throws IOException Si falla la escritura
+     */
+    synchronized void escribirTextos(VolcadoCatalogo.Escritor escritor) throws IOException {
+        if (origen != null) {
+            origen.copiarTextos(indiceOrigen, escritor);
+        } else {
+            escritor.texto(titulo).texto(Diccionario.AUTORES.valor(codigoAutor)).texto(isbn);
+        }
+    }
+
+    /**
+     * Hace que un libro cuyos textos aún no se leyeron los lea de un volcado más nuevo,
+     * para que el anterior pueda liberarse.
+     * @param volcado Volcado nuevo
+     * @param indice Posición del libro en el volcado nuevo
+     */
+    synchronized void cambiarOrigen(VolcadoCatalogo volcado, int indice) {
+        if (origen != null) {
+            indiceOrigen = indice;
+            origen = volcado;
+        }
+    }
+    
+    /**
+     * Obtiene el título del libro.
+     * @return Título del libro
+     */
+    public String getTitulo() {
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            return columnas.texto(fila, ColumnasLibros.TITULO);
+        }
+        cargar();
+        return titulo;
+    }
+
+    /**
+     * Establece el título del libro.
+     * Si el libro está registrado en una biblioteca, el cambio se aplica con su cerrojo
+     * de escritura tomado, junto con los índices y el diario.
+     * @param titulo Nuevo título del libro (no debe ser nulo o vacío)
+     */
+    public void setTitulo(String titulo) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca != null) {
+            biblioteca.reindexarTitulo(this, titulo);
+        } else {
+            asignarTitulo(titulo);
+        }
+    }
+
+    /**
+     * Escribe el título en el libro o en su fila, sin avisar a la biblioteca.
+     * @param titulo Nuevo título
+     */
+    void asignarTitulo(String titulo) {
+        cargar();
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            columnas.titulo(fila, titulo);
+        } else {
+            this.titulo = titulo;
+            this.tituloPlegado = NormalizadorTexto.plegar(titulo);
+        }
+    }
+
+    /**
+     * Obtiene el autor del libro.
+     * @return Autor del libro
+     */
+    public String getAutor() {
+        return Diccionario.AUTORES.valor(codigoAutor());
+    }
+
+    /**
+     * Establece el autor del libro.
+     * Si el libro está registrado en una biblioteca, el cambio se aplica con su cerrojo
+     * de escritura tomado, junto con los índices y el diario.
+     * @param autor Nuevo autor del libro (no debe ser nulo o vacío)
+     */
+    public void setAutor(String autor) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca != null) {
+            biblioteca.reindexarAutor(this, autor);
+        } else {
+            asignarAutor(autor);
+        }
+    }
+
+    /**
+     * Escribe el autor en el libro o en su fila, sin avisar a la biblioteca.
+     * @param autor Nuevo autor
+     */
+    void asignarAutor(String autor) {
+        int codigo = Diccionario.AUTORES.codificar(autor);
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            columnas.codigoAutor(fila, codigo);
+        } else {
+            this.codigoAutor = codigo;
+        }
+    }
+
+    /**
+     * Obtiene el año de publicación del libro.
+     * @return Año de publicación
+     */
+    public int getAñoPublicacion() {
+        ColumnasLibros columnas = this.columnas;
+        return columnas != null ? columnas.año(fila) : añoPublicacion;
+    }
+
+    /**
+     * Establece el año de publicación del libro.
+     * @param añoPublicacion Nuevo año de publicación (debe ser un año válido)
+     */
+    public void setAñoPublicacion(int añoPublicacion) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca != null) {
+            biblioteca.cambiarAñoPublicacion(this, añoPublicacion);
+        } else {
+            asignarAñoPublicacion(añoPublicacion);
+        }
+    }
+
+    /**
+     * Escribe el año de publicación en el libro o en su fila, sin avisar a la biblioteca.
+     * @param añoPublicacion Nuevo año de publicación
+     */
+    void asignarAñoPublicacion(int añoPublicacion) {
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            columnas.año(fila, añoPublicacion);
+        } else {
+            this.añoPublicacion = añoPublicacion;
+        }
+    }
+
+    /**
+     * Obtiene la cantidad de ejemplares disponibles.
+     * @return Número de ejemplares disponibles
+     */
+    public int getEjemplaresDisponibles() {
+        return disponibles(existencias());
+    }
+
+    /**
+     * Obtiene la cantidad total de ejemplares (disponibles más prestados).
+     * @return Número total de ejemplares
+     */
+    public int getEjemplaresTotales() {
+        return total(existencias());
+    }
+
+    /**
+     * Establece la cantidad de ejemplares disponibles.
+     * Los ejemplares prestados se conservan, así que el total pasa a ser la nueva
+     * cantidad disponible más los prestados.
+     * @param ejemplaresDisponibles Nueva cantidad de ejemplares (debe ser >= 0)
+     */
+    public void setEjemplaresDisponibles(int ejemplaresDisponibles) {
+        if (ejemplaresDisponibles < 0) {
+            System.out.println("La cantidad de ejemplares no puede ser negativa.");
+            return;
+        }
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca != null) {
+            biblioteca.cambiarEjemplaresDisponibles(this, ejemplaresDisponibles);
+        } else {
+            asignarEjemplaresDisponibles(ejemplaresDisponibles);
+        }
+    }
+
+    /**
+     * Cambia los ejemplares disponibles conservando los prestados, sin avisar a la biblioteca.
+     * @param ejemplaresDisponibles Nueva cantidad de ejemplares disponibles (>= 0)
+     */
+    void asignarEjemplaresDisponibles(int ejemplaresDisponibles) {
+        long actual;
+        long nuevo;
+        do {
+            actual = existencias();
+            int prestados = total(actual) - disponibles(actual);
+            nuevo = empaquetar(prestados + ejemplaresDisponibles, ejemplaresDisponibles);
+        } while (!cambiarExistencias(actual, nuevo));
+    }
+
+    /**
+     * Intenta reservar ejemplares de forma atómica.
+     * @param cantidad Cantidad de ejemplares a reservar (mayor que 0)
+     * @return true si había suficientes y quedaron reservados, false si no se reservó ninguno
+     */
+    public boolean intentarReservar(int cantidad) {
+        if (cantidad <= 0) {
+            return false;
+        }
+        long actual;
+        do {
+            actual = existencias();
+            if (disponibles(actual) < cantidad) {
+                return false;
+            }
+        } while (!cambiarExistencias(actual, actual - cantidad));
+        return true;
+    }
+
+    /**
+     * Libera de forma atómica ejemplares reservados con intentarReservar.
+     * @param cantidad Cantidad de ejemplares a liberar (mayor que 0)
+     * @return true si se liberaron, false si superarían el total de ejemplares
+     */
+    public boolean liberar(int cantidad) {
+        if (cantidad <= 0) {
+            return false;
+        }
+        long actual;
+        do {
+            actual = existencias();
+            if (disponibles(actual) + cantidad > total(actual)) {
+                return false;
+            }
+        } while (!cambiarExistencias(actual, actual + cantidad));
+        return true;
+    }
+
+    /**
+     * Suma cantidades al total y a los disponibles sin comprobar límites.
+     * Solo lo usa la biblioteca al reproducir su diario, donde préstamos y devoluciones
+     * simultáneos pueden aparecer en otro orden y la disponibilidad queda correcta al final.
+     * @param deltaTotal Cantidad a sumar al total
+     * @param deltaDisponibles Cantidad a sumar a los disponibles
+     */
+    void ajustarExistencias(int deltaTotal, int deltaDisponibles) {
+        long actual;
+        do {
+            actual = existencias();
+        } while (!cambiarExistencias(actual, empaquetar(total(actual) + deltaTotal, disponibles(actual) + deltaDisponibles)));
+    }
+
+    /**
+     * Lee el total y los disponibles empaquetados, del libro o de sus columnas.
+     * @return Valor empaquetado
+     */
+    private long existencias() {
+        ColumnasLibros columnas = this.columnas;
+        return columnas != null ? columnas.existencias(fila) : existencias;
+    }
+
+    /**
+     * Cambia el total y los disponibles empaquetados si siguen valiendo lo leído.
+     * @param actual Valor leído con existencias()
+     * @param nuevo Valor nuevo
+     * @return true si se cambió
+     */
+    private boolean cambiarExistencias(long actual, long nuevo) {
+        ColumnasLibros columnas = this.columnas;
+        return columnas != null ? columnas.cambiarExistencias(fila, actual, nuevo)
+                                : EXISTENCIAS.compareAndSet(this, actual, nuevo);
+    }
+
+    /**
+     * Registra el préstamo de un ejemplar del libro.
+     * Disminuye en 1 la cantidad de ejemplares disponibles si hay existencias.
+     */
+    public void prestar() {
+        intentarReservar(1);
+    }
+
+    /**
+     * Registra la devolución de un ejemplar del libro.
+     * Aumenta en 1 la cantidad de ejemplares disponibles, sin superar el total.
+     */
+    public void devolver() {
+        liberar(1);
+    }
+
+    /**
+     * Junta el total y los disponibles en un solo valor.
+     * @param total Total de ejemplares
+     * @param disponibles Ejemplares disponibles
+     * @return Valor empaquetado
+     */
+    private static long empaquetar(int total, int disponibles) {
+        return ((long) total << 32) | (disponibles & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Extrae el total de ejemplares de un valor empaquetado.
+     * @param existencias Valor empaquetado
+     * @return Total de ejemplares
+     */
+    private static int total(long existencias) {
+        return (int) (existencias >>> 32);
+    }
+
+    /**
+     * Extrae los ejemplares disponibles de un valor empaquetado.
+     * @param existencias Valor empaquetado
+     * @return Ejemplares disponibles
+     */
+    private static int disponibles(long existencias) {
+        return (int) existencias;
+    }
+
+    /**
+     * Obtiene el ISBN del libro.
+     * @return ISBN del libro
+     */
+    public String getIsbn() {
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            return columnas.texto(fila, ColumnasLibros.ISBN);
+        }
+        cargar();
+        return isbn;
+    }
+
+    /**
+     * Establece el ISBN del libro.
+     * Si el libro está registrado en una biblioteca, su índice se actualiza con el cerrojo
+     * de escritura tomado; el cambio se rechaza si el nuevo ISBN no es válido o ya
+     * pertenece a otro libro.
+     * @param isbn Nuevo ISBN (no puede ser nulo o vacío)
+     */
+    public void setIsbn(String isbn) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (isbn == null || isbn.trim().isEmpty()) {
+            System.out.println("Intento de asignar un ISBN nulo o vacío.");
+        } else if (biblioteca != null) {
+            if (!biblioteca.reindexarIsbn(this, isbn)) {
+                System.out.println("El ISBN " + isbn + " no es válido o ya está registrado.");
+            }
+        } else {
+            asignarIsbn(isbn);
+        }
+    }
+
+    /**
+     * Escribe el ISBN y su clave en el libro o en su fila, sin avisar a la biblioteca.
+     * @param isbn Nuevo ISBN
+     */
+    void asignarIsbn(String isbn) {
+        cargar();
+        this.claveIsbn = IndiceIsbn.calcularClave(isbn);
+        ColumnasLibros columnas = this.columnas;
+        if (columnas != null) {
+            columnas.isbn(fila, claveIsbn, isbn);
+        } else {
+            this.isbn = isbn;
+        }
+    }
+
+    /**
+     * Devuelve una representación en cadena del libro.
+     * @return Cadena con toda la información del libro
+     */
+    @Override
+    public String toString() {
+        return "Libro:" +
+               "titulo:" + getTitulo() +
+               ", autor:" + getAutor() +
+               ", añoPublicacion:" + getAñoPublicacion() +
+               ", isbn:" + getIsbn() +
+               ", ejemplaresDisponibles:" + getEjemplaresDisponibles();
+    }
 }
\ No newline at end of file
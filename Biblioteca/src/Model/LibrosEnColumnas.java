@@ -0,0 +1,595 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Repositorio de libros fuera del heap, para catálogos muy grandes.
+ * <p>
+ * Los datos de los libros viven en ColumnasLibros, fuera del heap; en el heap solo
+ * quedan índices que guardan filas en arreglos primitivos: por ISBN, el orden
+ * alfabético de títulos (OrdenTitulos), las palabras de los autores y los trigramas
+ * de título y autor. Los libros que devuelve son vistas creadas en cada consulta, que
+ * leen y escriben las columnas, así que el recolector de basura no tiene que recorrer
+ * el catálogo. Un libro agregado se convierte en vista de su fila; uno eliminado
+ * recupera una copia de sus datos.
+ * </p>
+ * <p>
+ * Como en LibrosEnMemoria, los índices de texto pueden quedar pendientes (al
+ * reemplazar el catálogo o agregar un lote grande) y se construyen de una vez en la
+ * primera búsqueda. Las filas de libros eliminados no se reutilizan, así que las
+ * páginas usan la fila como posición estable; cuando las filas eliminadas o los
+ * textos reemplazados ocupan más que los vigentes, las columnas se compactan.
+ * </p>
+ */
+public class LibrosEnColumnas implements RepositorioLibros {
+    private static final int LOTE_SIN_INDICES_TEXTO = 1024; // Desde este tamaño, agregarTodos deja los índices de texto para después
+
+    private ColumnasLibros columnas = new ColumnasLibros();
+    private IndiceIsbn indiceIsbn = new IndiceIsbn(16); // Clave canónica del ISBN -> fila en columnas
+    private final OrdenTitulos ordenTitulos = new OrdenTitulos(); // Filas en orden alfabético de título
+    private final IndiceInvertido indiceAutores = new IndiceInvertido(); // Palabra del autor plegado -> fila + 1
+    private final IndiceTrigramas indiceTrigramas = new IndiceTrigramas(); // Trigramas de título y autor, por fila + 1
+    private int ultimoNumero;
+    private volatile boolean indicesTextoPendientes; // Índices de texto sin construir
+    private Biblioteca biblioteca;
+
+    /**
+     * Vincula el repositorio con la biblioteca que lo usa.
+     * @param biblioteca Biblioteca dueña de los libros
+     */
+    @Override
+    public void vincular(Biblioteca biblioteca) {
+        this.biblioteca = biblioteca;
+    }
+
+    /**
+     * Obtiene la cantidad de libros registrados.
+     * @return Cantidad de libros
+     */
+    @Override
+    public int cantidad() {
+        return indiceIsbn.tamaño();
+    }
+
+    /**
+     * Obtiene los bytes reservados fuera del heap para los datos de los libros.
+     * @return Bytes de columnas y textos
+     */
+    public long getBytesFueraDelHeap() {
+        return columnas.bytesReservados();
+    }
+
+    /**
+     * Crea una vista del libro de una fila.
+     * @param fila Fila de un libro registrado
+     * @return Libro perteneciente a la biblioteca vinculada
+     */
+    private Libro vista(int fila) {
+        Libro libro = new Libro(columnas, fila);
+        libro.biblioteca = biblioteca;
+        return libro;
+    }
+
+    /**
+     * Busca un libro por la clave canónica de su ISBN.
+     * @param claveIsbn Clave canónica del ISBN
+     * @return Vista del libro o null si no existe
+     */
+    @Override
+    public Libro buscar(long claveIsbn) {
+        int fila = indiceIsbn.buscar(claveIsbn);
+        return fila >= 0 ? vista(fila) : null;
+    }
+
+    /**
+     * Copia un libro a una fila nueva y lo convierte en vista de ella, si su ISBN no está registrado.
+     * @param libro Libro con ISBN válido
+     * @return true si se registró
+     */
+    @Override
+    public boolean agregar(Libro libro) {
+        if (indiceIsbn.contiene(libro.claveIsbn)) {
+            return false;
+        }
+        int numero = libro.numero != 0 ? libro.numero : ++ultimoNumero;
+        int fila = columnas.agregar(libro, numero);
+        indiceIsbn.poner(libro.claveIsbn, fila);
+        libro.numero = numero;
+        libro.convertirEnVista(columnas, fila);
+        libro.biblioteca = biblioteca;
+        if (!indicesTextoPendientes) {
+            indexarTexto(fila);
+        }
+        return true;
+    }
+
+    /**
+     * Agrega el título y el autor de una fila a los índices de texto.
+     * @param fila Fila de un libro registrado
+     */
+    private void indexarTexto(int fila) {
+        String autor = Diccionario.AUTORES.plegado(columnas.codigoAutor(fila));
+        String titulo = columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO);
+        ordenTitulos.agregar(columnas, fila);
+        indiceAutores.agregar(fila + 1, autor);
+        indiceTrigramas.agregar(fila + 1, IndiceTrigramas.CAMPO_TITULO, titulo);
+        indiceTrigramas.agregar(fila + 1, IndiceTrigramas.CAMPO_AUTOR, autor);
+    }
+
+    /**
+     * Registra varios libros. En lotes grandes, los índices de texto se construyen una
+     * vez, en la próxima búsqueda, en lugar de actualizarse libro por libro.
+     * @param libros Libros con ISBN válido
+     * @return Por cada libro, true si se registró
+     */
+    @Override
+    public boolean[] agregarTodos(List<Libro> libros) {
+        if (libros.size() >= LOTE_SIN_INDICES_TEXTO) {
+            indicesTextoPendientes = true;
+        }
+        boolean[] agregados = new boolean[libros.size()];
+        for (int i = 0; i < agregados.length; i++) {
+            agregados[i] = agregar(libros.get(i));
+        }
+        return agregados;
+    }
+
+    /**
+     * Copia los libros a columnas nuevas, dejando los índices de texto para la primera
+     * búsqueda. Las vistas anteriores siguen leyendo las columnas viejas, que se liberan
+     * cuando ninguna vista las usa.
+     * @param libros Libros con ISBN válido
+     * @return Por cada libro, true si se registró
+     */
+    @Override
+    public boolean[] reemplazarTodos(List<Libro> libros) {
+        this.columnas = new ColumnasLibros();
+        this.indiceIsbn = new IndiceIsbn(libros.size());
+        this.ordenTitulos.limpiar();
+        this.indiceAutores.limpiar();
+        this.indiceTrigramas.limpiar();
+        this.indicesTextoPendientes = true;
+        return agregarTodos(libros);
+    }
+
+    /**
+     * Quita un libro: su fila queda marcada como eliminada y el libro devuelto tiene una copia de sus datos.
+     * @param claveIsbn Clave canónica del ISBN
+     * @return Libro quitado o null si no existía
+     */
+    @Override
+    public Libro eliminar(long claveIsbn) {
+        int fila = indiceIsbn.buscar(claveIsbn);
+        if (fila < 0) {
+            return null;
+        }
+        Libro libro = new Libro(columnas, fila);
+        libro.desprenderDeColumnas();
+        indiceIsbn.eliminar(claveIsbn);
+        if (!indicesTextoPendientes) {
+            ordenTitulos.quitar(columnas, fila, libro.tituloPlegado(), libro.numero);
+            indiceAutores.marcarObsoleto(libro.autorPlegado());
+            indiceTrigramas.marcarObsoletas(2);
+        }
+        columnas.eliminar(fila);
+        mantener();
+        return libro;
+    }
+
+    /**
+     * Cambia la clave de un libro en el índice por ISBN. El libro escribe después el ISBN en su fila.
+     * @param libro Vista de un libro registrado
+     * @param nuevaClave Clave del nuevo ISBN
+     * @param nuevoIsbn Nuevo ISBN
+     * @return true si se cambió, false si la clave ya está registrada o el libro ya no lo está
+     */
+    @Override
+    public boolean cambiarIsbn(Libro libro, long nuevaClave, String nuevoIsbn) {
+        if (libro.columnas != columnas || columnas.numero(libro.fila) == 0) {
+            return false; // Vista de un libro ya eliminado o reemplazado
+        }
+        if (nuevaClave == columnas.clave(libro.fila)) {
+            return true;
+        }
+        if (indiceIsbn.contiene(nuevaClave)) {
+            return false;
+        }
+        indiceIsbn.eliminar(columnas.clave(libro.fila));
+        indiceIsbn.poner(nuevaClave, libro.fila);
+        return true;
+    }
+
+    /**
+     * Actualiza el orden de títulos y los trigramas tras un cambio de título, que ya está en la fila.
+     * @param libro Vista de un libro registrado
+     * @param anteriorPlegado Título plegado anterior
+     */
+    @Override
+    public void tituloCambiado(Libro libro, String anteriorPlegado) {
+        if (libro.columnas != columnas) {
+            return;
+        }
+        if (!indicesTextoPendientes) {
+            ordenTitulos.quitar(columnas, libro.fila, anteriorPlegado, libro.numero);
+            ordenTitulos.agregar(columnas, libro.fila);
+            indiceTrigramas.marcarObsoletas(1);
+            indiceTrigramas.agregar(libro.fila + 1, IndiceTrigramas.CAMPO_TITULO, libro.tituloPlegado());
+        }
+        mantener();
+    }
+
+    /**
+     * Actualiza las palabras de autores y los trigramas tras un cambio de autor, que ya está en la fila.
+     * @param libro Vista de un libro registrado
+     * @param anteriorPlegado Autor plegado anterior
+     */
+    @Override
+    public void autorCambiado(Libro libro, String anteriorPlegado) {
+        if (libro.columnas != columnas) {
+            return;
+        }
+        if (!indicesTextoPendientes) {
+            indiceAutores.marcarObsoleto(anteriorPlegado);
+            indiceAutores.agregar(libro.fila + 1, libro.autorPlegado());
+            indiceTrigramas.marcarObsoletas(1);
+            indiceTrigramas.agregar(libro.fila + 1, IndiceTrigramas.CAMPO_AUTOR, libro.autorPlegado());
+        }
+        mantener();
+    }
+
+    /**
+     * Reconstruye los índices de palabras y de trigramas cuando acumulan demasiadas
+     * entradas obsoletas, y compacta las columnas cuando las filas eliminadas o los
+     * textos reemplazados ocupan más que los vigentes.
+     */
+    private void mantener() {
+        if (!indicesTextoPendientes) {
+            boolean autores = indiceAutores.necesitaReconstruir();
+            boolean trigramas = indiceTrigramas.necesitaReconstruir();
+            if (autores) {
+                indiceAutores.limpiar();
+            }
+            if (trigramas) {
+                indiceTrigramas.limpiar();
+            }
+            if (autores || trigramas) {
+                for (int fila = 0; fila < columnas.filas(); fila++) {
+                    if (columnas.numero(fila) == 0) {
+                        continue;
+                    }
+                    String autor = Diccionario.AUTORES.plegado(columnas.codigoAutor(fila));
+                    if (autores) {
+                        indiceAutores.agregar(fila + 1, autor);
+                    }
+                    if (trigramas) {
+                        indiceTrigramas.agregar(fila + 1, IndiceTrigramas.CAMPO_TITULO,
+                                columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO));
+                        indiceTrigramas.agregar(fila + 1, IndiceTrigramas.CAMPO_AUTOR, autor);
+                    }
+                }
+            }
+        }
+        if (columnas.necesitaCompactar()) {
+            columnas.compactar();
+        }
+    }
+
+    /**
+     * No hace nada: la vista ya escribió el cambio en su fila.
+     * @param libro Vista de un libro registrado
+     */
+    @Override
+    public void actualizar(Libro libro) {
+    }
+
+    /**
+     * Reserva ejemplares con compare-and-set sobre la fila del libro.
+     * @param libro Vista de un libro registrado
+     * @param cantidad Cantidad de ejemplares
+     * @return true si quedaron reservados
+     */
+    @Override
+    public boolean reservar(Libro libro, int cantidad) {
+        return libro.intentarReservar(cantidad);
+    }
+
+    /**
+     * Libera ejemplares con compare-and-set sobre la fila del libro.
+     * @param libro Vista de un libro registrado
+     * @param cantidad Cantidad de ejemplares
+     * @return true si se liberaron
+     */
+    @Override
+    public boolean liberar(Libro libro, int cantidad) {
+        return libro.liberar(cantidad);
+    }
+
+    /**
+     * Indica si los índices de texto están sin construir.
+     * @return true si quedaron pendientes
+     */
+    @Override
+    public boolean busquedasPendientes() {
+        return indicesTextoPendientes;
+    }
+
+    /**
+     * Construye los índices de texto si quedaron pendientes, recorriendo las filas en orden.
+     */
+    @Override
+    public void prepararBusquedas() {
+        if (indicesTextoPendientes) {
+            indiceAutores.limpiar();
+            indiceTrigramas.limpiar();
+            ordenTitulos.reconstruir(columnas);
+            for (int fila = 0; fila < columnas.filas(); fila++) {
+                if (columnas.numero(fila) != 0) {
+                    String autor = Diccionario.AUTORES.plegado(columnas.codigoAutor(fila));
+                    indiceAutores.agregar(fila + 1, autor);
+                    indiceTrigramas.agregar(fila + 1, IndiceTrigramas.CAMPO_TITULO,
+                            columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO));
+                    indiceTrigramas.agregar(fila + 1, IndiceTrigramas.CAMPO_AUTOR, autor);
+                }
+            }
+            indicesTextoPendientes = false;
+        }
+    }
+
+    /**
+     * Busca libros por título plegado exacto con el orden de títulos.
+     * @param plegado Título plegado
+     * @return Libros con ese título, en orden de fila
+     */
+    @Override
+    public ArrayList<Libro> buscarPorTitulo(String plegado) {
+        int[] filas = ordenTitulos.buscarExacto(columnas, plegado);
+        Arrays.sort(filas);
+        ArrayList<Libro> resultados = new ArrayList<>(filas.length);
+        for (int fila : filas) {
+            resultados.add(vista(fila));
+        }
+        return resultados;
+    }
+
+    /**
+     * Agrega a destino una página de libros por inicio de título con el orden de
+     * títulos, pidiendo uno más para saber si hay página siguiente.
+     * @param prefijo Texto plegado
+     * @param despuesDeTitulo Título plegado del último libro de la página anterior
+     * @param despuesDeNumero Número del último libro de la página anterior
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return true si hay más libros
+     */
+    @Override
+    public boolean paginaPorInicioDeTitulo(String prefijo, String despuesDeTitulo, int despuesDeNumero,
+            int cantidad, List<Libro> destino) {
+        int[] filas = ordenTitulos.buscarPrefijo(columnas, prefijo, despuesDeTitulo, despuesDeNumero, cantidad + 1);
+        for (int i = 0; i < Math.min(cantidad, filas.length); i++) {
+            destino.add(vista(filas[i]));
+        }
+        return filas.length > cantidad;
+    }
+
+    /**
+     * Busca libros por autor con el índice de palabras, verificando que el código del
+     * autor vigente esté entre los autores del diccionario que coinciden con la consulta.
+     * @param plegado Consulta plegada
+     * @return Libros que coinciden, en orden de fila
+     */
+    @Override
+    public ArrayList<Libro> buscarPorAutor(String plegado) {
+        ArrayList<Libro> resultados = new ArrayList<>();
+        paginaPorAutor(plegado, 0, Integer.MAX_VALUE, resultados);
+        return resultados;
+    }
+
+    /**
+     * Comprueba si el autor de una fila es uno de un conjunto de códigos.
+     * @param fila Fila de un libro
+     * @param autores Códigos de autor, en orden creciente
+     * @return true si el código del autor está en el conjunto
+     */
+    private boolean deAutores(int fila, int[] autores) {
+        int codigo = columnas.codigoAutor(fila);
+        return codigo != Diccionario.NINGUNO && Arrays.binarySearch(autores, codigo) >= 0;
+    }
+
+    /**
+     * Agrega a destino una página de libros en orden de fila.
+     * @param desde Fila desde la que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return Fila del primer libro de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long pagina(long desde, int cantidad, List<Libro> destino) {
+        return paginaPorFilas(desde, cantidad, null, destino);
+    }
+
+    /**
+     * Agrega a destino una página de libros con un título plegado exacto, en orden de fila.
+     * @param plegado Título plegado
+     * @param desde Fila desde la que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return Fila del primer libro de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long paginaPorTitulo(String plegado, long desde, int cantidad, List<Libro> destino) {
+        int[] filas = ordenTitulos.buscarExacto(columnas, plegado);
+        for (int i = 0; i < filas.length; i++) {
+            filas[i]++;
+        }
+        Arrays.sort(filas);
+        return paginaPorCandidatos(filas, desde, cantidad, null, destino);
+    }
+
+    /**
+     * Agrega a destino una página de libros por autor, en orden de fila, verificando
+     * los candidatos del índice de palabras.
+     * @param plegado Consulta plegada
+     * @param desde Fila desde la que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return Fila del primer libro de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long paginaPorAutor(String plegado, long desde, int cantidad, List<Libro> destino) {
+        int[] autores = Diccionario.AUTORES.buscar(plegado);
+        if (autores.length == 0) {
+            return -1;
+        }
+        int[] candidatos = indiceAutores.buscar(plegado);
+        if (candidatos == null) {
+            return paginaPorFilas(desde, cantidad, autores, destino);
+        }
+        return paginaPorCandidatos(candidatos, desde, cantidad, autores, destino);
+    }
+
+    /**
+     * Recorre las filas desde una posición, saltando las de libros eliminados, hasta
+     * llenar la página y encontrar el primer libro de la siguiente.
+     * @param desde Fila desde la que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param autores Códigos de autor aceptados, o null para aceptar todos
+     * @param destino Lista a la que se agregan los libros
+     * @return Fila del primer libro de la página siguiente, o -1 si no hay más
+     */
+    private long paginaPorFilas(long desde, int cantidad, int[] autores, List<Libro> destino) {
+        for (long fila = desde; fila < columnas.filas(); fila++) {
+            if (columnas.numero((int) fila) != 0 && (autores == null || deAutores((int) fila, autores))) {
+                if (cantidad == 0) {
+                    return fila;
+                }
+                destino.add(vista((int) fila));
+                cantidad--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recorre una lista de filas candidatas desde una posición, buscando el inicio con
+     * búsqueda binaria y saltando los libros eliminados.
+     * @param candidatos Filas + 1 en orden creciente
+     * @param desde Fila desde la que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param autores Códigos de autor aceptados, o null para aceptar todos
+     * @param destino Lista a la que se agregan los libros
+     * @return Fila del primer libro de la página siguiente, o -1 si no hay más
+     */
+    private long paginaPorCandidatos(int[] candidatos, long desde, int cantidad, int[] autores, List<Libro> destino) {
+        if (desde >= Integer.MAX_VALUE) {
+            return -1;
+        }
+        int inicio = Arrays.binarySearch(candidatos, (int) desde + 1);
+        for (int i = inicio >= 0 ? inicio : -inicio - 1; i < candidatos.length; i++) {
+            int fila = candidatos[i] - 1;
+            if (fila >= columnas.filas() || columnas.numero(fila) == 0
+                    || autores != null && !deAutores(fila, autores)) {
+                continue;
+            }
+            if (cantidad == 0) {
+                return fila;
+            }
+            destino.add(vista(fila));
+            cantidad--;
+        }
+        return -1;
+    }
+
+    /**
+     * Busca libros parecidos con el índice de trigramas, puntuando los candidatos
+     * sobre el título de su fila y el autor vigente.
+     * @param plegado Consulta plegada
+     * @param cantidad Cantidad máxima de resultados
+     * @param similitudMinima Similitud mínima
+     * @return Libros del más parecido al menos parecido
+     */
+    @Override
+    public ArrayList<Libro> buscarSimilares(String plegado, int cantidad, double similitudMinima) {
+        ArrayList<Libro> resultados = new ArrayList<>();
+        int[] candidatos = indiceTrigramas.candidatos(plegado, cantidad, similitudMinima);
+        TablaClaves vistos = new TablaClaves(candidatos.length);
+        long[] puntuados = new long[candidatos.length]; // Similitud en los bits altos, fila en los bajos
+        int n = 0;
+        for (int entrada : candidatos) {
+            int fila = entrada / 2 - 1;
+            if (fila >= columnas.filas() || columnas.numero(fila) == 0 || vistos.contiene(fila + 1L)) {
+                continue; // Libro eliminado, o ya puntuado por su otro campo
+            }
+            vistos.poner(fila + 1L, 0);
+            double similitud = Math.max(
+                    IndiceTrigramas.similitud(plegado, columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO)),
+                    IndiceTrigramas.similitud(plegado, Diccionario.AUTORES.plegado(columnas.codigoAutor(fila))));
+            if (similitud >= similitudMinima) {
+                puntuados[n++] = ((long) (similitud * 1_000_000) << 32) | fila;
+            }
+        }
+        Arrays.sort(puntuados, 0, n);
+        for (int i = n - 1; i >= 0 && resultados.size() < cantidad; i--) {
+            resultados.add(vista((int) puntuados[i]));
+        }
+        return resultados;
+    }
+
+    /**
+     * Crea una vista de cada libro en una instantánea. Para solo recorrerlos es
+     * preferible recorrer(), que no las retiene.
+     * @return Instantánea de los libros
+     */
+    @Override
+    public Instantanea<Libro> instantanea() {
+        ListaVersionada<Libro> todos = new ListaVersionada<Libro>();
+        for (Libro libro : recorrer()) {
+            todos.add(libro);
+        }
+        return todos.instantanea();
+    }
+
+    /**
+     * Recorre las filas de los libros registrados, creando cada vista al avanzar.
+     * @return Libros en orden de fila
+     */
+    @Override
+    public Iterable<Libro> recorrer() {
+        ColumnasLibros recorridas = columnas;
+        int filas = recorridas.filas();
+        return () -> new Iterator<Libro>() {
+            private int siguiente = buscarDesde(0);
+
+            /**
+             * Busca la primera fila de un libro registrado.
+             * @param fila Fila desde la que buscar
+             * @return Fila encontrada, o filas si no quedan
+             */
+            private int buscarDesde(int fila) {
+                while (fila < filas && recorridas.numero(fila) == 0) {
+                    fila++;
+                }
+                return fila;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return siguiente < filas;
+            }
+
+            @Override
+            public Libro next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Libro libro = new Libro(recorridas, siguiente);
+                libro.biblioteca = biblioteca;
+                siguiente = buscarDesde(siguiente + 1);
+                return libro;
+            }
+        };
+    }
+}
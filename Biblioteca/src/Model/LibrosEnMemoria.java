@@ -0,0 +1,598 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Repositorio de libros en memoria.
+ * <p>
+ * Guarda los libros en una lista versionada, con índices por ISBN y por número para
+ * las búsquedas exactas, y por palabras de autor, título y trigramas para las de
+ * texto. Los índices de texto pueden quedar pendientes (al cargar un volcado o un
+ * lote grande) y se construyen de una vez en la primera búsqueda.
+ * </p>
+ */
+class LibrosEnMemoria implements RepositorioLibros {
+    private static final int LOTE_SIN_INDICES_TEXTO = 1024; // Desde este tamaño, agregarTodos deja los índices de texto para después
+
+    private ListaVersionada<Libro> libros = new ListaVersionada<Libro>();
+    private IndiceIsbn indiceIsbn = new IndiceIsbn(16); // Clave canónica del ISBN -> posición en libros
+    private TablaClaves indiceNumeros = new TablaClaves(16); // Número interno del libro -> posición en libros
+    private BitSet numeros = new BitSet(); // Números de los libros registrados, para paginar en orden de número
+    private final IndiceInvertido indiceAutores = new IndiceInvertido(); // Palabra del autor plegado -> números de libro
+    private final IndiceTitulos indiceTitulos = new IndiceTitulos(); // Título plegado -> números de libro, en orden alfabético
+    private final IndiceTrigramas indiceTrigramas = new IndiceTrigramas(); // Trigramas de título y autor, para búsquedas aproximadas
+    private int ultimoNumero;
+    private volatile boolean indicesTextoPendientes; // Índices de texto sin construir
+    private Biblioteca biblioteca;
+
+    /**
+     * Vincula el repositorio con la biblioteca que lo usa.
+     * @param biblioteca Biblioteca dueña de los libros
+     */
+    @Override
+    public void vincular(Biblioteca biblioteca) {
+        this.biblioteca = biblioteca;
+    }
+
+    /**
+     * Obtiene la cantidad de libros registrados.
+     * @return Cantidad de libros
+     */
+    @Override
+    public int cantidad() {
+        return libros.size();
+    }
+
+    /**
+     * Busca un libro por la clave canónica de su ISBN.
+     * @param claveIsbn Clave canónica del ISBN
+     * @return Libro registrado o null si no existe
+     */
+    @Override
+    public Libro buscar(long claveIsbn) {
+        int posicion = indiceIsbn.buscar(claveIsbn);
+        return posicion >= 0 ? libros.get(posicion) : null;
+    }
+
+    /**
+     * Obtiene el último número asignado, que los volcados guardan para no repetirlo.
+     * @return Último número de libro
+     */
+    int ultimoNumero() {
+        return ultimoNumero;
+    }
+
+    /**
+     * Obtiene la posición de un libro registrado en la lista, la que usan los volcados.
+     * @param libro Libro registrado
+     * @return Posición del libro
+     */
+    int posicion(Libro libro) {
+        return indiceIsbn.buscar(libro.claveIsbn);
+    }
+
+    /**
+     * Registra un libro si su ISBN no está registrado.
+     * @param libro Libro con ISBN válido
+     * @return true si se registró
+     */
+    @Override
+    public boolean agregar(Libro libro) {
+        if (indiceIsbn.contiene(libro.claveIsbn)) {
+            return false;
+        }
+        libro.numero = ++ultimoNumero; // Nuevo también al volver a registrarlo, como en la reproducción del diario
+        indexar(libro);
+        return true;
+    }
+
+    /**
+     * Registra varios libros. En lotes grandes, los índices de texto se reconstruyen
+     * una vez, en la próxima búsqueda, en lugar de actualizarse libro por libro.
+     * @param libros Libros con ISBN válido
+     * @return Por cada libro, true si se registró
+     */
+    @Override
+    public boolean[] agregarTodos(List<Libro> libros) {
+        if (libros.size() >= LOTE_SIN_INDICES_TEXTO) {
+            indicesTextoPendientes = true;
+        }
+        boolean[] agregados = new boolean[libros.size()];
+        for (int i = 0; i < agregados.length; i++) {
+            agregados[i] = agregar(libros.get(i));
+        }
+        return agregados;
+    }
+
+    /**
+     * Reemplaza todos los libros y reconstruye los índices.
+     * @param libros Libros con ISBN válido
+     * @return Por cada libro, true si se registró
+     */
+    @Override
+    public boolean[] reemplazarTodos(List<Libro> libros) {
+        for (Libro libro : this.libros) {
+            libro.biblioteca = null;
+        }
+        this.libros = new ListaVersionada<Libro>();
+        this.indiceIsbn = new IndiceIsbn(libros.size());
+        this.indiceNumeros = new TablaClaves(libros.size());
+        this.numeros = new BitSet();
+        this.indiceAutores.limpiar();
+        this.indiceTitulos.limpiar();
+        this.indiceTrigramas.limpiar();
+        this.indicesTextoPendientes = false;
+        return agregarTodos(libros);
+    }
+
+    /**
+     * Carga los libros de un volcado en el repositorio vacío, con los números que
+     * tenían, dejando los índices de texto para la primera búsqueda.
+     * @param registrados Libros registrados del volcado, en orden
+     * @param ultimoNumero Último número asignado al escribir el volcado
+     */
+    void cargar(List<Libro> registrados, int ultimoNumero) {
+        this.ultimoNumero = ultimoNumero;
+        this.indiceIsbn = new IndiceIsbn(registrados.size());
+        this.indiceNumeros = new TablaClaves(registrados.size());
+        this.numeros = new BitSet();
+        this.indicesTextoPendientes = true;
+        for (Libro libro : registrados) {
+            indexar(libro);
+        }
+    }
+
+    /**
+     * Quita un libro. El último libro de la lista ocupa su lugar, así la eliminación no desplaza la lista.
+     * @param claveIsbn Clave canónica del ISBN
+     * @return Libro quitado o null si no existía
+     */
+    @Override
+    public Libro eliminar(long claveIsbn) {
+        int posicion = indiceIsbn.buscar(claveIsbn);
+        if (posicion < 0) {
+            return null;
+        }
+        Libro libro = libros.get(posicion);
+        Libro ultimo = libros.quitarUltimo();
+        if (ultimo != libro) {
+            libros.set(posicion, ultimo);
+            indiceIsbn.poner(ultimo.claveIsbn, posicion);
+            indiceNumeros.poner(ultimo.numero, posicion);
+        }
+        indiceIsbn.eliminar(claveIsbn);
+        indiceNumeros.eliminar(libro.numero);
+        numeros.clear(libro.numero);
+        if (!indicesTextoPendientes) {
+            indiceAutores.marcarObsoleto(libro.autorPlegado());
+            indiceTitulos.eliminar(libro.numero, libro.tituloPlegado());
+            indiceTrigramas.marcarObsoletas(2);
+            reconstruirIndicesTextoSiConviene();
+        }
+        libro.biblioteca = null;
+        return libro;
+    }
+
+    /**
+     * Añade un libro al final de la lista y lo registra en los índices.
+     * @param libro Libro con ISBN válido y no registrado, con su número ya asignado
+     */
+    private void indexar(Libro libro) {
+        indiceIsbn.poner(libro.claveIsbn, libros.size());
+        indiceNumeros.poner(libro.numero, libros.size());
+        numeros.set(libro.numero);
+        libros.add(libro);
+        if (!indicesTextoPendientes) {
+            indexarTexto(libro);
+        }
+        libro.biblioteca = biblioteca;
+    }
+
+    /**
+     * Agrega el título y el autor de un libro a los índices de texto.
+     * @param libro Libro con número asignado
+     */
+    private void indexarTexto(Libro libro) {
+        indiceAutores.agregar(libro.numero, libro.autorPlegado());
+        indiceTitulos.agregar(libro.numero, libro.tituloPlegado());
+        indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_TITULO, libro.tituloPlegado());
+        indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_AUTOR, libro.autorPlegado());
+    }
+
+    /**
+     * Cambia la clave de un libro en el índice por ISBN.
+     * @param libro Libro registrado
+     * @param nuevaClave Clave del nuevo ISBN
+     * @param nuevoIsbn Nuevo ISBN (el libro lo asigna después)
+     * @return true si se cambió, false si la clave ya está registrada
+     */
+    @Override
+    public boolean cambiarIsbn(Libro libro, long nuevaClave, String nuevoIsbn) {
+        if (nuevaClave == libro.claveIsbn) {
+            return true;
+        }
+        if (indiceIsbn.contiene(nuevaClave)) {
+            return false;
+        }
+        int posicion = indiceIsbn.buscar(libro.claveIsbn);
+        indiceIsbn.eliminar(libro.claveIsbn);
+        indiceIsbn.poner(nuevaClave, posicion);
+        return true;
+    }
+
+    /**
+     * Actualiza los índices de títulos tras un cambio de título.
+     * @param libro Libro registrado
+     * @param anteriorPlegado Título plegado anterior
+     */
+    @Override
+    public void tituloCambiado(Libro libro, String anteriorPlegado) {
+        if (!indicesTextoPendientes) {
+            indiceTitulos.eliminar(libro.numero, anteriorPlegado);
+            indiceTitulos.agregar(libro.numero, libro.tituloPlegado());
+            indiceTrigramas.marcarObsoletas(1);
+            indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_TITULO, libro.tituloPlegado());
+            reconstruirIndicesTextoSiConviene();
+        }
+    }
+
+    /**
+     * Actualiza los índices de autores tras un cambio de autor.
+     * @param libro Libro registrado
+     * @param anteriorPlegado Autor plegado anterior
+     */
+    @Override
+    public void autorCambiado(Libro libro, String anteriorPlegado) {
+        if (!indicesTextoPendientes) {
+            indiceAutores.marcarObsoleto(anteriorPlegado);
+            indiceAutores.agregar(libro.numero, libro.autorPlegado());
+            indiceTrigramas.marcarObsoletas(1);
+            indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_AUTOR, libro.autorPlegado());
+            reconstruirIndicesTextoSiConviene();
+        }
+    }
+
+    /**
+     * No hace nada: el libro en memoria ya tiene el cambio.
+     * @param libro Libro registrado
+     */
+    @Override
+    public void actualizar(Libro libro) {
+    }
+
+    /**
+     * Reserva ejemplares con compare-and-set sobre el libro.
+     * @param libro Libro registrado
+     * @param cantidad Cantidad de ejemplares
+     * @return true si quedaron reservados
+     */
+    @Override
+    public boolean reservar(Libro libro, int cantidad) {
+        return libro.intentarReservar(cantidad);
+    }
+
+    /**
+     * Libera ejemplares con compare-and-set sobre el libro.
+     * @param libro Libro registrado
+     * @param cantidad Cantidad de ejemplares
+     * @return true si se liberaron
+     */
+    @Override
+    public boolean liberar(Libro libro, int cantidad) {
+        return libro.liberar(cantidad);
+    }
+
+    /**
+     * Indica si los índices de texto están sin construir.
+     * @return true si quedaron pendientes
+     */
+    @Override
+    public boolean busquedasPendientes() {
+        return indicesTextoPendientes;
+    }
+
+    /**
+     * Construye los índices de texto si quedaron pendientes. Los libros se indexan en
+     * orden de número para que las listas se construyan agregando al final.
+     */
+    @Override
+    public void prepararBusquedas() {
+        if (indicesTextoPendientes) {
+            indiceAutores.limpiar();
+            indiceTitulos.limpiar();
+            indiceTrigramas.limpiar();
+            for (Libro libro : ordenadosPorNumero()) {
+                indexarTexto(libro);
+            }
+            indicesTextoPendientes = false;
+        }
+    }
+
+    /**
+     * Reconstruye los índices de palabras y de trigramas cuando acumulan demasiadas
+     * entradas obsoletas.
+     */
+    private void reconstruirIndicesTextoSiConviene() {
+        boolean autores = indiceAutores.necesitaReconstruir();
+        boolean trigramas = indiceTrigramas.necesitaReconstruir();
+        if (!autores && !trigramas) {
+            return;
+        }
+        Libro[] ordenados = ordenadosPorNumero();
+        if (autores) {
+            indiceAutores.limpiar();
+            for (Libro libro : ordenados) {
+                indiceAutores.agregar(libro.numero, libro.autorPlegado());
+            }
+        }
+        if (trigramas) {
+            indiceTrigramas.limpiar();
+            for (Libro libro : ordenados) {
+                indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_TITULO, libro.tituloPlegado());
+                indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_AUTOR, libro.autorPlegado());
+            }
+        }
+    }
+
+    /**
+     * Copia los libros registrados ordenados por número.
+     * @return Arreglo de libros
+     */
+    private Libro[] ordenadosPorNumero() {
+        Libro[] ordenados = libros.instantanea().toArray(new Libro[0]);
+        Arrays.sort(ordenados, (a, b) -> Integer.compare(a.numero, b.numero));
+        return ordenados;
+    }
+
+    /**
+     * Busca libros por título plegado exacto.
+     * @param plegado Título plegado
+     * @return Libros con ese título
+     */
+    @Override
+    public ArrayList<Libro> buscarPorTitulo(String plegado) {
+        return librosPorNumero(indiceTitulos.buscarExacto(plegado));
+    }
+
+    /**
+     * Agrega a destino una página de libros por inicio de título con el índice de títulos,
+     * pidiendo uno más para saber si hay página siguiente.
+     * @param prefijo Texto plegado
+     * @param despuesDeTitulo Título plegado del último libro de la página anterior
+     * @param despuesDeNumero Número del último libro de la página anterior
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return true si hay más libros
+     */
+    @Override
+    public boolean paginaPorInicioDeTitulo(String prefijo, String despuesDeTitulo, int despuesDeNumero,
+            int cantidad, List<Libro> destino) {
+        ArrayList<Libro> leidos = librosPorNumero(
+                indiceTitulos.buscarPrefijo(prefijo, despuesDeTitulo, despuesDeNumero, cantidad + 1));
+        destino.addAll(leidos.subList(0, Math.min(cantidad, leidos.size())));
+        return leidos.size() > cantidad;
+    }
+
+    /**
+     * Busca libros por autor con el índice de palabras, verificando que el código del
+     * autor vigente esté entre los autores del diccionario que coinciden con la consulta.
+     * @param plegado Consulta plegada
+     * @return Libros que coinciden
+     */
+    @Override
+    public ArrayList<Libro> buscarPorAutor(String plegado) {
+        ArrayList<Libro> resultados = new ArrayList<>();
+        int[] autores = Diccionario.AUTORES.buscar(plegado);
+        if (autores.length == 0) {
+            return resultados;
+        }
+        int[] candidatos = indiceAutores.buscar(plegado);
+        if (candidatos == null) {
+            // Sin palabras que buscar: se recorren todos los libros
+            for (Libro libro : libros) {
+                if (deAutores(libro, autores)) {
+                    resultados.add(libro);
+                }
+            }
+            return resultados;
+        }
+        for (int numero : candidatos) {
+            int posicion = indiceNumeros.buscar(numero);
+            if (posicion >= 0) {
+                Libro libro = libros.get(posicion);
+                if (deAutores(libro, autores)) {
+                    resultados.add(libro);
+                }
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Comprueba si el autor de un libro es uno de un conjunto de códigos.
+     * @param libro Libro registrado
+     * @param autores Códigos de autor, en orden creciente
+     * @return true si el código del autor está en el conjunto
+     */
+    private static boolean deAutores(Libro libro, int[] autores) {
+        int codigo = libro.codigoAutor();
+        return codigo != Diccionario.NINGUNO && Arrays.binarySearch(autores, codigo) >= 0;
+    }
+
+    /**
+     * Agrega a destino una página de libros en orden de número.
+     * @param desde Número desde el que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return Número del primer libro de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long pagina(long desde, int cantidad, List<Libro> destino) {
+        return paginaPorRegistro(desde, cantidad, null, destino);
+    }
+
+    /**
+     * Agrega a destino una página de libros con un título plegado exacto, en orden de número.
+     * @param plegado Título plegado
+     * @param desde Número desde el que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return Número del primer libro de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long paginaPorTitulo(String plegado, long desde, int cantidad, List<Libro> destino) {
+        return paginaPorNumeros(indiceTitulos.buscarExacto(plegado), desde, cantidad, null, destino);
+    }
+
+    /**
+     * Agrega a destino una página de libros por autor, en orden de número, verificando
+     * los candidatos del índice de palabras como buscarPorAutor.
+     * @param plegado Consulta plegada
+     * @param desde Número desde el que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param destino Lista a la que se agregan los libros
+     * @return Número del primer libro de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long paginaPorAutor(String plegado, long desde, int cantidad, List<Libro> destino) {
+        int[] autores = Diccionario.AUTORES.buscar(plegado);
+        if (autores.length == 0) {
+            return -1;
+        }
+        int[] candidatos = indiceAutores.buscar(plegado);
+        if (candidatos == null) {
+            return paginaPorRegistro(desde, cantidad, autores, destino);
+        }
+        return paginaPorNumeros(candidatos, desde, cantidad, autores, destino);
+    }
+
+    /**
+     * Recorre los libros registrados en orden de número desde una posición.
+     * @param desde Número desde el que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param autores Códigos de autor aceptados, o null para aceptar todos
+     * @param destino Lista a la que se agregan los libros
+     * @return Número del primer libro de la página siguiente, o -1 si no hay más
+     */
+    private long paginaPorRegistro(long desde, int cantidad, int[] autores, List<Libro> destino) {
+        if (desde > Integer.MAX_VALUE) {
+            return -1;
+        }
+        for (int numero = numeros.nextSetBit((int) desde); numero >= 0; numero = numeros.nextSetBit(numero + 1)) {
+            Libro libro = libros.get(indiceNumeros.buscar(numero));
+            if (autores == null || deAutores(libro, autores)) {
+                if (cantidad == 0) {
+                    return numero;
+                }
+                destino.add(libro);
+                cantidad--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recorre una lista de números candidatos desde una posición, buscando el inicio con
+     * búsqueda binaria y saltando los libros eliminados.
+     * @param candidatos Números de libro en orden creciente
+     * @param desde Número desde el que empieza la página
+     * @param cantidad Cantidad máxima de libros
+     * @param autores Códigos de autor aceptados, o null para aceptar todos
+     * @param destino Lista a la que se agregan los libros
+     * @return Número del primer libro de la página siguiente, o -1 si no hay más
+     */
+    private long paginaPorNumeros(int[] candidatos, long desde, int cantidad, int[] autores, List<Libro> destino) {
+        if (desde > Integer.MAX_VALUE) {
+            return -1;
+        }
+        int inicio = Arrays.binarySearch(candidatos, (int) desde);
+        for (int i = inicio >= 0 ? inicio : -inicio - 1; i < candidatos.length; i++) {
+            int posicion = indiceNumeros.buscar(candidatos[i]);
+            if (posicion < 0) {
+                continue;
+            }
+            Libro libro = libros.get(posicion);
+            if (autores == null || deAutores(libro, autores)) {
+                if (cantidad == 0) {
+                    return candidatos[i];
+                }
+                destino.add(libro);
+                cantidad--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Busca libros parecidos con el índice de trigramas, puntuando los candidatos
+     * sobre el título y el autor vigentes.
+     * @param plegado Consulta plegada
+     * @param cantidad Cantidad máxima de resultados
+     * @param similitudMinima Similitud mínima
+     * @return Libros del más parecido al menos parecido
+     */
+    @Override
+    public ArrayList<Libro> buscarSimilares(String plegado, int cantidad, double similitudMinima) {
+        ArrayList<Libro> resultados = new ArrayList<>();
+        int[] candidatos = indiceTrigramas.candidatos(plegado, cantidad, similitudMinima);
+        TablaClaves vistos = new TablaClaves(candidatos.length);
+        long[] puntuados = new long[candidatos.length]; // Similitud en los bits altos, posición en los bajos
+        int n = 0;
+        for (int entrada : candidatos) {
+            int posicion = indiceNumeros.buscar(entrada / 2);
+            if (posicion < 0 || vistos.contiene(posicion + 1L)) {
+                continue; // Libro eliminado, o ya puntuado por su otro campo
+            }
+            vistos.poner(posicion + 1L, 0);
+            Libro libro = libros.get(posicion);
+            double similitud = Math.max(IndiceTrigramas.similitud(plegado, libro.tituloPlegado()),
+                                        IndiceTrigramas.similitud(plegado, libro.autorPlegado()));
+            if (similitud >= similitudMinima) {
+                puntuados[n++] = ((long) (similitud * 1_000_000) << 32) | posicion;
+            }
+        }
+        Arrays.sort(puntuados, 0, n);
+        for (int i = n - 1; i >= 0 && resultados.size() < cantidad; i--) {
+            resultados.add(libros.get((int) puntuados[i]));
+        }
+        return resultados;
+    }
+
+    /**
+     * Convierte números internos de libro en la lista de libros registrados.
+     * Los números de libros que ya no están registrados se omiten.
+     * @param numeros Números de libro
+     * @return Lista de libros en el mismo orden
+     */
+    private ArrayList<Libro> librosPorNumero(int[] numeros) {
+        ArrayList<Libro> resultados = new ArrayList<>(numeros.length);
+        for (int numero : numeros) {
+            int posicion = indiceNumeros.buscar(numero);
+            if (posicion >= 0) {
+                resultados.add(libros.get(posicion));
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Obtiene una vista inmutable de los libros, sin copiarlos.
+     * @return Instantánea de los libros
+     */
+    @Override
+    public Instantanea<Libro> instantanea() {
+        return libros.instantanea();
+    }
+
+    /**
+     * Recorre los libros sobre una instantánea.
+     * @return Instantánea de los libros
+     */
+    @Override
+    public Iterable<Libro> recorrer() {
+        return libros.instantanea();
+    }
+}
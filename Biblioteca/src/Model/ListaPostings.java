@@ -0,0 +1,268 @@
+package Model;
+
+import java.util.Arrays;
+
+/**
+ * Lista ordenada de números de libro asociada a una palabra del índice invertido.
+ * <p>
+ * Los números se guardan comprimidos: cada uno como la diferencia con el anterior,
+ * codificada en bytes de longitud variable (7 bits por byte). Como los libros nuevos
+ * reciben números crecientes, agregar al final es lo habitual y cuesta O(1); los números
+ * menores (libros actualizados) se acumulan aparte y se mezclan al leer o al compactar.
+ * </p>
+ */
+class ListaPostings {
+    private static final int MAX_PENDIENTES = 32;
+
+    private byte[] datos = new byte[4];
+    private int longitud; // Bytes usados en datos
+    private int cantidad; // Números codificados en datos
+    private int ultimo; // Último número codificado
+    private int[] pendientes; // Números menores que ultimo, aún sin mezclar
+    private int cantidadPendientes;
+
+    /**
+     * Agrega un número de libro a la lista.
+     * @param numero Número interno del libro (mayor que 0)
+     */
+    void agregar(int numero) {
+        if (numero > ultimo) {
+            codificar(numero - ultimo);
+            ultimo = numero;
+            cantidad++;
+        } else if (numero != ultimo) {
+            if (pendientes == null) {
+                pendientes = new int[4];
+            } else if (cantidadPendientes == pendientes.length) {
+                pendientes = Arrays.copyOf(pendientes, pendientes.length * 2);
+            }
+            pendientes[cantidadPendientes++] = numero;
+            if (cantidadPendientes > MAX_PENDIENTES) {
+                recodificar(aArreglo());
+            }
+        }
+    }
+
+    /**
+     * Quita un número de libro de la lista.
+     * @param numero Número interno del libro
+     * @return true si la lista queda vacía
+     */
+    boolean eliminar(int numero) {
+        int[] numeros = aArreglo();
+        int posicion = Arrays.binarySearch(numeros, numero);
+        if (posicion >= 0) {
+            int[] restantes = new int[numeros.length - 1];
+            System.arraycopy(numeros, 0, restantes, 0, posicion);
+            System.arraycopy(numeros, posicion + 1, restantes, posicion, restantes.length - posicion);
+            recodificar(restantes);
+        }
+        return cantidad == 0;
+    }
+
+    /**
+     * Obtiene una cota superior de la cantidad de números en la lista.
+     * Puede incluir repetidos que se descartan al decodificar.
+     * @return Cantidad aproximada de números
+     */
+    int tamaño() {
+        return cantidad + cantidadPendientes;
+    }
+
+    /**
+     * Decodifica la lista completa.
+     * @return Números de libro en orden creciente y sin repetidos
+     */
+    int[] aArreglo() {
+        int[] resultado = new int[cantidad + cantidadPendientes];
+        int n = decodificar(resultado);
+        if (cantidadPendientes == 0) {
+            return resultado;
+        }
+        System.arraycopy(pendientes, 0, resultado, n, cantidadPendientes);
+        Arrays.sort(resultado);
+        return sinRepetidos(resultado, resultado.length);
+    }
+
+    /**
+     * Decodifica los números de la lista en un arreglo dado, sin ordenarlos ni quitar repetidos.
+     * Sirve para recorrer listas largas reutilizando el mismo arreglo.
+     * @param destino Arreglo con al menos tamaño() posiciones
+     * @return Cantidad de números escritos
+     */
+    int decodificarEn(int[] destino) {
+        int n = decodificar(destino);
+        System.arraycopy(pendientes == null ? destino : pendientes, 0, destino, n, cantidadPendientes);
+        return n + cantidadPendientes;
+    }
+
+    /**
+     * Recorrido en orden de los números de la lista, por tramos, sin decodificarla entera.
+     * Los pendientes se ordenan al crearlo y se mezclan con los comprimidos; los repetidos
+     * se descartan. No debe usarse mientras la lista cambia.
+     */
+    final class Recorrido {
+        private int posicion; // Siguiente byte de datos
+        private int valor; // Último número comprimido decodificado
+        private int comprimido = -1; // Siguiente número comprimido ya decodificado, -1 si falta leerlo
+        private final int[] extras; // Pendientes ordenados, o null
+        private int extra;
+
+        /**
+         * Constructor que empieza el recorrido por el primer número.
+         */
+        Recorrido() {
+            if (cantidadPendientes == 0) {
+                extras = null;
+            } else {
+                extras = Arrays.copyOf(pendientes, cantidadPendientes);
+                Arrays.sort(extras);
+            }
+        }
+
+        /**
+         * Escribe en destino los números siguientes que no superan un límite.
+         * @param limite Mayor número a leer en este tramo
+         * @param destino Arreglo con lugar para todos los números del tramo
+         * @return Cantidad de números escritos, en orden creciente
+         */
+        int leerHasta(int limite, int[] destino) {
+            int n = 0;
+            if (extras == null) {
+                // Sin pendientes: decodifica directamente, sin repetidos posibles
+                if (comprimido >= 0) {
+                    if (comprimido > limite || comprimido == Integer.MAX_VALUE) {
+                        return 0;
+                    }
+                    destino[n++] = comprimido;
+                    comprimido = -1;
+                }
+                while (posicion < longitud) {
+                    int numero = siguienteComprimido();
+                    if (numero > limite) {
+                        comprimido = numero;
+                        return n;
+                    }
+                    destino[n++] = numero;
+                }
+                comprimido = Integer.MAX_VALUE;
+                return n;
+            }
+            while (true) {
+                int menor = proximo();
+                if (menor > limite || menor == Integer.MAX_VALUE) {
+                    return n;
+                }
+                if (n == 0 || destino[n - 1] != menor) {
+                    destino[n++] = menor;
+                }
+                if (comprimido == menor) {
+                    comprimido = -1;
+                }
+                if (extras != null && extra < extras.length && extras[extra] == menor) {
+                    extra++;
+                }
+            }
+        }
+
+        /**
+         * Obtiene el siguiente número sin avanzar.
+         * @return Siguiente número, o Integer.MAX_VALUE si ya se leyeron todos
+         */
+        int proximo() {
+            if (comprimido < 0) {
+                comprimido = posicion < longitud ? siguienteComprimido() : Integer.MAX_VALUE;
+            }
+            int pendiente = extras != null && extra < extras.length ? extras[extra] : Integer.MAX_VALUE;
+            return Math.min(comprimido, pendiente);
+        }
+
+        /**
+         * Decodifica el siguiente número comprimido.
+         * @return Número decodificado
+         */
+        private int siguienteComprimido() {
+            int delta = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                b = datos[posicion++];
+                delta |= (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            valor += delta;
+            return valor;
+        }
+    }
+
+    /**
+     * Decodifica los números comprimidos (sin los pendientes).
+     * @param destino Arreglo con al menos cantidad posiciones
+     * @return Cantidad de números escritos
+     */
+    private int decodificar(int[] destino) {
+        int n = 0;
+        int valor = 0;
+        int i = 0;
+        while (i < longitud) {
+            int delta = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                b = datos[i++];
+                delta |= (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            valor += delta;
+            destino[n++] = valor;
+        }
+        return n;
+    }
+
+    /**
+     * Reemplaza el contenido de la lista por los números dados.
+     * @param numeros Números en orden creciente y sin repetidos
+     */
+    void recodificar(int[] numeros) {
+        datos = new byte[Math.max(4, numeros.length + 4)];
+        longitud = 0;
+        cantidad = 0;
+        ultimo = 0;
+        pendientes = null;
+        cantidadPendientes = 0;
+        for (int numero : numeros) {
+            agregar(numero);
+        }
+    }
+
+    /**
+     * Agrega un número al final de los datos codificados.
+     * @param delta Diferencia con el último número (mayor que 0)
+     */
+    private void codificar(int delta) {
+        if (longitud + 5 > datos.length) {
+            datos = Arrays.copyOf(datos, Math.max(datos.length * 2, longitud + 5));
+        }
+        while ((delta & ~0x7F) != 0) {
+            datos[longitud++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        datos[longitud++] = (byte) delta;
+    }
+
+    /**
+     * Quita los repetidos de un arreglo ordenado.
+     * @param numeros Arreglo ordenado
+     * @param n Cantidad de posiciones usadas
+     * @return Arreglo sin repetidos (puede ser el mismo si no había)
+     */
+    static int[] sinRepetidos(int[] numeros, int n) {
+        int unicos = 0;
+        for (int i = 0; i < n; i++) {
+            if (unicos == 0 || numeros[i] != numeros[unicos - 1]) {
+                numeros[unicos++] = numeros[i];
+            }
+        }
+        return unicos == numeros.length ? numeros : Arrays.copyOf(numeros, unicos);
+    }
+}
@@ -0,0 +1,192 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lista por bloques con copia en escritura que entrega instantáneas sin copiar los datos.
+ * <p>
+ * Los elementos se guardan en bloques de tamaño fijo. Al tomar una instantánea, la
+ * instantánea y la lista pasan a compartir los bloques; la siguiente modificación copia
+ * solo el arreglo de bloques y el bloque que cambia, nunca la lista completa. Así, tomar
+ * una instantánea cuesta O(1) y cada escritura posterior copia a lo sumo un bloque.
+ * </p>
+ * <p>
+ * No es segura para hilos: quien la usa debe serializar las escrituras entre sí y con
+ * la toma de instantáneas. Las instantáneas, en cambio, son inmutables y pueden
+ * recorrerse desde cualquier hilo mientras la lista sigue cambiando.
+ * </p>
+ * @param <T> Tipo de los elementos
+ */
+class ListaVersionada<T> implements Iterable<T> {
+    static final int BITS_BLOQUE = 10;
+    static final int TAMAÑO_BLOQUE = 1 << BITS_BLOQUE;
+    static final int MASCARA_BLOQUE = TAMAÑO_BLOQUE - 1;
+
+    private Object[][] bloques = new Object[0][];
+    private boolean[] propios = new boolean[0]; // Bloques que ninguna instantánea comparte
+    private boolean arregloPropio = true; // Si el arreglo de bloques no está compartido
+    private int tamaño;
+    private long version;
+    private Instantanea<T> ultima; // Última instantánea tomada (se reutiliza si no hubo cambios)
+
+    /**
+     * Obtiene un elemento.
+     * @param indice Posición del elemento (0 <= indice < size())
+     * @return Elemento en esa posición
+     */
+    @SuppressWarnings("unchecked")
+    T get(int indice) {
+        if (indice < 0 || indice >= tamaño) {
+            throw new IndexOutOfBoundsException("Índice " + indice + ", tamaño " + tamaño);
+        }
+        return (T) bloques[indice >>> BITS_BLOQUE][indice & MASCARA_BLOQUE];
+    }
+
+    /**
+     * Reemplaza un elemento.
+     * @param indice Posición del elemento (0 <= indice < size())
+     * @param elemento Nuevo elemento
+     */
+    void set(int indice, T elemento) {
+        if (indice < 0 || indice >= tamaño) {
+            throw new IndexOutOfBoundsException("Índice " + indice + ", tamaño " + tamaño);
+        }
+        bloqueEscribible(indice >>> BITS_BLOQUE)[indice & MASCARA_BLOQUE] = elemento;
+        version++;
+    }
+
+    /**
+     * Agrega un elemento al final.
+     * @param elemento Elemento a agregar
+     */
+    void add(T elemento) {
+        int bloque = tamaño >>> BITS_BLOQUE;
+        if (bloque == bloques.length) {
+            hacerArregloPropio(bloque + 1);
+            bloques[bloque] = new Object[TAMAÑO_BLOQUE];
+            propios[bloque] = true;
+        }
+        bloqueEscribible(bloque)[tamaño & MASCARA_BLOQUE] = elemento;
+        tamaño++;
+        version++;
+    }
+
+    /**
+     * Quita el último elemento.
+     * @return Elemento quitado
+     */
+    T quitarUltimo() {
+        T elemento = get(tamaño - 1);
+        tamaño--;
+        bloqueEscribible(tamaño >>> BITS_BLOQUE)[tamaño & MASCARA_BLOQUE] = null;
+        version++;
+        return elemento;
+    }
+
+    /**
+     * Vacía la lista. Las instantáneas ya tomadas no cambian.
+     */
+    void limpiar() {
+        bloques = new Object[0][];
+        propios = new boolean[0];
+        arregloPropio = true;
+        tamaño = 0;
+        version++;
+    }
+
+    /**
+     * Obtiene la cantidad de elementos.
+     * @return Cantidad de elementos
+     */
+    int size() {
+        return tamaño;
+    }
+
+    /**
+     * Indica si la lista está vacía.
+     * @return true si no tiene elementos
+     */
+    boolean isEmpty() {
+        return tamaño == 0;
+    }
+
+    /**
+     * Obtiene la versión actual, que aumenta con cada modificación.
+     * @return Versión de la lista
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Toma una instantánea inmutable del contenido actual sin copiar los elementos.
+     * Si la lista no cambió desde la última instantánea, devuelve la misma. Varios
+     * lectores pueden llamarlo a la vez mientras nadie modifique la lista.
+     * @return Instantánea del contenido actual
+     */
+    synchronized Instantanea<T> instantanea() {
+        if (ultima == null || ultima.getVersion() != version) {
+            ultima = new Instantanea<>(bloques, tamaño, version);
+            arregloPropio = false;
+        }
+        return ultima;
+    }
+
+    /**
+     * Recorre el contenido actual. La lista no debe modificarse durante el recorrido.
+     * @return Iterador sobre los elementos
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int siguiente;
+
+            @Override
+            public boolean hasNext() {
+                return siguiente < tamaño;
+            }
+
+            @Override
+            public T next() {
+                if (siguiente >= tamaño) {
+                    throw new NoSuchElementException();
+                }
+                return get(siguiente++);
+            }
+        };
+    }
+
+    /**
+     * Obtiene un bloque que se puede modificar sin afectar a ninguna instantánea.
+     * @param bloque Índice del bloque
+     * @return Arreglo del bloque
+     */
+    private Object[] bloqueEscribible(int bloque) {
+        hacerArregloPropio(bloques.length);
+        if (!propios[bloque]) {
+            bloques[bloque] = bloques[bloque].clone();
+            propios[bloque] = true;
+        }
+        return bloques[bloque];
+    }
+
+    /**
+     * Copia el arreglo de bloques si está compartido o si hace falta más espacio.
+     * Tras copiarlo por estar compartido, todos los bloques se consideran compartidos.
+     * @param cantidadBloques Cantidad de bloques que debe admitir el arreglo
+     */
+    private void hacerArregloPropio(int cantidadBloques) {
+        if (arregloPropio && cantidadBloques <= bloques.length) {
+            return;
+        }
+        if (!arregloPropio) {
+            propios = new boolean[cantidadBloques];
+            arregloPropio = true;
+        } else {
+            propios = Arrays.copyOf(propios, cantidadBloques);
+        }
+        bloques = Arrays.copyOf(bloques, cantidadBloques);
+    }
+}
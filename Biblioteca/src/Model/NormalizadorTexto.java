@@ -0,0 +1,98 @@
+package Model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utilidades para normalizar texto en las búsquedas.
+ * <p>
+ * El plegado convierte a minúsculas y quita tildes, diéresis y otras marcas
+ * (á, Á, ü, Ü, ñ, Ñ, ç...) usando una tabla precalculada, de modo que cada
+ * texto se recorre una sola vez.
+ * </p>
+ */
+public final class NormalizadorTexto {
+    private static final char[] TABLA = new char[0x250]; // Latín básico, Latín-1 y Latín extendido A/B
+
+    static {
+        for (char c = 0; c < TABLA.length; c++) {
+            String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}", "")
+                    .toLowerCase();
+            TABLA[c] = base.length() == 1 ? base.charAt(0) : Character.toLowerCase(c);
+        }
+    }
+
+    private NormalizadorTexto() {
+    }
+
+    /**
+     * Pliega un texto: lo pasa a minúsculas y le quita las marcas diacríticas.
+     * @param texto Texto a plegar (puede ser null)
+     * @return Texto plegado, o cadena vacía si el texto es null
+     */
+    public static String plegar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        char[] resultado = null;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            char plegado = c < TABLA.length ? TABLA[c] : Character.toLowerCase(c);
+            if (plegado != c && resultado == null) {
+                resultado = texto.toCharArray();
+            }
+            if (resultado != null) {
+                resultado[i] = plegado;
+            }
+        }
+        return resultado == null ? texto : new String(resultado);
+    }
+
+    /**
+     * Divide un texto ya plegado en palabras (secuencias de letras o dígitos).
+     * Cada palabra aparece una sola vez en el resultado.
+     * @param plegado Texto plegado
+     * @return Lista de palabras distintas, en orden de aparición
+     */
+    static ArrayList<String> palabras(String plegado) {
+        ArrayList<String> resultado = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i <= plegado.length(); i++) {
+            boolean esParte = i < plegado.length() && Character.isLetterOrDigit(plegado.charAt(i));
+            if (esParte && inicio < 0) {
+                inicio = i;
+            } else if (!esParte && inicio >= 0) {
+                String palabra = plegado.substring(inicio, i);
+                if (!resultado.contains(palabra)) {
+                    resultado.add(palabra);
+                }
+                inicio = -1;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Comprueba que cada palabra de la consulta sea el inicio de alguna palabra del texto.
+     * @param consulta Palabras de la consulta
+     * @param texto Palabras del texto
+     * @return true si todas coinciden
+     */
+    static boolean empiezanPalabras(List<String> consulta, List<String> texto) {
+        for (String palabra : consulta) {
+            boolean encontrada = false;
+            for (String otra : texto) {
+                if (otra.startsWith(palabra)) {
+                    encontrada = true;
+                    break;
+                }
+            }
+            if (!encontrada) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package Model;
+
+import java.util.Arrays;
+
+/**
+ * Orden alfabético de las filas de LibrosEnColumnas por título plegado y, a igual
+ * título, por número de libro.
+ * <p>
+ * Solo guarda las filas, en un arreglo de int ordenado: los títulos se leen de las
+ * columnas al comparar, así que no quedan textos en el heap. El título exacto y los
+ * títulos que empiezan por un texto se encuentran con búsqueda binaria en O(log n + k)
+ * lecturas; agregar o quitar una fila desplaza el arreglo.
+ * </p>
+ */
+class OrdenTitulos {
+    private int[] filas = new int[16];
+    private int cantidad;
+
+    /**
+     * Vacía el orden.
+     */
+    void limpiar() {
+        filas = new int[16];
+        cantidad = 0;
+    }
+
+    /**
+     * Ordena de una vez todas las filas de libros registrados.
+     * @param columnas Columnas de los libros
+     */
+    void reconstruir(ColumnasLibros columnas) {
+        int total = columnas.filas();
+        String[] titulos = new String[total];
+        Integer[] registradas = new Integer[total];
+        int n = 0;
+        for (int fila = 0; fila < total; fila++) {
+            if (columnas.numero(fila) != 0) {
+                titulos[fila] = columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO);
+                registradas[n++] = fila;
+            }
+        }
+        Arrays.sort(registradas, 0, n, (a, b) -> {
+            int comparacion = titulos[a].compareTo(titulos[b]);
+            return comparacion != 0 ? comparacion : Integer.compare(columnas.numero(a), columnas.numero(b));
+        });
+        filas = new int[Math.max(16, n)];
+        for (int i = 0; i < n; i++) {
+            filas[i] = registradas[i];
+        }
+        cantidad = n;
+    }
+
+    /**
+     * Agrega una fila en su lugar según su título vigente.
+     * @param columnas Columnas de los libros
+     * @param fila Fila de un libro registrado
+     */
+    void agregar(ColumnasLibros columnas, int fila) {
+        int posicion = despuesDe(columnas, columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO), columnas.numero(fila), -1);
+        if (cantidad == filas.length) {
+            filas = Arrays.copyOf(filas, cantidad * 2);
+        }
+        System.arraycopy(filas, posicion, filas, posicion + 1, cantidad - posicion);
+        filas[posicion] = fila;
+        cantidad++;
+    }
+
+    /**
+     * Quita una fila, buscándola por el título con el que se ordenó.
+     * @param columnas Columnas de los libros
+     * @param fila Fila a quitar
+     * @param plegado Título plegado que tenía la fila al agregarla
+     * @param numero Número del libro de la fila
+     */
+    void quitar(ColumnasLibros columnas, int fila, String plegado, int numero) {
+        int posicion = despuesDe(columnas, plegado, numero - 1, fila);
+        if (posicion < cantidad && filas[posicion] == fila) {
+            System.arraycopy(filas, posicion + 1, filas, posicion, cantidad - posicion - 1);
+            cantidad--;
+        }
+    }
+
+    /**
+     * Busca las filas cuyo título plegado es exactamente el dado.
+     * @param columnas Columnas de los libros
+     * @param plegado Título ya plegado
+     * @return Filas en orden de número de libro
+     */
+    int[] buscarExacto(ColumnasLibros columnas, String plegado) {
+        int inicio = despuesDe(columnas, plegado, -1, -1);
+        int fin = inicio;
+        while (fin < cantidad && plegado.equals(columnas.texto(filas[fin], ColumnasLibros.TITULO_PLEGADO))) {
+            fin++;
+        }
+        return Arrays.copyOfRange(filas, inicio, fin);
+    }
+
+    /**
+     * Busca una página de filas cuyo título plegado empieza por un prefijo, continuando
+     * después de un título y un número, sin recorrer las anteriores.
+     * @param columnas Columnas de los libros
+     * @param prefijo Prefijo ya plegado
+     * @param despuesDeTitulo Título plegado del último resultado anterior (el prefijo para la primera página)
+     * @param despuesDeNumero Número del último resultado anterior (-1 para la primera página)
+     * @param cantidad Cantidad máxima de filas a devolver
+     * @return Filas de la página, en orden alfabético y de número
+     */
+    int[] buscarPrefijo(ColumnasLibros columnas, String prefijo, String despuesDeTitulo, int despuesDeNumero,
+            int cantidad) {
+        if (!despuesDeTitulo.startsWith(prefijo)) {
+            return new int[0];
+        }
+        int inicio = despuesDe(columnas, despuesDeTitulo, despuesDeNumero, -1);
+        int fin = inicio;
+        while (fin < this.cantidad && fin - inicio < cantidad) {
+            String titulo = columnas.texto(filas[fin], ColumnasLibros.TITULO_PLEGADO);
+            if (titulo == null || !titulo.startsWith(prefijo)) {
+                break;
+            }
+            fin++;
+        }
+        return Arrays.copyOfRange(filas, inicio, fin);
+    }
+
+    /**
+     * Busca la primera posición cuyo título y número son posteriores a los dados.
+     * @param columnas Columnas de los libros
+     * @param titulo Título plegado
+     * @param numero Número de libro
+     * @param buscada Fila que se quiere quitar, que se da por encontrada al llegar a ella
+     *                aunque su título ya haya cambiado, o -1
+     * @return Posición en el arreglo
+     */
+    private int despuesDe(ColumnasLibros columnas, String titulo, int numero, int buscada) {
+        int desde = 0;
+        int hasta = cantidad;
+        while (desde < hasta) {
+            int medio = (desde + hasta) >>> 1;
+            int fila = filas[medio];
+            if (fila == buscada) {
+                return medio;
+            }
+            int comparacion = titulo.compareTo(columnas.texto(fila, ColumnasLibros.TITULO_PLEGADO));
+            if (comparacion == 0) {
+                comparacion = Integer.compare(numero, columnas.numero(fila));
+            }
+            if (comparacion >= 0) {
+                desde = medio + 1;
+            } else {
+                hasta = medio;
+            }
+        }
+        return desde;
+    }
+}
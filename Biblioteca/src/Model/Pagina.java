@@ -0,0 +1,170 @@
+package Model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Página de un listado o de una búsqueda, con el cursor para pedir la siguiente.
+ * <p>
+ * El cursor es un texto opaco: guarda el tipo de listado, una huella de la consulta y
+ * la posición en el orden estable del repositorio donde empieza la página siguiente.
+ * Así cada página cuesta lo que cuesta su tamaño, y los libros o préstamos que se
+ * agregan o quitan entre una página y otra no hacen repetir ni saltar resultados.
+ * </p>
+ * <p>
+ * Los listados ordenados por un texto o una fecha (los títulos que empiezan por una
+ * consulta, los préstamos vencidos) guardan además la clave del último elemento, para
+ * continuar buscándola en el índice.
+ * </p>
+ * @param <T> Tipo de los elementos
+ */
+public final class Pagina<T> {
+    // Tipos de listado de los cursores
+    static final byte LIBROS = 1;
+    static final byte LIBROS_POR_TITULO = 2;
+    static final byte LIBROS_POR_AUTOR = 3;
+    static final byte PRESTAMOS = 4;
+    static final byte PRESTAMOS_DE_USUARIO = 5;
+    static final byte LIBROS_POR_INICIO_DE_TITULO = 6; // Con clave
+    static final byte PRESTAMOS_VENCIDOS = 7; // Con clave
+    static final byte LIBROS_SIMILARES = 8;
+
+    private final List<T> elementos;
+    private final String cursorSiguiente;
+
+    /**
+     * Constructor usado por Biblioteca.
+     * @param elementos Elementos de la página
+     * @param cursorSiguiente Cursor de la página siguiente, o null si es la última
+     */
+    Pagina(List<T> elementos, String cursorSiguiente) {
+        this.elementos = Collections.unmodifiableList(elementos);
+        this.cursorSiguiente = cursorSiguiente;
+    }
+
+    /**
+     * Obtiene los elementos de la página.
+     * @return Lista no modificable de elementos
+     */
+    public List<T> getElementos() {
+        return elementos;
+    }
+
+    /**
+     * Obtiene el cursor con el que se pide la página siguiente.
+     * @return Cursor opaco, o null si esta es la última página
+     */
+    public String getCursorSiguiente() {
+        return cursorSiguiente;
+    }
+
+    /**
+     * Indica si hay más resultados después de esta página.
+     * @return true si hay página siguiente
+     */
+    public boolean hayMas() {
+        return cursorSiguiente != null;
+    }
+
+    /**
+     * Arma el cursor de una página.
+     * @param tipo Tipo de listado
+     * @param consulta Consulta del listado (null si no tiene)
+     * @param posicion Posición donde empieza la página, o -1 si no hay más
+     * @return Cursor opaco, o null si posicion es -1
+     */
+    static String cursor(byte tipo, String consulta, long posicion) {
+        if (posicion < 0) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(13).put(tipo).putInt(huella(consulta)).putLong(posicion);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Arma el cursor de una página de un listado con clave.
+     * @param tipo Tipo de listado
+     * @param consulta Consulta del listado
+     * @param clave Clave del último elemento de la página
+     * @param posicion Posición del último elemento entre los de igual clave
+     * @return Cursor opaco
+     */
+    static String cursor(byte tipo, String consulta, String clave, long posicion) {
+        byte[] textoClave = clave.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.allocate(13 + textoClave.length)
+                .put(tipo).putInt(huella(consulta)).putLong(posicion).put(textoClave);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Lee la posición de un cursor, comprobando que sea del mismo listado y consulta.
+     * @param cursor Cursor de la página anterior, o null para la primera página
+     * @param tipo Tipo de listado
+     * @param consulta Consulta del listado (null si no tiene)
+     * @return Posición donde empieza la página, o -1 si el cursor no es válido
+     */
+    static long posicion(String cursor, byte tipo, String consulta) {
+        if (cursor == null) {
+            return 0;
+        }
+        ByteBuffer leido = leer(cursor, tipo, consulta);
+        if (leido == null) {
+            return -1;
+        }
+        long posicion = leido.getLong();
+        return posicion >= 0 ? posicion : -1;
+    }
+
+    /**
+     * Lee la clave de un cursor de un listado con clave.
+     * @param cursor Cursor de la página anterior
+     * @param tipo Tipo de listado
+     * @param consulta Consulta del listado
+     * @return Clave del último elemento de la página anterior, o null si el cursor no es válido
+     */
+    static String clave(String cursor, byte tipo, String consulta) {
+        ByteBuffer leido = cursor != null ? leer(cursor, tipo, consulta) : null;
+        if (leido == null) {
+            return null;
+        }
+        leido.getLong();
+        return new String(leido.array(), leido.position(), leido.remaining(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodifica un cursor y comprueba su tipo y su consulta.
+     * @param cursor Cursor
+     * @param tipo Tipo de listado esperado
+     * @param consulta Consulta esperada
+     * @return Bytes del cursor, posicionados en la posición, o null si el cursor no es válido
+     */
+    private static ByteBuffer leer(String cursor, byte tipo, String consulta) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        boolean conClave = tipo == LIBROS_POR_INICIO_DE_TITULO || tipo == PRESTAMOS_VENCIDOS;
+        if (conClave ? bytes.length < 13 : bytes.length != 13) {
+            return null;
+        }
+        ByteBuffer leido = ByteBuffer.wrap(bytes);
+        if (leido.get() != tipo || leido.getInt() != huella(consulta)) {
+            return null;
+        }
+        return leido;
+    }
+
+    /**
+     * Calcula la huella de una consulta.
+     * @param consulta Consulta (puede ser nula)
+     * @return Huella
+     */
+    private static int huella(String consulta) {
+        return consulta != null ? consulta.hashCode() : 0;
+    }
+}
@@ -0,0 +1,84 @@
+package Model;
+
+import java.time.LocalDate;
+
+/**
+ * Préstamo ya devuelto, tal como quedó en el historial de préstamos.
+ * Muestra el último ISBN y la última identificación que el historial conoce del libro
+ * y del usuario, así sigue disponible aunque después se eliminen o cambien.
+ */
+public final class PrestamoArchivado {
+    private final String isbn;
+    private final String identificacionUsuario;
+    private final LocalDate fechaPrestamo;
+    private final LocalDate fechaDevolucion;
+    private final LocalDate fechaEntrega;
+
+    /**
+     * Constructor usado por el historial.
+     * @param isbn ISBN del libro prestado
+     * @param identificacionUsuario Identificación del usuario
+     * @param fechaPrestamo Fecha en que se prestó
+     * @param fechaDevolucion Fecha límite de devolución
+     * @param fechaEntrega Fecha real de devolución
+     */
+    PrestamoArchivado(String isbn, String identificacionUsuario, LocalDate fechaPrestamo,
+                      LocalDate fechaDevolucion, LocalDate fechaEntrega) {
+        this.isbn = isbn;
+        this.identificacionUsuario = identificacionUsuario;
+        this.fechaPrestamo = fechaPrestamo;
+        this.fechaDevolucion = fechaDevolucion;
+        this.fechaEntrega = fechaEntrega;
+    }
+
+    /**
+     * Obtiene el ISBN del libro prestado.
+     * @return Último ISBN conocido del libro
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Obtiene la identificación del usuario.
+     * @return Última identificación conocida del usuario
+     */
+    public String getIdentificacionUsuario() {
+        return identificacionUsuario;
+    }
+
+    /**
+     * Obtiene la fecha en que se prestó el libro.
+     * @return Fecha de préstamo
+     */
+    public LocalDate getFechaPrestamo() {
+        return fechaPrestamo;
+    }
+
+    /**
+     * Obtiene la fecha límite de devolución.
+     * @return Fecha límite
+     */
+    public LocalDate getFechaDevolucion() {
+        return fechaDevolucion;
+    }
+
+    /**
+     * Obtiene la fecha en que se devolvió el libro.
+     * @return Fecha real de devolución
+     */
+    public LocalDate getFechaEntrega() {
+        return fechaEntrega;
+    }
+
+    /**
+     * Representación en cadena del préstamo archivado.
+     * @return Cadena con la información del préstamo
+     */
+    @Override
+    public String toString() {
+        return "PrestamoArchivado:isbn:" + isbn + ", usuario:" + identificacionUsuario
+                + ", fechaPrestamo:" + fechaPrestamo + ", fechaDevolucion:" + fechaDevolucion
+                + ", fechaEntrega:" + fechaEntrega;
+    }
+}
@@ -0,0 +1,296 @@
+package Model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Repositorio de préstamos activos en memoria.
+ * <p>
+ * Guarda los préstamos en una lista versionada, con un índice por el par (libro,
+ * usuario), y mantiene la lista de préstamos de cada usuario. Cada préstamo recibe un
+ * identificador creciente, y un mapa ordenado por identificador sirve para paginar en
+ * orden de registro. Otro mapa ordenado agrupa los préstamos por día de vencimiento y,
+ * dentro de cada día, por identificador: los vencidos se encuentran sin recorrer los
+ * demás, y una página de vencidos continúa en su día sin ordenar ni copiar el día entero. La lista, el índice y los mapas
+ * se protegen con el monitor del repositorio, ya que préstamos de usuarios distintos
+ * llegan en paralelo; la lista de cada usuario la protege la franja del usuario.
+ * </p>
+ */
+class PrestamosEnMemoria implements RepositorioPrestamos {
+    private ListaVersionada<Prestamo> prestamos = new ListaVersionada<Prestamo>();
+    private TablaClaves indice = new TablaClaves(16); // (libro, usuario) -> posición en prestamos
+    private TreeMap<Long, Prestamo> porId = new TreeMap<Long, Prestamo>();
+    private TreeMap<Long, TreeMap<Long, Prestamo>> porVencimiento = new TreeMap<Long, TreeMap<Long, Prestamo>>(); // Día de la época -> id -> préstamo
+    private long ultimoId;
+    private LocalDate fechaMultas;
+
+    /**
+     * Obtiene la cantidad de préstamos activos.
+     * @return Cantidad de préstamos
+     */
+    @Override
+    public synchronized int cantidad() {
+        return prestamos.size();
+    }
+
+    /**
+     * Calcula la clave compuesta (libro, usuario) con la que se indexan los préstamos.
+     * Usa los números internos de ambos, que no cambian aunque cambie el ISBN o la identificación.
+     * @param libro Libro prestado
+     * @param usuario Usuario que tiene el préstamo
+     * @return Clave del par
+     */
+    private static long clave(Libro libro, Usuario usuario) {
+        return ((long) libro.numero << 32) | (usuario.numero & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Añade un préstamo a la lista, al índice (libro, usuario) y a los préstamos del usuario.
+     * Si el usuario ya tenía otro ejemplar del mismo libro, el índice conserva el más antiguo.
+     * @param prestamo Préstamo a registrar
+     */
+    @Override
+    public void agregar(Prestamo prestamo) {
+        long clave = clave(prestamo.getLibro(), prestamo.getUsuario());
+        synchronized (this) {
+            prestamo.posicion = prestamos.size();
+            prestamos.add(prestamo);
+            if (prestamo.id <= ultimoId) {
+                prestamo.id = ++ultimoId;
+            } else {
+                ultimoId = prestamo.id;
+            }
+            porId.put(prestamo.id, prestamo);
+            if (prestamo.getFechaDevolucion() != null) {
+                porVencimiento.computeIfAbsent(prestamo.getFechaDevolucion().toEpochDay(),
+                        dia -> new TreeMap<Long, Prestamo>()).put(prestamo.id, prestamo);
+            }
+            if (!indice.contiene(clave)) {
+                indice.poner(clave, prestamo.posicion);
+            }
+        }
+        prestamo.getUsuario().prestamosActivos.add(prestamo);
+    }
+
+    /**
+     * Quita un préstamo de la lista sin desplazarla: el último préstamo ocupa su lugar
+     * y se corrige su entrada en el índice.
+     * @param prestamo Préstamo activo a quitar
+     */
+    @Override
+    public void eliminar(Prestamo prestamo) {
+        Usuario usuario = prestamo.getUsuario();
+        long clave = clave(prestamo.getLibro(), usuario);
+        usuario.prestamosActivos.remove(prestamo);
+        synchronized (this) {
+            porId.remove(prestamo.id);
+            if (prestamo.getFechaDevolucion() != null) {
+                quitarVencimiento(prestamo);
+            }
+            int posicion = prestamo.posicion;
+            Prestamo ultimo = prestamos.quitarUltimo();
+            if (ultimo != prestamo) {
+                ultimo.posicion = posicion;
+                prestamos.set(posicion, ultimo);
+                long claveUltimo = clave(ultimo.getLibro(), ultimo.getUsuario());
+                if (indice.buscar(claveUltimo) == prestamos.size()) {
+                    indice.poner(claveUltimo, posicion);
+                }
+            }
+            if (indice.buscar(clave) == posicion) {
+                indice.eliminar(clave);
+                // Otro ejemplar del mismo libro prestado al mismo usuario pasa a ser el indexado
+                for (Prestamo otro : usuario.prestamosActivos) {
+                    if (otro.getLibro().numero == prestamo.getLibro().numero) { // Pueden ser vistas distintas del mismo libro
+                        indice.poner(clave, otro.posicion);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Quita un préstamo de su día de vencimiento, y el día si queda vacío.
+     * @param prestamo Préstamo activo con fecha límite
+     */
+    private void quitarVencimiento(Prestamo prestamo) {
+        long dia = prestamo.getFechaDevolucion().toEpochDay();
+        TreeMap<Long, Prestamo> delDia = porVencimiento.get(dia);
+        delDia.remove(prestamo.id);
+        if (delDia.isEmpty()) {
+            porVencimiento.remove(dia);
+        }
+    }
+
+    /**
+     * Busca en el índice el préstamo activo de un libro a un usuario.
+     * @param libro Libro registrado
+     * @param usuario Usuario registrado
+     * @return Préstamo activo o null si no existe
+     */
+    @Override
+    public synchronized Prestamo buscarActivo(Libro libro, Usuario usuario) {
+        int posicion = indice.buscar(clave(libro, usuario));
+        return posicion >= 0 ? prestamos.get(posicion) : null;
+    }
+
+    /**
+     * Obtiene los préstamos activos de un usuario.
+     * @param usuario Usuario registrado
+     * @return Lista no modificable de préstamos
+     */
+    @Override
+    public List<Prestamo> delUsuario(Usuario usuario) {
+        return Collections.unmodifiableList(usuario.prestamosActivos);
+    }
+
+    /**
+     * Agrega a destino una página de préstamos en orden de identificador.
+     * @param desde Identificador desde el que empieza la página
+     * @param cantidad Cantidad máxima de préstamos
+     * @param destino Lista a la que se agregan los préstamos
+     * @return Identificador del primer préstamo de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public synchronized long pagina(long desde, int cantidad, List<Prestamo> destino) {
+        for (Map.Entry<Long, Prestamo> entrada : porId.tailMap(desde, true).entrySet()) {
+            if (cantidad == 0) {
+                return entrada.getKey();
+            }
+            destino.add(entrada.getValue());
+            cantidad--;
+        }
+        return -1;
+    }
+
+    /**
+     * Agrega a destino una página de los préstamos de un usuario en orden de identificador.
+     * Ordena una copia de los préstamos del usuario, que nunca son más que el límite de préstamos.
+     * @param usuario Usuario registrado
+     * @param desde Identificador desde el que empieza la página
+     * @param cantidad Cantidad máxima de préstamos
+     * @param destino Lista a la que se agregan los préstamos
+     * @return Identificador del primer préstamo de la página siguiente, o -1 si no hay más
+     */
+    @Override
+    public long paginaDelUsuario(Usuario usuario, long desde, int cantidad, List<Prestamo> destino) {
+        ArrayList<Prestamo> delUsuario = new ArrayList<Prestamo>(usuario.prestamosActivos);
+        delUsuario.sort(Comparator.comparingLong(prestamo -> prestamo.id));
+        for (Prestamo prestamo : delUsuario) {
+            if (prestamo.id < desde) {
+                continue;
+            }
+            if (cantidad == 0) {
+                return prestamo.id;
+            }
+            destino.add(prestamo);
+            cantidad--;
+        }
+        return -1;
+    }
+
+    /**
+     * Agrega a destino los préstamos de los días de vencimiento del rango. Dentro de un
+     * mismo día quedan en orden de identificador.
+     * @param desde Primera fecha límite incluida, o null para no acotar
+     * @param hasta Fecha límite a partir de la cual se excluye
+     * @param destino Lista a la que se agregan los préstamos
+     */
+    @Override
+    public synchronized void vencimientos(LocalDate desde, LocalDate hasta, List<Prestamo> destino) {
+        long primero = desde != null ? desde.toEpochDay() : Long.MIN_VALUE;
+        if (primero >= hasta.toEpochDay()) {
+            return;
+        }
+        for (TreeMap<Long, Prestamo> delDia : porVencimiento.subMap(primero, true, hasta.toEpochDay(), false).values()) {
+            destino.addAll(delDia.values());
+        }
+    }
+
+    /**
+     * Agrega a destino una página de préstamos vencidos recorriendo los días de
+     * vencimiento desde el del último préstamo de la página anterior. En ese día empieza
+     * justo después de su identificador, sin recorrer los ya mostrados.
+     * @param hasta Fecha límite a partir de la cual se excluye
+     * @param despuesDeFecha Fecha límite del último préstamo de la página anterior, o null para la primera
+     * @param despuesDeId Identificador del último préstamo de la página anterior
+     * @param cantidad Cantidad máxima de préstamos
+     * @param destino Lista a la que se agregan los préstamos
+     * @return true si hay más préstamos después de la página
+     */
+    @Override
+    public synchronized boolean paginaVencimientos(LocalDate hasta, LocalDate despuesDeFecha, long despuesDeId,
+            int cantidad, List<Prestamo> destino) {
+        long primero = despuesDeFecha != null ? despuesDeFecha.toEpochDay() : Long.MIN_VALUE;
+        if (primero >= hasta.toEpochDay()) {
+            return false;
+        }
+        for (Map.Entry<Long, TreeMap<Long, Prestamo>> dia
+                : porVencimiento.subMap(primero, true, hasta.toEpochDay(), false).entrySet()) {
+            boolean diaAnterior = despuesDeFecha != null && dia.getKey() == primero;
+            Map<Long, Prestamo> delDia = diaAnterior ? dia.getValue().tailMap(despuesDeId, false) : dia.getValue();
+            for (Prestamo prestamo : delDia.values()) {
+                if (cantidad == 0) {
+                    return true;
+                }
+                destino.add(prestamo);
+                cantidad--;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtiene la fecha de la última acumulación de multas.
+     * @return Fecha, o null si nunca se acumularon
+     */
+    @Override
+    public synchronized LocalDate getFechaMultas() {
+        return fechaMultas;
+    }
+
+    /**
+     * Guarda la fecha de la última acumulación de multas.
+     * @param fecha Fecha de la acumulación
+     */
+    @Override
+    public synchronized void setFechaMultas(LocalDate fecha) {
+        this.fechaMultas = fecha;
+    }
+
+    /**
+     * Reemplaza todos los préstamos y reconstruye los préstamos de cada usuario.
+     * @param prestamos Préstamos a registrar
+     */
+    @Override
+    public void reemplazarTodos(List<Prestamo> prestamos) {
+        synchronized (this) {
+            for (Prestamo prestamo : this.prestamos) {
+                prestamo.getUsuario().prestamosActivos.clear();
+            }
+            this.prestamos = new ListaVersionada<Prestamo>();
+            this.indice = new TablaClaves(prestamos.size());
+            this.porId = new TreeMap<Long, Prestamo>();
+            this.porVencimiento = new TreeMap<Long, TreeMap<Long, Prestamo>>();
+            this.ultimoId = 0;
+        }
+        for (Prestamo prestamo : prestamos) {
+            agregar(prestamo);
+        }
+    }
+
+    /**
+     * Obtiene una vista inmutable de los préstamos, sin copiarlos.
+     * @return Instantánea de los préstamos
+     */
+    @Override
+    public synchronized Instantanea<Prestamo> instantanea() {
+        return prestamos.instantanea();
+    }
+}
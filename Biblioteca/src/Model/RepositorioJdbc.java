@@ -0,0 +1,1631 @@
+package Model;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Repositorios de libros, usuarios y préstamos guardados en una base de datos
+ * embebida en un archivo local, por ejemplo H2 ("jdbc:h2:./biblioteca") o SQLite
+ * ("jdbc:sqlite:biblioteca.db"). El controlador JDBC debe estar en el classpath.
+ * <p>
+ * Usa una sola conexión y prepara cada sentencia una vez. Cada operación de la
+ * biblioteca vinculada es una transacción (ver Transacciones): un préstamo que reserva
+ * el ejemplar y después no puede guardarse se deshace entero. Mientras una operación
+ * tiene la transacción abierta, las demás esperan para usar la conexión. Las altas
+ * masivas se envían con executeBatch, y cada fila comprueba en la misma sentencia que
+ * su clave no esté registrada. Las búsquedas por ISBN y por identificación usan
+ * índices únicos y después leen la fila por su clave primaria; el índice de préstamos
+ * por (usuario, libro) sí cubre las columnas del préstamo, así que buscar un préstamo
+ * activo no lee la tabla. Otro índice ordena los préstamos por fecha límite para
+ * encontrar los vencidos. Las existencias se reservan con un UPDATE condicional, que
+ * la base aplica de forma atómica.
+ * </p>
+ * <p>
+ * Las palabras del autor plegado de cada libro se guardan en la tabla palabras_autor,
+ * así que buscar por autor recorre un rango de esa clave en lugar de toda la tabla de
+ * libros. Los libros parecidos se buscan con un índice de trigramas en memoria, que se
+ * construye leyendo la tabla una vez en la primera búsqueda y se mantiene con cada
+ * cambio; los candidatos se puntúan con la fila vigente. Las instantáneas de tablas
+ * enteras no se admiten: se recorren los libros con recorrer() y los préstamos por
+ * páginas.
+ * </p>
+ * <p>
+ * Cada consulta devuelve objetos nuevos, que pertenecen a la biblioteca vinculada:
+ * sus setters guardan el cambio en la base. Los usuarios que devuelve buscar traen
+ * sus préstamos activos; los de las instantáneas no.
+ * </p>
+ */
+public class RepositorioJdbc implements AutoCloseable {
+    private static final int TAMAÑO_LOTE = 1000; // Filas por executeBatch y por página al recorrer
+    private static final String COLUMNAS_LIBRO = "numero, isbn, titulo, autor, anio, total, disponibles";
+    private static final String COLUMNAS_USUARIO = "numero, identificacion, nombre, tipo, multa";
+    private static final String INSERTAR_PALABRA = "INSERT INTO palabras_autor (palabra, numero) VALUES (?, ?)";
+
+    private static final String[] ESQUEMA = {
+        "CREATE TABLE IF NOT EXISTS libros ("
+            + "numero INTEGER NOT NULL PRIMARY KEY, clave BIGINT NOT NULL, isbn VARCHAR(64) NOT NULL, "
+            + "titulo VARCHAR(2000), titulo_plegado VARCHAR(2000), autor VARCHAR(2000), autor_plegado VARCHAR(2000), "
+            + "anio INTEGER NOT NULL, total INTEGER NOT NULL, disponibles INTEGER NOT NULL)",
+        "CREATE UNIQUE INDEX IF NOT EXISTS libros_clave ON libros (clave)",
+        "CREATE INDEX IF NOT EXISTS libros_titulo ON libros (titulo_plegado, numero)",
+        "CREATE TABLE IF NOT EXISTS palabras_autor ("
+            + "palabra VARCHAR(2000) NOT NULL, numero INTEGER NOT NULL, PRIMARY KEY (palabra, numero))",
+        "CREATE TABLE IF NOT EXISTS usuarios ("
+            + "numero INTEGER NOT NULL PRIMARY KEY, identificacion VARCHAR(255) NOT NULL, "
+            + "nombre VARCHAR(2000), tipo VARCHAR(64), multa DOUBLE PRECISION NOT NULL)",
+        "CREATE UNIQUE INDEX IF NOT EXISTS usuarios_identificacion ON usuarios (identificacion)",
+        "CREATE TABLE IF NOT EXISTS prestamos ("
+            + "id BIGINT NOT NULL PRIMARY KEY, libro INTEGER NOT NULL, usuario INTEGER NOT NULL, "
+            + "fecha_prestamo BIGINT, fecha_devolucion BIGINT)",
+        // Cubre buscarActivo y los préstamos de un usuario sin leer la tabla
+        "CREATE INDEX IF NOT EXISTS prestamos_usuario ON prestamos (usuario, libro, id, fecha_prestamo, fecha_devolucion)",
+        "CREATE INDEX IF NOT EXISTS prestamos_vencimiento ON prestamos (fecha_devolucion, id)",
+        "CREATE TABLE IF NOT EXISTS estado (clave VARCHAR(64) NOT NULL PRIMARY KEY, valor BIGINT)"
+    };
+
+    private final Connection conexion;
+    private final ReentrantLock cerrojoConexion = new ReentrantLock(); // Lo toman cada sentencia y cada transacción
+    private final TransaccionPorOperacion transacciones = new TransaccionPorOperacion();
+    private int profundidad; // Transacciones anidadas abiertas por el hilo que tiene la conexión
+    private boolean fallo; // Falló una sentencia de la transacción abierta: se deshace al terminar
+    private final HashMap<String, PreparedStatement> sentencias = new HashMap<>();
+    private final Libros libros = new Libros();
+    private final Usuarios usuarios = new Usuarios();
+    private final Prestamos prestamos = new Prestamos();
+    private Biblioteca biblioteca;
+    private int ultimoNumeroLibro;
+    private int ultimoNumeroUsuario;
+    private long ultimoIdPrestamo;
+
+    /**
+     * Abre la base de datos y crea las tablas e índices que falten.
+     * @param url URL JDBC de la base de datos
+     * @throws SQLException Si no hay controlador para la URL o no se puede abrir la base
+     */
+    public RepositorioJdbc(String url) throws SQLException {
+        conexion = DriverManager.getConnection(url);
+        try (Statement sentencia = conexion.createStatement()) {
+            for (String definicion : ESQUEMA) {
+                sentencia.execute(definicion);
+            }
+            ultimoNumeroLibro = (int) maximo(sentencia, "SELECT MAX(numero) FROM libros");
+            ultimoNumeroUsuario = (int) maximo(sentencia, "SELECT MAX(numero) FROM usuarios");
+            ultimoIdPrestamo = maximo(sentencia, "SELECT MAX(id) FROM prestamos");
+            if (ultimoNumeroLibro > 0 && maximo(sentencia, "SELECT MAX(numero) FROM palabras_autor") == 0) {
+                indexarAutores(); // Base creada antes de la tabla de palabras
+            }
+        } catch (SQLException e) {
+            conexion.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Llena la tabla de palabras de autor con los libros ya guardados.
+     * @throws SQLException Si falla la base de datos
+     */
+    private void indexarAutores() throws SQLException {
+        conexion.setAutoCommit(false);
+        try (ResultSet fila = sentencia("SELECT numero, autor_plegado FROM libros").executeQuery()) {
+            PreparedStatement insertar = sentencia(INSERTAR_PALABRA);
+            int pendientes = 0;
+            while (fila.next()) {
+                pendientes += agregarPalabras(insertar, fila.getInt(1), fila.getString(2));
+                if (pendientes >= TAMAÑO_LOTE) {
+                    insertar.executeBatch();
+                    pendientes = 0;
+                }
+            }
+            if (pendientes > 0) {
+                insertar.executeBatch();
+            }
+            conexion.commit();
+        } catch (SQLException e) {
+            conexion.rollback();
+            throw e;
+        } finally {
+            conexion.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Agrega al lote de una sentencia INSERTAR_PALABRA las palabras de un autor.
+     * @param insertar Sentencia INSERTAR_PALABRA
+     * @param numero Número del libro
+     * @param autorPlegado Autor plegado del libro (puede ser null)
+     * @return Cantidad de filas agregadas al lote
+     * @throws SQLException Si falla la base de datos
+     */
+    private static int agregarPalabras(PreparedStatement insertar, int numero, String autorPlegado) throws SQLException {
+        if (autorPlegado == null) {
+            return 0;
+        }
+        ArrayList<String> palabras = NormalizadorTexto.palabras(autorPlegado);
+        for (String palabra : palabras) {
+            insertar.setString(1, palabra);
+            insertar.setInt(2, numero);
+            insertar.addBatch();
+        }
+        return palabras.size();
+    }
+
+    /**
+     * Lee el valor máximo de una columna.
+     * @param sentencia Sentencia con la que consultar
+     * @param sql Consulta que devuelve el máximo
+     * @return Máximo, o 0 si la tabla está vacía
+     * @throws SQLException Si falla la consulta
+     */
+    private static long maximo(Statement sentencia, String sql) throws SQLException {
+        try (ResultSet fila = sentencia.executeQuery(sql)) {
+            return fila.next() ? fila.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Obtiene el repositorio de libros.
+     * @return Repositorio de libros
+     */
+    public RepositorioLibros getLibros() {
+        return libros;
+    }
+
+    /**
+     * Obtiene el repositorio de usuarios.
+     * @return Repositorio de usuarios
+     */
+    public RepositorioUsuarios getUsuarios() {
+        return usuarios;
+    }
+
+    /**
+     * Obtiene el repositorio de préstamos.
+     * @return Repositorio de préstamos
+     */
+    public RepositorioPrestamos getPrestamos() {
+        return prestamos;
+    }
+
+    /**
+     * Cierra las sentencias preparadas y la conexión.
+     * @throws SQLException Si falla el cierre
+     */
+    @Override
+    public void close() throws SQLException {
+        cerrojoConexion.lock();
+        try {
+            for (PreparedStatement sentencia : sentencias.values()) {
+                sentencia.close();
+            }
+            sentencias.clear();
+        } finally {
+            try {
+                conexion.close();
+            } finally {
+                cerrojoConexion.unlock();
+            }
+        }
+    }
+
+    /**
+     * Operación sobre la base de datos.
+     * @param <T> Tipo del resultado
+     */
+    private interface Operacion<T> {
+        /**
+         * Ejecuta la operación.
+         * @return Resultado
+         * @throws SQLException Si falla la base de datos
+         */
+        T ejecutar() throws SQLException;
+    }
+
+    /**
+     * Ejecuta una operación con la conexión tomada. Si falla dentro de una transacción,
+     * la marca para deshacerla al terminar.
+     * @param <T> Tipo del resultado
+     * @param operacion Operación a ejecutar
+     * @return Resultado de la operación
+     * @throws IllegalStateException Si falla la base de datos
+     */
+    private <T> T ejecutar(Operacion<T> operacion) {
+        cerrojoConexion.lock();
+        try {
+            return operacion.ejecutar();
+        } catch (SQLException e) {
+            fallo = true;
+            throw new IllegalStateException("Error en la base de datos: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            fallo = true;
+            throw e;
+        } finally {
+            cerrojoConexion.unlock();
+        }
+    }
+
+    /**
+     * Ejecuta una operación dentro de una transacción: se confirma entera o se deshace.
+     * Dentro de la transacción de una operación de la biblioteca, se suma a ella.
+     * @param <T> Tipo del resultado
+     * @param operacion Operación a ejecutar
+     * @return Resultado de la operación
+     * @throws IllegalStateException Si falla la base de datos
+     */
+    private <T> T enTransaccion(Operacion<T> operacion) {
+        transacciones.iniciar();
+        try {
+            return ejecutar(operacion);
+        } finally {
+            transacciones.terminar();
+        }
+    }
+
+    /**
+     * Transacción que la biblioteca abre en cada operación. La conexión queda tomada por
+     * el hilo desde iniciar hasta el terminar más externo.
+     */
+    private final class TransaccionPorOperacion implements Transacciones {
+        /**
+         * Toma la conexión y, si es la transacción más externa, desactiva la confirmación automática.
+         * @throws IllegalStateException Si la base no acepta la transacción
+         */
+        @Override
+        public void iniciar() {
+            cerrojoConexion.lock();
+            if (profundidad > 0) {
+                profundidad++;
+                return;
+            }
+            try {
+                conexion.setAutoCommit(false);
+            } catch (SQLException e) {
+                cerrojoConexion.unlock();
+                throw new IllegalStateException("Error en la base de datos: " + e.getMessage(), e);
+            }
+            profundidad = 1;
+            fallo = false;
+        }
+
+        /**
+         * Si es la transacción más externa, la confirma (o la deshace si falló alguna
+         * sentencia) y vuelve a la confirmación automática. Después suelta la conexión.
+         * @throws IllegalStateException Si falla la confirmación
+         */
+        @Override
+        public void terminar() {
+            try {
+                if (--profundidad == 0) {
+                    try {
+                        if (fallo) {
+                            conexion.rollback();
+                        } else {
+                            conexion.commit();
+                        }
+                    } finally {
+                        fallo = false;
+                        conexion.setAutoCommit(true);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Error en la base de datos: " + e.getMessage(), e);
+            } finally {
+                cerrojoConexion.unlock();
+            }
+        }
+    }
+
+    /**
+     * Obtiene una sentencia preparada, preparándola la primera vez.
+     * @param sql Texto de la sentencia
+     * @return Sentencia preparada
+     * @throws SQLException Si no se puede preparar
+     */
+    private PreparedStatement sentencia(String sql) throws SQLException {
+        PreparedStatement sentencia = sentencias.get(sql);
+        if (sentencia == null) {
+            sentencia = conexion.prepareStatement(sql);
+            sentencias.put(sql, sentencia);
+        }
+        return sentencia;
+    }
+
+    /**
+     * Ejecuta una sentencia de modificación.
+     * @param sql Texto de la sentencia
+     * @param parametros Valores de los parámetros, en orden
+     * @return Cantidad de filas modificadas
+     * @throws SQLException Si falla la sentencia
+     */
+    private int modificar(String sql, Object... parametros) throws SQLException {
+        PreparedStatement sentencia = sentencia(sql);
+        for (int i = 0; i < parametros.length; i++) {
+            sentencia.setObject(i + 1, parametros[i]);
+        }
+        return sentencia.executeUpdate();
+    }
+
+    /**
+     * Ejecuta una consulta de libros.
+     * @param sql Consulta que devuelve COLUMNAS_LIBRO
+     * @param parametros Valores de los parámetros, en orden
+     * @return Libros leídos, en el orden de la consulta
+     * @throws SQLException Si falla la consulta
+     */
+    private ArrayList<Libro> consultarLibros(String sql, Object... parametros) throws SQLException {
+        PreparedStatement sentencia = sentencia(sql);
+        for (int i = 0; i < parametros.length; i++) {
+            sentencia.setObject(i + 1, parametros[i]);
+        }
+        ArrayList<Libro> resultado = new ArrayList<>();
+        try (ResultSet fila = sentencia.executeQuery()) {
+            while (fila.next()) {
+                resultado.add(leerLibro(fila, 1));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Construye un libro a partir de las columnas COLUMNAS_LIBRO de una fila.
+     * @param fila Fila actual
+     * @param primera Número de la primera columna del libro
+     * @return Libro perteneciente a la biblioteca vinculada
+     * @throws SQLException Si falla la lectura
+     */
+    private Libro leerLibro(ResultSet fila, int primera) throws SQLException {
+        int total = fila.getInt(primera + 5);
+        Libro libro = new Libro(fila.getString(primera + 2), fila.getString(primera + 3),
+                fila.getInt(primera + 4), fila.getString(primera + 1), total);
+        libro.ajustarExistencias(0, fila.getInt(primera + 6) - total);
+        libro.numero = fila.getInt(primera);
+        libro.biblioteca = biblioteca;
+        return libro;
+    }
+
+    /**
+     * Construye un usuario a partir de las columnas COLUMNAS_USUARIO de una fila.
+     * @param fila Fila actual
+     * @param primera Número de la primera columna del usuario
+     * @return Usuario perteneciente a la biblioteca vinculada, sin préstamos cargados
+     * @throws SQLException Si falla la lectura
+     */
+    private Usuario leerUsuario(ResultSet fila, int primera) throws SQLException {
+        Usuario usuario = new Usuario(fila.getString(primera + 2), fila.getString(primera + 1), fila.getString(primera + 3));
+        double multa = fila.getDouble(primera + 4);
+        if (multa > 0) {
+            usuario.agregarMulta(multa);
+        }
+        usuario.numero = fila.getInt(primera);
+        usuario.biblioteca = biblioteca;
+        return usuario;
+    }
+
+    /**
+     * Convierte una fecha en días desde la época para guardarla.
+     * @param fecha Fecha (puede ser null)
+     * @return Días desde 1970-01-01, o null
+     */
+    private static Long dias(LocalDate fecha) {
+        return fecha != null ? fecha.toEpochDay() : null;
+    }
+
+    /**
+     * Lee una fecha guardada como días desde la época.
+     * @param fila Fila actual
+     * @param columna Número de la columna
+     * @return Fecha, o null si la columna es nula
+     * @throws SQLException Si falla la lectura
+     */
+    private static LocalDate fecha(ResultSet fila, int columna) throws SQLException {
+        long dias = fila.getLong(columna);
+        return fila.wasNull() ? null : LocalDate.ofEpochDay(dias);
+    }
+
+    /**
+     * Marca qué filas de un lote se insertaron, según las cantidades de executeBatch.
+     * Los controladores de H2 y SQLite informan la cantidad de cada sentencia del lote.
+     * @param filas Filas insertadas por cada sentencia del lote
+     * @param enLote Posición en la lista original de cada sentencia del lote
+     * @param agregados Marcas por posición de la lista original
+     */
+    private static void marcarInsertados(int[] filas, int[] enLote, boolean[] agregados) {
+        for (int i = 0; i < filas.length; i++) {
+            agregados[enLote[i]] = filas[i] > 0;
+        }
+    }
+
+    /**
+     * Repositorio de libros sobre la tabla libros.
+     */
+    private final class Libros implements RepositorioLibros {
+        // Inserta la fila solo si la clave no está registrada, sin otra consulta por fila
+        private static final String INSERTAR = "INSERT INTO libros (numero, clave, isbn, titulo, titulo_plegado, "
+                + "autor, autor_plegado, anio, total, disponibles) SELECT CAST(? AS INTEGER), CAST(? AS BIGINT), "
+                + "CAST(? AS VARCHAR(64)), CAST(? AS VARCHAR(2000)), CAST(? AS VARCHAR(2000)), CAST(? AS VARCHAR(2000)), "
+                + "CAST(? AS VARCHAR(2000)), CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS INTEGER) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM libros WHERE clave = ?)";
+        private static final String EXISTE = "SELECT 1 FROM libros WHERE clave = ?";
+        private static final String BORRAR_PALABRA = "DELETE FROM palabras_autor WHERE palabra = ? AND numero = ?";
+        // Libros con una palabra de autor que empieza por el prefijo, por el rango de la clave de palabras_autor
+        private static final String POR_PALABRA = " FROM libros WHERE numero IN (SELECT numero FROM palabras_autor "
+                + "WHERE palabra >= ? AND palabra < ?)";
+
+        private final IndiceTrigramas indiceTrigramas = new IndiceTrigramas(); // Trigramas de título y autor, por número
+        private boolean trigramasPendientes = true; // El índice se construye en la primera búsqueda de parecidos
+
+        /**
+         * Vincula el repositorio con la biblioteca que lo usa.
+         * @param biblioteca Biblioteca dueña de los libros y usuarios
+         */
+        @Override
+        public void vincular(Biblioteca biblioteca) {
+            RepositorioJdbc.this.biblioteca = biblioteca;
+            biblioteca.usarTransacciones(transacciones);
+        }
+
+        /**
+         * Cuenta los libros de la tabla.
+         * @return Cantidad de libros
+         */
+        @Override
+        public int cantidad() {
+            return ejecutar(() -> {
+                try (ResultSet fila = sentencia("SELECT COUNT(*) FROM libros").executeQuery()) {
+                    fila.next();
+                    return fila.getInt(1);
+                }
+            });
+        }
+
+        /**
+         * Busca un libro por la clave de su ISBN, con el índice único de claves.
+         * @param claveIsbn Clave canónica del ISBN
+         * @return Libro o null si no existe
+         */
+        @Override
+        public Libro buscar(long claveIsbn) {
+            return ejecutar(() -> {
+                ArrayList<Libro> encontrados = consultarLibros(
+                        "SELECT " + COLUMNAS_LIBRO + " FROM libros WHERE clave = ?", claveIsbn);
+                return encontrados.isEmpty() ? null : encontrados.get(0);
+            });
+        }
+
+        /**
+         * Comprueba en el índice si una clave de ISBN ya está registrada.
+         * @param claveIsbn Clave canónica del ISBN
+         * @return true si existe
+         * @throws SQLException Si falla la consulta
+         */
+        private boolean existe(long claveIsbn) throws SQLException {
+            PreparedStatement sentencia = sentencia(EXISTE);
+            sentencia.setLong(1, claveIsbn);
+            try (ResultSet fila = sentencia.executeQuery()) {
+                return fila.next();
+            }
+        }
+
+        /**
+         * Inserta un libro si su ISBN no está registrado.
+         * @param libro Libro con ISBN válido
+         * @return true si se insertó
+         */
+        @Override
+        public boolean agregar(Libro libro) {
+            return agregarTodos(Collections.singletonList(libro))[0];
+        }
+
+        /**
+         * Inserta varios libros en una transacción, por lotes de TAMAÑO_LOTE filas.
+         * @param libros Libros con ISBN válido
+         * @return Por cada libro, true si se insertó
+         */
+        @Override
+        public boolean[] agregarTodos(List<Libro> libros) {
+            return enTransaccion(() -> insertar(libros));
+        }
+
+        /**
+         * Borra todos los libros e inserta los nuevos en una sola transacción.
+         * @param libros Libros con ISBN válido
+         * @return Por cada libro, true si se insertó
+         */
+        @Override
+        public boolean[] reemplazarTodos(List<Libro> libros) {
+            trigramasPendientes = true;
+            return enTransaccion(() -> {
+                modificar("DELETE FROM libros");
+                modificar("DELETE FROM palabras_autor");
+                return insertar(libros);
+            });
+        }
+
+        /**
+         * Inserta los libros cuyo ISBN no está registrado ni repetido en el lote. Cada
+         * sentencia del lote comprueba la clave al insertar, y la cantidad de filas que
+         * informa executeBatch dice si se insertó. Después inserta las palabras del autor
+         * de los libros insertados y los agrega al índice de trigramas.
+         * Se llama dentro de una transacción.
+         * @param libros Libros con ISBN válido
+         * @return Por cada libro, true si se insertó
+         * @throws SQLException Si falla la base de datos
+         */
+        private boolean[] insertar(List<Libro> libros) throws SQLException {
+            boolean[] agregados = new boolean[libros.size()];
+            int[] numeros = new int[libros.size()];
+            int[] enLote = new int[TAMAÑO_LOTE];
+            HashSet<Long> claves = new HashSet<>();
+            PreparedStatement insertar = sentencia(INSERTAR);
+            int numero = ultimoNumeroLibro;
+            int pendientes = 0;
+            for (int i = 0; i < agregados.length; i++) {
+                Libro libro = libros.get(i);
+                if (!claves.add(libro.claveIsbn)) {
+                    continue;
+                }
+                numeros[i] = ++numero;
+                insertar.setInt(1, numero);
+                insertar.setLong(2, libro.claveIsbn);
+                insertar.setString(3, libro.getIsbn());
+                insertar.setString(4, libro.getTitulo());
+                insertar.setString(5, libro.tituloPlegado());
+                insertar.setString(6, libro.getAutor());
+                insertar.setString(7, libro.autorPlegado());
+                insertar.setInt(8, libro.getAñoPublicacion());
+                insertar.setInt(9, libro.getEjemplaresTotales());
+                insertar.setInt(10, libro.getEjemplaresDisponibles());
+                insertar.setLong(11, libro.claveIsbn);
+                insertar.addBatch();
+                enLote[pendientes++] = i;
+                if (pendientes == TAMAÑO_LOTE) {
+                    marcarInsertados(insertar.executeBatch(), enLote, agregados);
+                    pendientes = 0;
+                }
+            }
+            if (pendientes > 0) {
+                marcarInsertados(insertar.executeBatch(), enLote, agregados);
+            }
+            PreparedStatement insertarPalabra = sentencia(INSERTAR_PALABRA);
+            pendientes = 0;
+            for (int i = 0; i < agregados.length; i++) {
+                if (agregados[i]) {
+                    Libro libro = libros.get(i);
+                    libro.numero = numeros[i];
+                    libro.biblioteca = biblioteca;
+                    pendientes += agregarPalabras(insertarPalabra, libro.numero, libro.autorPlegado());
+                    if (pendientes >= TAMAÑO_LOTE) {
+                        insertarPalabra.executeBatch();
+                        pendientes = 0;
+                    }
+                    if (!trigramasPendientes) {
+                        indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_TITULO, libro.tituloPlegado());
+                        indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_AUTOR, libro.autorPlegado());
+                    }
+                }
+            }
+            if (pendientes > 0) {
+                insertarPalabra.executeBatch();
+            }
+            ultimoNumeroLibro = numero; // Los números de las filas no insertadas quedan sin usar
+            return agregados;
+        }
+
+        /**
+         * Borra un libro y las palabras de su autor.
+         * @param claveIsbn Clave canónica del ISBN
+         * @return Libro borrado o null si no existía
+         */
+        @Override
+        public Libro eliminar(long claveIsbn) {
+            return ejecutar(() -> {
+                Libro libro = buscar(claveIsbn);
+                if (libro != null) {
+                    modificar("DELETE FROM libros WHERE numero = ?", libro.numero);
+                    borrarPalabras(libro.numero, libro.autorPlegado());
+                    libro.biblioteca = null;
+                    indiceTrigramas.marcarObsoletas(2);
+                    reconstruirTrigramasSiConviene();
+                }
+                return libro;
+            });
+        }
+
+        /**
+         * Borra de palabras_autor las palabras de un autor.
+         * @param numero Número del libro
+         * @param autorPlegado Autor plegado que tenía el libro (puede ser null)
+         * @throws SQLException Si falla la base de datos
+         */
+        private void borrarPalabras(int numero, String autorPlegado) throws SQLException {
+            if (autorPlegado != null) {
+                for (String palabra : NormalizadorTexto.palabras(autorPlegado)) {
+                    modificar(BORRAR_PALABRA, palabra, numero);
+                }
+            }
+        }
+
+        /**
+         * Deja el índice de trigramas para reconstruir en la próxima búsqueda si las
+         * entradas obsoletas ya superan a las vigentes.
+         */
+        private void reconstruirTrigramasSiConviene() {
+            if (indiceTrigramas.necesitaReconstruir()) {
+                indiceTrigramas.limpiar();
+                trigramasPendientes = true;
+            }
+        }
+
+        /**
+         * Cambia la clave y el ISBN de un libro.
+         * @param libro Libro registrado
+         * @param nuevaClave Clave del nuevo ISBN
+         * @param nuevoIsbn Nuevo ISBN
+         * @return true si se cambió, false si el nuevo ISBN ya está registrado
+         */
+        @Override
+        public boolean cambiarIsbn(Libro libro, long nuevaClave, String nuevoIsbn) {
+            return ejecutar(() -> (nuevaClave == libro.claveIsbn || !existe(nuevaClave))
+                    && modificar("UPDATE libros SET clave = ?, isbn = ? WHERE numero = ?",
+                                 nuevaClave, nuevoIsbn, libro.numero) == 1);
+        }
+
+        /**
+         * Guarda el título nuevo del libro y lo agrega al índice de trigramas.
+         * @param libro Libro registrado
+         * @param anteriorPlegado Título plegado anterior (no se usa)
+         */
+        @Override
+        public void tituloCambiado(Libro libro, String anteriorPlegado) {
+            actualizar(libro);
+            if (!trigramasPendientes) {
+                indiceTrigramas.marcarObsoletas(1);
+                indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_TITULO, libro.tituloPlegado());
+                reconstruirTrigramasSiConviene();
+            }
+        }
+
+        /**
+         * Guarda el autor nuevo del libro, reemplaza sus palabras en palabras_autor y
+         * lo agrega al índice de trigramas.
+         * @param libro Libro registrado
+         * @param anteriorPlegado Autor plegado anterior
+         */
+        @Override
+        public void autorCambiado(Libro libro, String anteriorPlegado) {
+            ejecutar(() -> {
+                actualizar(libro);
+                borrarPalabras(libro.numero, anteriorPlegado);
+                PreparedStatement insertar = sentencia(INSERTAR_PALABRA);
+                if (agregarPalabras(insertar, libro.numero, libro.autorPlegado()) > 0) {
+                    insertar.executeBatch();
+                }
+                return null;
+            });
+            if (!trigramasPendientes) {
+                indiceTrigramas.marcarObsoletas(1);
+                indiceTrigramas.agregar(libro.numero, IndiceTrigramas.CAMPO_AUTOR, libro.autorPlegado());
+                reconstruirTrigramasSiConviene();
+            }
+        }
+
+        /**
+         * Guarda los textos, el año y el total del libro. Los disponibles se corrigen en
+         * la misma diferencia que el total, para no pisar préstamos hechos con otra copia del libro.
+         * @param libro Libro registrado
+         */
+        @Override
+        public void actualizar(Libro libro) {
+            ejecutar(() -> modificar("UPDATE libros SET titulo = ?, titulo_plegado = ?, autor = ?, autor_plegado = ?, "
+                    + "anio = ?, disponibles = disponibles + (? - total), total = ? WHERE numero = ?",
+                    libro.getTitulo(), libro.tituloPlegado(), libro.getAutor(), libro.autorPlegado(),
+                    libro.getAñoPublicacion(), libro.getEjemplaresTotales(), libro.getEjemplaresTotales(), libro.numero));
+        }
+
+        /**
+         * Reserva ejemplares con un UPDATE que solo se aplica si alcanzan.
+         * @param libro Libro registrado
+         * @param cantidad Cantidad de ejemplares
+         * @return true si quedaron reservados
+         */
+        @Override
+        public boolean reservar(Libro libro, int cantidad) {
+            if (cantidad <= 0) {
+                return false;
+            }
+            boolean reservado = ejecutar(() -> modificar(
+                    "UPDATE libros SET disponibles = disponibles - ? WHERE numero = ? AND disponibles >= ?",
+                    cantidad, libro.numero, cantidad) == 1);
+            if (reservado) {
+                libro.ajustarExistencias(0, -cantidad);
+            }
+            return reservado;
+        }
+
+        /**
+         * Libera ejemplares con un UPDATE que solo se aplica si no superan el total.
+         * @param libro Libro registrado
+         * @param cantidad Cantidad de ejemplares
+         * @return true si se liberaron
+         */
+        @Override
+        public boolean liberar(Libro libro, int cantidad) {
+            if (cantidad <= 0) {
+                return false;
+            }
+            boolean liberado = ejecutar(() -> modificar(
+                    "UPDATE libros SET disponibles = disponibles + ? WHERE numero = ? AND disponibles + ? <= total",
+                    cantidad, libro.numero, cantidad) == 1);
+            if (liberado) {
+                libro.ajustarExistencias(0, cantidad);
+            }
+            return liberado;
+        }
+
+        /**
+         * Indica si el índice de trigramas está sin construir. Los índices de la base
+         * siempre están al día.
+         * @return true si quedó pendiente
+         */
+        @Override
+        public boolean busquedasPendientes() {
+            return trigramasPendientes;
+        }
+
+        /**
+         * Construye el índice de trigramas si quedó pendiente, leyendo los títulos y
+         * autores plegados de la tabla una sola vez.
+         */
+        @Override
+        public void prepararBusquedas() {
+            if (!trigramasPendientes) {
+                return;
+            }
+            ejecutar(() -> {
+                indiceTrigramas.limpiar();
+                try (ResultSet fila = sentencia("SELECT numero, titulo_plegado, autor_plegado FROM libros").executeQuery()) {
+                    while (fila.next()) {
+                        indiceTrigramas.agregar(fila.getInt(1), IndiceTrigramas.CAMPO_TITULO, texto(fila.getString(2)));
+                        indiceTrigramas.agregar(fila.getInt(1), IndiceTrigramas.CAMPO_AUTOR, texto(fila.getString(3)));
+                    }
+                }
+                return null;
+            });
+            trigramasPendientes = false;
+        }
+
+        /**
+         * Convierte un texto plegado leído de la base, que puede ser nulo, en un texto.
+         * @param plegado Texto leído
+         * @return El texto, o "" si es nulo
+         */
+        private String texto(String plegado) {
+            return plegado != null ? plegado : "";
+        }
+
+        /**
+         * Busca libros por título plegado exacto, con el índice de títulos.
+         * @param plegado Título plegado
+         * @return Libros con ese título
+         */
+        @Override
+        public ArrayList<Libro> buscarPorTitulo(String plegado) {
+            return ejecutar(() -> consultarLibros(
+                    "SELECT " + COLUMNAS_LIBRO + " FROM libros WHERE titulo_plegado = ? ORDER BY numero", plegado));
+        }
+
+        /**
+         * Lee una página de libros por inicio de título con un rango sobre el índice de
+         * títulos que empieza en el último libro de la página anterior, pidiendo uno más
+         * para saber si hay página siguiente.
+         * @param prefijo Texto plegado
+         * @param despuesDeTitulo Título plegado del último libro de la página anterior
+         * @param despuesDeNumero Número del último libro de la página anterior
+         * @param cantidad Cantidad máxima de libros
+         * @param destino Lista a la que se agregan los libros
+         * @return true si hay más libros
+         */
+        @Override
+        public boolean paginaPorInicioDeTitulo(String prefijo, String despuesDeTitulo, int despuesDeNumero,
+                int cantidad, List<Libro> destino) {
+            return recortar(ejecutar(() -> consultarLibros("SELECT " + COLUMNAS_LIBRO + " FROM libros "
+                    + "WHERE titulo_plegado >= ? AND titulo_plegado < ? "
+                    + "AND (titulo_plegado > ? OR titulo_plegado = ? AND numero > ?) "
+                    + "ORDER BY titulo_plegado, numero LIMIT ?",
+                    prefijo, prefijo + Character.MAX_VALUE, despuesDeTitulo, despuesDeTitulo, despuesDeNumero,
+                    cantidad + 1)), cantidad, destino) >= 0;
+        }
+
+        /**
+         * Busca libros por autor: toma como candidatos los libros con alguna palabra de
+         * autor que empieza por la palabra más larga de la consulta, con un rango sobre
+         * palabras_autor, y verifica que el autor contenga la consulta y que cada palabra
+         * de la consulta empiece una palabra del autor. Solo una consulta sin palabras
+         * recorre la tabla de libros.
+         * @param plegado Consulta plegada
+         * @return Libros que coinciden
+         */
+        @Override
+        public ArrayList<Libro> buscarPorAutor(String plegado) {
+            ArrayList<String> palabrasConsulta = NormalizadorTexto.palabras(plegado);
+            ArrayList<Libro> candidatos;
+            if (palabrasConsulta.isEmpty()) {
+                candidatos = ejecutar(() -> consultarLibros("SELECT " + COLUMNAS_LIBRO
+                        + " FROM libros WHERE autor_plegado LIKE ? ESCAPE '!' ORDER BY numero", patron(plegado)));
+            } else {
+                String palabra = masLarga(palabrasConsulta);
+                candidatos = ejecutar(() -> consultarLibros("SELECT " + COLUMNAS_LIBRO + POR_PALABRA
+                        + " ORDER BY numero", palabra, palabra + Character.MAX_VALUE));
+            }
+            ArrayList<Libro> resultados = new ArrayList<>();
+            for (Libro libro : candidatos) {
+                if (deAutor(libro, plegado, palabrasConsulta)) {
+                    resultados.add(libro);
+                }
+            }
+            return resultados;
+        }
+
+        /**
+         * Arma el patrón LIKE que busca un texto en cualquier parte, con ! como escape.
+         * @param plegado Texto plegado
+         * @return Patrón para LIKE ... ESCAPE '!'
+         */
+        private String patron(String plegado) {
+            return "%" + plegado.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+        }
+
+        /**
+         * Elige la palabra más larga de una consulta, la que menos libros suele tener.
+         * @param palabras Palabras de la consulta (al menos una)
+         * @return Palabra más larga
+         */
+        private String masLarga(List<String> palabras) {
+            String elegida = palabras.get(0);
+            for (String palabra : palabras) {
+                if (palabra.length() > elegida.length()) {
+                    elegida = palabra;
+                }
+            }
+            return elegida;
+        }
+
+        /**
+         * Verifica que el autor de un libro contenga la consulta y que cada palabra de la
+         * consulta empiece una palabra del autor.
+         * @param libro Libro candidato
+         * @param plegado Consulta plegada
+         * @param palabrasConsulta Palabras de la consulta
+         * @return true si el libro es del autor buscado
+         */
+        private boolean deAutor(Libro libro, String plegado, List<String> palabrasConsulta) {
+            return libro.autorPlegado().contains(plegado)
+                    && NormalizadorTexto.empiezanPalabras(palabrasConsulta, NormalizadorTexto.palabras(libro.autorPlegado()));
+        }
+
+        /**
+         * Lee una página de libros en orden de número, pidiendo uno más para saber si hay página siguiente.
+         * @param desde Número desde el que empieza la página
+         * @param cantidad Cantidad máxima de libros
+         * @param destino Lista a la que se agregan los libros
+         * @return Número del primer libro de la página siguiente, o -1 si no hay más
+         */
+        @Override
+        public long pagina(long desde, int cantidad, List<Libro> destino) {
+            return recortar(ejecutar(() -> consultarLibros("SELECT " + COLUMNAS_LIBRO
+                    + " FROM libros WHERE numero >= ? ORDER BY numero LIMIT ?", desde, cantidad + 1)), cantidad, destino);
+        }
+
+        /**
+         * Lee una página de libros con un título plegado exacto, con el índice de títulos.
+         * @param plegado Título plegado
+         * @param desde Número desde el que empieza la página
+         * @param cantidad Cantidad máxima de libros
+         * @param destino Lista a la que se agregan los libros
+         * @return Número del primer libro de la página siguiente, o -1 si no hay más
+         */
+        @Override
+        public long paginaPorTitulo(String plegado, long desde, int cantidad, List<Libro> destino) {
+            return recortar(ejecutar(() -> consultarLibros("SELECT " + COLUMNAS_LIBRO + " FROM libros "
+                    + "WHERE titulo_plegado = ? AND numero >= ? ORDER BY numero LIMIT ?", plegado, desde, cantidad + 1)),
+                    cantidad, destino);
+        }
+
+        /**
+         * Lee una página de libros por autor: pide los candidatos de buscarPorAutor a la
+         * base por lotes en orden de número y los verifica hasta llenar la página.
+         * @param plegado Consulta plegada
+         * @param desde Número desde el que empieza la página
+         * @param cantidad Cantidad máxima de libros
+         * @param destino Lista a la que se agregan los libros
+         * @return Número del primer libro de la página siguiente, o -1 si no hay más
+         */
+        @Override
+        public long paginaPorAutor(String plegado, long desde, int cantidad, List<Libro> destino) {
+            ArrayList<String> palabrasConsulta = NormalizadorTexto.palabras(plegado);
+            String palabra = palabrasConsulta.isEmpty() ? null : masLarga(palabrasConsulta);
+            ArrayList<Libro> encontrados = new ArrayList<>(cantidad + 1);
+            long siguiente = desde;
+            while (encontrados.size() <= cantidad) {
+                long inicio = siguiente;
+                ArrayList<Libro> candidatos = ejecutar(() -> palabra == null
+                        ? consultarLibros("SELECT " + COLUMNAS_LIBRO + " FROM libros "
+                                + "WHERE autor_plegado LIKE ? ESCAPE '!' AND numero >= ? ORDER BY numero LIMIT ?",
+                                patron(plegado), inicio, TAMAÑO_LOTE)
+                        : consultarLibros("SELECT " + COLUMNAS_LIBRO + POR_PALABRA + " AND numero >= ? ORDER BY numero LIMIT ?",
+                                palabra, palabra + Character.MAX_VALUE, inicio, TAMAÑO_LOTE));
+                for (Libro libro : candidatos) {
+                    if (encontrados.size() <= cantidad && deAutor(libro, plegado, palabrasConsulta)) {
+                        encontrados.add(libro);
+                    }
+                }
+                if (candidatos.size() < TAMAÑO_LOTE) {
+                    break;
+                }
+                siguiente = candidatos.get(candidatos.size() - 1).numero + 1L;
+            }
+            return recortar(encontrados, cantidad, destino);
+        }
+
+        /**
+         * Pasa a destino los primeros libros leídos; el que sobra marca la página siguiente.
+         * @param leidos Hasta cantidad + 1 libros en orden de número
+         * @param cantidad Cantidad máxima de libros de la página
+         * @param destino Lista a la que se agregan los libros
+         * @return Número del libro sobrante, o -1 si no sobró ninguno
+         */
+        private long recortar(ArrayList<Libro> leidos, int cantidad, List<Libro> destino) {
+            if (leidos.size() <= cantidad) {
+                destino.addAll(leidos);
+                return -1;
+            }
+            destino.addAll(leidos.subList(0, cantidad));
+            return leidos.get(cantidad).numero;
+        }
+
+        /**
+         * Busca libros parecidos con el índice de trigramas en memoria y puntúa cada
+         * candidato con el título y el autor de su fila vigente.
+         * @param plegado Consulta plegada
+         * @param cantidad Cantidad máxima de resultados
+         * @param similitudMinima Similitud mínima
+         * @return Libros del más parecido al menos parecido
+         */
+        @Override
+        public ArrayList<Libro> buscarSimilares(String plegado, int cantidad, double similitudMinima) {
+            int[] candidatos = indiceTrigramas.candidatos(plegado, cantidad, similitudMinima);
+            return ejecutar(() -> {
+                TablaClaves vistos = new TablaClaves(candidatos.length);
+                ArrayList<Libro> leidos = new ArrayList<>();
+                long[] puntuados = new long[candidatos.length]; // Similitud en los bits altos, posición en leidos en los bajos
+                int n = 0;
+                for (int entrada : candidatos) {
+                    int numero = entrada / 2;
+                    if (vistos.contiene(numero)) {
+                        continue; // Ya puntuado por su otro campo
+                    }
+                    vistos.poner(numero, 0);
+                    ArrayList<Libro> fila = consultarLibros("SELECT " + COLUMNAS_LIBRO + " FROM libros WHERE numero = ?", numero);
+                    if (fila.isEmpty()) {
+                        continue; // Libro eliminado
+                    }
+                    Libro libro = fila.get(0);
+                    double similitud = Math.max(IndiceTrigramas.similitud(plegado, libro.tituloPlegado()),
+                                                IndiceTrigramas.similitud(plegado, libro.autorPlegado()));
+                    if (similitud >= similitudMinima) {
+                        puntuados[n++] = ((long) (similitud * 1_000_000) << 32) | leidos.size();
+                        leidos.add(libro);
+                    }
+                }
+                Arrays.sort(puntuados, 0, n);
+                ArrayList<Libro> resultados = new ArrayList<>(Math.min(n, cantidad));
+                for (int i = n - 1; i >= 0 && resultados.size() < cantidad; i--) {
+                    resultados.add(leidos.get((int) puntuados[i]));
+                }
+                return resultados;
+            });
+        }
+
+        /**
+         * No se admite: leería la tabla entera en memoria. Para recorrer todos los
+         * libros, usar recorrer() o las páginas.
+         * @return Nunca
+         * @throws UnsupportedOperationException Siempre
+         */
+        @Override
+        public Instantanea<Libro> instantanea() {
+            throw new UnsupportedOperationException("Los libros de la base se recorren con recorrer() o por páginas");
+        }
+
+        /**
+         * Recorre los libros por páginas de TAMAÑO_LOTE en orden de número, pidiendo
+         * cada página al avanzar.
+         * @return Libros en orden de número
+         */
+        @Override
+        public Iterable<Libro> recorrer() {
+            return () -> new Iterator<Libro>() {
+                private ArrayList<Libro> pagina = new ArrayList<>();
+                private int siguiente;
+                private int ultimoNumero;
+                private boolean terminado;
+
+                @Override
+                public boolean hasNext() {
+                    if (siguiente == pagina.size() && !terminado) {
+                        pagina = ejecutar(() -> consultarLibros("SELECT " + COLUMNAS_LIBRO
+                                + " FROM libros WHERE numero > ? ORDER BY numero LIMIT ?", ultimoNumero, TAMAÑO_LOTE));
+                        siguiente = 0;
+                        terminado = pagina.size() < TAMAÑO_LOTE;
+                        if (!pagina.isEmpty()) {
+                            ultimoNumero = pagina.get(pagina.size() - 1).numero;
+                        }
+                    }
+                    return siguiente < pagina.size();
+                }
+
+                @Override
+                public Libro next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return pagina.get(siguiente++);
+                }
+            };
+        }
+    }
+
+    /**
+     * Repositorio de usuarios sobre la tabla usuarios.
+     */
+    private final class Usuarios implements RepositorioUsuarios {
+        // Inserta la fila solo si la identificación no está registrada, sin otra consulta por fila
+        private static final String INSERTAR = "INSERT INTO usuarios (numero, identificacion, nombre, tipo, multa) "
+                + "SELECT CAST(? AS INTEGER), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(2000)), "
+                + "CAST(? AS VARCHAR(64)), CAST(? AS DOUBLE PRECISION) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM usuarios WHERE identificacion = ?)";
+
+        /**
+         * Vincula el repositorio con la biblioteca que lo usa.
+         * @param biblioteca Biblioteca dueña de los libros y usuarios
+         */
+        @Override
+        public void vincular(Biblioteca biblioteca) {
+            RepositorioJdbc.this.biblioteca = biblioteca;
+            biblioteca.usarTransacciones(transacciones);
+        }
+
+        /**
+         * Cuenta los usuarios de la tabla.
+         * @return Cantidad de usuarios
+         */
+        @Override
+        public int cantidad() {
+            return ejecutar(() -> {
+                try (ResultSet fila = sentencia("SELECT COUNT(*) FROM usuarios").executeQuery()) {
+                    fila.next();
+                    return fila.getInt(1);
+                }
+            });
+        }
+
+        /**
+         * Busca un usuario con el índice de identificaciones y carga sus préstamos activos
+         * con el índice de préstamos por usuario.
+         * @param identificacion Identificación del usuario
+         * @return Usuario o null si no existe
+         */
+        @Override
+        public Usuario buscar(String identificacion) {
+            if (identificacion == null) {
+                return null;
+            }
+            return ejecutar(() -> {
+                Usuario usuario = buscarFila(identificacion);
+                if (usuario == null) {
+                    return null;
+                }
+                PreparedStatement sentencia = sentencia("SELECT p.id, p.fecha_prestamo, p.fecha_devolucion, "
+                        + "l.numero, l.isbn, l.titulo, l.autor, l.anio, l.total, l.disponibles "
+                        + "FROM prestamos p JOIN libros l ON l.numero = p.libro WHERE p.usuario = ? ORDER BY p.id");
+                sentencia.setInt(1, usuario.numero);
+                try (ResultSet fila = sentencia.executeQuery()) {
+                    while (fila.next()) {
+                        Prestamo prestamo = new Prestamo(usuario, leerLibro(fila, 4), fecha(fila, 2), fecha(fila, 3));
+                        prestamo.id = fila.getLong(1);
+                        usuario.prestamosActivos.add(prestamo);
+                    }
+                }
+                return usuario;
+            });
+        }
+
+        /**
+         * Lee la fila de un usuario, sin sus préstamos.
+         * @param identificacion Identificación del usuario
+         * @return Usuario o null si no existe
+         * @throws SQLException Si falla la consulta
+         */
+        private Usuario buscarFila(String identificacion) throws SQLException {
+            PreparedStatement sentencia = sentencia("SELECT " + COLUMNAS_USUARIO + " FROM usuarios WHERE identificacion = ?");
+            sentencia.setString(1, identificacion);
+            try (ResultSet fila = sentencia.executeQuery()) {
+                return fila.next() ? leerUsuario(fila, 1) : null;
+            }
+        }
+
+        /**
+         * Inserta un usuario si su identificación no está registrada.
+         * @param usuario Usuario con identificación
+         * @return true si se insertó
+         */
+        @Override
+        public boolean agregar(Usuario usuario) {
+            return enTransaccion(() -> insertar(Collections.singletonList(usuario)))[0];
+        }
+
+        /**
+         * Borra todos los usuarios e inserta los nuevos en una sola transacción.
+         * @param usuarios Usuarios con identificación
+         * @return Por cada usuario, true si se insertó
+         */
+        @Override
+        public boolean[] reemplazarTodos(List<Usuario> usuarios) {
+            return enTransaccion(() -> {
+                modificar("DELETE FROM usuarios");
+                return insertar(usuarios);
+            });
+        }
+
+        /**
+         * Inserta por lotes los usuarios cuya identificación no está registrada ni
+         * repetida en la lista. Cada sentencia del lote comprueba la identificación al
+         * insertar. Se llama dentro de una transacción.
+         * @param usuarios Usuarios con identificación
+         * @return Por cada usuario, true si se insertó
+         * @throws SQLException Si falla la base de datos
+         */
+        private boolean[] insertar(List<Usuario> usuarios) throws SQLException {
+            boolean[] agregados = new boolean[usuarios.size()];
+            int[] numeros = new int[usuarios.size()];
+            int[] enLote = new int[TAMAÑO_LOTE];
+            HashSet<String> identificaciones = new HashSet<>();
+            PreparedStatement insertar = sentencia(INSERTAR);
+            int numero = ultimoNumeroUsuario;
+            int pendientes = 0;
+            for (int i = 0; i < agregados.length; i++) {
+                Usuario usuario = usuarios.get(i);
+                if (!identificaciones.add(usuario.getIdentificacion())) {
+                    continue;
+                }
+                numeros[i] = ++numero;
+                insertar.setInt(1, numero);
+                insertar.setString(2, usuario.getIdentificacion());
+                insertar.setString(3, usuario.getNombre());
+                insertar.setString(4, usuario.getTipoUsuario());
+                insertar.setDouble(5, usuario.getMultaAcumulada());
+                insertar.setString(6, usuario.getIdentificacion());
+                insertar.addBatch();
+                enLote[pendientes++] = i;
+                if (pendientes == TAMAÑO_LOTE) {
+                    marcarInsertados(insertar.executeBatch(), enLote, agregados);
+                    pendientes = 0;
+                }
+            }
+            if (pendientes > 0) {
+                marcarInsertados(insertar.executeBatch(), enLote, agregados);
+            }
+            for (int i = 0; i < agregados.length; i++) {
+                if (agregados[i]) {
+                    Usuario usuario = usuarios.get(i);
+                    usuario.numero = numeros[i];
+                    usuario.biblioteca = biblioteca;
+                }
+            }
+            ultimoNumeroUsuario = numero; // Los números de las filas no insertadas quedan sin usar
+            return agregados;
+        }
+
+        /**
+         * Borra un usuario.
+         * @param identificacion Identificación del usuario
+         * @return Usuario borrado o null si no existía
+         */
+        @Override
+        public Usuario eliminar(String identificacion) {
+            if (identificacion == null) {
+                return null;
+            }
+            return ejecutar(() -> {
+                Usuario usuario = buscarFila(identificacion);
+                if (usuario != null) {
+                    modificar("DELETE FROM usuarios WHERE numero = ?", usuario.numero);
+                    usuario.biblioteca = null;
+                }
+                return usuario;
+            });
+        }
+
+        /**
+         * Cambia la identificación de un usuario.
+         * @param usuario Usuario registrado
+         * @param nuevaIdentificacion Identificación nueva
+         * @return true si se cambió, false si ya está registrada
+         */
+        @Override
+        public boolean cambiarIdentificacion(Usuario usuario, String nuevaIdentificacion) {
+            return ejecutar(() -> buscarFila(nuevaIdentificacion) == null
+                    && modificar("UPDATE usuarios SET identificacion = ? WHERE numero = ?",
+                                 nuevaIdentificacion, usuario.numero) == 1);
+        }
+
+        /**
+         * Guarda el nombre y el tipo del usuario.
+         * @param usuario Usuario registrado
+         */
+        @Override
+        public void actualizar(Usuario usuario) {
+            ejecutar(() -> modificar("UPDATE usuarios SET nombre = ?, tipo = ? WHERE numero = ?",
+                    usuario.getNombre(), usuario.getTipoUsuario(), usuario.numero));
+        }
+
+        /**
+         * Suma el monto a la multa guardada con un solo UPDATE, sin bajar de 0, y lo
+         * aplica también al objeto.
+         * @param usuario Usuario registrado
+         * @param monto Monto a sumar (negativo para un pago)
+         * @return Monto que cambió realmente la multa
+         */
+        @Override
+        public double sumarMulta(Usuario usuario, double monto) {
+            ejecutar(() -> modificar("UPDATE usuarios SET multa = CASE WHEN multa + ? < 0 THEN 0 ELSE multa + ? END "
+                    + "WHERE numero = ?", monto, monto, usuario.numero));
+            double anterior = usuario.getMultaAcumulada(); // Leído de la fila con la franja del usuario tomada
+            if (monto >= 0) {
+                usuario.agregarMulta(monto);
+            } else {
+                usuario.pagarMulta(-monto);
+            }
+            return usuario.getMultaAcumulada() - anterior;
+        }
+
+        /**
+         * No se admite: leería la tabla entera en memoria. Los usuarios se buscan por
+         * identificación.
+         * @return Nunca
+         * @throws UnsupportedOperationException Siempre
+         */
+        @Override
+        public Instantanea<Usuario> instantanea() {
+            throw new UnsupportedOperationException("Los usuarios de la base se buscan por identificación");
+        }
+    }
+
+    /**
+     * Repositorio de préstamos activos sobre la tabla prestamos.
+     */
+    private final class Prestamos implements RepositorioPrestamos {
+        private static final String INSERTAR = "INSERT INTO prestamos (id, libro, usuario, fecha_prestamo, "
+                + "fecha_devolucion) VALUES (?, ?, ?, ?, ?)";
+        private static final String FECHA_MULTAS = "fecha_multas"; // Clave en la tabla estado
+
+        /**
+         * Cuenta los préstamos de libros y usuarios registrados.
+         * @return Cantidad de préstamos
+         */
+        @Override
+        public int cantidad() {
+            return ejecutar(() -> {
+                try (ResultSet fila = sentencia("SELECT COUNT(*) FROM prestamos p JOIN libros l ON l.numero = p.libro "
+                        + "JOIN usuarios u ON u.numero = p.usuario").executeQuery()) {
+                    fila.next();
+                    return fila.getInt(1);
+                }
+            });
+        }
+
+        /**
+         * Inserta un préstamo y lo agrega a los préstamos del usuario.
+         * @param prestamo Préstamo a registrar
+         */
+        @Override
+        public void agregar(Prestamo prestamo) {
+            ejecutar(() -> {
+                long id = ultimoIdPrestamo + 1;
+                PreparedStatement insertar = sentencia(INSERTAR);
+                asignar(insertar, prestamo, id);
+                insertar.executeUpdate();
+                ultimoIdPrestamo = id;
+                prestamo.id = id;
+                return null;
+            });
+            prestamo.getUsuario().prestamosActivos.add(prestamo);
+        }
+
+        /**
+         * Asigna los parámetros de INSERTAR para un préstamo.
+         * @param insertar Sentencia INSERTAR
+         * @param prestamo Préstamo
+         * @param id Identificador de la fila
+         * @throws SQLException Si falla la asignación
+         */
+        private void asignar(PreparedStatement insertar, Prestamo prestamo, long id) throws SQLException {
+            insertar.setLong(1, id);
+            insertar.setInt(2, prestamo.getLibro().numero);
+            insertar.setInt(3, prestamo.getUsuario().numero);
+            Long prestado = dias(prestamo.getFechaPrestamo());
+            Long limite = dias(prestamo.getFechaDevolucion());
+            if (prestado != null) {
+                insertar.setLong(4, prestado);
+            } else {
+                insertar.setNull(4, Types.BIGINT);
+            }
+            if (limite != null) {
+                insertar.setLong(5, limite);
+            } else {
+                insertar.setNull(5, Types.BIGINT);
+            }
+        }
+
+        /**
+         * Borra un préstamo y lo quita de los préstamos del usuario.
+         * @param prestamo Préstamo activo
+         */
+        @Override
+        public void eliminar(Prestamo prestamo) {
+            ejecutar(() -> modificar("DELETE FROM prestamos WHERE id = ?", prestamo.id));
+            prestamo.getUsuario().prestamosActivos.removeIf(otro -> otro.id == prestamo.id);
+        }
+
+        /**
+         * Busca el préstamo más antiguo del par (usuario, libro) con el índice que cubre la consulta.
+         * @param libro Libro registrado
+         * @param usuario Usuario registrado
+         * @return Préstamo activo o null si no existe
+         */
+        @Override
+        public Prestamo buscarActivo(Libro libro, Usuario usuario) {
+            return ejecutar(() -> {
+                PreparedStatement sentencia = sentencia("SELECT id, fecha_prestamo, fecha_devolucion FROM prestamos "
+                        + "WHERE usuario = ? AND libro = ? ORDER BY id LIMIT 1");
+                sentencia.setInt(1, usuario.numero);
+                sentencia.setInt(2, libro.numero);
+                try (ResultSet fila = sentencia.executeQuery()) {
+                    if (!fila.next()) {
+                        return null;
+                    }
+                    long id = fila.getLong(1);
+                    for (Prestamo prestamo : usuario.prestamosActivos) {
+                        if (prestamo.id == id) {
+                            return prestamo;
+                        }
+                    }
+                    Prestamo prestamo = new Prestamo(usuario, libro, fecha(fila, 2), fecha(fila, 3));
+                    prestamo.id = id;
+                    return prestamo;
+                }
+            });
+        }
+
+        /**
+         * Obtiene los préstamos activos del usuario, cargados por Usuarios.buscar.
+         * @param usuario Usuario obtenido con buscar
+         * @return Lista no modificable de préstamos
+         */
+        @Override
+        public List<Prestamo> delUsuario(Usuario usuario) {
+            return Collections.unmodifiableList(usuario.prestamosActivos);
+        }
+
+        /**
+         * Borra todos los préstamos e inserta los nuevos por lotes en una sola transacción.
+         * @param prestamos Préstamos de libros y usuarios registrados
+         */
+        @Override
+        public void reemplazarTodos(List<Prestamo> prestamos) {
+            enTransaccion(() -> {
+                modificar("DELETE FROM prestamos");
+                PreparedStatement insertar = sentencia(INSERTAR);
+                long id = ultimoIdPrestamo;
+                int pendientes = 0;
+                for (Prestamo prestamo : prestamos) {
+                    asignar(insertar, prestamo, ++id);
+                    insertar.addBatch();
+                    if (++pendientes == TAMAÑO_LOTE) {
+                        insertar.executeBatch();
+                        pendientes = 0;
+                    }
+                }
+                if (pendientes > 0) {
+                    insertar.executeBatch();
+                }
+                for (Prestamo prestamo : prestamos) {
+                    prestamo.id = ++ultimoIdPrestamo;
+                    prestamo.getUsuario().prestamosActivos.clear();
+                }
+                return null;
+            });
+            for (Prestamo prestamo : prestamos) {
+                prestamo.getUsuario().prestamosActivos.add(prestamo);
+            }
+        }
+
+        /**
+         * Lee una página de préstamos en orden de identificador, pidiendo uno más para
+         * saber si hay página siguiente.
+         * @param desde Identificador desde el que empieza la página
+         * @param cantidad Cantidad máxima de préstamos
+         * @param destino Lista a la que se agregan los préstamos
+         * @return Identificador del primer préstamo de la página siguiente, o -1 si no hay más
+         */
+        @Override
+        public long pagina(long desde, int cantidad, List<Prestamo> destino) {
+            ListaVersionada<Prestamo> leidos = ejecutar(() -> leerPrestamos(
+                    "WHERE p.id >= ? ORDER BY p.id LIMIT ?", desde, cantidad + 1));
+            for (int i = 0; i < Math.min(cantidad, leidos.size()); i++) {
+                destino.add(leidos.get(i));
+            }
+            return leidos.size() > cantidad ? leidos.get(cantidad).id : -1;
+        }
+
+        /**
+         * Agrega a destino una página de los préstamos de un usuario, que ya están en
+         * memoria en orden de identificador.
+         * @param usuario Usuario registrado
+         * @param desde Identificador desde el que empieza la página
+         * @param cantidad Cantidad máxima de préstamos
+         * @param destino Lista a la que se agregan los préstamos
+         * @return Identificador del primer préstamo de la página siguiente, o -1 si no hay más
+         */
+        @Override
+        public long paginaDelUsuario(Usuario usuario, long desde, int cantidad, List<Prestamo> destino) {
+            for (Prestamo prestamo : usuario.prestamosActivos) {
+                if (prestamo.id < desde) {
+                    continue;
+                }
+                if (cantidad == 0) {
+                    return prestamo.id;
+                }
+                destino.add(prestamo);
+                cantidad--;
+            }
+            return -1;
+        }
+
+        /**
+         * Lee los préstamos con fecha límite en el rango usando el índice prestamos_vencimiento.
+         * @param desde Primera fecha límite incluida, o null para no acotar
+         * @param hasta Fecha límite a partir de la cual se excluye
+         * @param destino Lista a la que se agregan los préstamos
+         */
+        @Override
+        public void vencimientos(LocalDate desde, LocalDate hasta, List<Prestamo> destino) {
+            ListaVersionada<Prestamo> leidos = ejecutar(() -> leerPrestamos(
+                    "WHERE p.fecha_devolucion >= ? AND p.fecha_devolucion < ? ORDER BY p.fecha_devolucion, p.id",
+                    desde != null ? desde.toEpochDay() : Long.MIN_VALUE, hasta.toEpochDay()));
+            for (int i = 0; i < leidos.size(); i++) {
+                destino.add(leidos.get(i));
+            }
+        }
+
+        /**
+         * Lee una página de préstamos vencidos con el índice prestamos_vencimiento,
+         * pidiendo uno más para saber si hay página siguiente.
+         * @param hasta Fecha límite a partir de la cual se excluye
+         * @param despuesDeFecha Fecha límite del último préstamo de la página anterior, o null para la primera
+         * @param despuesDeId Identificador del último préstamo de la página anterior
+         * @param cantidad Cantidad máxima de préstamos
+         * @param destino Lista a la que se agregan los préstamos
+         * @return true si hay más préstamos después de la página
+         */
+        @Override
+        public boolean paginaVencimientos(LocalDate hasta, LocalDate despuesDeFecha, long despuesDeId,
+                int cantidad, List<Prestamo> destino) {
+            long dia = despuesDeFecha != null ? despuesDeFecha.toEpochDay() : Long.MIN_VALUE;
+            long id = despuesDeFecha != null ? despuesDeId : Long.MIN_VALUE;
+            ListaVersionada<Prestamo> leidos = ejecutar(() -> leerPrestamos(
+                    "WHERE p.fecha_devolucion < ? AND (p.fecha_devolucion > ? OR p.fecha_devolucion = ? AND p.id > ?)"
+                    + " ORDER BY p.fecha_devolucion, p.id LIMIT ?", hasta.toEpochDay(), dia, dia, id, cantidad + 1));
+            for (int i = 0; i < Math.min(cantidad, leidos.size()); i++) {
+                destino.add(leidos.get(i));
+            }
+            return leidos.size() > cantidad;
+        }
+
+        /**
+         * Lee la fecha de la última acumulación de multas de la tabla estado.
+         * @return Fecha, o null si nunca se acumularon
+         */
+        @Override
+        public LocalDate getFechaMultas() {
+            return ejecutar(() -> {
+                PreparedStatement consulta = sentencia("SELECT valor FROM estado WHERE clave = ?");
+                consulta.setString(1, FECHA_MULTAS);
+                try (ResultSet fila = consulta.executeQuery()) {
+                    return fila.next() ? fecha(fila, 1) : null;
+                }
+            });
+        }
+
+        /**
+         * Guarda la fecha de la última acumulación de multas en la tabla estado.
+         * @param fecha Fecha de la acumulación
+         */
+        @Override
+        public void setFechaMultas(LocalDate fecha) {
+            ejecutar(() -> {
+                if (modificar("UPDATE estado SET valor = ? WHERE clave = ?", fecha.toEpochDay(), FECHA_MULTAS) == 0) {
+                    modificar("INSERT INTO estado (clave, valor) VALUES (?, ?)", FECHA_MULTAS, fecha.toEpochDay());
+                }
+                return null;
+            });
+        }
+
+        /**
+         * No se admite: leería la tabla entera en memoria. Para recorrer todos los
+         * préstamos, usar las páginas.
+         * @return Nunca
+         * @throws UnsupportedOperationException Siempre
+         */
+        @Override
+        public Instantanea<Prestamo> instantanea() {
+            throw new UnsupportedOperationException("Los préstamos de la base se recorren por páginas");
+        }
+
+        /**
+         * Lee préstamos con su libro y su usuario. Cada libro y cada usuario se crea una
+         * sola vez, y los usuarios quedan con sus préstamos.
+         * @param condicion Final de la consulta (WHERE, ORDER BY y LIMIT)
+         * @param parametros Valores de los parámetros, en orden
+         * @return Préstamos leídos, en el orden de la consulta
+         * @throws SQLException Si falla la consulta
+         */
+        private ListaVersionada<Prestamo> leerPrestamos(String condicion, Object... parametros) throws SQLException {
+            ListaVersionada<Prestamo> todos = new ListaVersionada<Prestamo>();
+            HashMap<Integer, Libro> libros = new HashMap<>();
+            HashMap<Integer, Usuario> usuarios = new HashMap<>();
+            PreparedStatement sentencia = sentencia("SELECT p.id, p.fecha_prestamo, p.fecha_devolucion, "
+                    + "l.numero, l.isbn, l.titulo, l.autor, l.anio, l.total, l.disponibles, "
+                    + "u.numero, u.identificacion, u.nombre, u.tipo, u.multa "
+                    + "FROM prestamos p JOIN libros l ON l.numero = p.libro "
+                    + "JOIN usuarios u ON u.numero = p.usuario " + condicion);
+            for (int i = 0; i < parametros.length; i++) {
+                sentencia.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet fila = sentencia.executeQuery()) {
+                while (fila.next()) {
+                    Libro libro = libros.get(fila.getInt(4));
+                    if (libro == null) {
+                        libro = leerLibro(fila, 4);
+                        libros.put(libro.numero, libro);
+                    }
+                    Usuario usuario = usuarios.get(fila.getInt(11));
+                    if (usuario == null) {
+                        usuario = leerUsuario(fila, 11);
+                        usuarios.put(usuario.numero, usuario);
+                    }
+                    Prestamo prestamo = new Prestamo(usuario, libro, fecha(fila, 2), fecha(fila, 3));
+                    prestamo.id = fila.getLong(1);
+                    usuario.prestamosActivos.add(prestamo);
+                    todos.add(prestamo);
+                }
+            }
+            return todos;
+        }
+    }
+}
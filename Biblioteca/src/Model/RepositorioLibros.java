@@ -0,0 +1,209 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Almacenamiento de los libros registrados en una biblioteca.
+ * <p>
+ * Biblioteca aplica las reglas (año de publicación, dueño del libro, préstamos) y
+ * ordena los accesos con sus cerrojos: los métodos que modifican el catálogo se llaman
+ * con el cerrojo de escritura tomado y las consultas con el de lectura. Solo
+ * reservar y liberar pueden llamarse en paralelo para un mismo libro.
+ * </p>
+ * <p>
+ * Los libros que devuelve el repositorio pertenecen a la biblioteca vinculada, así
+ * que sus setters pasan por ella. Un repositorio en disco puede devolver un objeto
+ * nuevo en cada consulta; los libros se identifican por su clave de ISBN.
+ * </p>
+ */
+public interface RepositorioLibros {
+
+    /**
+     * Vincula el repositorio con la biblioteca que lo usa. Lo llama Biblioteca al crearse.
+     * @param biblioteca Biblioteca dueña de los libros
+     */
+    void vincular(Biblioteca biblioteca);
+
+    /**
+     * Obtiene la cantidad de libros registrados.
+     * @return Cantidad de libros
+     */
+    int cantidad();
+
+    /**
+     * Busca un libro por la clave canónica de su ISBN.
+     * @param claveIsbn Clave calculada con IndiceIsbn.calcularClave
+     * @return Libro registrado o null si no existe
+     */
+    Libro buscar(long claveIsbn);
+
+    /**
+     * Registra un libro si su ISBN no está registrado.
+     * @param libro Libro con ISBN válido, ya validado por la biblioteca
+     * @return true si se registró, false si el ISBN ya existe
+     */
+    boolean agregar(Libro libro);
+
+    /**
+     * Registra varios libros de una vez, rechazando los ISBN ya registrados o
+     * repetidos dentro del lote.
+     * @param libros Libros con ISBN válido, ya validados por la biblioteca
+     * @return Por cada libro, true si se registró y false si se rechazó
+     */
+    boolean[] agregarTodos(List<Libro> libros);
+
+    /**
+     * Reemplaza todos los libros registrados. Los anteriores dejan de pertenecer a la biblioteca.
+     * @param libros Libros con ISBN válido; los repetidos se descartan
+     * @return Por cada libro, true si se registró y false si se descartó
+     */
+    boolean[] reemplazarTodos(List<Libro> libros);
+
+    /**
+     * Quita un libro del registro.
+     * @param claveIsbn Clave canónica del ISBN
+     * @return Libro quitado, que ya no pertenece a la biblioteca, o null si no existía
+     */
+    Libro eliminar(long claveIsbn);
+
+    /**
+     * Cambia el ISBN de un libro registrado.
+     * @param libro Libro registrado
+     * @param nuevaClave Clave canónica del nuevo ISBN (válida; igual a la actual si solo
+     *        cambia cómo se escribe)
+     * @param nuevoIsbn Nuevo ISBN tal como se escribió
+     * @return true si se cambió, false si el nuevo ISBN ya pertenece a otro libro
+     */
+    boolean cambiarIsbn(Libro libro, long nuevaClave, String nuevoIsbn);
+
+    /**
+     * Refleja un cambio de título ya aplicado al libro.
+     * @param libro Libro registrado
+     * @param anteriorPlegado Título plegado que tenía antes del cambio
+     */
+    void tituloCambiado(Libro libro, String anteriorPlegado);
+
+    /**
+     * Refleja un cambio de autor ya aplicado al libro.
+     * @param libro Libro registrado
+     * @param anteriorPlegado Autor plegado que tenía antes del cambio
+     */
+    void autorCambiado(Libro libro, String anteriorPlegado);
+
+    /**
+     * Refleja un cambio de año o de ejemplares ya aplicado al libro. Los ejemplares
+     * prestados se conservan: solo se guarda la diferencia en el total.
+     * @param libro Libro registrado
+     */
+    void actualizar(Libro libro);
+
+    /**
+     * Reserva ejemplares de un libro de forma atómica.
+     * @param libro Libro registrado
+     * @param cantidad Cantidad de ejemplares (mayor que 0)
+     * @return true si había suficientes y quedaron reservados
+     */
+    boolean reservar(Libro libro, int cantidad);
+
+    /**
+     * Libera ejemplares reservados con reservar, sin superar el total.
+     * @param libro Libro registrado
+     * @param cantidad Cantidad de ejemplares (mayor que 0)
+     * @return true si se liberaron
+     */
+    boolean liberar(Libro libro, int cantidad);
+
+    /**
+     * Indica si faltan preparar estructuras antes de buscar por texto.
+     * @return true si debe llamarse a prepararBusquedas
+     */
+    boolean busquedasPendientes();
+
+    /**
+     * Prepara las estructuras de búsqueda por texto. Se llama con el cerrojo de escritura tomado.
+     */
+    void prepararBusquedas();
+
+    /**
+     * Busca libros por título plegado exacto.
+     * @param plegado Título plegado
+     * @return Libros con ese título, en orden de registro
+     */
+    ArrayList<Libro> buscarPorTitulo(String plegado);
+
+    /**
+     * Agrega a destino una página de libros cuyo título plegado empieza por un texto, en
+     * orden alfabético y, a igual título, de número. La página empieza después del libro
+     * con el título y el número dados, sin recorrer las páginas anteriores.
+     * @param prefijo Texto plegado
+     * @param despuesDeTitulo Título plegado del último libro de la página anterior (el prefijo para la primera)
+     * @param despuesDeNumero Número del último libro de la página anterior (-1 para la primera)
+     * @param cantidad Cantidad máxima de libros (mayor que 0)
+     * @param destino Lista a la que se agregan los libros
+     * @return true si hay más libros después de la página
+     */
+    boolean paginaPorInicioDeTitulo(String prefijo, String despuesDeTitulo, int despuesDeNumero,
+            int cantidad, List<Libro> destino);
+
+    /**
+     * Busca libros cuyo autor plegado contiene la consulta y en el que cada palabra de
+     * la consulta es el inicio de alguna palabra del autor.
+     * @param plegado Consulta plegada
+     * @return Libros que coinciden
+     */
+    ArrayList<Libro> buscarPorAutor(String plegado);
+
+    /**
+     * Busca los libros cuyo título o autor plegados se parecen más a la consulta.
+     * @param plegado Consulta plegada
+     * @param cantidad Cantidad máxima de resultados (mayor que 0)
+     * @param similitudMinima Similitud mínima para incluir un libro
+     * @return Libros del más parecido al menos parecido
+     */
+    ArrayList<Libro> buscarSimilares(String plegado, int cantidad, double similitudMinima);
+
+    /**
+     * Agrega a destino una página de libros, en un orden estable del repositorio que no
+     * cambia al agregar o quitar otros libros.
+     * @param desde Posición donde empieza la página: 0 para la primera, o la devuelta por la anterior
+     * @param cantidad Cantidad máxima de libros (mayor que 0)
+     * @param destino Lista a la que se agregan los libros
+     * @return Posición donde empieza la página siguiente, o -1 si no hay más libros
+     */
+    long pagina(long desde, int cantidad, List<Libro> destino);
+
+    /**
+     * Agrega a destino una página de los libros con un título plegado exacto, en el orden de pagina.
+     * @param plegado Título plegado
+     * @param desde Posición donde empieza la página: 0 para la primera, o la devuelta por la anterior
+     * @param cantidad Cantidad máxima de libros (mayor que 0)
+     * @param destino Lista a la que se agregan los libros
+     * @return Posición donde empieza la página siguiente, o -1 si no hay más libros
+     */
+    long paginaPorTitulo(String plegado, long desde, int cantidad, List<Libro> destino);
+
+    /**
+     * Agrega a destino una página de los libros que buscarPorAutor encontraría, en el orden de pagina.
+     * @param plegado Consulta plegada
+     * @param desde Posición donde empieza la página: 0 para la primera, o la devuelta por la anterior
+     * @param cantidad Cantidad máxima de libros (mayor que 0)
+     * @param destino Lista a la que se agregan los libros
+     * @return Posición donde empieza la página siguiente, o -1 si no hay más libros
+     */
+    long paginaPorAutor(String plegado, long desde, int cantidad, List<Libro> destino);
+
+    /**
+     * Obtiene una vista inmutable de todos los libros registrados. Un repositorio que
+     * no tiene los libros en memoria puede no admitirla: entonces se usa recorrer().
+     * @return Instantánea de los libros
+     * @throws UnsupportedOperationException Si el repositorio no la admite
+     */
+    Instantanea<Libro> instantanea();
+
+    /**
+     * Recorre todos los libros registrados sin exigir tenerlos a la vez en memoria.
+     * @return Libros en el orden del repositorio
+     */
+    Iterable<Libro> recorrer();
+}
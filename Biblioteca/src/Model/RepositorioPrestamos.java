@@ -0,0 +1,116 @@
+package Model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Almacenamiento de los préstamos activos de una biblioteca.
+ * <p>
+ * Biblioteca llama a agregar, eliminar y buscarActivo con la franja del usuario
+ * bloqueada (o con el cerrojo de escritura), así que préstamos de usuarios distintos
+ * pueden llegar en paralelo.
+ * </p>
+ */
+public interface RepositorioPrestamos {
+
+    /**
+     * Obtiene la cantidad de préstamos activos.
+     * @return Cantidad de préstamos
+     */
+    int cantidad();
+
+    /**
+     * Registra un préstamo activo y lo agrega a los préstamos del usuario.
+     * @param prestamo Préstamo de un libro y un usuario registrados
+     */
+    void agregar(Prestamo prestamo);
+
+    /**
+     * Quita un préstamo activo, también de los préstamos del usuario.
+     * @param prestamo Préstamo obtenido con buscarActivo o delUsuario
+     */
+    void eliminar(Prestamo prestamo);
+
+    /**
+     * Busca el préstamo activo más antiguo de un libro a un usuario.
+     * @param libro Libro registrado
+     * @param usuario Usuario registrado
+     * @return Préstamo activo o null si no existe
+     */
+    Prestamo buscarActivo(Libro libro, Usuario usuario);
+
+    /**
+     * Obtiene los préstamos activos de un usuario.
+     * @param usuario Usuario registrado
+     * @return Lista de préstamos (no debe modificarse)
+     */
+    List<Prestamo> delUsuario(Usuario usuario);
+
+    /**
+     * Agrega a destino una página de préstamos activos en orden de registro.
+     * @param desde Posición donde empieza la página: 0 para la primera, o la devuelta por la anterior
+     * @param cantidad Cantidad máxima de préstamos (mayor que 0)
+     * @param destino Lista a la que se agregan los préstamos
+     * @return Posición donde empieza la página siguiente, o -1 si no hay más préstamos
+     */
+    long pagina(long desde, int cantidad, List<Prestamo> destino);
+
+    /**
+     * Agrega a destino una página de los préstamos activos de un usuario, en orden de registro.
+     * @param usuario Usuario registrado
+     * @param desde Posición donde empieza la página: 0 para la primera, o la devuelta por la anterior
+     * @param cantidad Cantidad máxima de préstamos (mayor que 0)
+     * @param destino Lista a la que se agregan los préstamos
+     * @return Posición donde empieza la página siguiente, o -1 si no hay más préstamos
+     */
+    long paginaDelUsuario(Usuario usuario, long desde, int cantidad, List<Prestamo> destino);
+
+    /**
+     * Agrega a destino los préstamos activos cuya fecha límite está en un rango, en
+     * orden de fecha límite. Los préstamos sin fecha límite no vencen nunca.
+     * @param desde Primera fecha límite incluida, o null para no acotar
+     * @param hasta Fecha límite a partir de la cual se excluye (no nula)
+     * @param destino Lista a la que se agregan los préstamos
+     */
+    void vencimientos(LocalDate desde, LocalDate hasta, List<Prestamo> destino);
+
+    /**
+     * Agrega a destino una página de los préstamos con fecha límite anterior a una fecha,
+     * en orden de fecha límite y, a igual fecha, de registro. La página empieza después
+     * del último préstamo de la anterior, sin recorrer los que ya se mostraron.
+     * @param hasta Fecha límite a partir de la cual se excluye (no nula)
+     * @param despuesDeFecha Fecha límite del último préstamo de la página anterior, o null para la primera
+     * @param despuesDeId Identificador del último préstamo de la página anterior (se ignora en la primera)
+     * @param cantidad Cantidad máxima de préstamos (mayor que 0)
+     * @param destino Lista a la que se agregan los préstamos
+     * @return true si hay más préstamos después de la página
+     */
+    boolean paginaVencimientos(LocalDate hasta, LocalDate despuesDeFecha, long despuesDeId, int cantidad,
+            List<Prestamo> destino);
+
+    /**
+     * Obtiene la fecha hasta la que ya se sumaron las multas de los préstamos vencidos.
+     * @return Fecha de la última acumulación de multas, o null si nunca se acumularon
+     */
+    LocalDate getFechaMultas();
+
+    /**
+     * Guarda la fecha hasta la que ya se sumaron las multas de los préstamos vencidos.
+     * @param fecha Fecha de la acumulación
+     */
+    void setFechaMultas(LocalDate fecha);
+
+    /**
+     * Reemplaza todos los préstamos activos.
+     * @param prestamos Préstamos de libros y usuarios registrados
+     */
+    void reemplazarTodos(List<Prestamo> prestamos);
+
+    /**
+     * Obtiene una vista inmutable de todos los préstamos activos. Un repositorio que
+     * no tiene los préstamos en memoria puede no admitirla: entonces se usa pagina().
+     * @return Instantánea de los préstamos
+     * @throws UnsupportedOperationException Si el repositorio no la admite
+     */
+    Instantanea<Prestamo> instantanea();
+}
@@ -0,0 +1,85 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * Almacenamiento de los usuarios registrados en una biblioteca.
+ * <p>
+ * Biblioteca aplica las reglas y ordena los accesos con sus cerrojos: los métodos que
+ * modifican el directorio se llaman con el cerrojo de escritura tomado, y sumarMulta
+ * con la franja del usuario bloqueada. Los usuarios que devuelve el repositorio
+ * pertenecen a la biblioteca vinculada.
+ * </p>
+ */
+public interface RepositorioUsuarios {
+
+    /**
+     * Vincula el repositorio con la biblioteca que lo usa. Lo llama Biblioteca al crearse.
+     * @param biblioteca Biblioteca dueña de los usuarios
+     */
+    void vincular(Biblioteca biblioteca);
+
+    /**
+     * Obtiene la cantidad de usuarios registrados.
+     * @return Cantidad de usuarios
+     */
+    int cantidad();
+
+    /**
+     * Busca un usuario por su identificación, con sus préstamos activos.
+     * @param identificacion Identificación del usuario
+     * @return Usuario registrado o null si no existe
+     */
+    Usuario buscar(String identificacion);
+
+    /**
+     * Registra un usuario si su identificación no está registrada.
+     * @param usuario Usuario ya validado por la biblioteca
+     * @return true si se registró, false si la identificación ya existe
+     */
+    boolean agregar(Usuario usuario);
+
+    /**
+     * Reemplaza todos los usuarios registrados. Los anteriores dejan de pertenecer a la biblioteca.
+     * @param usuarios Usuarios con identificación; los repetidos se descartan
+     * @return Por cada usuario, true si se registró y false si se descartó
+     */
+    boolean[] reemplazarTodos(List<Usuario> usuarios);
+
+    /**
+     * Quita un usuario del registro.
+     * @param identificacion Identificación del usuario
+     * @return Usuario quitado, que ya no pertenece a la biblioteca, o null si no existía
+     */
+    Usuario eliminar(String identificacion);
+
+    /**
+     * Cambia la identificación de un usuario registrado.
+     * @param usuario Usuario registrado
+     * @param nuevaIdentificacion Identificación nueva (no nula y distinta de la actual)
+     * @return true si se cambió, false si ya pertenece a otro usuario
+     */
+    boolean cambiarIdentificacion(Usuario usuario, String nuevaIdentificacion);
+
+    /**
+     * Refleja un cambio de nombre o de tipo ya aplicado al usuario.
+     * @param usuario Usuario registrado
+     */
+    void actualizar(Usuario usuario);
+
+    /**
+     * Suma o descuenta un monto de la multa del usuario; la multa no queda negativa.
+     * @param usuario Usuario registrado
+     * @param monto Monto a sumar (negativo para registrar un pago)
+     * @return Monto que cambió realmente la multa: un pago mayor que la deuda solo descuenta la deuda
+     */
+    double sumarMulta(Usuario usuario, double monto);
+
+    /**
+     * Obtiene una vista inmutable de todos los usuarios registrados. Un repositorio
+     * que no tiene los usuarios en memoria puede no admitirla.
+     * @return Instantánea de los usuarios
+     * @throws UnsupportedOperationException Si el repositorio no la admite
+     */
+    Instantanea<Usuario> instantanea();
+}
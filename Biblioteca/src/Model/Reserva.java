@@ -0,0 +1,63 @@
+package Model;
+
+import java.time.LocalDate;
+
+/**
+ * Reserva de un libro sin ejemplares disponibles: el usuario espera en la cola del
+ * libro y, cuando se devuelve un ejemplar, se le presta directamente.
+ */
+public final class Reserva {
+    private final Libro libro;
+    private final Usuario usuario;
+    private final LocalDate fecha;
+    Reserva anterior; // Vecinas en la cola del libro, mantenidas por ColaReservas
+    Reserva siguiente;
+    boolean enCola;
+    int turno; // Turno en la cola del libro, para calcular su posición
+
+    /**
+     * Constructor usado por la biblioteca.
+     * @param libro Libro reservado
+     * @param usuario Usuario que espera el libro
+     * @param fecha Fecha en que se hizo la reserva
+     */
+    Reserva(Libro libro, Usuario usuario, LocalDate fecha) {
+        this.libro = libro;
+        this.usuario = usuario;
+        this.fecha = fecha;
+    }
+
+    /**
+     * Obtiene el libro reservado.
+     * @return Libro
+     */
+    public Libro getLibro() {
+        return libro;
+    }
+
+    /**
+     * Obtiene el usuario que hizo la reserva.
+     * @return Usuario
+     */
+    public Usuario getUsuario() {
+        return usuario;
+    }
+
+    /**
+     * Obtiene la fecha en que se hizo la reserva.
+     * @return Fecha de la reserva
+     */
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    /**
+     * Representación en cadena de la reserva.
+     * @return Cadena con la información de la reserva
+     */
+    @Override
+    public String toString() {
+        return "Reserva:isbn:" + libro.getIsbn() + ", usuario:" + usuario.getIdentificacion()
+                + ", fecha:" + fecha;
+    }
+}
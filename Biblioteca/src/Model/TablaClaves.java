@@ -0,0 +1,215 @@
+package Model;
+
+import java.util.Arrays;
+
+/**
+ * Tabla de dispersión de claves long a posiciones int.
+ * <p>
+ * Usa direccionamiento abierto con sondeo lineal sobre arreglos primitivos, de modo que
+ * buscar, insertar y eliminar no crean objetos. La clave 0 se reserva para marcar
+ * casillas vacías y la clave -1 nunca se almacena.
+ * </p>
+ */
+class TablaClaves {
+    private static final long VACIA = 0L;
+    private static final long NINGUNA = -1L;
+
+    private long[] claves;
+    private int[] posiciones;
+    private int tamaño;
+    private int umbral;
+
+    /**
+     * Constructor que crea una tabla vacía.
+     * @param capacidadInicial Cantidad de claves que se espera almacenar
+     */
+    TablaClaves(int capacidadInicial) {
+        int capacidad = 16;
+        while (capacidad * 2 / 3 < capacidadInicial) {
+            capacidad <<= 1;
+        }
+        reservar(capacidad);
+    }
+
+    /**
+     * Busca la posición asociada a una clave.
+     * @param clave Clave buscada
+     * @return Posición asociada, o -1 si la clave no está almacenada
+     */
+    int buscar(long clave) {
+        if (clave == NINGUNA) {
+            return -1;
+        }
+        int mascara = claves.length - 1;
+        for (int i = mezclar(clave) & mascara; ; i = (i + 1) & mascara) {
+            long actual = claves[i];
+            if (actual == clave) {
+                return posiciones[i];
+            }
+            if (actual == VACIA) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Verifica si una clave está almacenada.
+     * @param clave Clave buscada
+     * @return true si la clave está almacenada
+     */
+    boolean contiene(long clave) {
+        return buscar(clave) >= 0;
+    }
+
+    /**
+     * Asocia una clave con una posición, reemplazando la anterior si existía.
+     * @param clave Clave distinta de 0 y de -1
+     * @param posicion Posición asociada
+     */
+    void poner(long clave, int posicion) {
+        if (tamaño >= umbral) {
+            reservar(claves.length << 1);
+        }
+        int mascara = claves.length - 1;
+        for (int i = mezclar(clave) & mascara; ; i = (i + 1) & mascara) {
+            long actual = claves[i];
+            if (actual == VACIA) {
+                claves[i] = clave;
+                posiciones[i] = posicion;
+                tamaño++;
+                return;
+            }
+            if (actual == clave) {
+                posiciones[i] = posicion;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Suma una cantidad al valor asociado a una clave, creándola con valor 0 si no existía.
+     * @param clave Clave distinta de 0 y de -1
+     * @param cantidad Cantidad a sumar
+     * @return Nuevo valor asociado
+     */
+    int sumar(long clave, int cantidad) {
+        if (tamaño >= umbral) {
+            reservar(claves.length << 1);
+        }
+        int mascara = claves.length - 1;
+        for (int i = mezclar(clave) & mascara; ; i = (i + 1) & mascara) {
+            long actual = claves[i];
+            if (actual == clave) {
+                return posiciones[i] += cantidad;
+            }
+            if (actual == VACIA) {
+                claves[i] = clave;
+                tamaño++;
+                return posiciones[i] = cantidad;
+            }
+        }
+    }
+
+    /**
+     * Elimina una clave de la tabla.
+     * Usa borrado por desplazamiento hacia atrás para no dejar marcas de borrado.
+     * @param clave Clave buscada
+     * @return true si la clave existía
+     */
+    boolean eliminar(long clave) {
+        if (clave == NINGUNA) {
+            return false;
+        }
+        int mascara = claves.length - 1;
+        int i = mezclar(clave) & mascara;
+        while (claves[i] != clave) {
+            if (claves[i] == VACIA) {
+                return false;
+            }
+            i = (i + 1) & mascara;
+        }
+        // Reubica las entradas siguientes del mismo grupo para cerrar el hueco
+        int hueco = i;
+        for (int j = (hueco + 1) & mascara; claves[j] != VACIA; j = (j + 1) & mascara) {
+            int ideal = mezclar(claves[j]) & mascara;
+            if (((j - ideal) & mascara) >= ((j - hueco) & mascara)) {
+                claves[hueco] = claves[j];
+                posiciones[hueco] = posiciones[j];
+                hueco = j;
+            }
+        }
+        claves[hueco] = VACIA;
+        tamaño--;
+        return true;
+    }
+
+    /**
+     * Vacía la tabla conservando su capacidad.
+     */
+    void limpiar() {
+        Arrays.fill(claves, VACIA);
+        tamaño = 0;
+    }
+
+    /**
+     * Obtiene la cantidad de claves almacenadas.
+     * @return Número de claves
+     */
+    int tamaño() {
+        return tamaño;
+    }
+
+    /**
+     * Recorre todas las claves almacenadas, en un orden cualquiera.
+     * @param visitante Acción a ejecutar con cada clave y su posición
+     */
+    void recorrer(Visitante visitante) {
+        for (int i = 0; i < claves.length; i++) {
+            if (claves[i] != VACIA) {
+                visitante.visitar(claves[i], posiciones[i]);
+            }
+        }
+    }
+
+    /**
+     * Acción que se ejecuta con cada entrada al recorrer la tabla.
+     */
+    interface Visitante {
+        /**
+         * Procesa una entrada de la tabla.
+         * @param clave Clave almacenada
+         * @param posicion Posición asociada
+         */
+        void visitar(long clave, int posicion);
+    }
+
+    /**
+     * Redimensiona la tabla y reinserta las claves existentes.
+     * @param capacidad Nueva capacidad (potencia de 2)
+     */
+    private void reservar(int capacidad) {
+        long[] clavesAnteriores = claves;
+        int[] posicionesAnteriores = posiciones;
+        claves = new long[capacidad];
+        posiciones = new int[capacidad];
+        umbral = capacidad * 2 / 3;
+        tamaño = 0;
+        if (clavesAnteriores != null) {
+            for (int i = 0; i < clavesAnteriores.length; i++) {
+                if (clavesAnteriores[i] != VACIA) {
+                    poner(clavesAnteriores[i], posicionesAnteriores[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispersa los bits de la clave para repartirla en la tabla.
+     * @param clave Clave
+     * @return Valor de dispersión
+     */
+    private static int mezclar(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,46 @@
+package Model;
+
+/**
+ * Tipo de un cambio publicado en el flujo de cambios de la biblioteca.
+ * <p>
+ * Cada tipo indica qué campos del evento tienen valor; los demás quedan en null o en 0.
+ * </p>
+ */
+public enum TipoCambio {
+    /** Se agregó un libro. Tiene isbn y cantidad (ejemplares disponibles). */
+    LIBRO_AGREGADO,
+    /** Cambiaron los datos de un libro. Tiene isbn y cantidad (ejemplares disponibles). */
+    LIBRO_ACTUALIZADO,
+    /** Se eliminó un libro. Tiene isbn. */
+    LIBRO_ELIMINADO,
+    /** Cambió el ISBN de un libro. Tiene isbn (el anterior) y valorNuevo. */
+    ISBN_CAMBIADO,
+    /** Se registró un usuario. Tiene identificacion. */
+    USUARIO_REGISTRADO,
+    /** Cambiaron los datos de un usuario. Tiene identificacion. */
+    USUARIO_ACTUALIZADO,
+    /** Se eliminó un usuario. Tiene identificacion. */
+    USUARIO_ELIMINADO,
+    /** Cambió la identificación de un usuario. Tiene identificacion (la anterior) y valorNuevo. */
+    IDENTIFICACION_CAMBIADA,
+    /** Se prestó un libro. Tiene isbn, identificacion, fecha (de préstamo) y fechaLimite. */
+    PRESTAMO,
+    /** Se devolvió un libro. Tiene isbn, identificacion, fecha (de devolución) y fechaLimite. */
+    DEVOLUCION,
+    /** Cambió la multa de un usuario. Tiene identificacion y monto (lo que cambió la multa, negativo si se pagó). */
+    MULTA,
+    /** Terminó la acumulación nocturna de multas. Tiene fecha y cantidad (usuarios multados). */
+    MULTAS_ACUMULADAS,
+    /** Un usuario reservó un libro. Tiene isbn, identificacion y fecha. */
+    RESERVA,
+    /** Se canceló una reserva. Tiene isbn e identificacion. */
+    RESERVA_CANCELADA,
+    /** Un ejemplar devuelto se prestó al primero de la cola. Tiene isbn, identificacion, fecha y fechaLimite. */
+    RESERVA_ASIGNADA,
+    /** Se reemplazaron todos los libros. Tiene cantidad. */
+    LIBROS_REEMPLAZADOS,
+    /** Se reemplazaron todos los usuarios. Tiene cantidad. */
+    USUARIOS_REEMPLAZADOS,
+    /** Se reemplazaron todos los préstamos. Tiene cantidad. */
+    PRESTAMOS_REEMPLAZADOS
+}
@@ -0,0 +1,23 @@
+package Model;
+
+/**
+ * Transacciones de los repositorios que guardan en una base de datos.
+ * <p>
+ * La biblioteca abre una transacción antes de tomar su cerrojo de estructura y la
+ * termina después de soltarlo, así cada operación se confirma o se deshace entera.
+ * Las llamadas pueden anidarse: solo la más externa confirma.
+ * </p>
+ */
+interface Transacciones {
+    /**
+     * Abre una transacción, o se suma a la que ya tiene abierta el hilo actual.
+     * Mientras está abierta, los demás hilos esperan para usar la base de datos.
+     */
+    void iniciar();
+
+    /**
+     * Termina la transacción abierta con iniciar. La más externa la confirma, o la
+     * deshace si falló alguna sentencia.
+     */
+    void terminar();
+}
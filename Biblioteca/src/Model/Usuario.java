@@ -1,117 +1,182 @@
-package Model;
-
-/**
- * Clase que representa un usuario del sistema de biblioteca.
- * Contiene información personal del usuario, su tipo y multas acumuladas.
- */
-public class Usuario {
-    
-    private String nombre;
-    private String identificacion;
-    private String tipoUsuario; // estudiante, profesor, ciudadano, administrador
-    private double multaAcumulada;
-
-    /**
-     * Constructor para crear un nuevo usuario.
-     * @param nombre Nombre completo del usuario (no puede ser nulo o vacío)
-     * @param identificacion Identificación única del usuario (no puede ser nulo o vacío)
-     * @param tipoUsuario Tipo de usuario (estudiante, profesor, ciudadano o administrador)
-     */
-    public Usuario(String nombre, String identificacion, String tipoUsuario) {
-        this.nombre = nombre;
-        this.identificacion = identificacion;
-        this.tipoUsuario = tipoUsuario;
-        this.multaAcumulada = 0.0;
-    }
-
-    /**
-     * Verifica si el usuario tiene privilegios de administrador.
-     * @return true si el usuario es administrador, false en caso contrario
-     */
-    public boolean esAdmin() {
-        return "Administrador".equalsIgnoreCase(this.tipoUsuario);
-    }
-    
-    /**
-     * Obtiene el nombre del usuario.
-     * @return Nombre del usuario
-     */
-    public String getNombre() {
-        return nombre;
-    }
-
-    /**
-     * Establece el nombre del usuario.
-     * @param nombre Nuevo nombre (no puede ser nulo o vacío)
-     */
-    public void setNombre(String nombre) {
-        this.nombre = nombre;
-    }
-
-    /**
-     * Obtiene la identificación del usuario.
-     * @return Identificación única del usuario
-     */
-    public String getIdentificacion() {
-        return identificacion;
-    }
-
-    /**
-     * Establece la identificación del usuario.
-     * @param identificacion Nueva identificación (no puede ser nulo o vacío)
-     */
-    public void setIdentificacion(String identificacion) {
-        this.identificacion = identificacion;
-    }
-
-    /**
-     * Obtiene el tipo de usuario.
-     * @return Tipo de usuario (estudiante, profesor, ciudadano o administrador)
-     */
-    public String getTipoUsuario() {
-        return tipoUsuario;
-    }
-
-    /**
-     * Establece el tipo de usuario.
-     * @param tipoUsuario Nuevo tipo de usuario (debe ser uno de los valores permitidos)
-     */
-    public void setTipoUsuario(String tipoUsuario) {
-        this.tipoUsuario = tipoUsuario;
-    }
-
-    /**
-     * Agrega una multa al acumulado del usuario.
-     * @param monto Monto de la multa a agregar (debe ser positivo)
-     */
-    public void agregarMulta(double monto) {
-        this.multaAcumulada += monto;
-    }
-
-    /**
-     * Obtiene el total de multas acumuladas.
-     * @return Monto total de multas pendientes
-     */
-    public double getMultaAcumulada() {
-        return multaAcumulada;
-    }
-
-    /**
-     * Registra un pago hacia las multas acumuladas.
-     * @param monto Monto a pagar (debe ser positivo)
-     */
-    public void pagarMulta(double monto) {
-        this.multaAcumulada = Math.max(0, this.multaAcumulada - monto);
-    }
-
-    /**
-     * Devuelve una representación en cadena del usuario.
-     * @return Cadena con la información básica del usuario
-     */
-    @Override
-    public String toString() {
-        return "El usuario es, nombre:" + nombre + 
-               ", identificacion:" + identificacion + 
-               ", tipo de usuario:" + tipoUsuario;
-    }
+package Model;
+
+import java.util.ArrayList;
+
+/**
+ * Clase que representa un usuario del sistema de biblioteca.
+ * Contiene información personal del usuario, su tipo y multas acumuladas.
+ */
+public class Usuario {
+    
+    private String nombre;
+    private String identificacion;
+    private String tipoUsuario; // estudiante, profesor, ciudadano, administrador
+    private volatile double multaAcumulada; // Se modifica con la franja del usuario bloqueada en Biblioteca
+    Biblioteca biblioteca; // Biblioteca en la que está registrado (null si no lo está)
+    int numero; // Número interno estable asignado por Biblioteca (0 si aún no tiene)
+    final ArrayList<Prestamo> prestamosActivos; // Préstamos sin devolver, mantenidos por Biblioteca
+
+    /**
+     * Constructor para crear un nuevo usuario.
+     * @param nombre Nombre completo del usuario (no puede ser nulo o vacío)
+     * @param identificacion Identificación única del usuario (no puede ser nulo o vacío)
+     * @param tipoUsuario Tipo de usuario (estudiante, profesor, ciudadano o administrador)
+     */
+    public Usuario(String nombre, String identificacion, String tipoUsuario) {
+        this.nombre = nombre;
+        this.identificacion = identificacion;
+        this.tipoUsuario = tipoUsuario;
+        this.multaAcumulada = 0.0;
+        this.prestamosActivos = new ArrayList<Prestamo>(Biblioteca.LIMITE_PRESTAMOS);
+    }
+
+    /**
+     * Verifica si el usuario tiene privilegios de administrador.
+     * @return true si el usuario es administrador, false en caso contrario
+     */
+    public boolean esAdmin() {
+        return "Administrador".equalsIgnoreCase(this.tipoUsuario);
+    }
+    
+    /**
+     * Obtiene el nombre del usuario.
+     * @return Nombre del usuario
+     */
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Establece el nombre del usuario.
+     * @param nombre Nuevo nombre (no puede ser nulo o vacío)
+     */
+    public void setNombre(String nombre) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca != null) {
+            biblioteca.cambiarNombre(this, nombre);
+        } else {
+            this.nombre = nombre;
+        }
+    }
+
+    /**
+     * Escribe el nombre sin avisar a la biblioteca. Lo invoca la biblioteca con su
+     * cerrojo de escritura tomado.
+     * @param nombre Nuevo nombre
+     */
+    void asignarNombre(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Obtiene la identificación del usuario.
+     * @return Identificación única del usuario
+     */
+    public String getIdentificacion() {
+        return identificacion;
+    }
+
+    /**
+     * Establece la identificación del usuario.
+     * Si el usuario está registrado en una biblioteca, su directorio se actualiza con el
+     * cerrojo de escritura tomado; el cambio se rechaza si la nueva identificación ya
+     * pertenece a otro usuario.
+     * @param identificacion Nueva identificación (no puede ser nulo o vacío)
+     */
+    public void setIdentificacion(String identificacion) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca == null) {
+            this.identificacion = identificacion;
+        } else if (!biblioteca.reindexarUsuario(this, identificacion)) {
+            System.out.println("La identificación " + identificacion + " no es válida o ya está registrada.");
+        }
+    }
+
+    /**
+     * Escribe la identificación sin avisar a la biblioteca. Lo invoca la biblioteca con
+     * su cerrojo de escritura tomado.
+     * @param identificacion Nueva identificación
+     */
+    void asignarIdentificacion(String identificacion) {
+        this.identificacion = identificacion;
+    }
+
+    /**
+     * Obtiene el tipo de usuario.
+     * @return Tipo de usuario (estudiante, profesor, ciudadano o administrador)
+     */
+    public String getTipoUsuario() {
+        return tipoUsuario;
+    }
+
+    /**
+     * Establece el tipo de usuario.
+     * @param tipoUsuario Nuevo tipo de usuario (debe ser uno de los valores permitidos)
+     */
+    public void setTipoUsuario(String tipoUsuario) {
+        Biblioteca biblioteca = this.biblioteca;
+        if (biblioteca != null) {
+            biblioteca.cambiarTipoUsuario(this, tipoUsuario);
+        } else {
+            this.tipoUsuario = tipoUsuario;
+        }
+    }
+
+    /**
+     * Escribe el tipo de usuario sin avisar a la biblioteca. Lo invoca la biblioteca con
+     * su cerrojo de escritura tomado.
+     * @param tipoUsuario Nuevo tipo de usuario
+     */
+    void asignarTipoUsuario(String tipoUsuario) {
+        this.tipoUsuario = tipoUsuario;
+    }
+
+    /**
+     * Obtiene la cantidad de préstamos activos del usuario.
+     * @return Número de libros que el usuario tiene sin devolver
+     */
+    public int getCantidadPrestamosActivos() {
+        return prestamosActivos.size();
+    }
+
+    /**
+     * Agrega una multa al acumulado del usuario.
+     * @param monto Monto de la multa a agregar (debe ser positivo y finito; si no, se ignora)
+     */
+    public void agregarMulta(double monto) {
+        if (!Biblioteca.montoValido(monto)) {
+            return;
+        }
+        this.multaAcumulada += monto;
+    }
+
+    /**
+     * Obtiene el total de multas acumuladas.
+     * @return Monto total de multas pendientes
+     */
+    public double getMultaAcumulada() {
+        return multaAcumulada;
+    }
+
+    /**
+     * Registra un pago hacia las multas acumuladas.
+     * @param monto Monto a pagar (debe ser positivo y finito; si no, se ignora)
+     */
+    public void pagarMulta(double monto) {
+        if (!Biblioteca.montoValido(monto)) {
+            return;
+        }
+        this.multaAcumulada = Math.max(0, this.multaAcumulada - monto);
+    }
+
+    /**
+     * Devuelve una representación en cadena del usuario.
+     * @return Cadena con la información básica del usuario
+     */
+    @Override
+    public String toString() {
+        return "El usuario es, nombre:" + nombre + 
+               ", identificacion:" + identificacion + 
+               ", tipo de usuario:" + tipoUsuario;
+    }
 }
\ No newline at end of file
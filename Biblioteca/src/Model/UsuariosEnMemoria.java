@@ -0,0 +1,189 @@
+package Model;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Repositorio de usuarios en memoria: una lista versionada y un directorio de
+ * identificación a posición en la lista.
+ */
+class UsuariosEnMemoria implements RepositorioUsuarios {
+    private ListaVersionada<Usuario> usuarios = new ListaVersionada<Usuario>();
+    private HashMap<String, Integer> directorio = new HashMap<String, Integer>(); // Identificación -> posición en usuarios
+    private int ultimoNumero;
+    private Biblioteca biblioteca;
+
+    /**
+     * Vincula el repositorio con la biblioteca que lo usa.
+     * @param biblioteca Biblioteca dueña de los usuarios
+     */
+    @Override
+    public void vincular(Biblioteca biblioteca) {
+        this.biblioteca = biblioteca;
+    }
+
+    /**
+     * Obtiene la cantidad de usuarios registrados.
+     * @return Cantidad de usuarios
+     */
+    @Override
+    public int cantidad() {
+        return usuarios.size();
+    }
+
+    /**
+     * Busca un usuario por su identificación.
+     * @param identificacion Identificación del usuario
+     * @return Usuario registrado o null si no existe
+     */
+    @Override
+    public Usuario buscar(String identificacion) {
+        Integer posicion = directorio.get(identificacion);
+        return posicion != null ? usuarios.get(posicion) : null;
+    }
+
+    /**
+     * Obtiene el último número asignado, que los volcados guardan para no repetirlo.
+     * @return Último número de usuario
+     */
+    int ultimoNumero() {
+        return ultimoNumero;
+    }
+
+    /**
+     * Obtiene la posición de un usuario registrado en la lista, la que usan los volcados.
+     * @param usuario Usuario registrado
+     * @return Posición del usuario
+     */
+    int posicion(Usuario usuario) {
+        return directorio.get(usuario.getIdentificacion());
+    }
+
+    /**
+     * Registra un usuario si su identificación no está registrada.
+     * @param usuario Usuario con identificación
+     * @return true si se registró
+     */
+    @Override
+    public boolean agregar(Usuario usuario) {
+        if (directorio.containsKey(usuario.getIdentificacion())) {
+            return false;
+        }
+        usuario.numero = ++ultimoNumero; // Nuevo también al volver a registrarlo, como en la reproducción del diario
+        indexar(usuario);
+        return true;
+    }
+
+    /**
+     * Reemplaza todos los usuarios y reconstruye el directorio.
+     * @param usuarios Usuarios con identificación
+     * @return Por cada usuario, true si se registró
+     */
+    @Override
+    public boolean[] reemplazarTodos(List<Usuario> usuarios) {
+        for (Usuario usuario : this.usuarios) {
+            usuario.biblioteca = null;
+        }
+        this.usuarios = new ListaVersionada<Usuario>();
+        this.directorio = new HashMap<String, Integer>(usuarios.size() * 4 / 3 + 1);
+        boolean[] agregados = new boolean[usuarios.size()];
+        for (int i = 0; i < agregados.length; i++) {
+            agregados[i] = agregar(usuarios.get(i));
+        }
+        return agregados;
+    }
+
+    /**
+     * Carga los usuarios de un volcado en el repositorio vacío, con los números que tenían.
+     * @param registrados Usuarios registrados del volcado, en orden
+     * @param ultimoNumero Último número asignado al escribir el volcado
+     */
+    void cargar(List<Usuario> registrados, int ultimoNumero) {
+        this.ultimoNumero = ultimoNumero;
+        this.directorio = new HashMap<String, Integer>(registrados.size() * 4 / 3 + 1);
+        for (Usuario usuario : registrados) {
+            indexar(usuario);
+        }
+    }
+
+    /**
+     * Quita un usuario. El último usuario de la lista ocupa su lugar, así la eliminación no desplaza la lista.
+     * @param identificacion Identificación del usuario
+     * @return Usuario quitado o null si no existía
+     */
+    @Override
+    public Usuario eliminar(String identificacion) {
+        Integer posicion = directorio.remove(identificacion);
+        if (posicion == null) {
+            return null;
+        }
+        Usuario usuario = usuarios.get(posicion);
+        Usuario ultimo = usuarios.quitarUltimo();
+        if (ultimo != usuario) {
+            usuarios.set(posicion, ultimo);
+            directorio.put(ultimo.getIdentificacion(), posicion);
+        }
+        usuario.biblioteca = null;
+        return usuario;
+    }
+
+    /**
+     * Añade un usuario al final de la lista y lo registra en el directorio.
+     * @param usuario Usuario con identificación no registrada, con su número ya asignado
+     */
+    private void indexar(Usuario usuario) {
+        directorio.put(usuario.getIdentificacion(), usuarios.size());
+        usuarios.add(usuario);
+        usuario.biblioteca = biblioteca;
+    }
+
+    /**
+     * Cambia la identificación de un usuario en el directorio.
+     * @param usuario Usuario registrado
+     * @param nuevaIdentificacion Identificación nueva (el usuario la asigna después)
+     * @return true si se cambió, false si ya está registrada
+     */
+    @Override
+    public boolean cambiarIdentificacion(Usuario usuario, String nuevaIdentificacion) {
+        if (directorio.containsKey(nuevaIdentificacion)) {
+            return false;
+        }
+        Integer posicion = directorio.remove(usuario.getIdentificacion());
+        directorio.put(nuevaIdentificacion, posicion);
+        return true;
+    }
+
+    /**
+     * No hace nada: el usuario en memoria ya tiene el cambio.
+     * @param usuario Usuario registrado
+     */
+    @Override
+    public void actualizar(Usuario usuario) {
+    }
+
+    /**
+     * Suma o descuenta un monto de la multa del usuario.
+     * @param usuario Usuario registrado
+     * @param monto Monto a sumar (negativo para un pago)
+     * @return Monto que cambió realmente la multa
+     */
+    @Override
+    public double sumarMulta(Usuario usuario, double monto) {
+        double anterior = usuario.getMultaAcumulada();
+        if (monto >= 0) {
+            usuario.agregarMulta(monto);
+        } else {
+            usuario.pagarMulta(-monto);
+        }
+        return usuario.getMultaAcumulada() - anterior;
+    }
+
+    /**
+     * Obtiene una vista inmutable de los usuarios, sin copiarlos.
+     * @return Instantánea de los usuarios
+     */
+    @Override
+    public Instantanea<Usuario> instantanea() {
+        return usuarios.instantanea();
+    }
+}
@@ -0,0 +1,673 @@
+package Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Volcado binario del catálogo (libros, usuarios, préstamos y reservas) que se abre mapeado en memoria.
+ * <p>
+ * El archivo tiene una cabecera fija, los textos de los libros (título, autor e ISBN),
+ * columnas de ancho fijo por libro (clave del ISBN, existencias, año, posición de sus
+ * textos y número interno), y al final los usuarios, los préstamos y las reservas. Los libros y usuarios que ya no están
+ * registrados pero siguen en algún préstamo activo van después de los registrados. Gracias a las columnas, al abrirlo
+ * solo se recorren números: los textos de cada libro se decodifican la primera vez que
+ * se piden. La cabecera guarda la posición del diario hasta la que llega el volcado,
+ * para reproducir solo lo posterior, la identidad de ese diario, para no aplicar la
+ * posición a otro archivo que lo haya reemplazado, y la fecha de la última acumulación
+ * de multas. Los libros y usuarios conservan su número interno, y la cabecera guarda
+ * el último asignado, para que el historial de préstamos, que los usa, siga valiendo.
+ * </p>
+ * <p>
+ * Cada volcado se escribe en un archivo nuevo con un número de generación creciente
+ * (nunca se sobrescribe uno que pueda estar mapeado) y los anteriores se borran después.
+ * El volcado completo debe caber en 2 GB, el límite de un mapeo.
+ * </p>
+ */
+final class VolcadoCatalogo {
+    private static final int MAGICO = 0x42494256; // "BIBV"
+    private static final int VERSION = 2;
+    private static final int SIN_FECHA_MULTAS = Integer.MIN_VALUE;
+    private static final int CABECERA = 96;
+    private static final String SUFIJO = ".volcado.";
+    private static final int BYTES_COLUMNAS = 8 + 8 + 4 + 4 + 4; // Clave, existencias, año, textos, número
+    private static final int BYTES_PRESTAMO = 4 + 4 + 8 + 8;
+    private static final int BYTES_RESERVA = 4 + 4 + 8;
+
+    private final MappedByteBuffer datos;
+    private final long generacion;
+    private final long posicionDiario;
+    private final long identidadDiario;
+    private final int cantidadLibros;
+    private final int cantidadUsuarios;
+    private final int librosRegistrados;
+    private final int usuariosRegistrados;
+    private final int cantidadPrestamos;
+    private final int cantidadReservas;
+    private final int inicioColumnas;
+    private final int inicioUsuarios;
+    private final int inicioPrestamos;
+    private final int inicioReservas;
+    private final int diaMultas;
+    private final int ultimoNumeroLibro;
+    private final int ultimoNumeroUsuario;
+
+    /**
+     * Abre un volcado ya escrito y comprueba su cabecera y su CRC.
+     * @param archivo Archivo del volcado
+     * @throws IOException Si no se puede mapear o no es un volcado válido
+     */
+    private VolcadoCatalogo(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamaño = canal.size();
+            if (tamaño < CABECERA || tamaño > Integer.MAX_VALUE) {
+                throw new IOException("Tamaño de volcado no válido: " + archivo);
+            }
+            datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamaño);
+        }
+        if (datos.getInt(0) != MAGICO || datos.getInt(4) != VERSION) {
+            throw new IOException("El archivo no es un volcado de la biblioteca: " + archivo);
+        }
+        generacion = datos.getLong(8);
+        posicionDiario = datos.getLong(16);
+        cantidadLibros = datos.getInt(28);
+        cantidadUsuarios = datos.getInt(32);
+        cantidadPrestamos = datos.getInt(36);
+        inicioColumnas = datos.getInt(40);
+        inicioUsuarios = datos.getInt(44);
+        inicioPrestamos = datos.getInt(48);
+        librosRegistrados = datos.getInt(52);
+        usuariosRegistrados = datos.getInt(56);
+        diaMultas = datos.getInt(60);
+        cantidadReservas = datos.getInt(64);
+        inicioReservas = datos.getInt(68);
+        identidadDiario = datos.getLong(72);
+        ultimoNumeroLibro = datos.getInt(80);
+        ultimoNumeroUsuario = datos.getInt(84);
+        CRC32C crc = new CRC32C();
+        crc.update(datos.slice(CABECERA, datos.capacity() - CABECERA));
+        if ((int) crc.getValue() != datos.getInt(24)
+                || inicioColumnas + (long) cantidadLibros * BYTES_COLUMNAS > inicioUsuarios
+                || inicioPrestamos + (long) cantidadPrestamos * BYTES_PRESTAMO != inicioReservas
+                || inicioReservas + (long) cantidadReservas * BYTES_RESERVA != datos.capacity()
+                || librosRegistrados < 0 || librosRegistrados > cantidadLibros
+                || usuariosRegistrados < 0 || usuariosRegistrados > cantidadUsuarios) {
+            throw new IOException("Volcado dañado: " + archivo);
+        }
+    }
+
+    /**
+     * Busca y abre el volcado válido más reciente de un diario.
+     * Los volcados dañados o ilegibles, y los escritos para otro archivo de diario, se ignoran.
+     * @param archivoDiario Archivo del diario al que acompañan los volcados
+     * @param identidadDiario Identidad del diario abierto (ver Diario.getIdentidad)
+     * @return Volcado más reciente, o null si no hay ninguno válido
+     * @throws IOException Si no se puede listar el directorio
+     */
+    static VolcadoCatalogo abrirMasReciente(Path archivoDiario, long identidadDiario) throws IOException {
+        for (Path archivo : volcados(archivoDiario)) {
+            VolcadoCatalogo volcado;
+            try {
+                volcado = new VolcadoCatalogo(archivo);
+            } catch (IOException | RuntimeException e) {
+                continue; // Se prueba con el anterior
+            }
+            if (volcado.identidadDiario == identidadDiario) {
+                return volcado;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene la generación más alta entre los volcados de un diario, válidos o no, para
+     * que el siguiente volcado no reutilice el nombre de uno que quedó de otro diario.
+     * @param archivoDiario Archivo del diario
+     * @return Generación más alta, o 0 si no hay volcados
+     * @throws IOException Si no se puede listar el directorio
+     */
+    static long ultimaGeneracion(Path archivoDiario) throws IOException {
+        List<Path> archivos = volcados(archivoDiario);
+        return archivos.isEmpty() ? 0 : generacion(archivos.get(0), archivoDiario.getFileName() + SUFIJO);
+    }
+
+    /**
+     * Lista los volcados de un diario, del más nuevo al más viejo.
+     * @param archivoDiario Archivo del diario
+     * @return Archivos de volcado ordenados por generación descendente
+     * @throws IOException Si no se puede listar el directorio
+     */
+    private static List<Path> volcados(Path archivoDiario) throws IOException {
+        Path directorio = archivoDiario.toAbsolutePath().getParent();
+        String prefijo = archivoDiario.getFileName() + SUFIJO;
+        ArrayList<Path> archivos = new ArrayList<>();
+        try (DirectoryStream<Path> contenido = Files.newDirectoryStream(directorio, prefijo + "*")) {
+            for (Path archivo : contenido) {
+                if (generacion(archivo, prefijo) >= 0) {
+                    archivos.add(archivo);
+                }
+            }
+        }
+        archivos.sort(Collections.reverseOrder((a, b) -> Long.compare(generacion(a, prefijo), generacion(b, prefijo))));
+        return archivos;
+    }
+
+    /**
+     * Extrae la generación del nombre de un volcado.
+     * @param archivo Archivo de volcado
+     * @param prefijo Nombre del diario seguido de SUFIJO
+     * @return Generación, o -1 si el nombre no corresponde a un volcado
+     */
+    private static long generacion(Path archivo, String prefijo) {
+        try {
+            return Long.parseLong(archivo.getFileName().toString().substring(prefijo.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Borra los volcados de generaciones anteriores a una dada.
+     * Los que no se pueden borrar (por ejemplo, aún mapeados en Windows) quedan para la próxima vez.
+     * @param archivoDiario Archivo del diario
+     * @param generacionVigente Generación del volcado que se conserva
+     */
+    static void eliminarAnteriores(Path archivoDiario, long generacionVigente) {
+        try {
+            String prefijo = archivoDiario.getFileName() + SUFIJO;
+            for (Path archivo : volcados(archivoDiario)) {
+                if (generacion(archivo, prefijo) < generacionVigente) {
+                    try {
+                        Files.deleteIfExists(archivo);
+                    } catch (IOException e) {
+                        // Se reintenta en el siguiente volcado
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Se reintenta en el siguiente volcado
+        }
+    }
+
+    /**
+     * Escribe un volcado nuevo y lo abre. Se escribe en un archivo temporal que se
+     * renombra al terminar, así nunca queda a la vista un volcado a medias.
+     * @param archivoDiario Archivo del diario al que acompaña
+     * @param generacion Generación del volcado (mayor que la de los anteriores)
+     * @param posicionDiario Posición del diario que refleja el volcado
+     * @param identidadDiario Identidad del diario (ver Diario.getIdentidad)
+     * @param libros Libros a volcar, en el orden en que se cargarán: primero los registrados
+     *        y después los que solo siguen en préstamos
+     * @param librosRegistrados Cantidad de libros registrados al inicio de libros
+     * @param usuarios Usuarios a volcar, con el mismo orden que los libros
+     * @param usuariosRegistrados Cantidad de usuarios registrados al inicio de usuarios
+     * @param prestamos Préstamos activos a volcar
+     * @param fechaMultas Fecha de la última acumulación de multas (puede ser null)
+     * @param reservas Reservas a volcar, cada cola en su orden
+     * @param posicionLibro Posición de un libro dentro de libros (negativa si no está)
+     * @param posicionUsuario Posición de un usuario dentro de usuarios (negativa si no está)
+     * @param ultimoNumeroLibro Último número interno asignado a un libro
+     * @param ultimoNumeroUsuario Último número interno asignado a un usuario
+     * @return Volcado escrito, ya mapeado
+     * @throws IOException Si falla la escritura
+     */
+    static VolcadoCatalogo escribir(Path archivoDiario, long generacion, long posicionDiario, long identidadDiario,
+            List<Libro> libros, int librosRegistrados, List<Usuario> usuarios, int usuariosRegistrados,
+            List<Prestamo> prestamos, LocalDate fechaMultas, List<Reserva> reservas,
+            ToIntFunction<Libro> posicionLibro, ToIntFunction<Usuario> posicionUsuario,
+            int ultimoNumeroLibro, int ultimoNumeroUsuario) throws IOException {
+        Path archivo = archivoDiario.resolveSibling(archivoDiario.getFileName() + SUFIJO + generacion);
+        Path temporal = archivoDiario.resolveSibling(archivo.getFileName() + ".tmp");
+        int[] textos = new int[libros.size()];
+        int inicioColumnas;
+        int inicioUsuarios;
+        int inicioPrestamos;
+        int inicioReservas;
+        int prestamosEscritos = 0;
+        int reservasEscritas = 0;
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Escritor escritor = new Escritor(canal, CABECERA);
+            for (int i = 0; i < libros.size(); i++) {
+                textos[i] = escritor.posicion();
+                libros.get(i).escribirTextos(escritor);
+            }
+            inicioColumnas = escritor.posicion();
+            for (Libro libro : libros) {
+                escritor.largo(libro.claveIsbn);
+            }
+            for (Libro libro : libros) {
+                escritor.largo(((long) libro.getEjemplaresTotales() << 32)
+                        | (libro.getEjemplaresDisponibles() & 0xFFFFFFFFL));
+            }
+            for (Libro libro : libros) {
+                escritor.entero(libro.getAñoPublicacion());
+            }
+            for (int texto : textos) {
+                escritor.entero(texto);
+            }
+            for (Libro libro : libros) {
+                escritor.entero(libro.numero);
+            }
+            inicioUsuarios = escritor.posicion();
+            for (Usuario usuario : usuarios) {
+                escritor.texto(usuario.getNombre())
+                        .texto(usuario.getIdentificacion())
+                        .texto(usuario.getTipoUsuario())
+                        .largo(Double.doubleToLongBits(usuario.getMultaAcumulada()))
+                        .entero(usuario.numero);
+            }
+            inicioPrestamos = escritor.posicion();
+            for (Prestamo prestamo : prestamos) {
+                int libro = posicionLibro.applyAsInt(prestamo.getLibro());
+                int usuario = posicionUsuario.applyAsInt(prestamo.getUsuario());
+                if (libro >= 0 && usuario >= 0) {
+                    escritor.entero(libro).entero(usuario)
+                            .largo(diaEpoca(prestamo.getFechaPrestamo()))
+                            .largo(diaEpoca(prestamo.getFechaDevolucion()));
+                    prestamosEscritos++;
+                }
+            }
+            inicioReservas = escritor.posicion();
+            for (Reserva reserva : reservas) {
+                int libro = posicionLibro.applyAsInt(reserva.getLibro());
+                int usuario = posicionUsuario.applyAsInt(reserva.getUsuario());
+                if (libro >= 0 && usuario >= 0) {
+                    escritor.entero(libro).entero(usuario).largo(diaEpoca(reserva.getFecha()));
+                    reservasEscritas++;
+                }
+            }
+            escritor.vaciar();
+            escritor.posicion(); // Comprueba que el volcado completo quepa en un mapeo
+            ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+            cabecera.putInt(MAGICO).putInt(VERSION).putLong(generacion).putLong(posicionDiario)
+                    .putInt(escritor.suma())
+                    .putInt(libros.size()).putInt(usuarios.size()).putInt(prestamosEscritos)
+                    .putInt(inicioColumnas).putInt(inicioUsuarios).putInt(inicioPrestamos)
+                    .putInt(librosRegistrados).putInt(usuariosRegistrados)
+                    .putInt(fechaMultas != null ? (int) fechaMultas.toEpochDay() : SIN_FECHA_MULTAS)
+                    .putInt(reservasEscritas).putInt(inicioReservas)
+                    .putLong(identidadDiario)
+                    .putInt(ultimoNumeroLibro).putInt(ultimoNumeroUsuario)
+                    .clear();
+            while (cabecera.hasRemaining()) {
+                canal.write(cabecera, cabecera.position());
+            }
+            canal.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+        Files.move(temporal, archivo, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDirectorio(archivo.toAbsolutePath().getParent());
+        return new VolcadoCatalogo(archivo);
+    }
+
+    /**
+     * Sincroniza un directorio con el disco, para que un renombrado sobreviva a una caída.
+     * Donde no se puede abrir un directorio como archivo (Windows) no hace nada: allí el
+     * sistema de archivos ya registra el renombrado.
+     * @param directorio Directorio a sincronizar
+     * @throws IOException Si falla la sincronización
+     */
+    private static void sincronizarDirectorio(Path directorio) throws IOException {
+        FileChannel canal;
+        try {
+            canal = FileChannel.open(directorio, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (canal) {
+            canal.force(true);
+        }
+    }
+
+    /**
+     * Convierte una fecha en día desde la época (Long.MIN_VALUE si es null).
+     * @param fecha Fecha (puede ser null)
+     * @return Día desde la época
+     */
+    private static long diaEpoca(LocalDate fecha) {
+        return fecha == null ? Long.MIN_VALUE : fecha.toEpochDay();
+    }
+
+    /**
+     * Convierte un día desde la época en fecha.
+     * @param diaEpoca Día desde la época (Long.MIN_VALUE para null)
+     * @return Fecha (puede ser null)
+     */
+    private static LocalDate fecha(long diaEpoca) {
+        return diaEpoca == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(diaEpoca);
+    }
+
+    /**
+     * Obtiene la generación del volcado.
+     * @return Generación
+     */
+    long getGeneracion() {
+        return generacion;
+    }
+
+    /**
+     * Obtiene la fecha de la última acumulación de multas cuando se escribió el volcado.
+     * @return Fecha, o null si no se habían acumulado
+     */
+    LocalDate getFechaMultas() {
+        return diaMultas != SIN_FECHA_MULTAS ? LocalDate.ofEpochDay(diaMultas) : null;
+    }
+
+    /**
+     * Obtiene la posición del diario hasta la que llega el volcado.
+     * @return Posición en bytes dentro del diario
+     */
+    long getPosicionDiario() {
+        return posicionDiario;
+    }
+
+    /**
+     * Obtiene el último número interno asignado a un libro cuando se escribió el volcado.
+     * @return Último número de libro
+     */
+    int getUltimoNumeroLibro() {
+        return ultimoNumeroLibro;
+    }
+
+    /**
+     * Obtiene el último número interno asignado a un usuario cuando se escribió el volcado.
+     * @return Último número de usuario
+     */
+    int getUltimoNumeroUsuario() {
+        return ultimoNumeroUsuario;
+    }
+
+    /**
+     * Obtiene la cantidad de libros del volcado.
+     * @return Cantidad de libros
+     */
+    int getCantidadLibros() {
+        return cantidadLibros;
+    }
+
+    /**
+     * Obtiene la cantidad de libros registrados, que son los primeros del volcado.
+     * Los demás solo siguen en préstamos activos.
+     * @return Cantidad de libros registrados
+     */
+    int getLibrosRegistrados() {
+        return librosRegistrados;
+    }
+
+    /**
+     * Obtiene la cantidad de usuarios registrados, que son los primeros del volcado.
+     * Los demás solo siguen en préstamos activos.
+     * @return Cantidad de usuarios registrados
+     */
+    int getUsuariosRegistrados() {
+        return usuariosRegistrados;
+    }
+
+    /**
+     * Obtiene la cantidad de préstamos del volcado.
+     * @return Cantidad de préstamos
+     */
+    int getCantidadPrestamos() {
+        return cantidadPrestamos;
+    }
+
+    /**
+     * Crea el libro de una posición sin decodificar sus textos.
+     * @param indice Posición del libro en el volcado
+     * @return Libro cuyos textos se leerán de este volcado al primer acceso
+     */
+    Libro libro(int indice) {
+        long clave = datos.getLong(inicioColumnas + indice * 8);
+        long existencias = datos.getLong(inicioColumnas + cantidadLibros * 8 + indice * 8);
+        int año = datos.getInt(inicioColumnas + cantidadLibros * 16 + indice * 4);
+        Libro libro = new Libro(this, indice, clave, año, existencias);
+        libro.numero = datos.getInt(inicioColumnas + cantidadLibros * 24 + indice * 4);
+        return libro;
+    }
+
+    /**
+     * Decodifica los textos de un libro.
+     * @param indice Posición del libro en el volcado
+     * @return Título, autor e ISBN, en ese orden
+     */
+    String[] textosLibro(int indice) {
+        int[] posicion = {inicioTextos(indice)};
+        return new String[] {texto(posicion), texto(posicion), texto(posicion)};
+    }
+
+    /**
+     * Copia los textos de un libro, sin decodificarlos, a otro volcado en escritura.
+     * @param indice Posición del libro en este volcado
+     * @param escritor Escritor del volcado nuevo
+     * @throws IOException Si falla la escritura
+     */
+    void copiarTextos(int indice, Escritor escritor) throws IOException {
+        int inicio = inicioTextos(indice);
+        int fin = inicio;
+        for (int i = 0; i < 3; i++) {
+            fin += 4 + Math.max(0, datos.getInt(fin));
+        }
+        escritor.bytes(datos, inicio, fin - inicio);
+    }
+
+    /**
+     * Obtiene la posición de los textos de un libro.
+     * @param indice Posición del libro en el volcado
+     * @return Posición en el archivo
+     */
+    private int inicioTextos(int indice) {
+        return datos.getInt(inicioColumnas + cantidadLibros * 20 + indice * 4);
+    }
+
+    /**
+     * Decodifica todos los usuarios.
+     * @return Usuarios en el orden del volcado
+     */
+    ArrayList<Usuario> usuarios() {
+        ArrayList<Usuario> resultado = new ArrayList<>(cantidadUsuarios);
+        int[] posicion = {inicioUsuarios};
+        for (int i = 0; i < cantidadUsuarios; i++) {
+            Usuario usuario = new Usuario(texto(posicion), texto(posicion), texto(posicion));
+            double multa = Double.longBitsToDouble(datos.getLong(posicion[0]));
+            usuario.numero = datos.getInt(posicion[0] + 8);
+            posicion[0] += 12;
+            if (multa > 0) {
+                usuario.agregarMulta(multa);
+            }
+            resultado.add(usuario);
+        }
+        return resultado;
+    }
+
+    /**
+     * Reconstruye un préstamo a partir de los libros y usuarios ya cargados.
+     * @param indice Posición del préstamo en el volcado
+     * @param libros Libros en el orden del volcado
+     * @param usuarios Usuarios en el orden del volcado
+     * @return Préstamo
+     */
+    Prestamo prestamo(int indice, List<Libro> libros, List<Usuario> usuarios) {
+        int posicion = inicioPrestamos + indice * BYTES_PRESTAMO;
+        return new Prestamo(usuarios.get(datos.getInt(posicion + 4)), libros.get(datos.getInt(posicion)),
+                fecha(datos.getLong(posicion + 8)), fecha(datos.getLong(posicion + 16)));
+    }
+
+    /**
+     * Obtiene la cantidad de reservas del volcado.
+     * @return Cantidad de reservas
+     */
+    int getCantidadReservas() {
+        return cantidadReservas;
+    }
+
+    /**
+     * Reconstruye una reserva a partir de los libros y usuarios ya cargados.
+     * @param indice Posición de la reserva en el volcado
+     * @param libros Libros en el orden del volcado
+     * @param usuarios Usuarios en el orden del volcado
+     * @return Reserva
+     */
+    Reserva reserva(int indice, List<Libro> libros, List<Usuario> usuarios) {
+        int posicion = inicioReservas + indice * BYTES_RESERVA;
+        return new Reserva(libros.get(datos.getInt(posicion)), usuarios.get(datos.getInt(posicion + 4)),
+                fecha(datos.getLong(posicion + 8)));
+    }
+
+    /**
+     * Lee un texto y avanza la posición.
+     * @param posicion Arreglo de un elemento con la posición actual
+     * @return Texto leído (puede ser null)
+     */
+    private String texto(int[] posicion) {
+        int longitud = datos.getInt(posicion[0]);
+        posicion[0] += 4;
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        datos.get(posicion[0], bytes);
+        posicion[0] += longitud;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escribe un volcado de forma secuencial con un búfer fijo, calculando su CRC.
+     */
+    static final class Escritor {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private final CRC32C crc = new CRC32C();
+        private long posicion;
+
+        /**
+         * Constructor del escritor.
+         * @param canal Canal del archivo temporal
+         * @param inicio Posición desde la que se escribe (después de la cabecera)
+         */
+        private Escritor(FileChannel canal, int inicio) {
+            this.canal = canal;
+            this.posicion = inicio;
+        }
+
+        /**
+         * Obtiene la posición actual en el archivo.
+         * @return Posición en bytes
+         * @throws IOException Si el volcado ya supera los 2 GB
+         */
+        int posicion() throws IOException {
+            if (posicion > Integer.MAX_VALUE) {
+                throw new IOException("El volcado supera los 2 GB.");
+            }
+            return (int) posicion;
+        }
+
+        /**
+         * Escribe un int.
+         * @param valor Valor
+         * @return Este escritor
+         * @throws IOException Si falla la escritura
+         */
+        Escritor entero(int valor) throws IOException {
+            asegurar(4);
+            buffer.putInt(valor);
+            posicion += 4;
+            return this;
+        }
+
+        /**
+         * Escribe un long.
+         * @param valor Valor
+         * @return Este escritor
+         * @throws IOException Si falla la escritura
+         */
+        Escritor largo(long valor) throws IOException {
+            asegurar(8);
+            buffer.putLong(valor);
+            posicion += 8;
+            return this;
+        }
+
+        /**
+         * Escribe un texto en UTF-8 precedido de su longitud (-1 si es null).
+         * @param texto Texto (puede ser null)
+         * @return Este escritor
+         * @throws IOException Si falla la escritura
+         */
+        Escritor texto(String texto) throws IOException {
+            if (texto == null) {
+                return entero(-1);
+            }
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            entero(bytes.length);
+            return bytes(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+
+        /**
+         * Copia bytes tal cual.
+         * @param origen Búfer de origen (no se modifica su posición)
+         * @param inicio Posición inicial en el origen
+         * @param longitud Cantidad de bytes
+         * @return Este escritor
+         * @throws IOException Si falla la escritura
+         */
+        Escritor bytes(ByteBuffer origen, int inicio, int longitud) throws IOException {
+            int copiados = 0;
+            while (copiados < longitud) {
+                asegurar(1);
+                int trozo = Math.min(buffer.remaining(), longitud - copiados);
+                buffer.put(origen.slice(inicio + copiados, trozo));
+                copiados += trozo;
+                posicion += trozo;
+            }
+            return this;
+        }
+
+        /**
+         * Vacía el búfer si no tiene lugar para una cantidad de bytes.
+         * @param bytes Bytes que se van a escribir
+         * @throws IOException Si falla la escritura
+         */
+        private void asegurar(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                vaciar();
+            }
+        }
+
+        /**
+         * Escribe en el archivo lo que haya en el búfer.
+         * @throws IOException Si falla la escritura
+         */
+        void vaciar() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                canal.write(buffer, posicion - buffer.remaining());
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Obtiene el CRC32C de todo lo escrito después de la cabecera.
+         * @return Suma de verificación
+         */
+        int suma() {
+            return (int) crc.getValue();
+        }
+    }
+}
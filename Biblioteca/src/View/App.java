@@ -1,30 +1,141 @@
-package View;
-
-import Controller.Control;
-
-/**
- * Clase principal que inicia la aplicación del sistema de biblioteca.
- * <p>
- * Esta clase contiene el método main que sirve como punto de entrada
- * para la ejecución del programa.
- * </p>
- */
-public class App {
-    
-    /**
-     * Método principal que inicia la aplicación.
-     * <p>
-     * Crea las instancias necesarias del controlador y modelo,
-     * e inicia la interfaz de usuario mediante la clase LogicaVista.
-     * </p>
-     * 
-     * @param args Argumentos de línea de comandos (no utilizados en esta aplicación)
-     */
-    public static void main(String[] args) {
-        // Inicializa el controlador con una nueva instancia de Biblioteca
-        Control control = new Control(new Model.Biblioteca());
-        
-        // Inicia la lógica de la vista (interfaz de usuario)
-        LogicaVista.iniciarAplicacion(control);
-    }
+package View;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import Controller.Control;
+import Model.Biblioteca;
+import Model.Durabilidad;
+import Model.RepositorioJdbc;
+
+/**
+ * Clase principal que inicia la aplicación del sistema de biblioteca.
+ * <p>
+ * Esta clase contiene el método main que sirve como punto de entrada
+ * para la ejecución del programa.
+ * </p>
+ */
+public class App {
+    private static final String ARCHIVO_DIARIO = "biblioteca.diario";
+    private static final String CARPETA_HISTORIAL = "biblioteca.historial"; // Historial de devoluciones con base de datos
+    private static final long LATENCIA_DIARIO_MICROS = 2000; // Ventana para agrupar confirmaciones
+    private static final long MINUTOS_ENTRE_VOLCADOS = 10;
+    private static final String PROPIEDAD_PUERTO_HTTP = "biblioteca.puertoHttp"; // -Dbiblioteca.puertoHttp=8080
+    private static final String PROPIEDAD_DIRECCION_HTTP = "biblioteca.direccionHttp"; // -Dbiblioteca.direccionHttp=0.0.0.0
+    private static final String VARIABLE_CLAVE_HTTP = "BIBLIOTECA_CLAVE_HTTP"; // Variable de entorno, no propiedad: no aparece en la línea de comandos
+    
+    /**
+     * Método principal que inicia la aplicación.
+     * <p>
+     * Crea las instancias necesarias del controlador y modelo,
+     * e inicia la interfaz de usuario mediante la clase LogicaVista.
+     * Los cambios se guardan en un diario en el directorio de trabajo, con un
+     * volcado del catálogo cada pocos minutos y al salir, y se recuperan en la
+     * siguiente ejecución. Si se pasa una URL JDBC como argumento, los datos se
+     * guardan en esa base de datos en lugar del diario, y el historial de préstamos
+     * devueltos en la carpeta biblioteca.historial. Las multas de los préstamos
+     * vencidos se acumulan al iniciar y cada medianoche. Si se define la propiedad
+     * biblioteca.puertoHttp, las operaciones también se atienden por HTTP en ese
+     * puerto (ver ServidorHttp) mientras la consola está abierta: solo desde este
+     * equipo, salvo que biblioteca.direccionHttp indique otra dirección en la que
+     * escuchar. Las rutas con datos de usuarios exigen la clave de la variable de
+     * entorno BIBLIOTECA_CLAVE_HTTP; sin ella, solo se atiende el catálogo. Conviene
+     * iniciar la JVM con -Dsun.net.httpserver.nodelay=true.
+     * </p>
+     * 
+     * @param args Argumentos de línea de comandos: opcionalmente, la URL JDBC de la
+     *        base de datos (por ejemplo, jdbc:h2:./biblioteca)
+     */
+    public static void main(String[] args) {
+        // Con una URL JDBC, abre la base de datos; si no se puede, usa el diario
+        RepositorioJdbc baseDatos = null;
+        if (args.length > 0) {
+            try {
+                baseDatos = new RepositorioJdbc(args[0]);
+            } catch (SQLException e) {
+                System.out.println("No se pudo abrir la base de datos (" + e.getMessage() + "). Se usará el diario.");
+            }
+        }
+
+        // Abre la biblioteca recuperando su diario; si no se puede, trabaja solo en memoria
+        Biblioteca biblioteca;
+        if (baseDatos != null) {
+            try {
+                biblioteca = new Biblioteca(baseDatos.getLibros(), baseDatos.getUsuarios(), baseDatos.getPrestamos(),
+                        Paths.get(CARPETA_HISTORIAL));
+            } catch (IOException e) {
+                System.out.println("No se pudo abrir el historial de préstamos (" + e.getMessage()
+                        + "). Las devoluciones no se guardarán en él.");
+                biblioteca = new Biblioteca(baseDatos.getLibros(), baseDatos.getUsuarios(), baseDatos.getPrestamos());
+            }
+        } else {
+            try {
+                biblioteca = new Biblioteca(Paths.get(ARCHIVO_DIARIO), Durabilidad.SINCRONIZADA, LATENCIA_DIARIO_MICROS);
+            } catch (IOException e) {
+                System.out.println("No se pudo abrir el diario (" + e.getMessage() + "). Los cambios no se guardarán.");
+                biblioteca = new Biblioteca();
+            }
+            biblioteca.programarVolcados(MINUTOS_ENTRE_VOLCADOS, TimeUnit.MINUTES);
+        }
+        biblioteca.programarMultas();
+        biblioteca.setAvisoReservas(prestamo -> System.out.println("\nAviso: el libro \""
+                + prestamo.getLibro().getTitulo() + "\" reservado por " + prestamo.getUsuario().getNombre()
+                + " quedó prestado hasta el " + prestamo.getFechaDevolucion() + "."));
+        biblioteca.setAvisoCancelaciones(reserva -> System.out.println("\nAviso: se canceló la reserva de "
+                + reserva.getUsuario().getNombre() + " para \"" + reserva.getLibro().getTitulo()
+                + "\" porque tiene multas pendientes o ya alcanzó el límite de préstamos."));
+
+        // Inicializa el controlador con la instancia de Biblioteca
+        Control control = new Control(biblioteca);
+        
+        // Con un puerto configurado, atiende también las peticiones HTTP
+        ServidorHttp servidor = null;
+        int puertoHttp = Integer.getInteger(PROPIEDAD_PUERTO_HTTP, 0);
+        if (puertoHttp > 0) {
+            InetAddress direccionHttp = InetAddress.getLoopbackAddress();
+            String direccion = System.getProperty(PROPIEDAD_DIRECCION_HTTP);
+            if (direccion != null) {
+                try {
+                    direccionHttp = InetAddress.getByName(direccion);
+                } catch (UnknownHostException e) {
+                    System.out.println("Dirección HTTP no válida (" + direccion + "). Se escuchará solo en este equipo.");
+                }
+            }
+            String claveHttp = System.getenv(VARIABLE_CLAVE_HTTP);
+            if (claveHttp == null || claveHttp.isEmpty()) {
+                System.out.println("Sin " + VARIABLE_CLAVE_HTTP + ": por HTTP solo se atenderá el catálogo.");
+            }
+            servidor = new ServidorHttp(control, direccionHttp, puertoHttp, claveHttp);
+            try {
+                servidor.iniciar();
+                System.out.println("Servidor HTTP en el puerto " + servidor.getPuerto());
+            } catch (IOException e) {
+                System.out.println("No se pudo iniciar el servidor HTTP: " + e.getMessage());
+                servidor = null;
+            }
+        }
+        
+        // Inicia la lógica de la vista (interfaz de usuario)
+        LogicaVista.iniciarAplicacion(control);
+
+        if (servidor != null) {
+            servidor.detener();
+        }
+
+        try {
+            biblioteca.cerrar();
+        } catch (IOException e) {
+            System.out.println("No se pudo guardar el diario o el volcado: " + e.getMessage());
+        }
+        if (baseDatos != null) {
+            try {
+                baseDatos.close();
+            } catch (SQLException e) {
+                System.out.println("No se pudo cerrar la base de datos: " + e.getMessage());
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -1,572 +1,857 @@
-package View;
-
-import java.util.Scanner;
-import java.time.LocalDate;
-import Controller.Control;
-import Model.Usuario;
-import Model.Libro;
-
-/**
- * Clase que maneja la lógica de presentación y la interacción con el usuario.
- * <p>
- * Esta clase contiene todos los métodos necesarios para mostrar menús,
- * capturar entradas del usuario y mostrar resultados.
- * </p>
- */
-public class LogicaVista {
-    private static Scanner scanner = new Scanner(System.in);
-    
-    /**
-     * Inicia la aplicación mostrando el menú de inicio de sesión.
-     * @param control Instancia del controlador para manejar la lógica de negocio
-     */
-    public static void iniciarAplicacion(Control control) {
-        System.out.println("\n--- INICIO DE SESIÓN ---");
-        System.out.print("Ingrese su ID de usuario: ");
-        String idUsuario = scanner.nextLine();
-        
-        Usuario usuario = control.buscarUsuarioPorId(idUsuario);
-        if (usuario == null) {
-            System.out.println("Usuario no encontrado.");
-            return;
-        }
-        
-        if (usuario.esAdmin()) {
-            mostrarMenuAdmin(control, idUsuario);
-        } else {
-            mostrarMenuUsuario(control, idUsuario);
-        }
-    }
-
-    /**
-     * Muestra el menú principal para administradores.
-     * @param control Instancia del controlador
-     * @param idAdmin Identificación del administrador
-     */
-    private static void mostrarMenuAdmin(Control control, String idAdmin) {
-        while (true) {
-            System.out.println("\n--- MENÚ ADMINISTRADOR ---");
-            System.out.println("1. Gestión de Usuarios");
-            System.out.println("2. Gestión de Libros");
-            System.out.println("3. Gestión de Préstamos");
-            System.out.println("4. Consultar multas");
-            System.out.println("0. Salir");
-            System.out.print("Seleccione una opción: ");
-            
-            int opcion = leerEntero();
-            scanner.nextLine();
-            
-            switch (opcion) {
-                case 1: menuGestionUsuarios(control); break;
-                case 2: menuGestionLibrosAdmin(control); break;
-                case 3: menuGestionPrestamosAdmin(control); break;
-                case 4: consultarMultas(control); break;
-                case 0: return;
-                default: System.out.println("Opción no válida.");
-            }
-        }
-    }
-
-    /**
-     * Muestra el menú principal para usuarios regulares.
-     * @param control Instancia del controlador
-     * @param idUsuario Identificación del usuario
-     */
-    private static void mostrarMenuUsuario(Control control, String idUsuario) {
-        while (true) {
-            System.out.println("\n--- MENÚ USUARIO ---");
-            System.out.println("1. Buscar libros");
-            System.out.println("2. Mis préstamos actuales");
-            System.out.println("3. Pagar multas");
-            System.out.println("0. Salir");
-            System.out.print("Seleccione una opción: ");
-            
-            int opcion = leerEntero();
-            scanner.nextLine();
-            
-            switch (opcion) {
-                case 1: menuBusquedas(control); break;
-                case 2: mostrarPrestamosUsuario(control, idUsuario); break;
-                case 3: menuPagarMultas(control, idUsuario); break;
-                case 0: return;
-                default: System.out.println("Opción no válida.");
-            }
-        }
-    }
-
-    /**
-     * Muestra el submenú para gestión de usuarios.
-     * @param control Instancia del controlador
-     */
-    private static void menuGestionUsuarios(Control control) {
-        while (true) {
-            System.out.println("\n--- GESTIÓN DE USUARIOS ---");
-            System.out.println("1. Registrar nuevo usuario");
-            System.out.println("2. Eliminar usuario");
-            System.out.println("3. Actualizar tipo de usuario");
-            System.out.println("4. Buscar usuario");
-            System.out.println("0. Volver");
-            System.out.print("Selección: ");
-            
-            int opcion = leerEntero();
-            scanner.nextLine();
-            
-            switch (opcion) {
-                case 1: registrarUsuario(control); break;
-                case 2: eliminarUsuario(control); break;
-                case 3: actualizarTipoUsuario(control); break;
-                case 4: buscarUsuario(control); break;
-                case 0: return;
-                default: System.out.println("Opción no válida.");
-            }
-        }
-    }
-
-    /**
-     * Registra un nuevo usuario en el sistema.
-     * @param control Instancia del controlador
-     */
-    private static void registrarUsuario(Control control) {
-        System.out.println("\nREGISTRAR NUEVO USUARIO");
-        System.out.print("Nombre completo: ");
-        String nombre = scanner.nextLine();
-        System.out.print("Número de identificación: ");
-        String id = scanner.nextLine();
-        System.out.print("Tipo de usuario (Estudiante/Profesor/Ciudadano/Administrador): ");
-        String tipo = scanner.nextLine();
-        
-        if (control.registrarUsuario(nombre, id, tipo)) {
-            System.out.println("Usuario registrado exitosamente!");
-        } else {
-            System.out.println("Error al registrar usuario. Verifique los datos.");
-        }
-    }
-
-    /**
-     * Elimina un usuario del sistema.
-     * @param control Instancia del controlador
-     */
-    private static void eliminarUsuario(Control control) {
-        System.out.println("\nELIMINAR USUARIO");
-        System.out.print("Ingrese ID del usuario a eliminar: ");
-        String id = scanner.nextLine();
-        
-        if (control.eliminarUsuarioPorId(id)) {
-            System.out.println("Usuario eliminado correctamente!");
-        } else {
-            System.out.println("Usuario no encontrado o no se pudo eliminar.");
-        }
-    }
-
-    /**
-     * Muestra el submenú para gestión de libros (administrador).
-     * @param control Instancia del controlador
-     */
-    private static void menuGestionLibrosAdmin(Control control) {
-        while (true) {
-            System.out.println("\n--- GESTIÓN DE LIBROS (ADMIN) ---");
-            System.out.println("1. Agregar libro");
-            System.out.println("2. Eliminar libro");
-            System.out.println("3. Actualizar libro");
-            System.out.println("4. Mostrar todos");
-            System.out.println("0. Volver");
-            System.out.print("Selección: ");
-            
-            int opcion = leerEntero();
-            scanner.nextLine();
-            
-            switch (opcion) {
-                case 1: agregarLibro(control); break;
-                case 2: eliminarLibro(control); break;
-                case 3: actualizarLibro(control); break;
-                case 4: mostrarTodosLibros(control); break;
-                case 0: return;
-                default: System.out.println("Opción no válida.");
-            }
-        }
-    }
-
-    /**
-     * Agrega un nuevo libro al sistema.
-     * @param control Instancia del controlador
-     */
-    private static void agregarLibro(Control control) {
-        System.out.println("\nAGREGAR NUEVO LIBRO");
-        System.out.print("Título: ");
-        String titulo = scanner.nextLine();
-        
-        System.out.print("Autor: ");
-        String autor = scanner.nextLine();
-        
-        System.out.print("Año publicación: ");
-        int año = leerEntero();
-        scanner.nextLine();
-        
-        if (año > LocalDate.now().getYear()) {
-            System.out.println("Error: No se puede agregar un libro con año futuro.");
-            return;
-        }
-        
-        System.out.print("ISBN: ");
-        String isbn = scanner.nextLine();
-        
-        System.out.print("Ejemplares disponibles: ");
-        int ejemplares = leerEntero();
-        scanner.nextLine();
-        
-        if (control.agregarLibro(titulo, autor, año, isbn, ejemplares)) {
-            System.out.println("Libro agregado exitosamente!");
-        } else {
-            System.out.println("Error al agregar libro. Verifique los datos.");
-        }
-    }
-
-    /**
-     * Elimina un libro del sistema.
-     * @param control Instancia del controlador
-     */
-    private static void eliminarLibro(Control control) {
-        System.out.println("\nELIMINAR LIBRO");
-        System.out.print("Ingrese ISBN del libro a eliminar: ");
-        String isbn = scanner.nextLine();
-        
-        if (control.eliminarLibroPorIsbn(isbn)) {
-            System.out.println("Libro eliminado correctamente!");
-        } else {
-            System.out.println("Libro no encontrado o no se pudo eliminar.");
-        }
-    }
-
-    /**
-     * Actualiza la información de un libro existente.
-     * @param control Instancia del controlador
-     */
-    private static void actualizarLibro(Control control) {
-        System.out.println("\nACTUALIZAR LIBRO");
-        System.out.print("Ingrese ISBN del libro a actualizar: ");
-        String isbn = scanner.nextLine();
-        
-        System.out.print("Nuevo título (dejar vacío para no cambiar): ");
-        String nuevoTitulo = scanner.nextLine();
-        
-        System.out.print("Nuevo autor (dejar vacío para no cambiar): ");
-        String nuevoAutor = scanner.nextLine();
-        
-        System.out.print("Nuevo año de publicación (0 para no cambiar): ");
-        int nuevoAño = leerEntero();
-        scanner.nextLine();
-        
-        System.out.print("Nuevo número de ejemplares (0 para no cambiar): ");
-        int nuevosEjemplares = leerEntero();
-        scanner.nextLine();
-        
-        if (control.actualizarLibro(isbn, 
-            nuevoTitulo.isEmpty() ? null : nuevoTitulo,
-            nuevoAutor.isEmpty() ? null : nuevoAutor,
-            nuevoAño == 0 ? -1 : nuevoAño,
-            nuevosEjemplares == 0 ? -1 : nuevosEjemplares)) {
-            System.out.println("Libro actualizado correctamente!");
-        } else {
-            System.out.println("No se pudo actualizar. Verifique el ISBN.");
-        }
-    }
-
-    /**
-     * Muestra todos los libros registrados en el sistema.
-     * @param control Instancia del controlador
-     */
-    private static void mostrarTodosLibros(Control control) {
-        System.out.println("\nLISTA COMPLETA DE LIBROS");
-        String listaLibros = control.mostrarLibros();
-        System.out.println(listaLibros.isEmpty() ? "No hay libros registrados." : listaLibros);
-    }
-
-    /**
-     * Muestra el submenú para gestión de préstamos (administrador).
-     * @param control Instancia del controlador
-     */
-    private static void menuGestionPrestamosAdmin(Control control) {
-        while (true) {
-            System.out.println("\n--- GESTIÓN DE PRÉSTAMOS (ADMIN) ---");
-            System.out.println("1. Registrar préstamo");
-            System.out.println("2. Registrar devolución");
-            System.out.println("3. Ver préstamos activos");
-            System.out.println("0. Volver");
-            System.out.print("Selección: ");
-            
-            int opcion = leerEntero();
-            scanner.nextLine();
-            
-            switch (opcion) {
-                case 1: registrarPrestamo(control); break;
-                case 2: registrarDevolucion(control); break;
-                case 3: mostrarPrestamosActivos(control); break;
-                case 0: return;
-                default: System.out.println("Opción no válida.");
-            }
-        }
-    }
-
-    /**
-     * Registra un nuevo préstamo en el sistema.
-     * @param control Instancia del controlador
-     */
-    private static void registrarPrestamo(Control control) {
-        System.out.println("\nREGISTRAR PRÉSTAMO");
-        System.out.print("ISBN del libro: ");
-        String isbn = scanner.nextLine();
-        
-        System.out.print("ID del usuario: ");
-        String id = scanner.nextLine();
-        
-        if (control.prestarLibro(isbn, id)) {
-            System.out.println("Préstamo registrado con éxito!");
-            System.out.println("Fecha de devolución: " + LocalDate.now().plusDays(30));
-        } else {
-            System.out.println("No se pudo registrar el préstamo. Verifique:");
-            System.out.println("- Disponibilidad del libro");
-            System.out.println("- ID de usuario válido");
-            System.out.println("- Usuario no excede límite de préstamos (3)");
-            System.out.println("- Usuario no tiene multas pendientes");
-        }
-    }
-
-    /**
-     * Registra la devolución de un libro prestado.
-     * @param control Instancia del controlador
-     */
-    private static void registrarDevolucion(Control control) {
-        System.out.println("\nREGISTRAR DEVOLUCIÓN");
-        System.out.print("ISBN del libro: ");
-        String isbn = scanner.nextLine();
-        
-        System.out.print("ID del usuario: ");
-        String id = scanner.nextLine();
-        
-        System.out.println("Fecha de devolución registrada: " + LocalDate.now());
-        
-        if (control.devolverLibro(isbn, id)) {
-            System.out.println("Devolución registrada con éxito!");
-            
-            double multa = control.calcularMulta(isbn, id);
-            if (multa > 0) {
-                System.out.printf("¡Atención! Multa generada: $%.2f%n", multa);
-            }
-        } else {
-            System.out.println("No se pudo registrar la devolución. Verifique:");
-            System.out.println("- El libro estaba prestado a este usuario");
-            System.out.println("- Los datos son correctos");
-        }
-    }
-
-    /**
-     * Muestra todos los préstamos activos en el sistema.
-     * @param control Instancia del controlador
-     */
-    private static void mostrarPrestamosActivos(Control control) {
-        System.out.println("\nPRÉSTAMOS ACTIVOS");
-        String prestamos = control.mostrarPrestamosActivos();
-        System.out.println(prestamos.isEmpty() ? "No hay préstamos activos." : prestamos);
-    }
-
-    /**
-     * Muestra los préstamos activos de un usuario específico.
-     * @param control Instancia del controlador
-     * @param idUsuario Identificación del usuario
-     */
-    private static void mostrarPrestamosUsuario(Control control, String idUsuario) {
-        System.out.println("\n--- MIS PRÉSTAMOS ---");
-        String prestamos = control.obtenerPrestamosUsuario(idUsuario);
-        System.out.println(prestamos.isEmpty() ? "No tiene préstamos activos." : prestamos);
-    }
-
-    /**
-     * Consulta las multas de un usuario específico.
-     * @param control Instancia del controlador
-     */
-    private static void consultarMultas(Control control) {
-        System.out.print("\nIngrese ID del usuario: ");
-        String id = scanner.nextLine();
-        
-        double multa = control.consultarMultaUsuario(id);
-        if (multa > 0) {
-            System.out.printf("Multa pendiente: $%.2f%n", multa);
-        } else {
-            System.out.println("El usuario no tiene multas pendientes.");
-        }
-    }
-
-    /**
-     * Muestra el menú para pagar multas.
-     * @param control Instancia del controlador
-     * @param idUsuario Identificación del usuario
-     */
-    private static void menuPagarMultas(Control control, String idUsuario) {
-        double multa = control.consultarMultaUsuario(idUsuario);
-        if (multa <= 0) {
-            System.out.println("\nNo tiene multas pendientes.");
-            return;
-        }
-        
-        System.out.printf("\nMulta pendiente: $%.2f%n", multa);
-        System.out.print("Ingrese monto a pagar: ");
-        double pago = scanner.nextDouble();
-        scanner.nextLine();
-        
-        if (control.pagarMulta(idUsuario, pago)) {
-            System.out.println("Pago realizado exitosamente!");
-        } else {
-            System.out.println("Error al procesar el pago.");
-        }
-    }
-
-    /**
-     * Muestra el submenú para búsqueda de libros.
-     * @param control Instancia del controlador
-     */
-    private static void menuBusquedas(Control control) {
-        while (true) {
-            System.out.println("\n--- BÚSQUEDAS ---");
-            System.out.println("1. Buscar libro por ISBN");
-            System.out.println("2. Buscar libros por título");
-            System.out.println("3. Buscar libros por autor");
-            System.out.println("4. Verificar disponibilidad");
-            System.out.println("0. Volver");
-            System.out.print("Selección: ");
-            
-            int opcion = leerEntero();
-            scanner.nextLine();
-            
-            switch (opcion) {
-                case 1: buscarPorISBN(control); break;
-                case 2: buscarPorTitulo(control); break;
-                case 3: buscarPorAutor(control); break;
-                case 4: verificarDisponibilidad(control); break;
-                case 0: return;
-                default: System.out.println("Opción no válida.");
-            }
-        }
-    }
-
-    /**
-     * Busca un libro por su ISBN.
-     * @param control Instancia del controlador
-     */
-    private static void buscarPorISBN(Control control) {
-        System.out.println("\nBUSCAR POR ISBN");
-        System.out.print("Ingrese ISBN: ");
-        String isbn = scanner.nextLine();
-        
-        Libro libro = control.buscarLibroPorIsbn(isbn);
-        if (libro != null) {
-            mostrarDetallesLibro(libro);
-        } else {
-            System.out.println("Libro no encontrado.");
-        }
-    }
-
-    /**
-     * Busca libros por título.
-     * @param control Instancia del controlador
-     */
-    private static void buscarPorTitulo(Control control) {
-        System.out.println("\nBUSCAR POR TÍTULO");
-        System.out.print("Ingrese título: ");
-        String titulo = scanner.nextLine();
-        
-        String resultado = control.buscarLibrosPorTitulo(titulo);
-        System.out.println(resultado.isEmpty() ? "No se encontraron libros." : resultado);
-    }
-
-    /**
-     * Busca libros por autor.
-     * @param control Instancia del controlador
-     */
-    private static void buscarPorAutor(Control control) {
-        System.out.println("\nBUSCAR POR AUTOR");
-        System.out.print("Ingrese autor: ");
-        String autor = scanner.nextLine();
-        
-        String resultado = control.buscarLibrosPorAutor(autor);
-        System.out.println(resultado.isEmpty() ? "No se encontraron libros." : resultado);
-    }
-
-    /**
-     * Verifica la disponibilidad de un libro.
-     * @param control Instancia del controlador
-     */
-    private static void verificarDisponibilidad(Control control) {
-        System.out.println("\nVERIFICAR DISPONIBILIDAD");
-        System.out.print("Ingrese ISBN: ");
-        String isbn = scanner.nextLine();
-        
-        String disponibilidad = control.verificarDisponibilidad(isbn);
-        System.out.println(disponibilidad);
-    }
-
-    /**
-     * Muestra los detalles de un libro específico.
-     * @param libro Libro a mostrar
-     */
-    private static void mostrarDetallesLibro(Libro libro) {
-        System.out.println("\nDETALLES DEL LIBRO");
-        System.out.println("Título: " + libro.getTitulo());
-        System.out.println("Autor: " + libro.getAutor());
-        System.out.println("Año: " + libro.getAñoPublicacion());
-        System.out.println("ISBN: " + libro.getIsbn());
-        System.out.println("Disponibles: " + libro.getEjemplaresDisponibles());
-        System.out.println("Estado: " + (libro.getEjemplaresDisponibles() > 0 ? "Disponible" : "Agotado"));
-    }
-
-    /**
-     * Lee un número entero desde la entrada estándar con validación.
-     * @return Entero válido ingresado por el usuario
-     */
-    private static int leerEntero() {
-        while (true) {
-            try {
-                return scanner.nextInt();
-            } catch (Exception e) {
-                System.out.print("Entrada inválida. Ingrese un número: ");
-                scanner.next();
-            }
-        }
-    }
-
-    /**
-     * Actualiza el tipo de un usuario existente.
-     * @param control Instancia del controlador
-     */
-    private static void actualizarTipoUsuario(Control control) {
-        System.out.print("Ingrese la identificación del usuario: ");
-        String identificacion = scanner.nextLine();
-        
-        Usuario usuario = control.buscarUsuarioPorId(identificacion);
-        if (usuario == null) {
-            System.out.println("Usuario no encontrado.");
-            return;
-        }
-    
-        System.out.print("Ingrese el nuevo tipo de usuario: ");
-        String nuevoTipo = scanner.nextLine();
-        usuario.setTipoUsuario(nuevoTipo);
-        
-        System.out.println("Tipo de usuario actualizado con éxito.");
-    }
-
-    /**
-     * Busca un usuario por su identificación.
-     * @param control Instancia del controlador
-     */
-    private static void buscarUsuario(Control control) {
-        System.out.print("Ingrese la identificación del usuario: ");
-        String identificacion = scanner.nextLine();
-        
-        Usuario usuario = control.buscarUsuarioPorId(identificacion);
-        if (usuario != null) {
-            System.out.println("Usuario encontrado: " + usuario);
-        } else {
-            System.out.println("Usuario no encontrado.");
-        }
-    }
+package View;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.Function;
+import java.time.LocalDate;
+import Controller.Control;
+import Model.Usuario;
+import Model.Libro;
+import Model.Pagina;
+import Model.InformeImportacion;
+
+/**
+ * Clase que maneja la lógica de presentación y la interacción con el usuario.
+ * <p>
+ * Esta clase contiene todos los métodos necesarios para mostrar menús,
+ * capturar entradas del usuario y mostrar resultados.
+ * </p>
+ */
+public class LogicaVista {
+    private static Scanner scanner = new Scanner(System.in);
+    private static final int TAMAÑO_PAGINA = 10;
+    private static final int MAXIMO_RECHAZOS_MOSTRADOS = 20;
+    
+    /**
+     * Inicia la aplicación mostrando el menú de inicio de sesión.
+     * @param control Instancia del controlador para manejar la lógica de negocio
+     */
+    public static void iniciarAplicacion(Control control) {
+        System.out.println("\n--- INICIO DE SESIÓN ---");
+        System.out.print("Ingrese su ID de usuario: ");
+        String idUsuario = scanner.nextLine();
+        
+        Usuario usuario = control.buscarUsuarioPorId(idUsuario);
+        if (usuario == null) {
+            System.out.println("Usuario no encontrado.");
+            return;
+        }
+        
+        if (usuario.esAdmin()) {
+            mostrarMenuAdmin(control, idUsuario);
+        } else {
+            mostrarMenuUsuario(control, idUsuario);
+        }
+    }
+
+    /**
+     * Muestra el menú principal para administradores.
+     * @param control Instancia del controlador
+     * @param idAdmin Identificación del administrador
+     */
+    private static void mostrarMenuAdmin(Control control, String idAdmin) {
+        while (true) {
+            System.out.println("\n--- MENÚ ADMINISTRADOR ---");
+            System.out.println("1. Gestión de Usuarios");
+            System.out.println("2. Gestión de Libros");
+            System.out.println("3. Gestión de Préstamos");
+            System.out.println("4. Consultar multas");
+            System.out.println("0. Salir");
+            System.out.print("Seleccione una opción: ");
+            
+            int opcion = leerEntero();
+            scanner.nextLine();
+            
+            switch (opcion) {
+                case 1: menuGestionUsuarios(control); break;
+                case 2: menuGestionLibrosAdmin(control); break;
+                case 3: menuGestionPrestamosAdmin(control); break;
+                case 4: consultarMultas(control); break;
+                case 0: return;
+                default: System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    /**
+     * Muestra el menú principal para usuarios regulares.
+     * @param control Instancia del controlador
+     * @param idUsuario Identificación del usuario
+     */
+    private static void mostrarMenuUsuario(Control control, String idUsuario) {
+        while (true) {
+            System.out.println("\n--- MENÚ USUARIO ---");
+            System.out.println("1. Buscar libros");
+            System.out.println("2. Mis préstamos actuales");
+            System.out.println("3. Pagar multas");
+            System.out.println("4. Mi historial de préstamos");
+            System.out.println("5. Reservar un libro");
+            System.out.println("6. Mis reservas");
+            System.out.println("0. Salir");
+            System.out.print("Seleccione una opción: ");
+            
+            int opcion = leerEntero();
+            scanner.nextLine();
+            
+            switch (opcion) {
+                case 1: menuBusquedas(control); break;
+                case 2: mostrarPrestamosUsuario(control, idUsuario); break;
+                case 3: menuPagarMultas(control, idUsuario); break;
+                case 4: System.out.println(control.historialDeUsuario(idUsuario, 0)); break;
+                case 5: reservarLibro(control, idUsuario); break;
+                case 6: menuReservas(control, idUsuario); break;
+                case 0: return;
+                default: System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    /**
+     * Muestra el submenú para gestión de usuarios.
+     * @param control Instancia del controlador
+     */
+    private static void menuGestionUsuarios(Control control) {
+        while (true) {
+            System.out.println("\n--- GESTIÓN DE USUARIOS ---");
+            System.out.println("1. Registrar nuevo usuario");
+            System.out.println("2. Eliminar usuario");
+            System.out.println("3. Actualizar tipo de usuario");
+            System.out.println("4. Buscar usuario");
+            System.out.println("0. Volver");
+            System.out.print("Selección: ");
+            
+            int opcion = leerEntero();
+            scanner.nextLine();
+            
+            switch (opcion) {
+                case 1: registrarUsuario(control); break;
+                case 2: eliminarUsuario(control); break;
+                case 3: actualizarTipoUsuario(control); break;
+                case 4: buscarUsuario(control); break;
+                case 0: return;
+                default: System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    /**
+     * Registra un nuevo usuario en el sistema.
+     * @param control Instancia del controlador
+     */
+    private static void registrarUsuario(Control control) {
+        System.out.println("\nREGISTRAR NUEVO USUARIO");
+        System.out.print("Nombre completo: ");
+        String nombre = scanner.nextLine();
+        System.out.print("Número de identificación: ");
+        String id = scanner.nextLine();
+        System.out.print("Tipo de usuario (Estudiante/Profesor/Ciudadano/Administrador): ");
+        String tipo = scanner.nextLine();
+        
+        if (control.registrarUsuario(nombre, id, tipo)) {
+            System.out.println("Usuario registrado exitosamente!");
+        } else {
+            System.out.println("Error al registrar usuario. Verifique los datos.");
+        }
+    }
+
+    /**
+     * Elimina un usuario del sistema.
+     * @param control Instancia del controlador
+     */
+    private static void eliminarUsuario(Control control) {
+        System.out.println("\nELIMINAR USUARIO");
+        System.out.print("Ingrese ID del usuario a eliminar: ");
+        String id = scanner.nextLine();
+        
+        if (control.eliminarUsuarioPorId(id)) {
+            System.out.println("Usuario eliminado correctamente!");
+        } else {
+            System.out.println("Usuario no encontrado o no se pudo eliminar.");
+        }
+    }
+
+    /**
+     * Muestra el submenú para gestión de libros (administrador).
+     * @param control Instancia del controlador
+     */
+    private static void menuGestionLibrosAdmin(Control control) {
+        while (true) {
+            System.out.println("\n--- GESTIÓN DE LIBROS (ADMIN) ---");
+            System.out.println("1. Agregar libro");
+            System.out.println("2. Eliminar libro");
+            System.out.println("3. Actualizar libro");
+            System.out.println("4. Mostrar todos");
+            System.out.println("5. Importar libros desde archivo (CSV/TSV)");
+            System.out.println("6. Exportar catálogo a archivo");
+            System.out.println("0. Volver");
+            System.out.print("Selección: ");
+            
+            int opcion = leerEntero();
+            scanner.nextLine();
+            
+            switch (opcion) {
+                case 1: agregarLibro(control); break;
+                case 2: eliminarLibro(control); break;
+                case 3: actualizarLibro(control); break;
+                case 4: mostrarTodosLibros(control); break;
+                case 5: importarLibros(control); break;
+                case 6: exportarLibros(control); break;
+                case 0: return;
+                default: System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    /**
+     * Agrega un nuevo libro al sistema.
+     * @param control Instancia del controlador
+     */
+    private static void agregarLibro(Control control) {
+        System.out.println("\nAGREGAR NUEVO LIBRO");
+        System.out.print("Título: ");
+        String titulo = scanner.nextLine();
+        
+        System.out.print("Autor: ");
+        String autor = scanner.nextLine();
+        
+        System.out.print("Año publicación: ");
+        int año = leerEntero();
+        scanner.nextLine();
+        
+        if (año > LocalDate.now().getYear()) {
+            System.out.println("Error: No se puede agregar un libro con año futuro.");
+            return;
+        }
+        
+        System.out.print("ISBN: ");
+        String isbn = scanner.nextLine();
+        
+        System.out.print("Ejemplares disponibles: ");
+        int ejemplares = leerEntero();
+        scanner.nextLine();
+        
+        if (control.agregarLibro(titulo, autor, año, isbn, ejemplares)) {
+            System.out.println("Libro agregado exitosamente!");
+        } else {
+            System.out.println("Error al agregar libro. Verifique los datos.");
+        }
+    }
+
+    /**
+     * Importa libros en masa desde un archivo y muestra el informe de la importación.
+     * @param control Instancia del controlador
+     */
+    private static void importarLibros(Control control) {
+        System.out.println("\nIMPORTAR LIBROS");
+        System.out.println("Columnas: título, autor, año, ISBN, ejemplares (separadas por coma o tabulador)");
+        System.out.print("Ruta del archivo: ");
+        String ruta = scanner.nextLine().trim();
+        
+        InformeImportacion informe = control.importarLibros(ruta);
+        if (informe == null) {
+            System.out.println("No se pudo leer el archivo.");
+        } else {
+            System.out.println(informe.resumen(MAXIMO_RECHAZOS_MOSTRADOS));
+        }
+    }
+
+    /**
+     * Elimina un libro del sistema.
+     * @param control Instancia del controlador
+     */
+    private static void eliminarLibro(Control control) {
+        System.out.println("\nELIMINAR LIBRO");
+        System.out.print("Ingrese ISBN del libro a eliminar: ");
+        String isbn = scanner.nextLine();
+        
+        if (control.eliminarLibroPorIsbn(isbn)) {
+            System.out.println("Libro eliminado correctamente!");
+        } else {
+            System.out.println("Libro no encontrado o no se pudo eliminar.");
+        }
+    }
+
+    /**
+     * Actualiza la información de un libro existente.
+     * @param control Instancia del controlador
+     */
+    private static void actualizarLibro(Control control) {
+        System.out.println("\nACTUALIZAR LIBRO");
+        System.out.print("Ingrese ISBN del libro a actualizar: ");
+        String isbn = scanner.nextLine();
+        
+        System.out.print("Nuevo título (dejar vacío para no cambiar): ");
+        String nuevoTitulo = scanner.nextLine();
+        
+        System.out.print("Nuevo autor (dejar vacío para no cambiar): ");
+        String nuevoAutor = scanner.nextLine();
+        
+        System.out.print("Nuevo año de publicación (0 para no cambiar): ");
+        int nuevoAño = leerEntero();
+        scanner.nextLine();
+        
+        System.out.print("Nuevo número de ejemplares (0 para no cambiar): ");
+        int nuevosEjemplares = leerEntero();
+        scanner.nextLine();
+        
+        if (control.actualizarLibro(isbn, 
+            nuevoTitulo.isEmpty() ? null : nuevoTitulo,
+            nuevoAutor.isEmpty() ? null : nuevoAutor,
+            nuevoAño == 0 ? -1 : nuevoAño,
+            nuevosEjemplares == 0 ? -1 : nuevosEjemplares)) {
+            System.out.println("Libro actualizado correctamente!");
+        } else {
+            System.out.println("No se pudo actualizar. Verifique el ISBN.");
+        }
+    }
+
+    /**
+     * Muestra todos los libros registrados en el sistema.
+     * @param control Instancia del controlador
+     */
+    private static void mostrarTodosLibros(Control control) {
+        System.out.println("\nLISTA COMPLETA DE LIBROS");
+        mostrarPorPaginas(cursor -> control.mostrarLibros(cursor, TAMAÑO_PAGINA), control::formatearListaLibros);
+    }
+
+    /**
+     * Formato con el que se escriben los elementos de una página.
+     * @param <T> Tipo de los elementos
+     */
+    private interface Formato<T> {
+        /**
+         * Escribe los elementos de una página.
+         * @param elementos Elementos de la página
+         * @param salida Destino del listado
+         * @throws IOException Si falla la escritura
+         */
+        void escribir(List<T> elementos, Writer salida) throws IOException;
+    }
+
+    /**
+     * Muestra un listado página por página, pidiendo cada página con el cursor de la
+     * anterior mientras el usuario quiera seguir y haya más resultados.
+     * @param <T> Tipo de los elementos
+     * @param paginas Obtiene la página que empieza en un cursor (null para la primera)
+     * @param formato Formato de los elementos
+     */
+    private static <T> void mostrarPorPaginas(Function<String, Pagina<T>> paginas, Formato<T> formato) {
+        Writer salida = new OutputStreamWriter(System.out);
+        String cursor = null;
+        while (true) {
+            Pagina<T> pagina = paginas.apply(cursor);
+            if (pagina == null) {
+                System.out.println("No se pudo obtener la página.");
+                return;
+            }
+            try {
+                formato.escribir(pagina.getElementos(), salida);
+            } catch (IOException e) {
+                System.out.println("Error al mostrar el listado: " + e.getMessage());
+                return;
+            }
+            System.out.println();
+            if (!pagina.hayMas()) {
+                return;
+            }
+            System.out.print("Enter para ver la siguiente página, 0 para volver: ");
+            if (scanner.nextLine().trim().equals("0")) {
+                return;
+            }
+            cursor = pagina.getCursorSiguiente();
+        }
+    }
+
+    /**
+     * Exporta el listado de todos los libros a un archivo.
+     * @param control Instancia del controlador
+     */
+    private static void exportarLibros(Control control) {
+        System.out.println("\nEXPORTAR CATÁLOGO");
+        System.out.print("Ruta del archivo: ");
+        String ruta = scanner.nextLine().trim();
+        
+        if (control.exportarLibros(ruta)) {
+            System.out.println("Catálogo exportado correctamente!");
+        } else {
+            System.out.println("No se pudo escribir el archivo.");
+        }
+    }
+
+    /**
+     * Muestra el submenú para gestión de préstamos (administrador).
+     * @param control Instancia del controlador
+     */
+    private static void menuGestionPrestamosAdmin(Control control) {
+        while (true) {
+            System.out.println("\n--- GESTIÓN DE PRÉSTAMOS (ADMIN) ---");
+            System.out.println("1. Registrar préstamo");
+            System.out.println("2. Registrar devolución");
+            System.out.println("3. Ver préstamos activos");
+            System.out.println("4. Historial de préstamos");
+            System.out.println("5. Ver préstamos vencidos");
+            System.out.println("6. Registrar préstamo de varios libros");
+            System.out.println("7. Registrar devolución de varios libros");
+            System.out.println("0. Volver");
+            System.out.print("Selección: ");
+            
+            int opcion = leerEntero();
+            scanner.nextLine();
+            
+            switch (opcion) {
+                case 1: registrarPrestamo(control); break;
+                case 2: registrarDevolucion(control); break;
+                case 3: mostrarPrestamosActivos(control); break;
+                case 4: consultarHistorial(control); break;
+                case 5: mostrarPrestamosVencidos(control); break;
+                case 6: registrarPrestamoVarios(control); break;
+                case 7: registrarDevolucionVarios(control); break;
+                case 0: return;
+                default: System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    /**
+     * Registra un nuevo préstamo en el sistema.
+     * @param control Instancia del controlador
+     */
+    private static void registrarPrestamo(Control control) {
+        System.out.println("\nREGISTRAR PRÉSTAMO");
+        System.out.print("ISBN del libro: ");
+        String isbn = scanner.nextLine();
+        
+        System.out.print("ID del usuario: ");
+        String id = scanner.nextLine();
+        
+        if (control.prestarLibro(isbn, id)) {
+            System.out.println("Préstamo registrado con éxito!");
+            System.out.println("Fecha de devolución: " + LocalDate.now().plusDays(30));
+        } else {
+            System.out.println("No se pudo registrar el préstamo. Verifique:");
+            System.out.println("- Disponibilidad del libro");
+            System.out.println("- ID de usuario válido");
+            System.out.println("- Usuario no excede límite de préstamos (3)");
+            System.out.println("- Usuario no tiene multas pendientes");
+        }
+    }
+
+    /**
+     * Registra la devolución de un libro prestado.
+     * @param control Instancia del controlador
+     */
+    private static void registrarDevolucion(Control control) {
+        System.out.println("\nREGISTRAR DEVOLUCIÓN");
+        System.out.print("ISBN del libro: ");
+        String isbn = scanner.nextLine();
+        
+        System.out.print("ID del usuario: ");
+        String id = scanner.nextLine();
+        
+        System.out.println("Fecha de devolución registrada: " + LocalDate.now());
+        
+        if (control.devolverLibro(isbn, id)) {
+            System.out.println("Devolución registrada con éxito!");
+            
+            double multa = control.calcularMulta(isbn, id);
+            if (multa > 0) {
+                System.out.printf("¡Atención! Multa generada: $%.2f%n", multa);
+            }
+        } else {
+            System.out.println("No se pudo registrar la devolución. Verifique:");
+            System.out.println("- El libro estaba prestado a este usuario");
+            System.out.println("- Los datos son correctos");
+        }
+    }
+
+    /**
+     * Registra el préstamo de varios libros a un mismo usuario.
+     * @param control Instancia del controlador
+     */
+    private static void registrarPrestamoVarios(Control control) {
+        System.out.println("\nREGISTRAR PRÉSTAMO DE VARIOS LIBROS");
+        System.out.print("ISBN de los libros (separados por comas): ");
+        List<String> isbns = leerLista();
+
+        System.out.print("ID del usuario: ");
+        String id = scanner.nextLine();
+
+        System.out.print("¿Prestar solo si se pueden prestar todos? (s/n): ");
+        boolean todos = scanner.nextLine().trim().equalsIgnoreCase("s");
+
+        boolean[] prestados = control.prestarLibros(isbns, id, todos);
+        mostrarResultadosLote(isbns, prestados, "prestado");
+        System.out.println("Fecha de devolución: " + LocalDate.now().plusDays(30));
+    }
+
+    /**
+     * Registra la devolución de varios libros de un mismo usuario.
+     * @param control Instancia del controlador
+     */
+    private static void registrarDevolucionVarios(Control control) {
+        System.out.println("\nREGISTRAR DEVOLUCIÓN DE VARIOS LIBROS");
+        System.out.print("ISBN de los libros (separados por comas): ");
+        List<String> isbns = leerLista();
+
+        System.out.print("ID del usuario: ");
+        String id = scanner.nextLine();
+
+        System.out.println("Fecha de devolución registrada: " + LocalDate.now());
+        boolean[] devueltos = control.devolverLibros(isbns, id);
+        mostrarResultadosLote(isbns, devueltos, "devuelto");
+    }
+
+    /**
+     * Lee una línea de valores separados por comas, sin espacios alrededor ni valores vacíos.
+     * @return Valores leídos
+     */
+    private static List<String> leerLista() {
+        List<String> valores = new ArrayList<>();
+        for (String valor : scanner.nextLine().split(",")) {
+            if (!valor.trim().isEmpty()) {
+                valores.add(valor.trim());
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Muestra el resultado de cada libro de una operación por lotes.
+     * @param isbns ISBN de los libros del lote
+     * @param resultados Resultado de cada libro
+     * @param accion Participio que describe la operación
+     */
+    private static void mostrarResultadosLote(List<String> isbns, boolean[] resultados, String accion) {
+        int cantidad = 0;
+        for (int i = 0; i < resultados.length; i++) {
+            System.out.println("- " + isbns.get(i) + ": " + (resultados[i] ? accion : "no " + accion));
+            if (resultados[i]) {
+                cantidad++;
+            }
+        }
+        System.out.println(cantidad + " de " + resultados.length + " libros " + accion + "s.");
+    }
+
+    /**
+     * Consulta el historial de préstamos devueltos de un libro o de un usuario.
+     * @param control Instancia del controlador
+     */
+    private static void consultarHistorial(Control control) {
+        System.out.println("\nHISTORIAL DE PRÉSTAMOS");
+        System.out.println("1. Por libro");
+        System.out.println("2. Por usuario");
+        System.out.print("Selección: ");
+        int opcion = leerEntero();
+        scanner.nextLine();
+        if (opcion != 1 && opcion != 2) {
+            System.out.println("Opción no válida.");
+            return;
+        }
+        System.out.print(opcion == 1 ? "ISBN del libro: " : "ID del usuario: ");
+        String valor = scanner.nextLine();
+        System.out.print("Meses hacia atrás (0 para todo el historial): ");
+        int meses = leerEntero();
+        scanner.nextLine();
+        
+        System.out.println(opcion == 1 ? control.historialDeLibro(valor, meses) : control.historialDeUsuario(valor, meses));
+    }
+
+    /**
+     * Muestra todos los préstamos activos en el sistema.
+     * @param control Instancia del controlador
+     */
+    private static void mostrarPrestamosActivos(Control control) {
+        System.out.println("\nPRÉSTAMOS ACTIVOS");
+        mostrarPorPaginas(cursor -> control.mostrarPrestamosActivos(cursor, TAMAÑO_PAGINA),
+                control::formatearListaPrestamos);
+    }
+
+    /**
+     * Muestra los préstamos vencidos a hoy, con sus días de retraso.
+     * @param control Instancia del controlador
+     */
+    private static void mostrarPrestamosVencidos(Control control) {
+        System.out.println("\nPRÉSTAMOS VENCIDOS");
+        mostrarPorPaginas(cursor -> control.mostrarPrestamosVencidos(cursor, TAMAÑO_PAGINA),
+                control::formatearListaVencidos);
+    }
+
+    /**
+     * Muestra los préstamos activos de un usuario específico.
+     * @param control Instancia del controlador
+     * @param idUsuario Identificación del usuario
+     */
+    private static void mostrarPrestamosUsuario(Control control, String idUsuario) {
+        System.out.println("\n--- MIS PRÉSTAMOS ---");
+        mostrarPorPaginas(cursor -> control.obtenerPrestamosUsuario(idUsuario, cursor, TAMAÑO_PAGINA),
+                control::formatearListaPrestamos);
+    }
+
+    /**
+     * Consulta las multas de un usuario específico.
+     * @param control Instancia del controlador
+     */
+    private static void consultarMultas(Control control) {
+        System.out.print("\nIngrese ID del usuario: ");
+        String id = scanner.nextLine();
+        
+        double multa = control.consultarMultaUsuario(id);
+        if (multa > 0) {
+            System.out.printf("Multa pendiente: $%.2f%n", multa);
+        } else {
+            System.out.println("El usuario no tiene multas pendientes.");
+        }
+    }
+
+    /**
+     * Muestra el menú para pagar multas.
+     * @param control Instancia del controlador
+     * @param idUsuario Identificación del usuario
+     */
+    private static void menuPagarMultas(Control control, String idUsuario) {
+        double multa = control.consultarMultaUsuario(idUsuario);
+        if (multa <= 0) {
+            System.out.println("\nNo tiene multas pendientes.");
+            return;
+        }
+        
+        System.out.printf("\nMulta pendiente: $%.2f%n", multa);
+        System.out.print("Ingrese monto a pagar: ");
+        double pago = scanner.nextDouble();
+        scanner.nextLine();
+        
+        if (control.pagarMulta(idUsuario, pago)) {
+            System.out.println("Pago realizado exitosamente!");
+        } else {
+            System.out.println("Error al procesar el pago.");
+        }
+    }
+
+    /**
+     * Reserva un libro sin ejemplares disponibles para el usuario.
+     * @param control Instancia del controlador
+     * @param idUsuario Identificación del usuario
+     */
+    private static void reservarLibro(Control control, String idUsuario) {
+        System.out.println("\nRESERVAR LIBRO");
+        System.out.print("ISBN del libro: ");
+        String isbn = scanner.nextLine();
+
+        if (control.reservarLibro(isbn, idUsuario)) {
+            System.out.println("Reserva registrada. Se le prestará el libro cuando se devuelva un ejemplar.");
+        } else {
+            System.out.println("No se pudo registrar la reserva. Verifique:");
+            System.out.println("- Que el libro exista y no tenga ejemplares disponibles");
+            System.out.println("- Que no tenga el libro prestado ni reservado");
+            System.out.println("- Que no tenga multas pendientes");
+        }
+    }
+
+    /**
+     * Muestra las reservas del usuario y permite cancelar una.
+     * @param control Instancia del controlador
+     * @param idUsuario Identificación del usuario
+     */
+    private static void menuReservas(Control control, String idUsuario) {
+        System.out.println(control.mostrarReservasUsuario(idUsuario));
+        if (control.obtenerReservasUsuario(idUsuario).isEmpty()) {
+            return;
+        }
+        System.out.print("ISBN de la reserva a cancelar (vacío para volver): ");
+        String isbn = scanner.nextLine().trim();
+        if (isbn.isEmpty()) {
+            return;
+        }
+        if (control.cancelarReserva(isbn, idUsuario)) {
+            System.out.println("Reserva cancelada.");
+        } else {
+            System.out.println("No tiene una reserva de ese libro.");
+        }
+    }
+
+    /**
+     * Muestra el submenú para búsqueda de libros.
+     * @param control Instancia del controlador
+     */
+    private static void menuBusquedas(Control control) {
+        while (true) {
+            System.out.println("\n--- BÚSQUEDAS ---");
+            System.out.println("1. Buscar libro por ISBN");
+            System.out.println("2. Buscar libros por título");
+            System.out.println("3. Buscar libros por autor");
+            System.out.println("4. Verificar disponibilidad");
+            System.out.println("5. Buscar libros por inicio del título");
+            System.out.println("6. Búsqueda aproximada (título o autor)");
+            System.out.println("0. Volver");
+            System.out.print("Selección: ");
+            
+            int opcion = leerEntero();
+            scanner.nextLine();
+            
+            switch (opcion) {
+                case 1: buscarPorISBN(control); break;
+                case 2: buscarPorTitulo(control); break;
+                case 3: buscarPorAutor(control); break;
+                case 4: verificarDisponibilidad(control); break;
+                case 5: buscarPorInicioDeTitulo(control); break;
+                case 6: buscarSimilares(control); break;
+                case 0: return;
+                default: System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    /**
+     * Busca un libro por su ISBN.
+     * @param control Instancia del controlador
+     */
+    private static void buscarPorISBN(Control control) {
+        System.out.println("\nBUSCAR POR ISBN");
+        System.out.print("Ingrese ISBN: ");
+        String isbn = scanner.nextLine();
+        
+        Libro libro = control.buscarLibroPorIsbn(isbn);
+        if (libro != null) {
+            mostrarDetallesLibro(libro);
+        } else {
+            System.out.println("Libro no encontrado.");
+        }
+    }
+
+    /**
+     * Busca libros por título.
+     * @param control Instancia del controlador
+     */
+    private static void buscarPorTitulo(Control control) {
+        System.out.println("\nBUSCAR POR TÍTULO");
+        System.out.print("Ingrese título: ");
+        String titulo = scanner.nextLine();
+        
+        mostrarPorPaginas(cursor -> control.buscarLibrosPorTitulo(titulo, cursor, TAMAÑO_PAGINA),
+                control::formatearListaLibros);
+    }
+
+    /**
+     * Busca libros cuyo título empieza por un texto, mostrando los resultados por páginas.
+     * @param control Instancia del controlador
+     */
+    private static void buscarPorInicioDeTitulo(Control control) {
+        System.out.println("\nBUSCAR POR INICIO DEL TÍTULO");
+        System.out.print("Ingrese el inicio del título: ");
+        String inicio = scanner.nextLine();
+        
+        mostrarPorPaginas(cursor -> control.buscarLibrosPorInicioDeTitulo(inicio, cursor, TAMAÑO_PAGINA),
+                control::formatearListaLibros);
+    }
+
+    /**
+     * Busca libros por autor.
+     * @param control Instancia del controlador
+     */
+    private static void buscarPorAutor(Control control) {
+        System.out.println("\nBUSCAR POR AUTOR");
+        System.out.print("Ingrese autor: ");
+        String autor = scanner.nextLine();
+        
+        mostrarPorPaginas(cursor -> control.buscarLibrosPorAutor(autor, cursor, TAMAÑO_PAGINA),
+                control::formatearListaLibros);
+    }
+
+    /**
+     * Busca libros por título o autor aunque el texto tenga errores de escritura.
+     * @param control Instancia del controlador
+     */
+    private static void buscarSimilares(Control control) {
+        System.out.println("\nBÚSQUEDA APROXIMADA");
+        System.out.print("Ingrese título o autor: ");
+        String texto = scanner.nextLine();
+        
+        mostrarPorPaginas(cursor -> control.buscarLibrosSimilares(texto, cursor, TAMAÑO_PAGINA),
+                control::formatearListaLibros);
+    }
+
+    /**
+     * Verifica la disponibilidad de un libro.
+     * @param control Instancia del controlador
+     */
+    private static void verificarDisponibilidad(Control control) {
+        System.out.println("\nVERIFICAR DISPONIBILIDAD");
+        System.out.print("Ingrese ISBN: ");
+        String isbn = scanner.nextLine();
+        
+        String disponibilidad = control.verificarDisponibilidad(isbn);
+        System.out.println(disponibilidad);
+    }
+
+    /**
+     * Muestra los detalles de un libro específico.
+     * @param libro Libro a mostrar
+     */
+    private static void mostrarDetallesLibro(Libro libro) {
+        System.out.println("\nDETALLES DEL LIBRO");
+        System.out.println("Título: " + libro.getTitulo());
+        System.out.println("Autor: " + libro.getAutor());
+        System.out.println("Año: " + libro.getAñoPublicacion());
+        System.out.println("ISBN: " + libro.getIsbn());
+        System.out.println("Disponibles: " + libro.getEjemplaresDisponibles());
+        System.out.println("Estado: " + (libro.getEjemplaresDisponibles() > 0 ? "Disponible" : "Agotado"));
+    }
+
+    /**
+     * Lee un número entero desde la entrada estándar con validación.
+     * @return Entero válido ingresado por el usuario
+     */
+    private static int leerEntero() {
+        while (true) {
+            try {
+                return scanner.nextInt();
+            } catch (Exception e) {
+                System.out.print("Entrada inválida. Ingrese un número: ");
+                scanner.next();
+            }
+        }
+    }
+
+    /**
+     * Actualiza el tipo de un usuario existente.
+     * @param control Instancia del controlador
+     */
+    private static void actualizarTipoUsuario(Control control) {
+        System.out.print("Ingrese la identificación del usuario: ");
+        String identificacion = scanner.nextLine();
+        
+        Usuario usuario = control.buscarUsuarioPorId(identificacion);
+        if (usuario == null) {
+            System.out.println("Usuario no encontrado.");
+            return;
+        }
+    
+        System.out.print("Ingrese el nuevo tipo de usuario: ");
+        String nuevoTipo = scanner.nextLine();
+        if (control.actualizarTipoDeUsuario(identificacion, nuevoTipo)) {
+            System.out.println("Tipo de usuario actualizado con éxito.");
+        } else {
+            System.out.println("No se pudo actualizar el tipo de usuario.");
+        }
+    }
+
+    /**
+     * Busca un usuario por su identificación.
+     * @param control Instancia del controlador
+     */
+    private static void buscarUsuario(Control control) {
+        System.out.print("Ingrese la identificación del usuario: ");
+        String identificacion = scanner.nextLine();
+        
+        Usuario usuario = control.buscarUsuarioPorId(identificacion);
+        if (usuario != null) {
+            System.out.println("Usuario encontrado: " + usuario);
+        } else {
+            System.out.println("Usuario no encontrado.");
+        }
+    }
 }
\ No newline at end of file
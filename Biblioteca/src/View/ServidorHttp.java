@@ -0,0 +1,600 @@
+package View;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import Controller.Control;
+import Controller.ControlAsincrono;
+import Model.Libro;
+import Model.Pagina;
+import Model.Prestamo;
+import Model.Reserva;
+import Model.Usuario;
+
+/**
+ * Servidor HTTP embebido que expone las operaciones del controlador como JSON, para
+ * los quioscos y el catálogo web.
+ * <p>
+ * Rutas (los parámetros van en la URL, o en el cuerpo como formulario en los POST):
+ * </p>
+ * <ul>
+ *   <li>GET /libros?isbn= : un libro</li>
+ *   <li>GET /libros[?titulo= | ?inicio= | ?autor=][&amp;cursor=][&amp;cantidad=] : página de libros</li>
+ *   <li>GET /usuarios?id= : un usuario, con su multa y su cantidad de préstamos (*)</li>
+ *   <li>GET /prestamos[?usuario=][&amp;cursor=][&amp;cantidad=] : página de préstamos activos (*)</li>
+ *   <li>POST /prestamos (isbn, usuario) : presta un libro por 30 días (*)</li>
+ *   <li>POST /prestamos (isbns, usuario[, todos]) : presta varios libros, separados por comas (*)</li>
+ *   <li>POST /devoluciones (isbn, usuario) : registra una devolución (*)</li>
+ *   <li>POST /devoluciones (isbns, usuario | usuarios) : registra varias devoluciones de un
+ *       usuario, o de un usuario por libro como las del buzón (*)</li>
+ *   <li>POST /pagos (usuario, monto) : registra el pago de una multa (*)</li>
+ *   <li>GET /reservas?usuario= : reservas pendientes de un usuario, con su lugar en la cola (*)</li>
+ *   <li>POST /reservas (isbn, usuario) : reserva un libro sin ejemplares disponibles (*)</li>
+ *   <li>DELETE /reservas?isbn=&amp;usuario= : cancela una reserva (*)</li>
+ * </ul>
+ * <p>
+ * Solo el catálogo es público. Las rutas marcadas con (*) leen o cambian datos de los
+ * usuarios y exigen la cabecera "Authorization: Bearer" con la clave configurada al
+ * crear el servidor: sin ella responden 401, y con otra clave, 403. Sin clave
+ * configurada, esas rutas siempre responden 403. Por defecto el
+ * servidor solo escucha en la interfaz local (loopback); para atender quioscos de la
+ * red hay que indicar la dirección al crearlo. Los errores internos se muestran en la
+ * consola del servidor y al cliente solo le llega un mensaje fijo.
+ * </p>
+ * <p>
+ * Cada respuesta se arma en un búfer con el tamaño estimado para su contenido y se
+ * envía con su longitud, así la conexión sigue abierta para la siguiente petición.
+ * Cada petición se atiende en un hilo virtual si la JVM los tiene (Java 21 o posterior);
+ * si no, en un grupo fijo de hilos. La cabecera y el cuerpo de cada respuesta salen en
+ * escrituras separadas, así que conviene iniciar la JVM con
+ * -Dsun.net.httpserver.nodelay=true: con el algoritmo de Nagle, el cuerpo esperaría el
+ * ACK retardado del cliente en cada petición.
+ * </p>
+ */
+public class ServidorHttp {
+    private static final int TAMAÑO_PAGINA = 50;
+    private static final int MAXIMO_PAGINA = 1000;
+    private static final int PETICIONES_EN_ESPERA = 1024; // Conexiones pendientes de aceptar
+    private static final int BYTES_LIBRO = 192; // Estimación del JSON de un libro o préstamo
+    private static final String PREFIJO_CLAVE = "Bearer ";
+
+    private final Control control;
+    private final InetAddress direccion;
+    private final int puerto;
+    private final byte[] clave; // Clave de las rutas protegidas, o null si no se configuró
+    private HttpServer servidor;
+    private ExecutorService hilos;
+
+    /**
+     * Constructor que prepara el servidor sin abrir el puerto, para escuchar solo en la
+     * interfaz local.
+     * @param control Controlador cuyas operaciones se exponen
+     * @param puerto Puerto en el que escuchar (0 para uno libre)
+     * @param clave Clave que exigen las rutas con datos de usuarios, o null para rechazarlas todas
+     */
+    public ServidorHttp(Control control, int puerto, String clave) {
+        this(control, InetAddress.getLoopbackAddress(), puerto, clave);
+    }
+
+    /**
+     * Constructor que prepara el servidor sin abrir el puerto.
+     * @param control Controlador cuyas operaciones se exponen
+     * @param direccion Dirección en la que escuchar (por ejemplo, la de la red de los quioscos)
+     * @param puerto Puerto en el que escuchar (0 para uno libre)
+     * @param clave Clave que exigen las rutas con datos de usuarios, o null para rechazarlas todas
+     */
+    public ServidorHttp(Control control, InetAddress direccion, int puerto, String clave) {
+        this.control = control;
+        this.direccion = direccion;
+        this.puerto = puerto;
+        this.clave = clave == null || clave.isEmpty() ? null : clave.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Abre el puerto y empieza a atender peticiones en segundo plano.
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public synchronized void iniciar() throws IOException {
+        if (servidor != null) {
+            return;
+        }
+        HttpServer creado = HttpServer.create(new InetSocketAddress(direccion, puerto), PETICIONES_EN_ESPERA);
+        creado.createContext("/libros", intercambio -> atender(intercambio, this::libros, false));
+        creado.createContext("/usuarios", intercambio -> atender(intercambio, this::usuarios, true));
+        creado.createContext("/prestamos", intercambio -> atender(intercambio, this::prestamos, true));
+        creado.createContext("/devoluciones", intercambio -> atender(intercambio, this::devoluciones, true));
+        creado.createContext("/reservas", intercambio -> atender(intercambio, this::reservas, true));
+        creado.createContext("/pagos", intercambio -> atender(intercambio, this::pagos, true));
+        hilos = ControlAsincrono.crearHilos("http-biblioteca");
+        creado.setExecutor(hilos);
+        creado.start();
+        servidor = creado;
+    }
+
+    /**
+     * Deja de aceptar peticiones y cierra el puerto.
+     */
+    public synchronized void detener() {
+        if (servidor != null) {
+            servidor.stop(0);
+            hilos.shutdown();
+            servidor = null;
+        }
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     * @return Puerto abierto, o el configurado si aún no se inició
+     */
+    public synchronized int getPuerto() {
+        return servidor != null ? servidor.getAddress().getPort() : puerto;
+    }
+
+    /**
+     * Operación de una ruta: escribe el JSON de la respuesta y devuelve su código HTTP.
+     */
+    private interface Ruta {
+        /**
+         * Atiende una petición ya decodificada.
+         * @param metodo Método HTTP
+         * @param parametros Parámetros de la URL y del formulario
+         * @param json Búfer donde se escribe la respuesta
+         * @return Código de estado HTTP
+         */
+        int atender(String metodo, HashMap<String, String> parametros, StringBuilder json);
+    }
+
+    /**
+     * Decodifica una petición, la pasa a su ruta y envía la respuesta con su longitud.
+     * @param intercambio Petición y respuesta
+     * @param ruta Operación de la ruta
+     * @param protegida true si la ruta exige la clave
+     * @throws IOException Si falla la lectura o el envío
+     */
+    private void atender(HttpExchange intercambio, Ruta ruta, boolean protegida) throws IOException {
+        StringBuilder json = new StringBuilder(256);
+        int estado;
+        try {
+            String contexto = intercambio.getHttpContext().getPath();
+            if (!intercambio.getRequestURI().getPath().equals(contexto)) {
+                estado = error(json, 404, "Ruta no encontrada");
+            } else if (protegida && intercambio.getRequestHeaders().getFirst("Authorization") == null) {
+                estado = error(json, 401, "Falta la clave");
+            } else if (protegida && !claveValida(intercambio.getRequestHeaders().getFirst("Authorization"))) {
+                estado = error(json, 403, "Clave no válida");
+            } else {
+                HashMap<String, String> parametros = new HashMap<>();
+                leerParametros(intercambio.getRequestURI().getRawQuery(), parametros);
+                String metodo = intercambio.getRequestMethod();
+                if (metodo.equals("POST")) {
+                    leerParametros(new String(intercambio.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), parametros);
+                }
+                estado = ruta.atender(metodo, parametros, json);
+            }
+        } catch (IllegalArgumentException e) {
+            json.setLength(0);
+            estado = error(json, 400, "Petición no válida"); // Por ejemplo, un %XX mal formado
+        } catch (RuntimeException e) {
+            System.out.println("Error al atender " + intercambio.getRequestMethod() + " "
+                    + intercambio.getRequestURI().getPath() + ": " + e);
+            json.setLength(0);
+            estado = error(json, 500, "Error interno");
+        }
+        byte[] cuerpo = json.toString().getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        intercambio.sendResponseHeaders(estado, cuerpo.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cuerpo);
+        }
+    }
+
+    /**
+     * Agrega a parametros los pares clave=valor de una URL o de un formulario.
+     * @param texto Texto codificado (puede ser null)
+     * @param parametros Mapa de parámetros
+     */
+    private static void leerParametros(String texto, HashMap<String, String> parametros) {
+        if (texto == null || texto.isEmpty()) {
+            return;
+        }
+        for (String par : texto.split("&")) {
+            int igual = par.indexOf('=');
+            String clave = igual >= 0 ? par.substring(0, igual) : par;
+            String valor = igual >= 0 ? par.substring(igual + 1) : "";
+            parametros.put(URLDecoder.decode(clave, StandardCharsets.UTF_8), URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Rutas
+
+    /**
+     * Atiende /libros: un libro por ISBN, o una página del catálogo o de una búsqueda.
+     * @param metodo Método HTTP
+     * @param parametros Parámetros de la petición
+     * @param json Búfer de la respuesta
+     * @return Código de estado HTTP
+     */
+    private int libros(String metodo, HashMap<String, String> parametros, StringBuilder json) {
+        if (!metodo.equals("GET")) {
+            return error(json, 405, "Método no permitido");
+        }
+        String isbn = parametros.get("isbn");
+        if (isbn != null) {
+            Libro libro = control.buscarLibroPorIsbn(isbn);
+            if (libro == null) {
+                return error(json, 404, "Libro no encontrado");
+            }
+            libro(json, libro);
+            return 200;
+        }
+        int cantidad = cantidad(parametros);
+        if (cantidad < 0) {
+            return error(json, 400, "Cantidad no válida");
+        }
+        String cursor = parametros.get("cursor");
+        Pagina<Libro> pagina;
+        if (parametros.containsKey("titulo")) {
+            pagina = control.buscarLibrosPorTitulo(parametros.get("titulo"), cursor, cantidad);
+        } else if (parametros.containsKey("inicio")) {
+            pagina = control.buscarLibrosPorInicioDeTitulo(parametros.get("inicio"), cursor, cantidad);
+        } else if (parametros.containsKey("autor")) {
+            pagina = control.buscarLibrosPorAutor(parametros.get("autor"), cursor, cantidad);
+        } else {
+            pagina = control.mostrarLibros(cursor, cantidad);
+        }
+        if (pagina == null) {
+            return error(json, 400, "Cursor no válido");
+        }
+        json.ensureCapacity(64 + pagina.getElementos().size() * BYTES_LIBRO);
+        json.append("{\"elementos\":[");
+        List<Libro> libros = pagina.getElementos();
+        for (int i = 0; i < libros.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            libro(json, libros.get(i));
+        }
+        json.append("],\"cursor\":");
+        texto(json, pagina.getCursorSiguiente());
+        json.append('}');
+        return 200;
+    }
+
+    /**
+     * Atiende /usuarios: los datos de un usuario.
+     * @param metodo Método HTTP
+     * @param parametros Parámetros de la petición
+     * @param json Búfer de la respuesta
+     * @return Código de estado HTTP
+     */
+    private int usuarios(String metodo, HashMap<String, String> parametros, StringBuilder json) {
+        if (!metodo.equals("GET")) {
+            return error(json, 405, "Método no permitido");
+        }
+        String identificacion = parametros.get("id");
+        Usuario usuario = identificacion != null ? control.buscarUsuarioPorId(identificacion) : null;
+        if (usuario == null) {
+            return error(json, 404, "Usuario no encontrado");
+        }
+        json.append("{\"id\":");
+        texto(json, usuario.getIdentificacion());
+        json.append(",\"nombre\":");
+        texto(json, usuario.getNombre());
+        json.append(",\"tipo\":");
+        texto(json, usuario.getTipoUsuario());
+        json.append(",\"multa\":").append(usuario.getMultaAcumulada());
+        json.append(",\"prestamosActivos\":").append(usuario.getCantidadPrestamosActivos());
+        json.append('}');
+        return 200;
+    }
+
+    /**
+     * Atiende /prestamos: con GET, una página de préstamos activos (de todos o de un
+     * usuario); con POST, presta un libro o varios.
+     * @param metodo Método HTTP
+     * @param parametros Parámetros de la petición
+     * @param json Búfer de la respuesta
+     * @return Código de estado HTTP
+     */
+    private int prestamos(String metodo, HashMap<String, String> parametros, StringBuilder json) {
+        if (metodo.equals("POST")) {
+            String isbn = parametros.get("isbn");
+            String identificacion = parametros.get("usuario");
+            if (parametros.containsKey("isbns") && identificacion != null) {
+                boolean todos = Boolean.parseBoolean(parametros.get("todos"));
+                return resultados(json, control.prestarLibros(lista(parametros.get("isbns")), identificacion, todos));
+            }
+            if (isbn == null || identificacion == null) {
+                return error(json, 400, "Faltan isbn y usuario");
+            }
+            return resultado(json, control.prestarLibro(isbn, identificacion), "No se pudo realizar el préstamo");
+        }
+        if (!metodo.equals("GET")) {
+            return error(json, 405, "Método no permitido");
+        }
+        int cantidad = cantidad(parametros);
+        if (cantidad < 0) {
+            return error(json, 400, "Cantidad no válida");
+        }
+        String identificacion = parametros.get("usuario");
+        Pagina<Prestamo> pagina = identificacion != null
+                ? control.obtenerPrestamosUsuario(identificacion, parametros.get("cursor"), cantidad)
+                : control.mostrarPrestamosActivos(parametros.get("cursor"), cantidad);
+        if (pagina == null) {
+            return error(json, 400, "Cursor o usuario no válido");
+        }
+        List<Prestamo> prestamos = pagina.getElementos();
+        json.ensureCapacity(64 + prestamos.size() * BYTES_LIBRO);
+        json.append("{\"elementos\":[");
+        for (int i = 0; i < prestamos.size(); i++) {
+            Prestamo prestamo = prestamos.get(i);
+            json.append(i > 0 ? ",{\"isbn\":" : "{\"isbn\":");
+            texto(json, prestamo.getLibro().getIsbn());
+            json.append(",\"titulo\":");
+            texto(json, prestamo.getLibro().getTitulo());
+            json.append(",\"usuario\":");
+            texto(json, prestamo.getUsuario().getIdentificacion());
+            json.append(",\"fechaPrestamo\":");
+            texto(json, String.valueOf(prestamo.getFechaPrestamo()));
+            json.append(",\"fechaDevolucion\":");
+            texto(json, String.valueOf(prestamo.getFechaDevolucion()));
+            json.append('}');
+        }
+        json.append("],\"cursor\":");
+        texto(json, pagina.getCursorSiguiente());
+        json.append('}');
+        return 200;
+    }
+
+    /**
+     * Atiende /devoluciones: registra la devolución de un libro o de varios.
+     * @param metodo Método HTTP
+     * @param parametros Parámetros de la petición
+     * @param json Búfer de la respuesta
+     * @return Código de estado HTTP
+     */
+    private int devoluciones(String metodo, HashMap<String, String> parametros, StringBuilder json) {
+        if (!metodo.equals("POST")) {
+            return error(json, 405, "Método no permitido");
+        }
+        String isbn = parametros.get("isbn");
+        String identificacion = parametros.get("usuario");
+        if (parametros.containsKey("isbns")) {
+            List<String> isbns = lista(parametros.get("isbns"));
+            if (identificacion != null) {
+                return resultados(json, control.devolverLibros(isbns, identificacion));
+            }
+            if (parametros.containsKey("usuarios")) {
+                boolean[] devueltos = control.devolverLibros(isbns, lista(parametros.get("usuarios")));
+                if (devueltos == null) {
+                    return error(json, 400, "isbns y usuarios deben tener la misma cantidad");
+                }
+                return resultados(json, devueltos);
+            }
+        }
+        if (isbn == null || identificacion == null) {
+            return error(json, 400, "Faltan isbn y usuario");
+        }
+        return resultado(json, control.devolverLibro(isbn, identificacion), "No hay un préstamo activo de ese libro");
+    }
+
+    /**
+     * Atiende /pagos: registra el pago de una multa.
+     * @param metodo Método HTTP
+     * @param parametros Parámetros de la petición
+     * @param json Búfer de la respuesta
+     * @return Código de estado HTTP
+     */
+    private int pagos(String metodo, HashMap<String, String> parametros, StringBuilder json) {
+        if (!metodo.equals("POST")) {
+            return error(json, 405, "Método no permitido");
+        }
+        String identificacion = parametros.get("usuario");
+        double monto;
+        try {
+            monto = Double.parseDouble(parametros.getOrDefault("monto", ""));
+        } catch (NumberFormatException e) {
+            return error(json, 400, "Monto no válido");
+        }
+        if (!Double.isFinite(monto) || monto <= 0) {
+            return error(json, 400, "Monto no válido");
+        }
+        if (identificacion == null) {
+            return error(json, 400, "Falta usuario");
+        }
+        return resultado(json, control.pagarMulta(identificacion, monto), "No se pudo registrar el pago");
+    }
+
+    /**
+     * Atiende /reservas: con GET, las reservas de un usuario; con POST, reserva un libro;
+     * con DELETE, cancela una reserva.
+     * @param metodo Método HTTP
+     * @param parametros Parámetros de la petición
+     * @param json Búfer de la respuesta
+     * @return Código de estado HTTP
+     */
+    private int reservas(String metodo, HashMap<String, String> parametros, StringBuilder json) {
+        String isbn = parametros.get("isbn");
+        String identificacion = parametros.get("usuario");
+        if (identificacion == null) {
+            return error(json, 400, "Falta usuario");
+        }
+        if (metodo.equals("GET")) {
+            List<Reserva> reservas = control.obtenerReservasUsuario(identificacion);
+            json.ensureCapacity(32 + reservas.size() * BYTES_LIBRO);
+            json.append("{\"elementos\":[");
+            for (int i = 0; i < reservas.size(); i++) {
+                Reserva reserva = reservas.get(i);
+                json.append(i > 0 ? ",{\"isbn\":" : "{\"isbn\":");
+                texto(json, reserva.getLibro().getIsbn());
+                json.append(",\"titulo\":");
+                texto(json, reserva.getLibro().getTitulo());
+                json.append(",\"fecha\":");
+                texto(json, String.valueOf(reserva.getFecha()));
+                json.append(",\"posicion\":").append(control.posicionReserva(reserva)).append('}');
+            }
+            json.append("]}");
+            return 200;
+        }
+        if (isbn == null) {
+            return error(json, 400, "Faltan isbn y usuario");
+        }
+        if (metodo.equals("POST")) {
+            return resultado(json, control.reservarLibro(isbn, identificacion), "No se pudo registrar la reserva");
+        }
+        if (metodo.equals("DELETE")) {
+            return resultado(json, control.cancelarReserva(isbn, identificacion), "No hay una reserva de ese libro");
+        }
+        return error(json, 405, "Método no permitido");
+    }
+
+    /**
+     * Comprueba la clave de una ruta protegida, comparándola en tiempo constante.
+     * @param autorizacion Valor de la cabecera Authorization, o null
+     * @return true si trae la clave configurada
+     */
+    private boolean claveValida(String autorizacion) {
+        if (clave == null || autorizacion == null || !autorizacion.startsWith(PREFIJO_CLAVE)) {
+            return false;
+        }
+        byte[] recibida = autorizacion.substring(PREFIJO_CLAVE.length()).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(clave, recibida);
+    }
+
+    // JSON
+
+    /**
+     * Lee el tamaño de página pedido.
+     * @param parametros Parámetros de la petición
+     * @return Cantidad de elementos por página, o -1 si no es válida
+     */
+    private static int cantidad(HashMap<String, String> parametros) {
+        String texto = parametros.get("cantidad");
+        if (texto == null) {
+            return TAMAÑO_PAGINA;
+        }
+        try {
+            int cantidad = Integer.parseInt(texto);
+            return cantidad > 0 && cantidad <= MAXIMO_PAGINA ? cantidad : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Separa una lista de valores separados por comas, sin espacios alrededor ni valores vacíos.
+     * @param texto Valores separados por comas
+     * @return Valores
+     */
+    private static List<String> lista(String texto) {
+        ArrayList<String> valores = new ArrayList<>();
+        for (String valor : texto.split(",")) {
+            if (!valor.trim().isEmpty()) {
+                valores.add(valor.trim());
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Escribe el resultado de cada elemento de una operación por lotes. El lote se
+     * responde con 200 aunque se rechacen elementos: el resultado de cada uno va en la lista.
+     * @param json Búfer de la respuesta
+     * @param resultados Resultado de cada elemento
+     * @return 200
+     */
+    private static int resultados(StringBuilder json, boolean[] resultados) {
+        json.ensureCapacity(32 + resultados.length * 6);
+        json.append("{\"ok\":true,\"resultados\":[");
+        for (int i = 0; i < resultados.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(resultados[i]);
+        }
+        json.append("]}");
+        return 200;
+    }
+
+    /**
+     * Escribe el resultado de una operación que puede ser rechazada.
+     * @param json Búfer de la respuesta
+     * @param exito Resultado de la operación
+     * @param mensaje Mensaje si se rechazó
+     * @return 200 si tuvo éxito, 409 si se rechazó
+     */
+    private static int resultado(StringBuilder json, boolean exito, String mensaje) {
+        if (!exito) {
+            return error(json, 409, mensaje);
+        }
+        json.append("{\"ok\":true}");
+        return 200;
+    }
+
+    /**
+     * Escribe una respuesta de error.
+     * @param json Búfer de la respuesta
+     * @param estado Código de estado HTTP
+     * @param mensaje Mensaje de error
+     * @return El código de estado
+     */
+    private static int error(StringBuilder json, int estado, String mensaje) {
+        json.append("{\"ok\":false,\"error\":");
+        texto(json, mensaje);
+        json.append('}');
+        return estado;
+    }
+
+    /**
+     * Escribe un libro como objeto JSON.
+     * @param json Búfer de la respuesta
+     * @param libro Libro a escribir
+     */
+    private static void libro(StringBuilder json, Libro libro) {
+        json.append("{\"isbn\":");
+        texto(json, libro.getIsbn());
+        json.append(",\"titulo\":");
+        texto(json, libro.getTitulo());
+        json.append(",\"autor\":");
+        texto(json, libro.getAutor());
+        json.append(",\"anio\":").append(libro.getAñoPublicacion());
+        json.append(",\"disponibles\":").append(libro.getEjemplaresDisponibles());
+        json.append(",\"total\":").append(libro.getEjemplaresTotales());
+        json.append('}');
+    }
+
+    /**
+     * Escribe un texto como cadena JSON, escapando comillas, barras y caracteres de control.
+     * @param json Búfer de la respuesta
+     * @param valor Texto (null se escribe como null)
+     */
+    private static void texto(StringBuilder json, String valor) {
+        if (valor == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
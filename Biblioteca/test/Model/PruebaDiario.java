@@ -0,0 +1,345 @@
+package Model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Prueba del diario y de la recuperación tras una caída.
+ * <p>
+ * Se ejecuta con java -cp bin:test Model.PruebaDiario (con las clases de src y de test
+ * compiladas). Termina con código 1 si alguna comprobación falla.
+ * </p>
+ */
+public class PruebaDiario {
+    private static final LocalDate HOY = LocalDate.of(2024, 3, 1);
+    private static final int HILOS = 16;
+    private static final int OPERACIONES_POR_HILO = 2000;
+    private static final int LIBROS_CONCURRENTES = 8;
+    private static final int USUARIOS_CONCURRENTES = 40;
+
+    /**
+     * Ejecuta las pruebas, o uno de los procesos hijos que se caen si el primer argumento
+     * es "hijo" o "hilos".
+     * @param args Argumentos de la línea de comandos
+     * @throws Exception Si falla algo inesperado
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("hijo")) {
+            trabajarYCaer(Path.of(args[1]));
+            return;
+        }
+        if (args.length == 2 && args[0].equals("hilos")) {
+            trabajarEnHilosYCaer(Path.of(args[1]));
+            return;
+        }
+        boolean correcto = probarCaidaYReproduccion() & probarHilosYReproduccion() & probarEscritorInterrumpido();
+        System.out.println(correcto ? "Pruebas del diario correctas." : "Fallaron pruebas del diario.");
+        if (!correcto) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Lanza un proceso que modifica la biblioteca, guarda un volcado, sigue modificándola
+     * y se cae sin cerrarla. Después agrega un registro a medio escribir y comprueba que
+     * al reabrir se recupera exactamente el estado confirmado antes de la caída.
+     * @return true si la prueba pasó
+     * @throws Exception Si falla el proceso hijo o el acceso a los archivos
+     */
+    private static boolean probarCaidaYReproduccion() throws Exception {
+        Path ruta = Files.createTempDirectory("prueba-diario").resolve("biblioteca.diario");
+        if (!ejecutarHijo("hijo", ruta)) {
+            return false;
+        }
+        String esperado = Files.readString(estadoEsperado(ruta), StandardCharsets.UTF_8);
+        // Un registro a medio escribir al final, como si la caída hubiera sido durante la escritura
+        Files.write(ruta, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        Biblioteca reabierta = new Biblioteca(ruta, Durabilidad.SINCRONIZADA, 0);
+        String recuperado = estado(reabierta);
+        boolean prestaDespues = reabierta.prestarLibro(isbn(3), "u3", HOY, HOY.plusDays(7));
+        reabierta.cerrar();
+        if (!recuperado.equals(esperado)) {
+            System.out.println("El estado recuperado no coincide.\nEsperado:\n" + esperado + "Recuperado:\n" + recuperado);
+            return false;
+        }
+        if (!prestaDespues) {
+            System.out.println("La biblioteca recuperada no acepta operaciones nuevas.");
+            return false;
+        }
+        System.out.println("Caída y reproducción: correcto.");
+        return true;
+    }
+
+    /**
+     * Lanza un proceso que modifica la biblioteca desde varios hilos a la vez (préstamos,
+     * devoluciones, pagos, cambios de título, año y ejemplares de los mismos libros, y de
+     * nombre y tipo de los mismos usuarios) y se cae sin cerrarla. Al reabrir, el diario
+     * debe reproducir exactamente el estado que los hilos dejaron en memoria.
+     * @return true si la prueba pasó
+     * @throws Exception Si falla el proceso hijo o el acceso a los archivos
+     */
+    private static boolean probarHilosYReproduccion() throws Exception {
+        Path ruta = Files.createTempDirectory("prueba-diario-hilos").resolve("biblioteca.diario");
+        if (!ejecutarHijo("hilos", ruta)) {
+            return false;
+        }
+        String esperado = Files.readString(estadoEsperado(ruta), StandardCharsets.UTF_8);
+        Biblioteca reabierta = new Biblioteca(ruta, Durabilidad.ESCRITA, 0);
+        String recuperado = estado(reabierta);
+        reabierta.cerrar();
+        if (!recuperado.equals(esperado)) {
+            System.out.println("El estado recuperado tras los hilos no coincide.\nEsperado:\n" + esperado
+                    + "Recuperado:\n" + recuperado);
+            return false;
+        }
+        System.out.println("Hilos concurrentes y reproducción: correcto.");
+        return true;
+    }
+
+    /**
+     * Ejecuta un proceso hijo de esta prueba y espera a que termine.
+     * @param modo Primer argumento del hijo ("hijo" o "hilos")
+     * @param ruta Archivo del diario
+     * @return true si el hijo terminó con código 0; si no, muestra su salida
+     * @throws Exception Si no se pudo lanzar el proceso
+     */
+    private static boolean ejecutarHijo(String modo, Path ruta) throws Exception {
+        Process hijo = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), PruebaDiario.class.getName(), modo, ruta.toString())
+                .redirectErrorStream(true)
+                .start();
+        StringBuilder salida = new StringBuilder();
+        try (BufferedReader lector = new BufferedReader(
+                new InputStreamReader(hijo.getInputStream(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                salida.append(linea).append('\n');
+            }
+        }
+        if (!hijo.waitFor(120, TimeUnit.SECONDS) || hijo.exitValue() != 0) {
+            System.out.println("El proceso hijo no terminó como se esperaba:\n" + salida);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Trabajo del proceso hijo con hilos: cada hilo hace operaciones al azar sobre pocos
+     * libros y usuarios, para que choquen entre sí. Cuando todos terminan, guarda el
+     * estado y se cae; con durabilidad ESCRITA todo lo confirmado ya llegó al sistema operativo.
+     * @param ruta Archivo del diario
+     * @throws Exception Si falla la biblioteca o algún hilo
+     */
+    private static void trabajarEnHilosYCaer(Path ruta) throws Exception {
+        Biblioteca biblioteca = new Biblioteca(ruta, Durabilidad.ESCRITA, 0);
+        for (int i = 0; i < LIBROS_CONCURRENTES; i++) {
+            biblioteca.agregarLibro(new Libro("Titulo " + i, "Autor " + i, 2000, isbn(i), 2));
+        }
+        for (int i = 0; i < USUARIOS_CONCURRENTES; i++) {
+            biblioteca.registrarUsuario(new Usuario("Nombre " + i, "u" + i, "estudiante"));
+        }
+        List<Thread> hilos = new ArrayList<>();
+        List<Throwable> errores = Collections.synchronizedList(new ArrayList<>());
+        for (int h = 0; h < HILOS; h++) {
+            Thread hilo = new Thread(() -> {
+                try {
+                    operarAlAzar(biblioteca);
+                } catch (Throwable e) {
+                    errores.add(e);
+                }
+            });
+            hilos.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        if (!errores.isEmpty()) {
+            errores.get(0).printStackTrace();
+            Runtime.getRuntime().halt(1);
+        }
+        Files.writeString(estadoEsperado(ruta), estado(biblioteca), StandardCharsets.UTF_8);
+        Runtime.getRuntime().halt(0); // Sin cerrar la biblioteca ni el diario
+    }
+
+    /**
+     * Hace OPERACIONES_POR_HILO operaciones al azar sobre la biblioteca.
+     * @param biblioteca Biblioteca con diario
+     */
+    private static void operarAlAzar(Biblioteca biblioteca) {
+        ThreadLocalRandom azar = ThreadLocalRandom.current();
+        for (int i = 0; i < OPERACIONES_POR_HILO; i++) {
+            String isbn = isbn(azar.nextInt(LIBROS_CONCURRENTES));
+            String identificacion = "u" + azar.nextInt(USUARIOS_CONCURRENTES);
+            switch (azar.nextInt(8)) {
+                case 0:
+                    biblioteca.prestarLibro(isbn, identificacion, HOY, HOY.plusDays(7));
+                    break;
+                case 1:
+                    biblioteca.devolverLibro(isbn, identificacion, HOY.plusDays(azar.nextInt(12)));
+                    break;
+                case 2:
+                    biblioteca.pagarMulta(identificacion, 1 + azar.nextInt(5));
+                    break;
+                case 3:
+                    biblioteca.buscarLibroPorIsbn(isbn).setAñoPublicacion(1900 + azar.nextInt(120));
+                    break;
+                case 4:
+                    biblioteca.buscarLibroPorIsbn(isbn).setEjemplaresDisponibles(azar.nextInt(4));
+                    break;
+                case 5:
+                    biblioteca.buscarUsuarioPorId(identificacion).setNombre("Nombre " + azar.nextInt(1000));
+                    break;
+                case 6:
+                    biblioteca.buscarUsuarioPorId(identificacion)
+                            .setTipoUsuario(azar.nextBoolean() ? "estudiante" : "profesor");
+                    break;
+                default:
+                    biblioteca.buscarLibroPorIsbn(isbn).setTitulo("Titulo " + azar.nextInt(1000));
+            }
+        }
+    }
+
+    /**
+     * Trabajo del proceso hijo: cada operación se confirma en disco antes de volver, así
+     * que el estado que guarda antes de caerse debe sobrevivir a la caída.
+     * @param ruta Archivo del diario
+     * @throws Exception Si falla la biblioteca
+     */
+    private static void trabajarYCaer(Path ruta) throws Exception {
+        Biblioteca biblioteca = new Biblioteca(ruta, Durabilidad.SINCRONIZADA, 0);
+        for (int i = 0; i < 10; i++) {
+            biblioteca.agregarLibro(new Libro("Titulo " + i, "Autor " + i, 2000 + i, isbn(i), 2));
+            biblioteca.registrarUsuario(new Usuario("Nombre " + i, "u" + i, "estudiante"));
+        }
+        biblioteca.prestarLibro(isbn(0), "u0", HOY, HOY.plusDays(7));
+        biblioteca.prestarLibro(isbn(1), "u1", HOY, HOY.plusDays(7));
+        biblioteca.guardarVolcado();
+        // Lo que sigue solo está en el diario, después del volcado
+        biblioteca.devolverLibro(isbn(0), "u0", HOY.plusDays(10));
+        biblioteca.pagarMulta("u0", 1000);
+        biblioteca.prestarLibro(isbn(2), "u2", HOY, HOY.plusDays(7));
+        biblioteca.buscarLibroPorIsbn(isbn(4)).setTitulo("Titulo cambiado");
+        biblioteca.buscarLibroPorIsbn(isbn(5)).setIsbn(isbn(50));
+        biblioteca.buscarUsuarioPorId("u6").setIdentificacion("u60");
+        biblioteca.eliminarLibroPorIsbn(isbn(7));
+        Files.writeString(estadoEsperado(ruta), estado(biblioteca), StandardCharsets.UTF_8);
+        Runtime.getRuntime().halt(0); // Sin cerrar la biblioteca ni el diario
+    }
+
+    /**
+     * Interrumpe el hilo escritor y comprueba que quien espera confirmación recibe un
+     * error en lugar de quedarse esperando, y que el diario ya no acepta registros.
+     * @return true si la prueba pasó
+     * @throws Exception Si falla el acceso al archivo
+     */
+    private static boolean probarEscritorInterrumpido() throws Exception {
+        Path ruta = Files.createTempFile("prueba-diario", ".diario");
+        Files.delete(ruta);
+        Diario diario = new Diario(ruta, Durabilidad.SINCRONIZADA, 0);
+        diario.reproducir(registro -> { });
+        diario.iniciar();
+        Thread escritor = null;
+        for (Thread hilo : Thread.getAllStackTraces().keySet()) {
+            if (hilo.getName().equals("diario-biblioteca") && hilo.isAlive()) {
+                escritor = hilo;
+            }
+        }
+        if (escritor == null) {
+            System.out.println("No se encontró el hilo escritor del diario.");
+            return false;
+        }
+        escritor.interrupt();
+        escritor.join(5000);
+        CompletableFuture<Boolean> espera = CompletableFuture.supplyAsync(() -> {
+            try {
+                diario.esperar(diario.agregar(new Diario.Codificador().iniciar((byte) 1)));
+                return false;
+            } catch (UncheckedIOException e) {
+                return true;
+            }
+        });
+        boolean falla;
+        try {
+            falla = espera.get(5, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("El diario quedó esperando a un escritor interrumpido.");
+            return false;
+        }
+        try {
+            diario.close();
+        } catch (IOException e) {
+            // Se espera: close informa el error del escritor
+        }
+        if (!falla) {
+            System.out.println("El diario aceptó un registro después de que falló el escritor.");
+            return false;
+        }
+        System.out.println("Escritor interrumpido: correcto.");
+        return true;
+    }
+
+    /**
+     * Archivo donde el proceso hijo deja el estado que tenía antes de caerse.
+     * @param ruta Archivo del diario
+     * @return Archivo junto al diario
+     */
+    private static Path estadoEsperado(Path ruta) {
+        return ruta.resolveSibling(ruta.getFileName() + ".estado");
+    }
+
+    /**
+     * Describe el estado de la biblioteca en líneas ordenadas, para comparar.
+     * @param biblioteca Biblioteca a describir
+     * @return Una línea por libro, usuario y préstamo activo
+     */
+    private static String estado(Biblioteca biblioteca) {
+        List<String> lineas = new ArrayList<>();
+        for (Libro libro : biblioteca.vistaLibros()) {
+            lineas.add("L " + libro.getIsbn() + "|" + libro.getTitulo() + "|" + libro.getAutor() + "|"
+                    + libro.getAñoPublicacion() + "|" + libro.getEjemplaresTotales() + "|" + libro.getEjemplaresDisponibles());
+        }
+        for (Usuario usuario : biblioteca.vistaUsuarios()) {
+            lineas.add("U " + usuario.getIdentificacion() + "|" + usuario.getNombre() + "|" + usuario.getTipoUsuario()
+                    + "|" + usuario.getMultaAcumulada() + "|" + usuario.getCantidadPrestamosActivos());
+        }
+        for (Prestamo prestamo : biblioteca.vistaPrestamos()) {
+            lineas.add("P " + prestamo.getLibro().getIsbn() + "|" + prestamo.getUsuario().getIdentificacion()
+                    + "|" + prestamo.getFechaPrestamo() + "|" + prestamo.getFechaDevolucion());
+        }
+        Collections.sort(lineas);
+        StringBuilder texto = new StringBuilder();
+        for (String linea : lineas) {
+            texto.append(linea).append('\n');
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Genera un ISBN-13 válido a partir de un número.
+     * @param numero Número del libro
+     * @return ISBN con dígito de control
+     */
+    private static String isbn(int numero) {
+        String base = String.format("978%09d", numero);
+        int suma = 0;
+        for (int i = 0; i < 12; i++) {
+            suma += (base.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return base + (10 - suma % 10) % 10;
+    }
+}